@@ -0,0 +1,211 @@
+/**
+ * Benchmarks is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Benchmarks is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Benchmarks is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Benchmarks is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Benchmarks. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.locationtech.jts.geom.Envelope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.renderer.featureStyle.StylesForTest;
+import org.orbisgis.orbismap.map.renderer.featureStyle.fill.HaloDrawer;
+import org.orbisgis.orbismap.map.renderer.featureStyle.fill.HatchedFillDrawer;
+import org.orbisgis.orbismap.map.renderer.featureStyle.graphic.MarkGraphicDrawer;
+import org.orbisgis.orbismap.map.renderer.featureStyle.stroke.GraphicStrokeDrawer;
+import org.orbisgis.orbismap.map.renderer.featureStyle.stroke.PenStrokeDrawer;
+import org.orbisgis.orbismap.style.Uom;
+import org.orbisgis.orbismap.style.fill.Halo;
+import org.orbisgis.orbismap.style.fill.HatchedFill;
+import org.orbisgis.orbismap.style.graphic.MarkGraphic;
+import org.orbisgis.orbismap.style.parameter.ParameterException;
+import org.orbisgis.orbismap.style.stroke.GraphicStroke;
+import org.orbisgis.orbismap.style.stroke.PenStroke;
+
+/**
+ * Draw the synthetic shapes with the stroke, fill and graphic drawers. The
+ * strokes and the marks are the ones of {@link StylesForTest}.
+ *
+ * The image is cleared before each iteration so that all the invocations
+ * paint the same pixels.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DrawerBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int vertexCount;
+
+    private MapTransform mapTransform;
+    private BufferedImage image;
+    private Graphics2D g2;
+    private Shape line;
+    private Shape polygon;
+    private double[] vertices;
+
+    private PenStroke penStroke;
+    private HatchedFill hatchedFill;
+    private Halo halo;
+    private GraphicStroke graphicStroke;
+    private MarkGraphic markGraphic;
+
+    private final PenStrokeDrawer penStrokeDrawer = new PenStrokeDrawer();
+    private final HatchedFillDrawer hatchedFillDrawer = new HatchedFillDrawer();
+    private final HaloDrawer haloDrawer = new HaloDrawer();
+    private final GraphicStrokeDrawer graphicStrokeDrawer = new GraphicStrokeDrawer();
+    private final MarkGraphicDrawer markGraphicDrawer = new MarkGraphicDrawer();
+
+    @Setup
+    public void setUp() {
+        mapTransform = new MapTransform();
+        mapTransform.setExtent(new MapEnvelope(new Envelope(0, SyntheticShapes.SIZE, 0, SyntheticShapes.SIZE)));
+        mapTransform.resizeImage(SyntheticShapes.SIZE, SyntheticShapes.SIZE);
+        image = mapTransform.getImage();
+        g2 = image.createGraphics();
+        g2.addRenderingHints(mapTransform.getRenderingHints());
+
+        line = SyntheticShapes.line(vertexCount);
+        polygon = SyntheticShapes.polygon(vertexCount);
+        vertices = new double[vertexCount * 2];
+        double[] coords = new double[6];
+        int i = 0;
+        for (PathIterator it = line.getPathIterator(null); !it.isDone(); it.next()) {
+            it.currentSegment(coords);
+            vertices[i++] = coords[0];
+            vertices[i++] = coords[1];
+        }
+
+        penStroke = StylesForTest.createPenStroke(Color.BLACK, 2f);
+
+        hatchedFill = new HatchedFill();
+        hatchedFill.setUom(Uom.PX);
+        hatchedFill.setStroke(StylesForTest.createPenStroke(Color.BLUE, 1f));
+        hatchedFill.setAngle(45f);
+        hatchedFill.setDistance(5f);
+        hatchedFill.setOffset(0f);
+
+        halo = new Halo();
+        halo.initDefault();
+        halo.setUom(Uom.PX);
+        halo.setRadius(5f);
+
+        graphicStroke = new GraphicStroke();
+        graphicStroke.setUom(Uom.PX);
+        graphicStroke.setDistance(20);
+        graphicStroke.addGraphic(StylesForTest.createMarkGraphic("square", 10));
+
+        markGraphic = StylesForTest.createMarkGraphic("circle", 10);
+        markGraphic.setFill(StylesForTest.createSolidFill(Color.RED));
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+    }
+
+    @TearDown
+    public void tearDown() {
+        g2.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage penStroke() throws ParameterException {
+        penStrokeDrawer.setShape(line);
+        penStrokeDrawer.draw(g2, mapTransform, penStroke);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage hatchedFill() throws ParameterException {
+        hatchedFillDrawer.setShape(polygon);
+        hatchedFillDrawer.draw(g2, mapTransform, hatchedFill);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage halo() throws ParameterException {
+        haloDrawer.setShape(polygon);
+        haloDrawer.draw(g2, mapTransform, halo);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage graphicStroke() throws ParameterException {
+        graphicStrokeDrawer.setShape(line);
+        graphicStrokeDrawer.draw(g2, mapTransform, graphicStroke);
+        return image;
+    }
+
+    /**
+     * Draw a mark on each vertex of the line, as a point symbolizer set on
+     * the vertices does.
+     *
+     * @return
+     * @throws ParameterException
+     */
+    @Benchmark
+    public BufferedImage markGraphicOnVertices() throws ParameterException {
+        for (int i = 0; i < vertices.length; i += 2) {
+            markGraphicDrawer.setAffineTransform(AffineTransform.getTranslateInstance(vertices[i], vertices[i + 1]));
+            markGraphicDrawer.draw(g2, mapTransform, markGraphic);
+        }
+        return image;
+    }
+}
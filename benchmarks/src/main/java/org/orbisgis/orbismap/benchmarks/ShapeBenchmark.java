@@ -0,0 +1,125 @@
+/**
+ * Benchmarks is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Benchmarks is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Benchmarks is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Benchmarks is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Benchmarks. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.benchmarks;
+
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.renderer.featureStyle.utils.ShapeHelper;
+import org.orbisgis.orbismap.style.utils.ShapeUtils;
+
+/**
+ * Geometry helpers used while the shapes are built and drawn.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShapeBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int vertexCount;
+
+    private Shape line;
+    private Shape polygon;
+    private double halfLength;
+    private LineString lineString;
+    private Polygon polygonGeometry;
+    private MapTransform mapTransform;
+
+    @Setup
+    public void setUp() {
+        line = SyntheticShapes.line(vertexCount);
+        polygon = SyntheticShapes.polygon(vertexCount);
+        halfLength = ShapeUtils.getLineLength(line) / 2;
+        lineString = SyntheticShapes.lineString(vertexCount);
+        polygonGeometry = SyntheticShapes.polygonGeometry(vertexCount);
+        mapTransform = new MapTransform();
+        mapTransform.setExtent(new MapEnvelope(new Envelope(0, SyntheticShapes.SIZE, 0, SyntheticShapes.SIZE)));
+        mapTransform.resizeImage(SyntheticShapes.SIZE, SyntheticShapes.SIZE);
+    }
+
+    @Benchmark
+    public List<Shape> perpendicularOffsetLine() {
+        return ShapeHelper.perpendicularOffset(line, 5);
+    }
+
+    @Benchmark
+    public List<Shape> perpendicularOffsetPolygon() {
+        return ShapeHelper.perpendicularOffset(polygon, 5);
+    }
+
+    @Benchmark
+    public Point2D.Double getPointAt() {
+        return ShapeUtils.getPointAt(line, halfLength);
+    }
+
+    @Benchmark
+    public Shape getShapeLine() {
+        return mapTransform.getShape(lineString, false);
+    }
+
+    @Benchmark
+    public Shape getShapePolygon() {
+        return mapTransform.getShape(polygonGeometry, false);
+    }
+
+    @Benchmark
+    public Shape getShapePolygonGeneralized() {
+        return mapTransform.getShape(polygonGeometry, true);
+    }
+}
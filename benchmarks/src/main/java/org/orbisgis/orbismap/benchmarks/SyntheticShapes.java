@@ -0,0 +1,151 @@
+/**
+ * Benchmarks is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Benchmarks is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Benchmarks is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Benchmarks is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Benchmarks. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.benchmarks;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Synthetic shapes and geometries used by the benchmarks.
+ *
+ * The shapes fit in a square of {@link #SIZE} pixels and the geometries in a
+ * square of {@link #SIZE} map units, so that they cover the whole image of a
+ * map transform built on the same extent.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public final class SyntheticShapes {
+
+    /**
+     * Size of the square that contains the shapes
+     */
+    public static final int SIZE = 1000;
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    private SyntheticShapes() {
+    }
+
+    /**
+     * A sine wave that crosses the square from the left to the right.
+     *
+     * @param vertexCount number of vertices, at least 2
+     * @return the coordinates of the line
+     */
+    public static Coordinate[] lineCoordinates(int vertexCount) {
+        if (vertexCount < 2) {
+            throw new IllegalArgumentException("A line needs at least 2 vertices");
+        }
+        Coordinate[] coordinates = new Coordinate[vertexCount];
+        double step = (double) SIZE / (vertexCount - 1);
+        for (int i = 0; i < vertexCount; i++) {
+            double x = i * step;
+            coordinates[i] = new Coordinate(x, SIZE / 2d + SIZE / 4d * Math.sin(x / SIZE * 8 * Math.PI));
+        }
+        return coordinates;
+    }
+
+    /**
+     * A star centered in the square, the vertices alternate between two
+     * radius.
+     *
+     * @param vertexCount number of vertices, at least 3
+     * @return the coordinates of the closed ring
+     */
+    public static Coordinate[] ringCoordinates(int vertexCount) {
+        if (vertexCount < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices");
+        }
+        Coordinate[] coordinates = new Coordinate[vertexCount + 1];
+        double center = SIZE / 2d;
+        for (int i = 0; i < vertexCount; i++) {
+            double angle = 2 * Math.PI * i / vertexCount;
+            double radius = i % 2 == 0 ? SIZE * 0.45 : SIZE * 0.3;
+            coordinates[i] = new Coordinate(center + radius * Math.cos(angle), center + radius * Math.sin(angle));
+        }
+        coordinates[vertexCount] = new Coordinate(coordinates[0]);
+        return coordinates;
+    }
+
+    /**
+     * @param vertexCount
+     * @return an open path built from {@link #lineCoordinates(int)}
+     */
+    public static Shape line(int vertexCount) {
+        return toPath(lineCoordinates(vertexCount), false);
+    }
+
+    /**
+     * @param vertexCount
+     * @return a closed path built from {@link #ringCoordinates(int)}
+     */
+    public static Shape polygon(int vertexCount) {
+        return toPath(ringCoordinates(vertexCount), true);
+    }
+
+    /**
+     * @param vertexCount
+     * @return a linestring built from {@link #lineCoordinates(int)}
+     */
+    public static LineString lineString(int vertexCount) {
+        return GEOMETRY_FACTORY.createLineString(lineCoordinates(vertexCount));
+    }
+
+    /**
+     * @param vertexCount
+     * @return a polygon built from {@link #ringCoordinates(int)}
+     */
+    public static Polygon polygonGeometry(int vertexCount) {
+        return GEOMETRY_FACTORY.createPolygon(ringCoordinates(vertexCount));
+    }
+
+    private static Shape toPath(Coordinate[] coordinates, boolean closed) {
+        int count = closed ? coordinates.length - 1 : coordinates.length;
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_EVEN_ODD, count);
+        path.moveTo(coordinates[0].x, coordinates[0].y);
+        for (int i = 1; i < count; i++) {
+            path.lineTo(coordinates[i].x, coordinates[i].y);
+        }
+        if (closed) {
+            path.closePath();
+        }
+        return path;
+    }
+}
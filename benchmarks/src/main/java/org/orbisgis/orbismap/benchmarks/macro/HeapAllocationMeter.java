@@ -0,0 +1,197 @@
+/**
+ * Benchmarks is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Benchmarks is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Benchmarks is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Benchmarks is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Benchmarks. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.benchmarks.macro;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Measure the bytes allocated in the heap by all the threads, including the
+ * threads that end during the measure : the growth of the heap plus the bytes
+ * reclaimed by the garbage collections.
+ *
+ * The collections are received as JMX notifications. With a concurrent
+ * collector the objects allocated while a collection runs are not counted,
+ * so the measure is a lower bound.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+final class HeapAllocationMeter implements NotificationListener, AutoCloseable {
+
+    private static final long NOTIFICATION_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final Set<String> heapPools = new HashSet<>();
+    private final Map<String, Long> startCounts = new HashMap<>();
+    //The bytes reclaimed by each collection, by collector and collection id
+    private final Map<String, Map<Long, Long>> reclaimed = new HashMap<>();
+    private final long startUsed;
+
+    private HeapAllocationMeter() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean collector : collectors) {
+            reclaimed.put(collector.getName(), new HashMap<>());
+            ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+        }
+        startUsed = sample(startCounts);
+    }
+
+    /**
+     * Start a measure
+     *
+     * @return the meter or null if the JVM does not send the notifications of
+     * the garbage collections
+     */
+    static HeapAllocationMeter start() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(collector instanceof NotificationEmitter)) {
+                return null;
+            }
+        }
+        return new HeapAllocationMeter();
+    }
+
+    /**
+     * Read the used heap and the number of collections at the same time
+     *
+     * @param counts receives the number of collections of each collector
+     * @return the used heap
+     */
+    private long sample(Map<String, Long> counts) {
+        while (true) {
+            Map<String, Long> before = collectionCounts();
+            long used = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (heapPools.contains(pool.getName())) {
+                    used += pool.getUsage().getUsed();
+                }
+            }
+            if (before.equals(collectionCounts())) {
+                counts.putAll(before);
+                return used;
+            }
+        }
+    }
+
+    private Map<String, Long> collectionCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (GarbageCollectorMXBean collector : collectors) {
+            counts.put(collector.getName(), collector.getCollectionCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+        long bytes = 0;
+        for (Map.Entry<String, MemoryUsage> before : gcInfo.getMemoryUsageBeforeGc().entrySet()) {
+            MemoryUsage after = gcInfo.getMemoryUsageAfterGc().get(before.getKey());
+            if (heapPools.contains(before.getKey()) && after != null) {
+                bytes += before.getValue().getUsed() - after.getUsed();
+            }
+        }
+        synchronized (reclaimed) {
+            Map<Long, Long> collections = reclaimed.get(info.getGcName());
+            if (collections != null) {
+                collections.put(gcInfo.getId(), bytes);
+                reclaimed.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stop the measure, waiting for the notifications of the collections done
+     * since the start
+     *
+     * @return the bytes allocated since the start, -1 if the notifications
+     * have not been received
+     * @throws InterruptedException
+     */
+    long stop() throws InterruptedException {
+        Map<String, Long> endCounts = new HashMap<>();
+        long endUsed = sample(endCounts);
+        long allocated = endUsed - startUsed;
+        long deadline = System.nanoTime() + NOTIFICATION_TIMEOUT;
+        synchronized (reclaimed) {
+            for (GarbageCollectorMXBean collector : collectors) {
+                Map<Long, Long> collections = reclaimed.get(collector.getName());
+                //The id of a collection is the number of collections done by its collector
+                for (long id = startCounts.get(collector.getName()) + 1; id <= endCounts.get(collector.getName()); id++) {
+                    while (!collections.containsKey(id)) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            return -1;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(reclaimed, remaining);
+                    }
+                    allocated += collections.get(id);
+                }
+            }
+        }
+        return allocated;
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (GarbageCollectorMXBean collector : collectors) {
+            ((NotificationEmitter) collector).removeNotificationListener(this);
+        }
+    }
+}
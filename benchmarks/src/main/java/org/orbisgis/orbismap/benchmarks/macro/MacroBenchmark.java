@@ -0,0 +1,276 @@
+/**
+ * Benchmarks is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Benchmarks is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Benchmarks is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Benchmarks is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Benchmarks. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.benchmarks.macro;
+
+import java.awt.Color;
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.locationtech.jts.geom.Envelope;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.StyledLayer;
+import org.orbisgis.orbismap.map.renderer.MapView;
+import org.orbisgis.orbismap.map.renderer.featureStyle.StylesForTest;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+import org.orbisgis.orbismap.style.Uom;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ * Generate synthetic tables in an embedded H2GIS database, draw them with
+ * {@link MapView#draw()} and the styles of {@link StylesForTest} for several
+ * image sizes and extents, then write the measures as JSON.
+ *
+ * The arguments are key=value pairs, see {@link #DEFAULTS} for the keys and
+ * their default values. Everything is generated locally, the benchmark does
+ * not need any network access.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class MacroBenchmark {
+
+    /**
+     * The options and their default values
+     */
+    public static final Map<String, String> DEFAULTS;
+
+    static {
+        Map<String, String> defaults = new LinkedHashMap<>();
+        defaults.put("database", "./target/macrobenchmark");
+        defaults.put("output", "./target/macrobenchmark.json");
+        defaults.put("seed", "42");
+        defaults.put("points", "1000000");
+        defaults.put("roadGrid", "300");
+        defaults.put("roadVertices", "10");
+        defaults.put("polygons", "20000");
+        defaults.put("polygonVertices", "200");
+        defaults.put("holes", "3");
+        defaults.put("sizes", "512x512,1024x768,2048x2048");
+        defaults.put("zooms", "1,0.25,0.05");
+        defaults.put("warmup", "2");
+        defaults.put("iterations", "5");
+        DEFAULTS = Collections.unmodifiableMap(defaults);
+    }
+
+    /**
+     * Extent of the synthetic tables
+     */
+    public static final Envelope EXTENT = new Envelope(0, 10000, 0, 10000);
+
+    private final Map<String, String> options;
+    private final List<Scenario> scenarios = new ArrayList<>();
+
+    /**
+     * @param options the values of the options, the missing ones take their
+     * default value
+     */
+    public MacroBenchmark(Map<String, String> options) {
+        this.options = new HashMap<>(DEFAULTS);
+        for (Map.Entry<String, String> entry : options.entrySet()) {
+            if (!DEFAULTS.containsKey(entry.getKey())) {
+                throw new IllegalArgumentException("Unknown option " + entry.getKey() + ", expected one of " + DEFAULTS.keySet());
+            }
+            this.options.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Generate the tables, draw them and return the measures
+     *
+     * @return the report
+     * @throws Exception
+     */
+    public MacroBenchmarkReport run() throws Exception {
+        long seed = Long.parseLong(options.get("seed"));
+        MacroBenchmarkReport report = new MacroBenchmarkReport();
+        report.putEnvironment("date", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+        report.putEnvironment("javaVersion", System.getProperty("java.version"));
+        report.putEnvironment("javaVm", System.getProperty("java.vm.name"));
+        report.putEnvironment("os", System.getProperty("os.name") + " " + System.getProperty("os.version"));
+        report.putEnvironment("processors", Runtime.getRuntime().availableProcessors());
+        report.putEnvironment("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        for (String key : DEFAULTS.keySet()) {
+            report.putEnvironment(key, options.get(key));
+        }
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, options.get("database"));
+        H2GIS h2GIS = H2GIS.open(map);
+        try {
+            SyntheticDataGenerator generator = new SyntheticDataGenerator(h2GIS, EXTENT, seed);
+            int points = getInt("points");
+            ISpatialTable pointTable = generator.createPoints("SYNTHETIC_POINTS", points);
+            report.addDataset("SYNTHETIC_POINTS", points);
+            int roadGrid = getInt("roadGrid");
+            ISpatialTable roadTable = generator.createRoads("SYNTHETIC_ROADS", roadGrid, getInt("roadVertices"));
+            report.addDataset("SYNTHETIC_ROADS", 2L * roadGrid * (roadGrid - 1));
+            int polygons = getInt("polygons");
+            ISpatialTable polygonTable = generator.createPolygons("SYNTHETIC_POLYGONS", polygons,
+                    getInt("polygonVertices"), getInt("holes"));
+            report.addDataset("SYNTHETIC_POLYGONS", polygons);
+
+            addScenario(pointTable, "point", ()
+                    -> StylesForTest.createPointSymbolizer("circle", Color.BLUE, 3, Color.BLACK, 0.5f));
+            addScenario(roadTable, "line", ()
+                    -> StylesForTest.createLineSymbolizer(Color.BLACK, 1, 0, Uom.PX));
+            addScenario(roadTable, "dashedLine", ()
+                    -> StylesForTest.createDashedLineSymbolizer(Color.DARK_GRAY, 2, 0, "5 2"));
+            addScenario(roadTable, "graphicStroke", ()
+                    -> StylesForTest.createGraphicStrokeLineSymbolizer(Color.RED, 1, 0, 20));
+            addScenario(polygonTable, "area", ()
+                    -> StylesForTest.createAreaSymbolizer(Color.ORANGE, 0.7f, 0));
+            addScenario(polygonTable, "thematicArea", StylesForTest::createThematicAreaSymbolizer);
+            addScenario(polygonTable, "hatchedArea", ()
+                    -> StylesForTest.createHatchedAreaSymbolizer(Color.BLUE, 1, 45, 5, Color.BLACK, 1));
+
+            for (Scenario scenario : scenarios) {
+                for (String size : options.get("sizes").split(",")) {
+                    String[] dimensions = size.trim().split("x");
+                    int width = Integer.parseInt(dimensions[0]);
+                    int height = Integer.parseInt(dimensions[1]);
+                    for (String zoom : options.get("zooms").split(",")) {
+                        MacroBenchmarkReport.Result result = measure(scenario, width, height, Double.parseDouble(zoom.trim()));
+                        System.out.println(result);
+                        report.addResult(result);
+                    }
+                }
+            }
+        } finally {
+            h2GIS.close();
+        }
+        return report;
+    }
+
+    /**
+     * Draw a style on a table, centered on the extent of the table
+     *
+     * @param scenario
+     * @param width
+     * @param height
+     * @param zoom the part of the width of the extent that is drawn
+     * @return the measures
+     * @throws Exception
+     */
+    private MacroBenchmarkReport.Result measure(Scenario scenario, int width, int height, double zoom) throws Exception {
+        AtomicLong features = new AtomicLong();
+        StyledLayer layer = new StyledLayer(scenario.table, scenario.style.get());
+        layer.setMetricsSink((statistics) -> features.addAndGet(statistics.getQueries().getRowsFetched()));
+        MapView mapView = new MapView(width, height);
+        mapView.addLayer(layer);
+        double halfWidth = EXTENT.getWidth() * zoom / 2;
+        double halfHeight = EXTENT.getHeight() * zoom / 2;
+        Envelope center = new Envelope(EXTENT.centre());
+        center.expandBy(halfWidth, halfHeight);
+        mapView.setEnvelope(new MapEnvelope(center));
+        double scaleDenominator = mapView.getViewport().createMapTransform().getScaleDenominator();
+        for (int i = 0; i < getInt("warmup"); i++) {
+            mapView.draw();
+        }
+        features.set(0);
+        int iterations = getInt("iterations");
+        long elapsed = 0;
+        long minFrame = Long.MAX_VALUE;
+        long allocated = -1;
+        try (HeapAllocationMeter meter = HeapAllocationMeter.start()) {
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                mapView.draw();
+                long frame = System.nanoTime() - start;
+                elapsed += frame;
+                minFrame = Math.min(minFrame, frame);
+            }
+            if (meter != null) {
+                allocated = meter.stop();
+            }
+        }
+        return new MacroBenchmarkReport.Result(scenario.table.getName(), scenario.name, width, height, zoom,
+                scaleDenominator, iterations, elapsed, minFrame, features.get(), allocated);
+    }
+
+    private void addScenario(ISpatialTable table, String name, Supplier<Feature2DStyle> style) {
+        scenarios.add(new Scenario(table, name, style));
+    }
+
+    private int getInt(String key) {
+        return Integer.parseInt(options.get(key));
+    }
+
+    /**
+     * A style drawn on a table. The style is created for each MapView.
+     */
+    private static class Scenario {
+
+        private final ISpatialTable table;
+        private final String name;
+        private final Supplier<Feature2DStyle> style;
+
+        Scenario(ISpatialTable table, String name, Supplier<Feature2DStyle> style) {
+            this.table = table;
+            this.name = name;
+            this.style = style;
+        }
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args key=value options
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index < 1) {
+                throw new IllegalArgumentException("Expected key=value, found " + arg);
+            }
+            options.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+        MacroBenchmark benchmark = new MacroBenchmark(options);
+        MacroBenchmarkReport report = benchmark.run();
+        File output = new File(benchmark.options.get("output"));
+        report.write(output);
+        System.out.println("Report written in " + output.getAbsolutePath());
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ * Benchmarks is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Benchmarks is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Benchmarks is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Benchmarks is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Benchmarks. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.benchmarks.macro;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The measures of a macro benchmark run, written as JSON.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class MacroBenchmarkReport {
+
+    private final Map<String, Object> environment = new LinkedHashMap<>();
+    private final Map<String, Long> datasets = new LinkedHashMap<>();
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * Keep a property of the run, e.g. the java version or the seed
+     *
+     * @param key
+     * @param value a String, a Number or a Boolean
+     */
+    public void putEnvironment(String key, Object value) {
+        environment.put(key, value);
+    }
+
+    public Map<String, Object> getEnvironment() {
+        return Collections.unmodifiableMap(environment);
+    }
+
+    /**
+     * @param tableName
+     * @param featureCount number of rows of the table
+     */
+    public void addDataset(String tableName, long featureCount) {
+        datasets.put(tableName, featureCount);
+    }
+
+    public Map<String, Long> getDatasets() {
+        return Collections.unmodifiableMap(datasets);
+    }
+
+    public void addResult(Result result) {
+        results.add(result);
+    }
+
+    public List<Result> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * @return the report as a JSON object
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"environment\": {");
+        String separator = "";
+        for (Map.Entry<String, Object> entry : environment.entrySet()) {
+            sb.append(separator).append("\n    ");
+            appendString(sb, entry.getKey()).append(": ");
+            appendValue(sb, entry.getValue());
+            separator = ",";
+        }
+        sb.append("\n  },\n  \"datasets\": [");
+        separator = "";
+        for (Map.Entry<String, Long> entry : datasets.entrySet()) {
+            sb.append(separator).append("\n    {\"table\": ");
+            appendString(sb, entry.getKey()).append(", \"features\": ").append(entry.getValue()).append("}");
+            separator = ",";
+        }
+        sb.append("\n  ],\n  \"results\": [");
+        separator = "";
+        for (Result result : results) {
+            sb.append(separator).append("\n    ");
+            result.appendJson(sb);
+            separator = ",";
+        }
+        sb.append("\n  ]\n}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Write the JSON report in a file
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+    }
+
+    static StringBuilder appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+
+    static StringBuilder appendValue(StringBuilder sb, Object value) {
+        if (value == null) {
+            return sb.append("null");
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return sb.append("null");
+            }
+            return sb.append(String.format(Locale.ROOT, "%.3f", d));
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return sb.append(value);
+        }
+        return appendString(sb, value.toString());
+    }
+
+    /**
+     * The measures of one style drawn on one table, for one image size and
+     * one extent.
+     */
+    public static class Result {
+
+        private final String table;
+        private final String style;
+        private final int width;
+        private final int height;
+        private final double zoom;
+        private final double scaleDenominator;
+        private final int frames;
+        private final long elapsedNanos;
+        private final long minFrameNanos;
+        private final long features;
+        private final long allocatedBytes;
+
+        /**
+         * @param table the name of the table
+         * @param style the name of the style
+         * @param width width of the image
+         * @param height height of the image
+         * @param zoom the part of the width of the table extent that is drawn
+         * @param scaleDenominator the scale of the map
+         * @param frames number of measured frames
+         * @param elapsedNanos time spent to draw all the measured frames
+         * @param minFrameNanos time spent to draw the fastest frame
+         * @param features number of features drawn by all the frames
+         * @param allocatedBytes bytes allocated by all the frames, -1 if the
+         * JVM cannot measure it
+         */
+        public Result(String table, String style, int width, int height, double zoom, double scaleDenominator,
+                int frames, long elapsedNanos, long minFrameNanos, long features, long allocatedBytes) {
+            this.table = table;
+            this.style = style;
+            this.width = width;
+            this.height = height;
+            this.zoom = zoom;
+            this.scaleDenominator = scaleDenominator;
+            this.frames = frames;
+            this.elapsedNanos = elapsedNanos;
+            this.minFrameNanos = minFrameNanos;
+            this.features = features;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public String getStyle() {
+            return style;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public double getZoom() {
+            return zoom;
+        }
+
+        public double getScaleDenominator() {
+            return scaleDenominator;
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+
+        public double getMsPerFrame() {
+            return elapsedNanos / 1e6 / frames;
+        }
+
+        public double getMinMsPerFrame() {
+            return minFrameNanos / 1e6;
+        }
+
+        public long getFeaturesPerFrame() {
+            return features / frames;
+        }
+
+        public double getFeaturesPerSecond() {
+            return elapsedNanos == 0 ? 0 : features * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return the bytes allocated to draw one frame, -1 if unknown
+         */
+        public long getAllocatedBytesPerFrame() {
+            return allocatedBytes < 0 ? -1 : allocatedBytes / frames;
+        }
+
+        void appendJson(StringBuilder sb) {
+            sb.append("{\"table\": ");
+            appendString(sb, table);
+            sb.append(", \"style\": ");
+            appendString(sb, style);
+            sb.append(", \"width\": ").append(width);
+            sb.append(", \"height\": ").append(height);
+            sb.append(", \"zoom\": ");
+            appendValue(sb, zoom);
+            sb.append(", \"scaleDenominator\": ");
+            appendValue(sb, scaleDenominator);
+            sb.append(", \"frames\": ").append(frames);
+            sb.append(", \"featuresPerFrame\": ").append(getFeaturesPerFrame());
+            sb.append(", \"featuresPerSecond\": ");
+            appendValue(sb, getFeaturesPerSecond());
+            sb.append(", \"msPerFrame\": ");
+            appendValue(sb, getMsPerFrame());
+            sb.append(", \"minMsPerFrame\": ");
+            appendValue(sb, getMinMsPerFrame());
+            sb.append(", \"allocatedBytesPerFrame\": ");
+            long allocated = getAllocatedBytesPerFrame();
+            sb.append(allocated < 0 ? "null" : String.valueOf(allocated));
+            sb.append("}");
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %s %dx%d zoom %.3f : %.1f ms/frame, %.0f features/s, %d bytes/frame",
+                    table, style, width, height, zoom, getMsPerFrame(), getFeaturesPerSecond(), getAllocatedBytesPerFrame());
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/**
+ * Benchmarks is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Benchmarks is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Benchmarks is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Benchmarks is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Benchmarks. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.benchmarks.macro;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Random;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+
+/**
+ * Generate reproducible synthetic tables in a H2GIS database : clustered
+ * points, a dense road network and polygons with many vertices and holes.
+ *
+ * The same seed and the same parameters always produce the same rows. Each
+ * table has an ID column, a THE_GEOM column and a spatial index.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class SyntheticDataGenerator {
+
+    /**
+     * Number of rows inserted by a JDBC batch
+     */
+    public static final int BATCH_SIZE = 1000;
+
+    private final H2GIS h2GIS;
+    private final Envelope extent;
+    private final long seed;
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    /**
+     * @param h2GIS the database where the tables are created
+     * @param extent the extent covered by the geometries
+     * @param seed the seed of the random generators
+     */
+    public SyntheticDataGenerator(H2GIS h2GIS, Envelope extent, long seed) {
+        this.h2GIS = h2GIS;
+        this.extent = extent;
+        this.seed = seed;
+    }
+
+    public Envelope getExtent() {
+        return extent;
+    }
+
+    /**
+     * Create a table of points gathered in gaussian clusters, so that the
+     * density of the features changes with the zoom level.
+     *
+     * @param tableName
+     * @param count number of points
+     * @return the table
+     * @throws SQLException
+     */
+    public ISpatialTable createPoints(String tableName, int count) throws SQLException {
+        Random random = new Random(seed);
+        int clusterCount = Math.max(1, count / 10000);
+        double[] centers = new double[clusterCount * 2];
+        for (int i = 0; i < clusterCount; i++) {
+            centers[i * 2] = extent.getMinX() + random.nextDouble() * extent.getWidth();
+            centers[i * 2 + 1] = extent.getMinY() + random.nextDouble() * extent.getHeight();
+        }
+        double sigma = Math.min(extent.getWidth(), extent.getHeight()) / 50;
+        try (TableWriter writer = new TableWriter(tableName)) {
+            for (int i = 0; i < count; i++) {
+                double x;
+                double y;
+                if (random.nextInt(5) == 0) {
+                    //Some noise between the clusters
+                    x = extent.getMinX() + random.nextDouble() * extent.getWidth();
+                    y = extent.getMinY() + random.nextDouble() * extent.getHeight();
+                } else {
+                    int cluster = random.nextInt(clusterCount);
+                    x = clamp(centers[cluster * 2] + random.nextGaussian() * sigma, extent.getMinX(), extent.getMaxX());
+                    y = clamp(centers[cluster * 2 + 1] + random.nextGaussian() * sigma, extent.getMinY(), extent.getMaxY());
+                }
+                writer.write(geometryFactory.createPoint(new Coordinate(x, y)));
+            }
+        }
+        return h2GIS.getSpatialTable(tableName);
+    }
+
+    /**
+     * Create a road network : a jittered grid of nodes, each pair of
+     * neighbouring nodes is linked by a winding road segment.
+     *
+     * @param tableName
+     * @param gridSize number of nodes on each side of the grid, the table
+     * contains 2 * gridSize * (gridSize - 1) segments
+     * @param verticesPerSegment number of vertices of each segment, at least 2
+     * @return the table
+     * @throws SQLException
+     */
+    public ISpatialTable createRoads(String tableName, int gridSize, int verticesPerSegment) throws SQLException {
+        if (gridSize < 2 || verticesPerSegment < 2) {
+            throw new IllegalArgumentException("The grid needs at least 2 nodes per side and the segments 2 vertices");
+        }
+        Random random = new Random(seed);
+        double stepX = extent.getWidth() / (gridSize - 1);
+        double stepY = extent.getHeight() / (gridSize - 1);
+        Coordinate[][] nodes = new Coordinate[gridSize][gridSize];
+        for (int i = 0; i < gridSize; i++) {
+            for (int j = 0; j < gridSize; j++) {
+                double x = extent.getMinX() + i * stepX;
+                double y = extent.getMinY() + j * stepY;
+                if (i > 0 && i < gridSize - 1) {
+                    x += (random.nextDouble() - 0.5) * stepX * 0.6;
+                }
+                if (j > 0 && j < gridSize - 1) {
+                    y += (random.nextDouble() - 0.5) * stepY * 0.6;
+                }
+                nodes[i][j] = new Coordinate(x, y);
+            }
+        }
+        try (TableWriter writer = new TableWriter(tableName)) {
+            for (int i = 0; i < gridSize; i++) {
+                for (int j = 0; j < gridSize; j++) {
+                    if (i + 1 < gridSize) {
+                        writer.write(createSegment(nodes[i][j], nodes[i + 1][j], verticesPerSegment, stepY * 0.1, random));
+                    }
+                    if (j + 1 < gridSize) {
+                        writer.write(createSegment(nodes[i][j], nodes[i][j + 1], verticesPerSegment, stepX * 0.1, random));
+                    }
+                }
+            }
+        }
+        return h2GIS.getSpatialTable(tableName);
+    }
+
+    /**
+     * Create polygons shaped as irregular stars, with holes.
+     *
+     * @param tableName
+     * @param count number of polygons
+     * @param vertexCount number of vertices of the shell, at least 3
+     * @param holeCount number of holes in each polygon
+     * @return the table
+     * @throws SQLException
+     */
+    public ISpatialTable createPolygons(String tableName, int count, int vertexCount, int holeCount) throws SQLException {
+        if (vertexCount < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices");
+        }
+        Random random = new Random(seed);
+        double meanRadius = Math.sqrt(extent.getArea() / count);
+        int holeVertexCount = Math.max(8, vertexCount / 8);
+        try (TableWriter writer = new TableWriter(tableName)) {
+            for (int i = 0; i < count; i++) {
+                double radius = meanRadius * (0.2 + random.nextDouble() * 1.3);
+                double cx = extent.getMinX() + random.nextDouble() * extent.getWidth();
+                double cy = extent.getMinY() + random.nextDouble() * extent.getHeight();
+                //The shell never comes closer than 0.6 * radius to the center
+                LinearRing shell = createRing(cx, cy, radius, 0.6, vertexCount, random);
+                LinearRing[] holes = new LinearRing[holeCount];
+                double holeRadius = holeCount == 1 ? 0.2 * radius
+                        : Math.min(0.2 * radius, 0.3 * radius * Math.sin(Math.PI / holeCount) * 0.9);
+                for (int h = 0; h < holeCount; h++) {
+                    double angle = 2 * Math.PI * h / holeCount;
+                    double distance = holeCount == 1 ? 0 : 0.3 * radius;
+                    holes[h] = createRing(cx + distance * Math.cos(angle), cy + distance * Math.sin(angle),
+                            holeRadius, 1, holeVertexCount, random);
+                }
+                writer.write(geometryFactory.createPolygon(shell, holes));
+            }
+        }
+        return h2GIS.getSpatialTable(tableName);
+    }
+
+    private Geometry createSegment(Coordinate start, Coordinate end, int vertexCount, double amplitude, Random random) {
+        Coordinate[] coordinates = new Coordinate[vertexCount];
+        coordinates[0] = new Coordinate(start);
+        coordinates[vertexCount - 1] = new Coordinate(end);
+        double dx = end.x - start.x;
+        double dy = end.y - start.y;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        double nx = -dy / length;
+        double ny = dx / length;
+        double phase = random.nextDouble() * Math.PI;
+        for (int i = 1; i < vertexCount - 1; i++) {
+            double t = (double) i / (vertexCount - 1);
+            double shift = amplitude * Math.sin(t * Math.PI) * Math.sin(phase + t * 2 * Math.PI);
+            coordinates[i] = new Coordinate(start.x + t * dx + shift * nx, start.y + t * dy + shift * ny);
+        }
+        return geometryFactory.createLineString(coordinates);
+    }
+
+    /**
+     * A counter clockwise ring whose vertices are at a random distance
+     * between minRatio * radius and radius from the center.
+     */
+    private LinearRing createRing(double cx, double cy, double radius, double minRatio, int vertexCount, Random random) {
+        Coordinate[] coordinates = new Coordinate[vertexCount + 1];
+        for (int i = 0; i < vertexCount; i++) {
+            double angle = 2 * Math.PI * i / vertexCount;
+            double r = radius * (minRatio + random.nextDouble() * (1 - minRatio));
+            coordinates[i] = new Coordinate(cx + r * Math.cos(angle), cy + r * Math.sin(angle));
+        }
+        coordinates[vertexCount] = new Coordinate(coordinates[0]);
+        return geometryFactory.createLinearRing(coordinates);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Create a table and insert the geometries by batches, the spatial index
+     * is built once all the rows are inserted.
+     */
+    private class TableWriter implements AutoCloseable {
+
+        private final String tableName;
+        private final Connection connection;
+        private final boolean autoCommit;
+        private final PreparedStatement statement;
+        private int id = 0;
+
+        TableWriter(String tableName) throws SQLException {
+            this.tableName = tableName;
+            h2GIS.execute("DROP TABLE IF EXISTS " + tableName);
+            h2GIS.execute("CREATE TABLE " + tableName + "(ID INTEGER PRIMARY KEY, THE_GEOM GEOMETRY)");
+            connection = h2GIS.getConnection();
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            statement = connection.prepareStatement("INSERT INTO " + tableName + " VALUES (?, ?)");
+        }
+
+        void write(Geometry geometry) throws SQLException {
+            statement.setInt(1, ++id);
+            statement.setObject(2, geometry);
+            statement.addBatch();
+            if (id % BATCH_SIZE == 0) {
+                statement.executeBatch();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                statement.executeBatch();
+                connection.commit();
+            } finally {
+                statement.close();
+                connection.setAutoCommit(autoCommit);
+            }
+            h2GIS.execute("CREATE SPATIAL INDEX ON " + tableName + "(THE_GEOM)");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Benchmarks is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Benchmarks is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Benchmarks is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Benchmarks is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Benchmarks. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.benchmarks.macro;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Run the macro benchmark on tiny tables
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class MacroBenchmarkTest {
+
+    @Test
+    public void testRun() throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("database", "./target/" + MacroBenchmarkTest.class.getSimpleName());
+        options.put("points", "200");
+        options.put("roadGrid", "4");
+        options.put("roadVertices", "3");
+        options.put("polygons", "20");
+        options.put("polygonVertices", "8");
+        options.put("holes", "1");
+        options.put("sizes", "64x64");
+        options.put("zooms", "1");
+        options.put("warmup", "1");
+        options.put("iterations", "1");
+        MacroBenchmarkReport report = new MacroBenchmark(options).run();
+        //One result per style
+        assertEquals(7, report.getResults().size());
+        for (MacroBenchmarkReport.Result result : report.getResults()) {
+            assertEquals(1, result.getFrames());
+            assertTrue(result.getFeaturesPerFrame() > 0, result.getStyle());
+        }
+        assertTrue(report.toJson().contains("SYNTHETIC_POLYGONS"));
+    }
+}
@@ -35,6 +35,7 @@
 package org.orbisgis.orbismap.style;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.orbisgis.orbismap.style.common.Description;
@@ -116,7 +117,7 @@ public class Feature2DRule extends StyleNode implements IRule<IFeatureSymbolizer
 
     @Override
     public  List<IFeatureSymbolizer> getSymbolizers() {
-        return symbolizers;
+        return Collections.unmodifiableList(symbolizers);
     }
 
     /**
@@ -229,13 +230,26 @@ public class Feature2DRule extends StyleNode implements IRule<IFeatureSymbolizer
     @Override
     public void addSymbolizer(IFeatureSymbolizer iSymbolizer) {
         symbolizers.add(iSymbolizer);
+        iSymbolizer.setParent(this);
     }
 
     @Override
     public void addSymbolizer(int i, IFeatureSymbolizer iSymbolizer) {
         symbolizers.add(i, iSymbolizer);
+        iSymbolizer.setParent(this);
     }    
 
+    @Override
+    public boolean deleteSymbolizer(int index) {
+        try {
+            symbolizers.remove(index);
+            update();
+            return true;
+        } catch (IndexOutOfBoundsException ex) {
+            return false;
+        }
+    }
+
     @Override
     public void initDefault() {
         PointSymbolizer pointSymbolizer = new PointSymbolizer();
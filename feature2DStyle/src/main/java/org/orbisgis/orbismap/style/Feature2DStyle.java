@@ -35,8 +35,10 @@
 package org.orbisgis.orbismap.style;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.orbisgis.orbismap.style.common.Description;
 
@@ -54,6 +56,7 @@ public class Feature2DStyle extends StyleNode implements IStyle<Feature2DRule> {
     private String name;
     private ArrayList<Feature2DRule> rules;
     private Description description = new Description();
+    private final AtomicLong revision = new AtomicLong();
     
     /**
      * Create a new {@code Style} with a default {@code Rule}.
@@ -69,6 +72,7 @@ public class Feature2DStyle extends StyleNode implements IStyle<Feature2DRule> {
      */
     public void clear() {
         this.rules.clear();
+        update();
     }
     
     @Override
@@ -81,8 +85,23 @@ public class Feature2DStyle extends StyleNode implements IStyle<Feature2DRule> {
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    /**
+     * Called when a node of the style tree is mutated
+     */
     @Override
     public void update() {
+        revision.incrementAndGet();
+    }
+
+    /**
+     * The revision of the style is incremented each time the style tree is
+     * mutated. It is used to know if a compiled form of the style is still
+     * valid.
+     *
+     * @return
+     */
+    public long getRevision() {
+        return revision.get();
     }
 
     
@@ -99,7 +118,7 @@ public class Feature2DStyle extends StyleNode implements IStyle<Feature2DRule> {
     
     @Override
     public List<Feature2DRule> getRules() {
-        return rules;
+        return Collections.unmodifiableList(rules);
     }
 
     /**
@@ -112,6 +131,7 @@ public class Feature2DStyle extends StyleNode implements IStyle<Feature2DRule> {
             if (i > 0) {
                 Feature2DRule r = rules.remove(i);
                 rules.add(i - 1, r);
+                update();
                 return true;
             }
         } catch (IndexOutOfBoundsException ex) {
@@ -125,6 +145,7 @@ public class Feature2DStyle extends StyleNode implements IStyle<Feature2DRule> {
             if (i < rules.size() - 1) {
                 Feature2DRule r = rules.remove(i);
                 rules.add(i + 1, r);
+                update();
                 return true;
             }
 
@@ -139,6 +160,7 @@ public class Feature2DStyle extends StyleNode implements IStyle<Feature2DRule> {
         if (rule != null) {
             rule.setParent(this);
             rules.add(rule);
+            update();
         }
     }
 
@@ -148,6 +170,7 @@ public class Feature2DStyle extends StyleNode implements IStyle<Feature2DRule> {
         if (rule != null) {
             rule.setParent(this);
             rules.add(index, rule);
+            update();
         }
     }
 
@@ -156,6 +179,7 @@ public class Feature2DStyle extends StyleNode implements IStyle<Feature2DRule> {
     public boolean deleteRule(int index) {
         try {
             rules.remove(index);
+            update();
             return true;
         } catch (IndexOutOfBoundsException ex) {
             return false;
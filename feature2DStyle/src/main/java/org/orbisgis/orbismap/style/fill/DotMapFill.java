@@ -67,7 +67,7 @@ public class DotMapFill extends StyleNode implements IGraphicNode, IFill, IUom{
     private GraphicCollection graphics;
     private ParameterValue quantityPerMark = new NullParameterValue();
     private ParameterValue totalQuantity = new NullParameterValue();
-    private Random rand;
+    private transient Random rand;
     private Uom uom;
 
     /**
@@ -60,7 +60,7 @@ public abstract class AbstractTTFMarkFactory extends AbstractShapeFactory {
 
     String ttf_file_path = null;
 
-    Font font;
+    volatile Font font;
 
     public AbstractTTFMarkFactory(String factory_prefix, String ttf_file_path) {
         super(factory_prefix);
@@ -68,17 +68,27 @@ public abstract class AbstractTTFMarkFactory extends AbstractShapeFactory {
     }
 
     @Override
-    public Shape getShape(GraphicSize graphicSize, Double scale, Double dpi, Uom uom) throws ParameterException {
-        return getTrueTypeGlyph(graphicSize, scale, dpi, uom, getShapeName());
+    public Shape getShape(String shapeName, GraphicSize graphicSize, Double scale, Double dpi, Uom uom) throws ParameterException {
+        return getTrueTypeGlyph(graphicSize, scale, dpi, uom, getGlyphName(shapeName));
+    }
+
+    /**
+     * @param shapeName the name of a shape
+     * @return the glyph of the shape in the font
+     */
+    String getGlyphName(String shapeName) {
+        return shapeName;
     }
 
     private Shape getTrueTypeGlyph(GraphicSize graphicSize, Double scale,
             Double dpi, Uom uom, String unicode) throws ParameterException {
         try {
+            Font font = this.font;
             if (font == null) {
                 try (InputStream iStream = AbstractTTFMarkFactory.class.getResourceAsStream(ttf_file_path)) {
                     font = Font.createFont(Font.TRUETYPE_FONT, iStream);
                 }
+                this.font = font;
             }
 
             // Scale is used to have an high resolution
@@ -46,8 +46,35 @@ import org.orbisgis.orbismap.style.parameter.ParameterException;
 public interface IShapeFactory {
     
     String getIdentifier();
-    
-    Shape getShape(GraphicSize graphicSize,
+
+    /**
+     * Build the shape of the name set with {@link #setShapeName(String)}
+     *
+     * @param graphicSize
+     * @param scale
+     * @param dpi
+     * @param uom
+     * @return
+     * @throws ParameterException
+     */
+    default Shape getShape(GraphicSize graphicSize,
+                   Double scale, Double dpi, Uom uom) throws ParameterException {
+        return getShape(getShapeName(), graphicSize, scale, dpi, uom);
+    }
+
+    /**
+     * Build a shape without changing the state of the factory, so a factory
+     * can be shared by the rendering threads
+     *
+     * @param shapeName the name of the shape in the factory
+     * @param graphicSize
+     * @param scale
+     * @param dpi
+     * @param uom
+     * @return
+     * @throws ParameterException
+     */
+    Shape getShape(String shapeName, GraphicSize graphicSize,
                    Double scale, Double dpi, Uom uom) throws ParameterException;
 
     void setShapeName(String shapeName);
@@ -37,12 +37,18 @@ package org.orbisgis.orbismap.style.graphic.shapeFactory;
 import java.awt.Shape;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.orbisgis.orbismap.style.Uom;
 import org.orbisgis.orbismap.style.parameter.NullParameterValue;
 import org.orbisgis.orbismap.style.parameter.ParameterException;
 import org.orbisgis.orbismap.style.parameter.ParameterValue;
 import org.orbisgis.orbismap.style.graphic.graphicSize.GraphicSize;
+import org.orbisgis.orbismap.style.graphic.graphicSize.Size;
+import org.orbisgis.orbismap.style.graphic.graphicSize.ViewBox;
 
 /**
  * Get the shape from the a wellKnownNameParameter Look into a factory
@@ -58,6 +64,14 @@ public class ShapeFinder {
 
     public static HashMap<String, IShapeFactory> shapeFactories = new HashMap<>();
 
+    /**
+     * The shapes of the literal sizes, by name, size, scale, dpi and unit of
+     * measure. It is shared by the rendering threads.
+     */
+    private static final Map<List<Object>, Shape> SHAPES = new ConcurrentHashMap<>();
+
+    private static final int MAX_CACHED_SHAPES = 1024;
+
     static {
         shapeFactories.put(WKNFactory.FACTORY_PREFIX, new WKNFactory());
         shapeFactories.put(WeatherMarkFactory.FACTORY_PREFIX, new WeatherMarkFactory());
@@ -76,15 +90,47 @@ public class ShapeFinder {
      */
     public static Shape getShape(ParameterValue wellKnownNameParameter, GraphicSize graphicSize, Double scale, Double dpi, Uom uom) throws ParameterException {
         if (wellKnownNameParameter != null && !(wellKnownNameParameter instanceof NullParameterValue)) {
-            String[] prefix = getPrefix((String) wellKnownNameParameter.getValue());
-            IShapeFactory factory = shapeFactories.get(prefix[0]);
-            factory.setShapeName(prefix[1]);
-            return factory.getShape(graphicSize, scale, dpi, uom);
+            String wkn = (String) wellKnownNameParameter.getValue();
+            List<Object> key = getCacheKey(wkn, graphicSize, scale, dpi, uom);
+            Shape shape = key == null ? null : SHAPES.get(key);
+            if (shape == null) {
+                String[] prefix = getPrefix(wkn);
+                IShapeFactory factory = shapeFactories.get(prefix[0]);
+                shape = factory.getShape(prefix[1], graphicSize, scale, dpi, uom);
+                if (key != null && shape != null) {
+                    if (SHAPES.size() >= MAX_CACHED_SHAPES) {
+                        SHAPES.clear();
+                    }
+                    SHAPES.put(key, shape);
+                }
+            }
+            return shape;
         } else {
             throw new ParameterException();
         }
     }
 
+    /**
+     * The key of a shape in the cache
+     *
+     * @return null if the size is not a literal, the shape depends on the
+     * feature
+     */
+    private static List<Object> getCacheKey(String wkn, GraphicSize graphicSize, Double scale, Double dpi, Uom uom) {
+        if (graphicSize instanceof Size) {
+            ParameterValue size = ((Size) graphicSize).getSize();
+            if (size.isLiteral()) {
+                return Arrays.asList(wkn, size.getValue(), scale, dpi, uom);
+            }
+        } else if (graphicSize instanceof ViewBox) {
+            ViewBox viewBox = (ViewBox) graphicSize;
+            if (viewBox.getWidth().isLiteral() && viewBox.getHeight().isLiteral()) {
+                return Arrays.asList(wkn, viewBox.getWidth().getValue(), viewBox.getHeight().getValue(), scale, dpi, uom);
+            }
+        }
+        return null;
+    }
+
     /**
      *
      * @param wkn
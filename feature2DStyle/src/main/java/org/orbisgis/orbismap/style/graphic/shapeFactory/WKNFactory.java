@@ -42,10 +42,8 @@ import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.util.HashMap;
 import org.orbisgis.orbismap.style.Uom;
 import org.orbisgis.orbismap.style.parameter.ParameterException;
-import org.orbisgis.orbismap.style.parameter.ParameterValue;
 import org.orbisgis.orbismap.style.graphic.graphicSize.GraphicSize;
 import org.orbisgis.orbismap.style.graphic.graphicSize.Size;
 import org.orbisgis.orbismap.style.graphic.graphicSize.ViewBox;
@@ -59,53 +57,22 @@ public class WKNFactory extends AbstractShapeFactory {
 
     public static final String FACTORY_PREFIX = "wellknownname";
 
-    public HashMap<GraphicSize, Shape> shapes;
-
     public WKNFactory() {
         super(FACTORY_PREFIX);
-        shapes = new HashMap<>();
-
     }
 
+    /**
+     * Build the shape. The shapes are cached by {@link ShapeFinder}.
+     */
     @Override
-    public Shape getShape(GraphicSize graphicSize, Double scale, Double dpi, Uom uom) throws ParameterException {
-        WellKnownName wellKnownName = WellKnownName.fromString(getShapeName());
-        if (graphicSize != null) {
-            if (graphicSize instanceof ViewBox) {
-                ViewBox viewBox = (ViewBox) graphicSize;
-                ParameterValue heigthParameter = viewBox.getHeight();
-                ParameterValue widthParameterValue = viewBox.getWidth();
-                if (!heigthParameter.isLiteral() || !widthParameterValue.isLiteral()) {
-                    return buildShape(wellKnownName, viewBox, scale, dpi, uom);
-                } else {
-                    Shape shape = shapes.get(viewBox);
-                    if (shape == null) {
-                        shape = buildShape(wellKnownName, viewBox, scale, dpi, uom);
-                        shapes.put(viewBox, shape);
-                        return shape;
-                    }else{
-                        return shape;
-                    }
-                }
-
-            } else if (graphicSize instanceof Size) {
-                Size size = (Size) graphicSize;
-                if (!size.getSize().isLiteral()) {
-                    return buildShape(wellKnownName, size, scale, dpi, uom);
-                } else {
-                    Shape shape = shapes.get(size);
-                    if (shape == null) {
-                        shape = buildShape(wellKnownName, size, scale, dpi, uom);
-                        shapes.put(size, shape);
-                         return shape;
-                    }else{
-                        return shape;
-                    }
-                }
-            }
+    public Shape getShape(String shapeName, GraphicSize graphicSize, Double scale, Double dpi, Uom uom) throws ParameterException {
+        WellKnownName wellKnownName = WellKnownName.fromString(shapeName);
+        if (graphicSize instanceof ViewBox) {
+            return buildShape(wellKnownName, (ViewBox) graphicSize, scale, dpi, uom);
+        } else if (graphicSize instanceof Size) {
+            return buildShape(wellKnownName, (Size) graphicSize, scale, dpi, uom);
         }
         return null;
-
     }
 
     /**
@@ -59,6 +59,11 @@ public class WeatherMarkFactory extends AbstractTTFMarkFactory {
 
     @Override
     public String getShapeName() {
+        return getGlyphName(shapeName);
+    }
+
+    @Override
+    String getGlyphName(String shapeName) {
         if (humanShapeName.containsKey(shapeName.toLowerCase())) {
             return humanShapeName.get(shapeName.toLowerCase());
         }
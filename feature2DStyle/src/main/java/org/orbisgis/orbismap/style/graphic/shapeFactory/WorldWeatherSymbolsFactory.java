@@ -64,6 +64,11 @@ public class WorldWeatherSymbolsFactory extends AbstractTTFMarkFactory {
     
     @Override
     public String getShapeName() {
+        return getGlyphName(shapeName);
+    }
+
+    @Override
+    String getGlyphName(String shapeName) {
         if (humanShapeName.containsKey(shapeName.toLowerCase())) {
             return humanShapeName.get(shapeName.toLowerCase());
         }
@@ -42,7 +42,12 @@ package org.orbisgis.orbismap.style.parameter;
 public class Expression extends ParameterValue {
 
     private final String expression;
-    private Object value;
+    /**
+     * The value read from the current feature. It is bound to the thread that
+     * renders the feature so that a style shared by several layers can be
+     * evaluated concurrently.
+     */
+    private final transient ThreadLocal<Object> value = new ThreadLocal<>();
     private String reference = "";
 
     public Expression(String expression) {
@@ -52,7 +57,7 @@ public class Expression extends ParameterValue {
 
     @Override
     public Object getValue() {
-        return value;
+        return value.get();
     }
 
     public String getExpression() {
@@ -69,7 +74,7 @@ public class Expression extends ParameterValue {
 
     @Override
     public void setValue(Object value) {
-        this.value = value;
+        this.value.set(value);
         this.checkValue(value);
     }   
 
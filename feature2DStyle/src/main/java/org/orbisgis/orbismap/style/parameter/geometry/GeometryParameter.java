@@ -52,6 +52,7 @@ public class GeometryParameter extends StyleNode implements IParameterValue, Com
 
     String expression;
     private String identifier;
+    private transient boolean generated = false;
 
     public GeometryParameter() {
     }
@@ -73,7 +74,24 @@ public class GeometryParameter extends StyleNode implements IParameterValue, Com
     }
 
     public void setExpression(String expression) {
-        this.expression = expression.trim();
+        String trimmed = expression.trim();
+        if (!trimmed.equals(this.expression)) {
+            this.expression = trimmed;
+            generated = false;
+            update();
+        }
+    }
+
+    /**
+     * @return true if the parameter has been created when the style was
+     * compiled, with the first geometry column of the table
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    public void setGenerated(boolean generated) {
+        this.generated = generated;
     }
 
     @Override
@@ -256,6 +256,7 @@ public class AreaSymbolizer extends StyleNode implements  ITransformNode, IFillN
     @Override
     public void setLevel(int level) {
         this.level = level;
+        update();
     }
 
     @Override
@@ -253,6 +253,7 @@ public class LineSymbolizer extends StyleNode implements Comparable, IStrokeNode
     @Override
     public void setLevel(int level) {
         this.level = level;
+        update();
     }
 
     @Override
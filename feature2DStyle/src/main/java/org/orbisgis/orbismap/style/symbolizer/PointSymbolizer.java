@@ -214,6 +214,7 @@ public class PointSymbolizer extends StyleNode implements IGraphicNode, Comparab
     @Override
     public void setLevel(int level) {
         this.level = level;
+        update();
     }
 
     @Override
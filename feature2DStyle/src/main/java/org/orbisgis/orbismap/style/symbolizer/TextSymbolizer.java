@@ -230,6 +230,7 @@ public class TextSymbolizer extends StyleNode implements IFeatureSymbolizer {
     @Override
     public void setLevel(int level) {
         this.level = level;
+        update();
     }
 
     @Override
@@ -53,7 +53,7 @@ import org.orbisgis.orbismap.style.ITransform;
 public class Transform extends StyleNode implements IUom {
 
     private Uom uom;
-    private AffineTransform consolidated;
+    private transient AffineTransform consolidated;
     private ArrayList<ITransform> transformations;
 
     /**
@@ -0,0 +1,233 @@
+/**
+ * Feature2DStyle is part of the OrbisGIS platform
+ * 
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Feature2DStyle is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+ * Copyright (C) 2015-2020 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Feature2DStyle is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Feature2DStyle is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * Feature2DStyle. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.style.utils;
+
+import java.awt.Color;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.orbisgis.orbismap.style.IStyleNode;
+import org.orbisgis.orbismap.style.parameter.geometry.GeometryParameter;
+
+/**
+ * Compute a hash of a style tree that only depends on its content. The hash is
+ * the same from one JVM to another, so it can be used to name the images
+ * rendered with a style and stored on disk.
+ *
+ * The fields of the style nodes are read with reflection. The parent of a node
+ * and the transient fields are ignored, as well as the state set when the
+ * style is compiled : the references of the expressions, the geometry
+ * parameters created with the first geometry column of the table and the
+ * identifiers of the geometries. The geometry expressions are hashed in the
+ * form they have once compiled, so the hash is the same before and after the
+ * first rendering.
+ *
+ * The entries of the maps are hashed in an order that does not depend on the
+ * map. A value of a type that is not known throws an
+ * {@link IllegalArgumentException}, rather than being left out of the hash.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public final class StyleHashUtils {
+
+    private static final String ORBISGIS_PACKAGE = "org.orbisgis.";
+
+    /**
+     * Set constructor to private, as we're not supposed to instanciate any
+     * instance of this class.
+     */
+    private StyleHashUtils() {
+    }
+
+    /**
+     * Return the SHA-256 hash of the style node and its children as an
+     * hexadecimal string
+     *
+     * @param styleNode
+     * @return
+     */
+    public static String getHash(IStyleNode styleNode) {
+        MessageDigest digest = createDigest();
+        update(digest, styleNode, new IdentityHashMap<>());
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Add a value to the digest
+     *
+     * @param digest
+     * @param value
+     * @param visited the objects already added, to stop on cycles
+     */
+    private static void update(MessageDigest digest, Object value, Map<Object, Boolean> visited) {
+        if (value == null) {
+            digest.update((byte) 0);
+        } else if (value instanceof String || value instanceof Number
+                || value instanceof Boolean || value instanceof Character
+                || value instanceof Enum || value instanceof URI
+            || value instanceof Locale) {
+            updateString(digest, value.getClass().getSimpleName() + ":" + value);
+        } else if (value instanceof Class) {
+            updateString(digest, ((Class) value).getName());
+        } else if (value instanceof Color) {
+            updateString(digest, "Color:" + ((Color) value).getRGB());
+        } else if (value instanceof Collection) {
+            Collection collection = (Collection) value;
+            updateString(digest, "Collection:" + collection.size());
+            for (Object object : collection) {
+                update(digest, object, visited);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            //Each entry is hashed on its own, and the hashes are sorted
+            List<String> entries = new ArrayList<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                MessageDigest entryDigest = createDigest();
+                update(entryDigest, entry.getKey(), visited);
+                update(entryDigest, entry.getValue(), visited);
+                entries.add(toHex(entryDigest.digest()));
+            }
+            Collections.sort(entries);
+            updateString(digest, "Map:" + map.size());
+            for (String entry : entries) {
+                updateString(digest, entry);
+            }
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            updateString(digest, "Array:" + value.getClass().getComponentType().getName() + ":" + length);
+            for (int i = 0; i < length; i++) {
+                update(digest, Array.get(value, i), visited);
+            }
+        } else if (value instanceof GeometryParameter) {
+            GeometryParameter geometryParameter = (GeometryParameter) value;
+            if (geometryParameter.isGenerated()) {
+                //Not set in the style, like a null parameter
+                digest.update((byte) 0);
+            } else {
+                updateString(digest, "GeometryParameter:" + formatGeometryExpression(geometryParameter.getExpression()));
+            }
+        } else if (value.getClass().getName().startsWith(ORBISGIS_PACKAGE)) {
+            if (visited.put(value, Boolean.TRUE) != null) {
+                digest.update((byte) 1);
+                return;
+            }
+            updateString(digest, value.getClass().getName());
+            for (Class clazz = value.getClass(); clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (isIgnored(field)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    updateString(digest, field.getName());
+                    try {
+                        update(digest, field.get(value), visited);
+                    } catch (IllegalAccessException ex) {
+                        throw new IllegalStateException("Cannot read the field " + field.getName(), ex);
+                    }
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot hash a value of type " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * @param field
+     * @return true if the field is not part of the content of the style
+     */
+    private static boolean isIgnored(Field field) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+            return true;
+        }
+        String name = field.getName();
+        return name.equals("parent") || name.equals("reference") || name.equals("revision");
+    }
+
+    /**
+     * Format a geometry expression as the compilation of the style does
+     *
+     * @param expression
+     * @return
+     */
+    private static String formatGeometryExpression(String expression) {
+        if (expression == null) {
+            return "";
+        }
+        try {
+            return CCJSqlParserUtil.parseExpression(expression, false).toString();
+        } catch (JSQLParserException ex) {
+            return expression.trim();
+        }
+    }
+
+    private static void updateString(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+}
@@ -57,6 +57,7 @@ public class GeometryParameterVisitor {
     private HashMap<String, String> res = new HashMap<String, String>();
     private final List<IFeatureSymbolizer> feature2DSymbolizers;
     final Set<String> geometryColumnsValid = new HashSet<String>();
+    private final HashMap<IFeatureSymbolizer, Set<String>> symbolizerGeometryColumns = new HashMap<IFeatureSymbolizer, Set<String>>();
     private int count=0;
     private final List<String> geometryColumns;
     
@@ -74,6 +75,8 @@ public class GeometryParameterVisitor {
             res = new HashMap<>();
             for (IFeatureSymbolizer feature2DSymbolizer : feature2DSymbolizers) {
                 GeometryParameter gp = feature2DSymbolizer.getGeometryParameter();
+                Set<String> symbolizerColumns = new HashSet<String>();
+                symbolizerGeometryColumns.put(feature2DSymbolizer, symbolizerColumns);
                 String formatedExp;
                 if(gp!=null){
                 Expression expParsed = CCJSqlParserUtil.parseExpression(gp.getExpression(), false);
@@ -83,6 +86,7 @@ public class GeometryParameterVisitor {
                         super.visit(column);
                         if (geometryColumns.contains(column.getColumnName().toUpperCase())) {
                             geometryColumnsValid.add(column.getColumnName().toUpperCase());
+                            symbolizerColumns.add(column.getColumnName().toUpperCase());
                         }
                     }
                 });
@@ -90,8 +94,10 @@ public class GeometryParameterVisitor {
                 }
                 else{
                     gp =  new GeometryParameter(geometryColumns.get(0));
+                    gp.setGenerated(true);
                     formatedExp = gp.getExpression();
                     geometryColumnsValid.add(geometryColumns.get(0));
+                    symbolizerColumns.add(geometryColumns.get(0));
                     feature2DSymbolizer.setGeometryParameter(gp);
                 }
                 String identifier = "geom_" + count++;
@@ -126,4 +132,15 @@ public class GeometryParameterVisitor {
         return geometryColumnsValid;
     }
 
+    /**
+     * The geometry columns used by one symbolizer
+     *
+     * @param symbolizer
+     * @return
+     */
+    public Set<String> getGeometryColumns(IFeatureSymbolizer symbolizer) {
+        Set<String> columns = symbolizerGeometryColumns.get(symbolizer);
+        return columns == null ? new HashSet<String>() : columns;
+    }
+
 }
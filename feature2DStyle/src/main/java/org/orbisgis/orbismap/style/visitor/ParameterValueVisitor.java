@@ -34,6 +34,7 @@
  */
 package org.orbisgis.orbismap.style.visitor;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -59,6 +60,8 @@ public class ParameterValueVisitor implements IStyleNodeVisitor {
 
     private HashMap<String, String> expression_parameters = new HashMap<String, String>();
 
+    private ArrayList<org.orbisgis.orbismap.style.parameter.Expression> expressions = new ArrayList<org.orbisgis.orbismap.style.parameter.Expression>();
+
     private int count = 0;
 
     /**
@@ -101,6 +104,7 @@ public class ParameterValueVisitor implements IStyleNodeVisitor {
                     exp.setReference(identifierKey);
                     expressionsProperties.put(identifierKey, exp);
                 }
+                expressions.add(exp);
             }
         }
         children.forEach((c) -> {
@@ -125,4 +129,14 @@ public class ParameterValueVisitor implements IStyleNodeVisitor {
     public HashMap<String, org.orbisgis.orbismap.style.parameter.Expression> getExpressionsProperties() {
         return expressionsProperties;
     }
+
+    /**
+     * All the visited expressions. Several expressions can share the same
+     * identifier.
+     *
+     * @return
+     */
+    public List<org.orbisgis.orbismap.style.parameter.Expression> getExpressions() {
+        return expressions;
+    }
 }
@@ -0,0 +1,110 @@
+/**
+ * Feature2DStyle is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Feature2DStyle is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Feature2DStyle is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * Feature2DStyle is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Feature2DStyle. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.style.utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import org.junit.jupiter.api.Test;
+import org.orbisgis.orbismap.style.IStyleNode;
+import org.orbisgis.orbismap.style.StyleNode;
+import org.orbisgis.orbismap.style.common.Description;
+import org.orbisgis.orbismap.style.graphic.OnlineResource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class StyleHashUtilsTest {
+
+    @Test
+    public void testUri() throws Exception {
+        String hash = StyleHashUtils.getHash(new OnlineResource("http://orbisgis.org/marker.png"));
+        assertEquals(hash, StyleHashUtils.getHash(new OnlineResource("http://orbisgis.org/marker.png")));
+        assertNotEquals(hash, StyleHashUtils.getHash(new OnlineResource("http://orbisgis.org/flag.png")));
+    }
+
+    @Test
+    public void testMap() throws Exception {
+        Description description = new Description();
+        description.addTitle(new Locale("en"), "Hello");
+        description.addTitle(new Locale("fr"), "Bonjour");
+        //The order of the entries doesn't change the hash
+        Description other = new Description();
+        other.addTitle(new Locale("fr"), "Bonjour");
+        other.addTitle(new Locale("en"), "Hello");
+        assertEquals(StyleHashUtils.getHash(description), StyleHashUtils.getHash(other));
+        other.addTitle(new Locale("fr"), "Salut");
+        assertNotEquals(StyleHashUtils.getHash(description), StyleHashUtils.getHash(other));
+    }
+
+    @Test
+    public void testArray() throws Exception {
+        assertEquals(StyleHashUtils.getHash(new ArrayNode(1, 2)), StyleHashUtils.getHash(new ArrayNode(1, 2)));
+        assertNotEquals(StyleHashUtils.getHash(new ArrayNode(1, 2)), StyleHashUtils.getHash(new ArrayNode(2, 1)));
+    }
+
+    @Test
+    public void testUnknownType() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> StyleHashUtils.getHash(new UnknownNode()));
+    }
+
+    private static class ArrayNode extends StyleNode {
+
+        private final double[] values;
+
+        ArrayNode(double... values) {
+            this.values = values;
+        }
+
+        @Override
+        public List<IStyleNode> getChildren() {
+            return Collections.emptyList();
+        }
+    }
+
+    private static class UnknownNode extends StyleNode {
+
+        private final Object value = new Object();
+
+        @Override
+        public List<IStyleNode> getChildren() {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -35,11 +35,17 @@
 package org.orbisgis.orbismap.map.layerModel;
 
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import org.locationtech.jts.geom.Coordinate;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.locationtech.jts.geom.Envelope;
 import org.orbisgis.orbismap.map.api.ILayer;
 import org.orbisgis.orbismap.map.api.ILayerAction;
@@ -55,6 +61,12 @@ import org.orbisgis.orbismap.map.api.LayerException;
 public class LayerCollection extends AbstractLayer {
 
     private List<ILayer> layerCollection;
+    private int parallelism = 1;
+    private ExecutorService executor;
+    /**
+     * True on the threads that draw a layer of a collection
+     */
+    private static final ThreadLocal<Boolean> DRAWING_LAYER = new ThreadLocal<>();
 
     public LayerCollection(String layerName) {
         super(layerName);
@@ -89,14 +101,174 @@ public class LayerCollection extends AbstractLayer {
         }
     }
 
+    /**
+     * Number of child layers rendered at the same time. 1 (the default) draws
+     * the layers one after the other in the same Graphics2D.
+     *
+     * @return the number of threads used to draw the child layers
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of child layers rendered at the same time. When greater
+     * than 1, each visible child layer is drawn into its own offscreen image
+     * on the {@link #setExecutor(ExecutorService) executor} and the images are
+     * composited back in the z-order of the collection. No more than
+     * parallelism layers of the collection are submitted at the same time.
+     *
+     * @param parallelism the number of layers, must be greater than 0
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than 0");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the executor used to draw the child layers in parallel
+     */
+    public ExecutorService getExecutor() {
+        return executor == null ? getDefaultExecutor() : executor;
+    }
+
+    /**
+     * Set the executor used to draw the child layers in parallel. The
+     * executor is not shut down by the collection. By default the layers are
+     * drawn on a pool of one thread per processor shared by the collections.
+     *
+     * @param executor the executor, null to use the shared pool
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the pool shared by default by the collections, one thread per
+     * processor
+     */
+    static ExecutorService getDefaultExecutor() {
+        return DefaultExecutor.EXECUTOR;
+    }
+
+    /**
+     * Create the default pool the first time it is used
+     */
+    private static final class DefaultExecutor {
+
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "orbismap-layer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     @Override
     public void draw(Graphics2D g2, MapTransform mt, IProgressMonitor pm) throws LayerException {
         List<ILayer> layers = getLayerCollection();
+        //A collection drawn by a layer thread is drawn serially, so the nested
+        //collections never wait for the threads of the pool they are running on
+        if (parallelism > 1 && DRAWING_LAYER.get() == null) {
+            List<ILayer> visibleLayers = new ArrayList<>();
+            for (ILayer layer : layers) {
+                if (layer.isVisible()) {
+                    visibleLayers.add(layer);
+                }
+            }
+            if (visibleLayers.size() > 1) {
+                drawParallel(visibleLayers, g2, mt, pm);
+                return;
+            }
+        }
+        IProgressMonitor layersPm = pm.startTask("Draw layers", layers.size());
         for (ILayer layer : layers) {
             layer.draw(g2, mt, pm);
+            layersPm.endTask();
+        }
+    }
+
+    /**
+     * Draw each layer in its own image on the executor, with at most
+     * parallelism layers submitted at the same time. The images are
+     * composited in the order of the list, as soon as the previous ones have
+     * been drawn. The task of a layer ends when its image has been composited.
+     *
+     * @param layers the visible layers to draw
+     * @param g2 the graphics the layers have to be drawn on
+     * @param mt the map transform
+     * @param pm the progress monitor
+     * @throws LayerException
+     */
+    private void drawParallel(List<ILayer> layers, Graphics2D g2, MapTransform mt, IProgressMonitor pm) throws LayerException {
+        IProgressMonitor layersPm = pm.startTask("Draw layers", layers.size());
+        ExecutorService layersExecutor = getExecutor();
+        List<Future<BufferedImage>> images = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.min(parallelism, layers.size()); i++) {
+                images.add(submit(layersExecutor, layers.get(i), mt, pm));
+            }
+            for (int i = 0; i < layers.size(); i++) {
+                //When the drawing is cancelled, keep what has been drawn
+                BufferedImage layerImage = images.get(i).get();
+                if (i + parallelism < layers.size()) {
+                    images.add(submit(layersExecutor, layers.get(i + parallelism), mt, pm));
+                }
+                if (layerImage != null) {
+                    g2.drawImage(layerImage, 0, 0, null);
+                    layersPm.endTask();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LayerException("The drawing of the layers has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof LayerException) {
+                throw (LayerException) ex.getCause();
+            }
+            throw new LayerException(ex.getCause());
+        } finally {
+            for (Future<BufferedImage> image : images) {
+                image.cancel(true);
+            }
         }
     }
 
+    /**
+     * Submit the drawing of a layer in its own image
+     *
+     * @param executor the executor of the layers
+     * @param layer the layer to draw
+     * @param mt the map transform
+     * @param pm the progress monitor
+     * @return the image of the layer, null if the drawing has been cancelled
+     */
+    private static Future<BufferedImage> submit(ExecutorService executor, ILayer layer, MapTransform mt, IProgressMonitor pm) {
+        return executor.submit(() -> {
+            if (pm.isCancelled()) {
+                return null;
+            }
+            BufferedImage layerImage = new BufferedImage(mt.getWidth(), mt.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D layerG2 = layerImage.createGraphics();
+            layerG2.addRenderingHints(mt.getRenderingHints());
+            DRAWING_LAYER.set(Boolean.TRUE);
+            try {
+                layer.draw(layerG2, mt.copy(), pm);
+            } finally {
+                DRAWING_LAYER.remove();
+                layerG2.dispose();
+            }
+            return layerImage;
+        });
+    }
+
     @Override
     public void add(ILayer layer) {
         insert(layer, layerCollection.size());
@@ -128,9 +300,9 @@ public class LayerCollection extends AbstractLayer {
         @Override
         public void action(ILayer layer) {
             if (null == globalEnvelope) {
-                globalEnvelope =  (Envelope) layer.getEnvelope();
+                globalEnvelope = new Envelope((Envelope) layer.getEnvelope());
             } else {
-                globalEnvelope.expandToInclude((Coordinate) layer.getEnvelope());
+                globalEnvelope.expandToInclude((Envelope) layer.getEnvelope());
             }
         }
 
@@ -53,6 +53,7 @@ import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import org.h2gis.functions.spatial.buffer.ST_OffSetCurve;
@@ -66,7 +67,8 @@ import org.slf4j.LoggerFactory;
 public class MapTransform implements PointTransformation, IMapTransform<MapEnvelope> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MapTransform.class);
-    private static RenderingHints screenHints;
+    private static final Map<RenderingHints.Key, Object> DEFAULT_HINTS;
+    private final RenderingHints screenHints;
     private boolean adjustExtent;
     private BufferedImage image = null;
     private Envelope adjustedExtent = null;
@@ -87,12 +89,13 @@ public class MapTransform implements PointTransformation, IMapTransform<MapEnvel
         hints.put(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
         hints.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         hints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        screenHints = new RenderingHints(hints);
+        DEFAULT_HINTS = Collections.unmodifiableMap(hints);
     }
     private double decimationDistance = 0d;
 
     public MapTransform() {
         adjustExtent = true;
+        screenHints = new RenderingHints(DEFAULT_HINTS);
         if (!GraphicsEnvironment.isHeadless()) {
             this.dpi = Toolkit.getDefaultToolkit().getScreenResolution();
         } else {
@@ -101,6 +104,70 @@ public class MapTransform implements PointTransformation, IMapTransform<MapEnvel
         }
     }
 
+    /**
+     * Creates a copy of the given MapTransform.
+     *
+     * @param source the MapTransform to copy
+     */
+    private MapTransform(MapTransform source) {
+        this.adjustExtent = source.adjustExtent;
+        this.screenHints = (RenderingHints) source.screenHints.clone();
+        this.dpi = source.dpi;
+        this.image = source.image;
+        this.extent = source.extent;
+        if (source.adjustedExtent != null) {
+            this.adjustedExtent = new Envelope(source.adjustedExtent);
+            this.adjustedExtentGeometry = GEOMETRY_FACTORY.toGeometry(adjustedExtent);
+        }
+        this.trans = new AffineTransform(source.trans);
+        this.transInv = source.transInv == null ? null : new AffineTransform(source.transInv);
+        this.decimationDistance = source.decimationDistance;
+        this.MAXPIXEL_DISPLAY = source.MAXPIXEL_DISPLAY;
+    }
+
+    /**
+     * Returns a copy of this MapTransform with the same image size, extent and
+     * affine transformation. The copy owns its own {@code ShapeWriter} so it
+     * can be used to render in another thread. The listeners are not copied.
+     *
+     * @return a new MapTransform
+     */
+    public MapTransform copy() {
+        return new MapTransform(this);
+    }
+
+    /**
+     * Returns a MapTransform that renders a pixel rectangle of this
+     * MapTransform in its own image. The pixel (i, j) of the returned
+     * MapTransform is the pixel (x + i, y + j) of this one, the scale, the dpi
+     * and the decimation are the same. The rectangle can go beyond the image
+     * of this MapTransform.
+     *
+     * @param x the left of the rectangle in pixels
+     * @param y the top of the rectangle in pixels
+     * @param width the width of the rectangle in pixels
+     * @param height the height of the rectangle in pixels
+     * @return a new MapTransform
+     */
+    public MapTransform getTileTransform(int x, int y, int width, int height) {
+        MapTransform tile = new MapTransform(this);
+        tile.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        AffineTransform tileTrans = AffineTransform.getTranslateInstance(-x, -y);
+        tileTrans.concatenate(trans);
+        tile.trans = tileTrans;
+        try {
+            tile.transInv = tileTrans.createInverse();
+        } catch (NoninvertibleTransformException ex) {
+            throw new RuntimeException(ex);
+        }
+        Point2D upperLeft = tile.transInv.transform(new Point2D.Double(0, 0), null);
+        Point2D lowerRight = tile.transInv.transform(new Point2D.Double(width, height), null);
+        tile.adjustedExtent = new Envelope(upperLeft.getX(), lowerRight.getX(), lowerRight.getY(), upperLeft.getY());
+        tile.adjustedExtentGeometry = GEOMETRY_FACTORY.toGeometry(tile.adjustedExtent);
+        tile.extent = new MapEnvelope(tile.adjustedExtent);
+        return tile;
+    }
+
     /**
      * When true, the rendered map will always respects the CRS aspect ratio
      * When false, the Map extent will be bound to the output extent and may
@@ -127,6 +194,8 @@ public class MapTransform implements PointTransformation, IMapTransform<MapEnvel
     }
 
     /**
+     * Add a rendering hint to this MapTransform. The hints are not shared with
+     * the other instances.
      *
      * @param renderingKey
      * @param renderingValue
@@ -305,10 +374,14 @@ public class MapTransform implements PointTransformation, IMapTransform<MapEnvel
     public void resizeImage(int width, int height) {
         int oldWidth = getWidth();
         int oldHeight = getHeight();
-        GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment().
-                getDefaultScreenDevice().getDefaultConfiguration();
-        image = configuration.createCompatibleImage(width, height,
-                BufferedImage.TYPE_INT_ARGB);
+        if (GraphicsEnvironment.isHeadless()) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        } else {
+            GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment().
+                    getDefaultScreenDevice().getDefaultConfiguration();
+            image = configuration.createCompatibleImage(width, height,
+                    BufferedImage.TYPE_INT_ARGB);
+        }
         calculateAffineTransform();
         listeners.forEach((listener) -> {
             listener.imageSizeChanged(oldWidth, oldHeight, this);
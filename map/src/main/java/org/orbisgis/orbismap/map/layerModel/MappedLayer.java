@@ -0,0 +1,197 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.layerModel;
+
+import java.awt.Graphics2D;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+import org.orbisgis.orbismap.map.api.LayerException;
+import org.orbisgis.orbismap.map.renderer.featureStyle.CompiledStyle;
+import org.orbisgis.orbismap.map.renderer.featureStyle.FeatureFileExporter;
+import org.orbisgis.orbismap.map.renderer.featureStyle.FeatureStoreIndex;
+import org.orbisgis.orbismap.map.renderer.featureStyle.FeatureStyleRenderer;
+import org.orbisgis.orbismap.map.renderer.featureStyle.RenderMetricsSink;
+import org.orbisgis.orbismap.map.renderer.featureStyle.store.MappedFeatureStore;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+
+/**
+ * Layer drawn from a file written by a {@link FeatureFileExporter}. The file
+ * is memory mapped, only the rows that intersect the extent of the map are
+ * read and their coordinates are not copied.
+ *
+ * The layer must be drawn with the style used to export the file.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class MappedLayer extends AbstractLayer implements Closeable {
+
+    private final MappedFeatureStore store;
+    private final FeatureStoreIndex index;
+    private Feature2DStyle style;
+    private boolean fusedScan = false;
+    private boolean pipelined = false;
+    private CompiledStyle compiledStyle;
+    private RenderMetricsSink metricsSink;
+    private MapEnvelope envelope;
+
+    public MappedLayer(File file, Feature2DStyle style) throws IOException {
+        this(file.getName(), file, style);
+    }
+
+    public MappedLayer(String name, File file, Feature2DStyle style) throws IOException {
+        super(name);
+        this.store = MappedFeatureStore.open(file);
+        this.index = new FeatureStoreIndex(store, store.getGeometryColumns(), store.getValueColumns());
+        this.style = style;
+    }
+
+    public Feature2DStyle getStyle() {
+        return style;
+    }
+
+    public void setStyle(Feature2DStyle style) {
+        this.style = style;
+    }
+
+    /**
+     * @return the rows of the file
+     */
+    public MappedFeatureStore getStore() {
+        return store;
+    }
+
+    public boolean isFusedScan() {
+        return fusedScan;
+    }
+
+    /**
+     * Read the rows once for all the rules of the style
+     *
+     * @param fusedScan
+     */
+    public void setFusedScan(boolean fusedScan) {
+        this.fusedScan = fusedScan;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Overlap the reading of the rows, the building of the shapes and the
+     * painting in several threads
+     *
+     * @param pipelined
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public RenderMetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    /**
+     * Set the sink that receives the measures of each drawing of the layer
+     *
+     * @param metricsSink the sink, null for none
+     */
+    public void setMetricsSink(RenderMetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    /**
+     * Return the render plan of the style. It is compiled again only when the
+     * style tree has been mutated.
+     *
+     * @return
+     * @throws Exception
+     * @throws IllegalStateException if the query of the style is not the one
+     * the file has been exported with
+     */
+    public synchronized CompiledStyle getCompiledStyle() throws Exception {
+        List<String> geometryColumns = store.getSourceGeometryColumns();
+        if (compiledStyle == null || !compiledStyle.isValid(style, geometryColumns)) {
+            CompiledStyle plan = CompiledStyle.compile(style, geometryColumns);
+            //The filters are read from positional columns, the whole query must match
+            if (!plan.getSelect().equals(store.getQuery())) {
+                throw new IllegalStateException("The style of the layer " + getName()
+                        + " is not the style the file has been exported with");
+            }
+            compiledStyle = plan;
+        }
+        return compiledStyle;
+    }
+
+    @Override
+    public void draw(Graphics2D g2, MapTransform mt, IProgressMonitor pm) throws LayerException {
+        if (isVisible() && style != null) {
+            try {
+                FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+                fsr.setFusedScan(fusedScan);
+                fsr.setPipelined(pipelined);
+                fsr.setCompiledStyle(getCompiledStyle());
+                fsr.setMetricsSink(metricsSink);
+                fsr.draw(getName(), store.getSourceGeometryColumns(), index, mt, g2, pm);
+            } catch (Exception ex) {
+                throw new LayerException(ex);
+            }
+        }
+    }
+
+    @Override
+    public MapEnvelope getEnvelope() {
+        MapEnvelope cachedEnvelope = envelope;
+        if (cachedEnvelope == null) {
+            cachedEnvelope = new MapEnvelope(store.getEnvelope());
+            envelope = cachedEnvelope;
+        }
+        return cachedEnvelope;
+    }
+
+    /**
+     * Close the file. The layer must not be drawn anymore.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+}
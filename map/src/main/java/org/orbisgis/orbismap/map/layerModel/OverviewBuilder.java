@@ -0,0 +1,196 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.layerModel;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Build the overview tables of a table : copies of the table with simplified
+ * geometries, one per scale denominator. The geometries are simplified at
+ * half a pixel of the scale, so they look the same as the original ones when
+ * the map is drawn at this scale. The features can also be merged by a set of
+ * columns.
+ *
+ * The coordinates must be in meters. The overview tables are registered on a
+ * {@link StyledLayer} with {@link StyledLayer#addOverview(double, org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable)}.
+ *
+ * Both H2GIS and PostGIS are supported, the database is detected from the
+ * connection.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class OverviewBuilder {
+
+    private static final double DEFAULT_DPI = 96.0;
+
+    private final Connection connection;
+    private final String tableName;
+    private final String geometryColumn;
+    private List<String> groupBy = Collections.emptyList();
+    private double dpi = DEFAULT_DPI;
+
+    /**
+     * @param connection the connection to the database of the table
+     * @param tableName the name of the table
+     * @param geometryColumn the geometry column to simplify
+     */
+    public OverviewBuilder(Connection connection, String tableName, String geometryColumn) {
+        this.connection = connection;
+        this.tableName = tableName;
+        this.geometryColumn = geometryColumn;
+    }
+
+    /**
+     * Merge the geometries of the features that have the same values for these
+     * columns. The other columns are not kept in the overviews.
+     *
+     * @param columns
+     */
+    public void setGroupBy(String... columns) {
+        this.groupBy = Arrays.asList(columns);
+    }
+
+    /**
+     * Set the resolution of the maps the overviews are built for, 96 by
+     * default
+     *
+     * @param dpi
+     */
+    public void setDpi(double dpi) {
+        this.dpi = dpi;
+    }
+
+    /**
+     * Return the name of the overview table for a scale denominator
+     *
+     * @param scaleDenominator
+     * @return
+     */
+    public String getOverviewName(double scaleDenominator) {
+        return tableName + "_OVERVIEW_" + Math.round(scaleDenominator);
+    }
+
+    /**
+     * Return the tolerance used to simplify the geometries for a scale
+     * denominator : half of the size of a pixel in meters
+     *
+     * @param scaleDenominator
+     * @return
+     */
+    public double getTolerance(double scaleDenominator) {
+        return scaleDenominator * 0.0254 / dpi / 2;
+    }
+
+    /**
+     * Create, or replace, the overview tables and their spatial index
+     *
+     * @param scaleDenominators
+     * @return the names of the overview tables, in the order of the scale
+     * denominators
+     * @throws SQLException
+     */
+    public List<String> build(double... scaleDenominators) throws SQLException {
+        boolean postGIS = connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres");
+        List<String> columns = getColumns();
+        List<String> names = new ArrayList<>();
+        try (Statement statement = connection.createStatement()) {
+            for (double scaleDenominator : scaleDenominators) {
+                String overviewName = getOverviewName(scaleDenominator);
+                statement.execute("DROP TABLE IF EXISTS " + overviewName);
+                statement.execute(getCreateQuery(overviewName, columns, getTolerance(scaleDenominator), postGIS));
+                if (postGIS) {
+                    statement.execute("CREATE INDEX ON " + overviewName + " USING GIST(" + geometryColumn + ")");
+                } else {
+                    statement.execute("CREATE SPATIAL INDEX ON " + overviewName + "(" + geometryColumn + ")");
+                }
+                names.add(overviewName);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return the columns of the table without the geometry column
+     * @throws SQLException
+     */
+    private List<String> getColumns() throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT * FROM " + tableName + " WHERE 1=0")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                String column = metaData.getColumnName(i);
+                if (!column.equalsIgnoreCase(geometryColumn)) {
+                    columns.add(column);
+                }
+            }
+        }
+        return columns;
+    }
+
+    private String getCreateQuery(String overviewName, List<String> columns, double tolerance, boolean postGIS) {
+        StringBuilder sb = new StringBuilder("CREATE TABLE ");
+        sb.append(overviewName).append(" AS SELECT ");
+        if (groupBy.isEmpty()) {
+            for (String column : columns) {
+                sb.append(column).append(", ");
+            }
+            sb.append("ST_SimplifyPreserveTopology(").append(geometryColumn).append(", ").append(tolerance)
+                    .append(") AS ").append(geometryColumn);
+            sb.append(" FROM ").append(tableName);
+            sb.append(" WHERE ").append(geometryColumn).append(" IS NOT NULL");
+        } else {
+            String groupColumns = groupBy.stream().collect(Collectors.joining(", "));
+            String union = postGIS ? "ST_Union(" + geometryColumn + ")" : "ST_Union(ST_Accum(" + geometryColumn + "))";
+            sb.append(groupColumns).append(", ");
+            sb.append("ST_SimplifyPreserveTopology(").append(union).append(", ").append(tolerance)
+                    .append(") AS ").append(geometryColumn);
+            sb.append(" FROM ").append(tableName);
+            sb.append(" WHERE ").append(geometryColumn).append(" IS NOT NULL");
+            sb.append(" GROUP BY ").append(groupColumns);
+        }
+        return sb.toString();
+    }
+}
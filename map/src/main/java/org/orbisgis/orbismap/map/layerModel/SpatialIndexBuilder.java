@@ -0,0 +1,200 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.layerModel;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Check and build the spatial index of the geometry column of a table. The
+ * spatial filter of the rule queries only avoids a full scan of the table when
+ * the geometry column has a spatial index.
+ *
+ * The tables linked to a file or to another database cannot always be
+ * indexed, they can be copied into a local table with a spatial index.
+ *
+ * Both H2GIS and PostGIS are supported, the database is detected from the
+ * connection.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class SpatialIndexBuilder {
+
+    private final Connection connection;
+    private final String schema;
+    private final String tableName;
+    private final String geometryColumn;
+
+    /**
+     * @param connection the connection to the database of the table
+     * @param tableName the name of the table, optionally prefixed by its
+     * schema
+     * @param geometryColumn the geometry column
+     */
+    public SpatialIndexBuilder(Connection connection, String tableName, String geometryColumn) {
+        this.connection = connection;
+        int dot = tableName.lastIndexOf('.');
+        this.schema = dot < 0 ? null : unquote(tableName.substring(0, dot));
+        this.tableName = unquote(tableName.substring(dot + 1));
+        this.geometryColumn = unquote(geometryColumn);
+    }
+
+    private static String unquote(String identifier) {
+        if (identifier.length() > 1 && identifier.startsWith("\"") && identifier.endsWith("\"")) {
+            return identifier.substring(1, identifier.length() - 1);
+        }
+        return identifier;
+    }
+
+    private String getQualifiedName() {
+        return schema == null ? tableName : schema + "." + tableName;
+    }
+
+    private boolean isPostGIS() throws SQLException {
+        return connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres");
+    }
+
+    /**
+     * @return true if the geometry column has a spatial index
+     * @throws SQLException
+     */
+    public boolean isSpatialIndexed() throws SQLException {
+        String query;
+        if (isPostGIS()) {
+            query = "SELECT 1 FROM pg_index i JOIN pg_class t ON t.oid = i.indrelid "
+                    + "JOIN pg_namespace n ON n.oid = t.relnamespace "
+                    + "JOIN pg_class c ON c.oid = i.indexrelid JOIN pg_am am ON am.oid = c.relam "
+                    + "JOIN pg_attribute a ON a.attrelid = t.oid AND a.attnum = ANY(i.indkey) "
+                    + "WHERE lower(t.relname) = lower(?) AND lower(a.attname) = lower(?) "
+                    + "AND am.amname IN ('gist', 'spgist', 'brin')"
+                    + (schema == null ? "" : " AND lower(n.nspname) = lower(?)");
+        } else {
+            query = "SELECT 1 FROM INFORMATION_SCHEMA.INDEXES "
+                    + "WHERE UPPER(TABLE_NAME) = UPPER(?) AND UPPER(COLUMN_NAME) = UPPER(?) "
+                    + "AND INDEX_TYPE_NAME = 'SPATIAL INDEX'"
+                    + (schema == null ? "" : " AND UPPER(TABLE_SCHEMA) = UPPER(?)");
+        }
+        return exists(query, true);
+    }
+
+    /**
+     * @return true if the table is linked to a file or to a table of another
+     * database
+     * @throws SQLException
+     */
+    public boolean isLinked() throws SQLException {
+        String query;
+        if (isPostGIS()) {
+            query = "SELECT 1 FROM information_schema.tables "
+                    + "WHERE lower(table_name) = lower(?) AND table_type = 'FOREIGN'"
+                    + (schema == null ? "" : " AND lower(table_schema) = lower(?)");
+        } else {
+            query = "SELECT 1 FROM INFORMATION_SCHEMA.TABLES "
+                    + "WHERE UPPER(TABLE_NAME) = UPPER(?) AND TABLE_TYPE IN ('TABLE LINK', 'EXTERNAL')"
+                    + (schema == null ? "" : " AND UPPER(TABLE_SCHEMA) = UPPER(?)");
+        }
+        return exists(query, false);
+    }
+
+    /**
+     * @param query a query whose parameters are the table name, the geometry
+     * column if withColumn is true, then the schema if there is one
+     * @param withColumn
+     * @return true if the query returns a row
+     * @throws SQLException
+     */
+    private boolean exists(String query, boolean withColumn) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            int index = 1;
+            ps.setString(index++, tableName);
+            if (withColumn) {
+                ps.setString(index++, geometryColumn);
+            }
+            if (schema != null) {
+                ps.setString(index, schema);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Create the spatial index of the geometry column
+     *
+     * @throws SQLException
+     */
+    public void createSpatialIndex() throws SQLException {
+        createSpatialIndex(getQualifiedName());
+    }
+
+    private void createSpatialIndex(String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (isPostGIS()) {
+                statement.execute("CREATE INDEX ON " + table + " USING GIST(" + geometryColumn + ")");
+            } else {
+                statement.execute("CREATE SPATIAL INDEX ON " + table + "(" + geometryColumn + ")");
+            }
+        }
+    }
+
+    /**
+     * @return the name of the local copy of the table
+     */
+    public String getLocalTableName() {
+        return tableName + "_LOCAL";
+    }
+
+    /**
+     * Create, or replace, a local copy of the table with a spatial index on the
+     * geometry column. The copy is created in the default schema.
+     *
+     * @return the name of the copy
+     * @throws SQLException
+     */
+    public String copyToLocalTable() throws SQLException {
+        String localName = getLocalTableName();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + localName);
+            statement.execute("CREATE TABLE " + localName + " AS SELECT * FROM " + getQualifiedName());
+        }
+        createSpatialIndex(localName);
+        return localName;
+    }
+}
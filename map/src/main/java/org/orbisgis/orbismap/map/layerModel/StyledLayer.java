@@ -35,11 +35,29 @@
 package org.orbisgis.orbismap.map.layerModel;
 
 import java.awt.Graphics2D;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import javax.sql.DataSource;
+import org.orbisgis.orbismap.map.renderer.featureStyle.CompiledStyle;
+import org.orbisgis.orbismap.map.renderer.featureStyle.CursorOptions;
+import org.orbisgis.orbismap.map.renderer.featureStyle.FeatureCache;
 import org.orbisgis.orbismap.map.renderer.featureStyle.FeatureStyleRenderer;
+import org.orbisgis.orbismap.map.renderer.featureStyle.RenderMetricsSink;
+import org.orbisgis.orbismap.map.renderer.featureStyle.TiledFeatureStyleRenderer;
 import org.orbisgis.orbismap.style.Feature2DStyle;
 import org.orbisgis.orbismap.map.api.IProgressMonitor;
 import org.orbisgis.orbismap.map.api.LayerException;
 import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -47,9 +65,26 @@ import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
  */
 public class StyledLayer extends AbstractLayer {
 
-    private ISpatialTable spatialTable;
+    private static final Logger LOGGER = LoggerFactory.getLogger(StyledLayer.class);
+
+    private volatile ISpatialTable spatialTable;
     private MapEnvelope envelope;
     private Feature2DStyle style;
+    private int tileColumns = 1;
+    private int tileRows = 1;
+    private boolean fusedScan = false;
+    private boolean pipelined = false;
+    private boolean serverSideGeneralization = false;
+    private boolean directRendering = true;
+    private int cancelCheckInterval = FeatureStyleRenderer.DEFAULT_CANCEL_CHECK_INTERVAL;
+    private final CursorOptions cursorOptions = new CursorOptions();
+    private final Map<String, CompiledStyle> compiledStyles = new HashMap<>();
+    private RenderMetricsSink metricsSink;
+    private FeatureCache featureCache;
+    private final TreeMap<Double, ISpatialTable> overviews = new TreeMap<>();
+    private SpatialIndexPolicy spatialIndexPolicy = SpatialIndexPolicy.WARN;
+    private Function<String, ISpatialTable> localTableLoader;
+    private volatile boolean spatialIndexChecked = false;
 
     public StyledLayer(String name, ISpatialTable spatialTable) {
         super(name);
@@ -64,6 +99,7 @@ public class StyledLayer extends AbstractLayer {
     public StyledLayer(ISpatialTable spatialTable, Feature2DStyle style) {
         super(spatialTable.getName());
         this.spatialTable = spatialTable;
+        this.style = style;
     }
 
     public Feature2DStyle getStyle() {
@@ -78,12 +114,377 @@ public class StyledLayer extends AbstractLayer {
         return spatialTable;
     }
 
+    /**
+     * Split the map into tiles drawn in parallel. One tile by default.
+     *
+     * @param columns number of tiles along the x axis
+     * @param rows number of tiles along the y axis
+     */
+    public void setTiles(int columns, int rows) {
+        if (columns < 1 || rows < 1) {
+            throw new IllegalArgumentException("The number of tiles must be greater than 0");
+        }
+        this.tileColumns = columns;
+        this.tileRows = rows;
+    }
+
+    public boolean isFusedScan() {
+        return fusedScan;
+    }
+
+    /**
+     * Read the table once for all the rules of the style
+     *
+     * @param fusedScan
+     */
+    public void setFusedScan(boolean fusedScan) {
+        this.fusedScan = fusedScan;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Overlap the reading of the rows, the building of the shapes and the
+     * painting in several threads
+     *
+     * @param pipelined
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isServerSideGeneralization() {
+        return serverSideGeneralization;
+    }
+
+    /**
+     * Clip the geometries with the extent of the map and simplify them at the
+     * pixel size in the query, so the database sends only the visible vertices
+     *
+     * @param serverSideGeneralization
+     */
+    public void setServerSideGeneralization(boolean serverSideGeneralization) {
+        this.serverSideGeneralization = serverSideGeneralization;
+    }
+
+    public boolean isDirectRendering() {
+        return directRendering;
+    }
+
+    /**
+     * Draw the rules that have a single symbol level straight on the map,
+     * without an intermediate image, so the rows appear in the intermediate
+     * frames of a map while the layer is drawn. True by default. It is only
+     * used when the layer is drawn in one tile : the tiles are always
+     * composited.
+     *
+     * @param directRendering
+     * @see FeatureStyleRenderer#setDirectRendering(boolean)
+     */
+    public void setDirectRendering(boolean directRendering) {
+        this.directRendering = directRendering;
+    }
+
+    public int getCancelCheckInterval() {
+        return cancelCheckInterval;
+    }
+
+    /**
+     * Set the number of rows read between two checks of the cancellation,
+     * which is also when the intermediate frames of a map are published
+     *
+     * @param cancelCheckInterval
+     * @see FeatureStyleRenderer#setCancelCheckInterval(int)
+     */
+    public void setCancelCheckInterval(int cancelCheckInterval) {
+        if (cancelCheckInterval < 1) {
+            throw new IllegalArgumentException("The cancel check interval must be greater than 0");
+        }
+        this.cancelCheckInterval = cancelCheckInterval;
+    }
+
+    /**
+     * Add an overview of the table, drawn instead of the table when the scale
+     * denominator of the map is greater than or equal to the scale denominator
+     * of the overview and lower than the one of the next overview.
+     *
+     * @param scaleDenominator
+     * @param overview a copy of the table with simplified geometries
+     * @see OverviewBuilder
+     */
+    public synchronized void addOverview(double scaleDenominator, ISpatialTable overview) {
+        overviews.put(scaleDenominator, overview);
+    }
+
+    /**
+     * Remove all the overviews of the table
+     */
+    public synchronized void clearOverviews() {
+        overviews.clear();
+        compiledStyles.clear();
+    }
+
+    /**
+     * @return a copy of the overviews of the table by scale denominator
+     */
+    public synchronized NavigableMap<Double, ISpatialTable> getOverviews() {
+        return new TreeMap<>(overviews);
+    }
+
+    public RenderMetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    /**
+     * Set the sink that receives the measures of each drawing of the layer :
+     * queries, rows and time spent in each rule and symbolizer.
+     *
+     * @param metricsSink the sink, null for none
+     */
+    public void setMetricsSink(RenderMetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    public FeatureCache getFeatureCache() {
+        return featureCache;
+    }
+
+    /**
+     * Keep the rows of the table in memory, indexed by their envelope, so the
+     * next drawings don't query the database. The cache is only used with
+     * the style of the layer.
+     *
+     * @param featureCache the cache, null to read the rows at each drawing
+     * @see FeatureCache
+     */
+    public void setFeatureCache(FeatureCache featureCache) {
+        this.featureCache = featureCache;
+    }
+
+    /**
+     * The options used to stream the rows of the table with JDBC : data
+     * source, fetch size, cursor type and autocommit.
+     *
+     * @return
+     */
+    public CursorOptions getCursorOptions() {
+        return cursorOptions;
+    }
+
+    public SpatialIndexPolicy getSpatialIndexPolicy() {
+        return spatialIndexPolicy;
+    }
+
+    /**
+     * Set what is done when the geometry column of the table has no spatial
+     * index, {@link SpatialIndexPolicy#WARN} by default. The index is checked
+     * the first time the layer is drawn, with a connection of the data source
+     * of the cursor options. Without data source the connection of the table
+     * is used.
+     *
+     * @param spatialIndexPolicy
+     */
+    public synchronized void setSpatialIndexPolicy(SpatialIndexPolicy spatialIndexPolicy) {
+        this.spatialIndexPolicy = spatialIndexPolicy;
+        this.spatialIndexChecked = false;
+    }
+
+    /**
+     * Set the function that opens the local copy of a linked table, e.g.
+     * {@code h2GIS::getSpatialTable}. It is required by
+     * {@link SpatialIndexPolicy#COPY_LINKED}, without it the linked tables are
+     * indexed in place.
+     *
+     * @param localTableLoader returns the table for a table name
+     */
+    public synchronized void setLocalTableLoader(Function<String, ISpatialTable> localTableLoader) {
+        this.localTableLoader = localTableLoader;
+    }
+
+    /**
+     * Check that the geometry columns of the table have a spatial index and
+     * apply the spatial index policy to the columns without index.
+     *
+     * @param connection a connection to the database of the table
+     * @return true if all the geometry columns of the drawn table have a
+     * spatial index after the check
+     * @throws SQLException
+     */
+    public synchronized boolean checkSpatialIndex(Connection connection) throws SQLException {
+        spatialIndexChecked = true;
+        boolean indexed = true;
+        ISpatialTable table = spatialTable;
+        for (String geometryColumn : table.getGeometricColumns()) {
+            SpatialIndexBuilder builder = new SpatialIndexBuilder(connection, table.getName(), geometryColumn);
+            if (builder.isSpatialIndexed()) {
+                continue;
+            }
+            switch (spatialIndexPolicy) {
+                case COPY_LINKED:
+                    if (localTableLoader != null && builder.isLinked()) {
+                        String localName = builder.copyToLocalTable();
+                        LOGGER.info("The linked table {} is copied into the table {} with a spatial index", table.getName(), localName);
+                        spatialTable = localTableLoader.apply(localName);
+                        //Index the other geometry columns of the copy
+                        return checkSpatialIndex(connection);
+                    }
+                    //Otherwise the index is created in place
+                case CREATE:
+                    try {
+                        builder.createSpatialIndex();
+                        LOGGER.info("Spatial index created on the column {} of the table {}", geometryColumn, table.getName());
+                    } catch (SQLException ex) {
+                        LOGGER.warn("Cannot create the spatial index on the column {} of the table {} : {}",
+                                geometryColumn, table.getName(), ex.getMessage());
+                        indexed = false;
+                    }
+                    break;
+                case WARN:
+                    LOGGER.warn("The column {} of the table {} has no spatial index, the whole table is read each time the layer {} is drawn",
+                            geometryColumn, table.getName(), getName());
+                    indexed = false;
+                    break;
+                default:
+                    indexed = false;
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * Check the spatial index the first time the layer is drawn
+     */
+    private void checkSpatialIndexOnce() {
+        if (spatialIndexChecked) {
+            return;
+        }
+        synchronized (this) {
+            if (spatialIndexChecked || spatialIndexPolicy == SpatialIndexPolicy.IGNORE) {
+                spatialIndexChecked = true;
+                return;
+            }
+            DataSource dataSource = cursorOptions.getDataSource();
+            try {
+                if (dataSource != null) {
+                    try (Connection connection = dataSource.getConnection()) {
+                        checkSpatialIndex(connection);
+                    }
+                    return;
+                }
+                //The connection of the table is shared, it is not closed
+                Connection connection = getTableConnection();
+                if (connection == null) {
+                    spatialIndexChecked = true;
+                    LOGGER.warn("Cannot check the spatial index of the table {}, the layer has no data source", spatialTable.getName());
+                    return;
+                }
+                checkSpatialIndex(connection);
+            } catch (SQLException ex) {
+                spatialIndexChecked = true;
+                LOGGER.warn("Cannot check the spatial index of the table " + spatialTable.getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * Return the connection the table has been opened with
+     *
+     * @return the connection or null if the table is not a JDBC result set
+     * @throws SQLException
+     */
+    private Connection getTableConnection() throws SQLException {
+        if (spatialTable instanceof ResultSet) {
+            Statement statement = ((ResultSet) spatialTable).getStatement();
+            if (statement != null) {
+                return statement.getConnection();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the render plan of the style. It is compiled again only when the
+     * style tree has been mutated.
+     *
+     * @return
+     * @throws Exception
+     */
+    public synchronized CompiledStyle getCompiledStyle() throws Exception {
+        return getCompiledStyle(spatialTable);
+    }
+
+    /**
+     * Return the render plan of the style for the table or one of its
+     * overviews. A plan is kept for each table, as the overviews can have
+     * other geometry columns than the table.
+     *
+     * @param table the table or an overview
+     * @return
+     * @throws Exception
+     */
+    public synchronized CompiledStyle getCompiledStyle(ISpatialTable table) throws Exception {
+        List<String> geometryColumns = table.getGeometricColumns();
+        CompiledStyle plan = compiledStyles.get(table.getName());
+        if (plan == null || !plan.isValid(style, geometryColumns)) {
+            plan = CompiledStyle.compile(style, geometryColumns);
+            compiledStyles.put(table.getName(), plan);
+        }
+        return plan;
+    }
+
     @Override
     public void draw(Graphics2D g2, MapTransform mt, IProgressMonitor pm) throws LayerException {
+        draw(g2, mt, style, pm);
+    }
+
+    /**
+     * Draw the layer with another style than the one of the layer, using the
+     * same rendering options.
+     *
+     * @param g2
+     * @param mt
+     * @param style the style used to draw the table
+     * @param pm
+     * @throws LayerException
+     */
+    public void draw(Graphics2D g2, MapTransform mt, Feature2DStyle style, IProgressMonitor pm) throws LayerException {
         if (isVisible() && spatialTable != null) {
-            FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+            checkSpatialIndexOnce();
+            ISpatialTable spatialTable = this.spatialTable;
             try {
-                fsr.draw(spatialTable, mt, g2, pm);
+                NavigableMap<Double, ISpatialTable> layerOverviews = getOverviews();
+                CompiledStyle plan = style == this.style
+                        ? getCompiledStyle(FeatureStyleRenderer.getSpatialTable(layerOverviews, spatialTable, mt)) : null;
+                FeatureCache layerCache = style == this.style ? featureCache : null;
+                if (tileColumns * tileRows > 1) {
+                    TiledFeatureStyleRenderer tfsr = new TiledFeatureStyleRenderer(style);
+                    tfsr.setTiles(tileColumns, tileRows);
+                    tfsr.setFusedScan(fusedScan);
+                    tfsr.setPipelined(pipelined);
+                    tfsr.setServerSideGeneralization(serverSideGeneralization);
+                    tfsr.setCancelCheckInterval(cancelCheckInterval);
+                    tfsr.setOverviews(layerOverviews);
+                    tfsr.setCursorOptions(cursorOptions);
+                    tfsr.setCompiledStyle(plan);
+                    tfsr.setMetricsSink(metricsSink);
+                    tfsr.setFeatureCache(layerCache);
+                    tfsr.draw(spatialTable, mt, g2, pm);
+                } else {
+                    FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+                    fsr.setFusedScan(fusedScan);
+                    fsr.setPipelined(pipelined);
+                    fsr.setServerSideGeneralization(serverSideGeneralization);
+                    fsr.setDirectRendering(directRendering);
+                    fsr.setCancelCheckInterval(cancelCheckInterval);
+                    fsr.setOverviews(layerOverviews);
+                    fsr.setCursorOptions(cursorOptions);
+                    fsr.setCompiledStyle(plan);
+                    fsr.setMetricsSink(metricsSink);
+                    fsr.setFeatureCache(layerCache);
+                    fsr.draw(spatialTable, mt, g2, pm);
+                }
             } catch (Exception ex) {
                 throw new LayerException(ex);
             }
@@ -37,9 +37,12 @@ package org.orbisgis.orbismap.map.renderer;
 import java.awt.Color;
 import org.orbisgis.orbismap.map.api.IRenderer;
 import java.awt.Graphics2D;
+import java.awt.Point;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import javax.imageio.ImageIO;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
@@ -50,9 +53,15 @@ import org.locationtech.jts.geom.Envelope;
 import org.orbisgis.orbismap.map.layerModel.MapContext;
 import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
 import org.orbisgis.orbismap.map.api.ILayer;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
 import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.layerModel.StyledLayer;
+import org.orbisgis.orbismap.map.utils.progress.DeadlineProgressMonitor;
+import org.orbisgis.orbismap.map.utils.progress.FrameProgressMonitor;
 import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
 import org.orbisgis.orbismap.map.api.LayerException;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+import org.orbisgis.orbismap.style.utils.StyleHashUtils;
 
 /**
  *
@@ -65,6 +74,26 @@ public class MapView implements IRenderer{
     private MapContext mc;
     private MapTransform mt;
     private BufferedImage image;
+    private boolean incrementalPan = false;
+    private BufferedImage lastImage;
+    private Envelope lastExtent;
+    private String lastLayersSignature;
+    private long renderTimeout = 0;
+    private volatile DeadlineProgressMonitor currentMonitor;
+    private boolean partial = false;
+    private final List<RenderingListener> renderingListeners = new ArrayList<>();
+    private long frameInterval = DEFAULT_FRAME_INTERVAL;
+
+    /**
+     * Default time between two intermediate frames, in milliseconds
+     */
+    public static final long DEFAULT_FRAME_INTERVAL = 200;
+
+    /**
+     * Number of pixels drawn around an exposed strip, so the symbols of the
+     * features that are just outside the strip are drawn in it
+     */
+    static final int STRIP_OVERLAP = 16;
 
     public MapView() {
         this(800, 800);
@@ -94,6 +123,103 @@ public class MapView implements IRenderer{
         mt.resizeImage(width, height);
     }
 
+    public boolean isIncrementalPan() {
+        return incrementalPan;
+    }
+
+    /**
+     * When the extent has only been moved since the previous draw, shift the
+     * previous image and render only the exposed strips. The whole map is
+     * drawn again when the scale, the size of the image, the layers or their
+     * styles have changed.
+     *
+     * @param incrementalPan
+     */
+    public void setIncrementalPan(boolean incrementalPan) {
+        this.incrementalPan = incrementalPan;
+        if (!incrementalPan) {
+            lastImage = null;
+        }
+    }
+
+    public long getRenderTimeout() {
+        return renderTimeout;
+    }
+
+    /**
+     * Set the time allowed to draw the map. When it is reached, the queries
+     * are cancelled and the image keeps what has been drawn, see
+     * {@link #isPartial()}.
+     *
+     * @param renderTimeout the timeout in milliseconds, 0 for no timeout
+     */
+    public void setRenderTimeout(long renderTimeout) {
+        this.renderTimeout = renderTimeout;
+    }
+
+    /**
+     * @return true if the last drawing has been cancelled or has reached the
+     * timeout before the end, so the image is not complete
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Add a listener that receives the intermediate images while the map is
+     * drawn, and the final one
+     *
+     * @param listener
+     */
+    public void addRenderingListener(RenderingListener listener) {
+        renderingListeners.add(listener);
+    }
+
+    public void removeRenderingListener(RenderingListener listener) {
+        renderingListeners.remove(listener);
+    }
+
+    public long getFrameInterval() {
+        return frameInterval;
+    }
+
+    /**
+     * Set the time between two intermediate frames. A frame is also published
+     * as soon as a layer has been drawn, except the last one. The time is
+     * checked with the cancellation, every
+     * {@link org.orbisgis.orbismap.map.layerModel.StyledLayer#setCancelCheckInterval(int) N rows}
+     * of a layer.
+     *
+     * @param frameInterval the interval in milliseconds
+     */
+    public void setFrameInterval(long frameInterval) {
+        this.frameInterval = frameInterval;
+    }
+
+    /**
+     * Send a copy of the image to the listeners
+     *
+     * @param finished true for the last frame
+     */
+    private void fireFrameRendered(boolean finished) {
+        BufferedImage frame = new BufferedImage(image.getColorModel(), image.copyData(null),
+                image.isAlphaPremultiplied(), null);
+        for (RenderingListener listener : new ArrayList<>(renderingListeners)) {
+            listener.frameRendered(frame, finished);
+        }
+    }
+
+    /**
+     * Cancel the running drawing, for example when the map has been moved
+     * again. It can be called from another thread.
+     */
+    public void cancel() {
+        DeadlineProgressMonitor monitor = currentMonitor;
+        if (monitor != null) {
+            monitor.setCancelled(true);
+        }
+    }
+
     /**
      * Draw the map
      * @throws org.orbisgis.orbismap.map.api.LayerException
@@ -105,11 +231,219 @@ public class MapView implements IRenderer{
             mt.resizeImage(width, height);
         }
         image = mt.getImage();
+        IProgressMonitor pm = new NullProgressMonitor();
+        if (!renderingListeners.isEmpty()) {
+            pm = new FrameProgressMonitor(pm, frameInterval, () -> fireFrameRendered(false));
+        }
+        DeadlineProgressMonitor monitor = renderTimeout > 0
+                ? new DeadlineProgressMonitor(pm, renderTimeout)
+                : new DeadlineProgressMonitor(pm);
+        currentMonitor = monitor;
+        try {
+            if (!incrementalPan) {
+                drawAll(monitor);
+            } else {
+                String layersSignature = getLayersSignature(mc.getLayerModel());
+                Point shift = getPanShift(layersSignature);
+                if (shift == null) {
+                    drawAll(monitor);
+                } else {
+                    drawPan(shift.x, shift.y, monitor);
+                }
+                lastImage = image;
+                lastExtent = new Envelope(mt.getAdjustedExtent());
+                lastLayersSignature = layersSignature;
+            }
+        } finally {
+            currentMonitor = null;
+            partial = monitor.isStopped();
+            if (partial) {
+                //A partial image cannot be shifted
+                lastImage = null;
+            }
+        }
+        if (!renderingListeners.isEmpty()) {
+            fireFrameRendered(true);
+        }
+    }
+
+    /**
+     * @return a snapshot of the extent and of the size of the map
+     */
+    public Viewport getViewport() {
+        return Viewport.of(mt);
+    }
+
+    /**
+     * Draw the layers of the map in a new image. Unlike {@link #draw()}, this
+     * method does not modify the state of the MapView : the MapTransform and
+     * the image belong to the call and the values of the style expressions
+     * are kept by the rendering thread. So the same layers and styles can be
+     * rendered by several threads at the same time, as long as the layers are
+     * not modified.
+     *
+     * @param viewport the area to render
+     * @param pm
+     * @return the image of the map
+     * @throws LayerException
+     */
+    public BufferedImage render(Viewport viewport, IProgressMonitor pm) throws LayerException {
+        MapTransform renderMt = viewport.createMapTransform();
+        BufferedImage renderImage = renderMt.getImage();
+        Graphics2D g2 = renderImage.createGraphics();
+        try {
+            g2.setColor(Color.WHITE);
+            g2.fillRect(0, 0, renderImage.getWidth(), renderImage.getHeight());
+            g2.addRenderingHints(renderMt.getRenderingHints());
+            mc.getLayerModel().draw(g2, renderMt, pm);
+        } finally {
+            g2.dispose();
+        }
+        return renderImage;
+    }
+
+    /**
+     * Draw the whole map
+     *
+     * @param pm
+     * @throws LayerException
+     */
+    private void drawAll(IProgressMonitor pm) throws LayerException {
         Graphics2D g2 = image.createGraphics();
         g2.setColor(Color.WHITE);
-        g2.fillRect(0, 0, width, height);
+        g2.fillRect(0, 0, image.getWidth(), image.getHeight());
         g2.addRenderingHints(mt.getRenderingHints());                
-        mc.getLayerModel().draw(g2, mt, new NullProgressMonitor());
+        mc.getLayerModel().draw(g2, mt, pm);
+        g2.dispose();
+    }
+
+    /**
+     * Shift the previous image and draw the exposed strips
+     *
+     * @param dx the shift along the x axis in pixels
+     * @param dy the shift along the y axis in pixels
+     * @param pm
+     * @throws LayerException
+     */
+    private void drawPan(int dx, int dy, IProgressMonitor pm) throws LayerException {
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+        Graphics2D g2 = image.createGraphics();
+        g2.copyArea(0, 0, imageWidth, imageHeight, dx, dy);
+        g2.dispose();
+        if (dx > 0) {
+            drawStrip(0, 0, dx, imageHeight, pm);
+        } else if (dx < 0) {
+            drawStrip(imageWidth + dx, 0, -dx, imageHeight, pm);
+        }
+        int stripX = Math.max(dx, 0);
+        int stripWidth = imageWidth - Math.abs(dx);
+        if (dy > 0) {
+            drawStrip(stripX, 0, stripWidth, dy, pm);
+        } else if (dy < 0) {
+            drawStrip(stripX, imageHeight + dy, stripWidth, -dy, pm);
+        }
+    }
+
+    /**
+     * Draw a rectangle of the map. The layers are queried with the extent of
+     * the rectangle.
+     *
+     * @param x
+     * @param y
+     * @param stripWidth
+     * @param stripHeight
+     * @param pm
+     * @throws LayerException
+     */
+    private void drawStrip(int x, int y, int stripWidth, int stripHeight, IProgressMonitor pm) throws LayerException {
+        MapTransform stripMt = mt.getTileTransform(x - STRIP_OVERLAP, y - STRIP_OVERLAP,
+                stripWidth + 2 * STRIP_OVERLAP, stripHeight + 2 * STRIP_OVERLAP);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.clipRect(x, y, stripWidth, stripHeight);
+            g2.setColor(Color.WHITE);
+            g2.fillRect(x, y, stripWidth, stripHeight);
+            g2.translate(x - STRIP_OVERLAP, y - STRIP_OVERLAP);
+            g2.addRenderingHints(mt.getRenderingHints());
+            mc.getLayerModel().draw(g2, stripMt, pm);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Return the shift in pixels between the previous extent and the current
+     * one, or null if the whole map must be drawn. A shift of a fraction of
+     * pixel is rounded and the extent is moved accordingly.
+     *
+     * @param layersSignature
+     * @return
+     */
+    private Point getPanShift(String layersSignature) {
+        if (lastImage != image || lastExtent == null || !layersSignature.equals(lastLayersSignature)) {
+            return null;
+        }
+        Envelope extent = mt.getAdjustedExtent();
+        double pixelSize = extent.getWidth() / image.getWidth();
+        double lastPixelSize = lastExtent.getWidth() / image.getWidth();
+        if (Math.abs(pixelSize - lastPixelSize) > pixelSize * 1e-9) {
+            return null;
+        }
+        long dx = Math.round((lastExtent.getMinX() - extent.getMinX()) / pixelSize);
+        long dy = Math.round((extent.getMaxY() - lastExtent.getMaxY()) / pixelSize);
+        if ((dx == 0 && dy == 0) || Math.abs(dx) >= image.getWidth() || Math.abs(dy) >= image.getHeight()) {
+            return null;
+        }
+        Envelope snapped = new Envelope(lastExtent);
+        snapped.translate(-dx * pixelSize, dy * pixelSize);
+        if (!snapped.equals(extent)) {
+            mt.setExtent(new MapEnvelope(snapped));
+        }
+        return new Point((int) dx, (int) dy);
+    }
+
+    /**
+     * Build a string that changes when a layer is added, removed, hidden or
+     * when a style is modified
+     *
+     * @param layer
+     * @return
+     */
+    private static String getLayersSignature(ILayer layer) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(layer.getName()).append('|').append(layer.isVisible());
+        if (layer instanceof StyledLayer) {
+            Feature2DStyle style = ((StyledLayer) layer).getStyle();
+            sb.append('|').append(style == null ? "" : StyleHashUtils.getHash(style));
+        }
+        ILayer[] children = layer.getChildren();
+        if (children != null) {
+            for (ILayer child : children) {
+                sb.append('[').append(getLayersSignature(child)).append(']');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Move the map by a number of pixels and draw it
+     *
+     * @param dx the shift of the map to the right in pixels
+     * @param dy the shift of the map to the bottom in pixels
+     * @throws LayerException
+     */
+    public void pan(int dx, int dy) throws LayerException {
+        Envelope extent = mt.getAdjustedExtent();
+        if (extent == null) {
+            draw();
+            return;
+        }
+        double pixelSize = extent.getWidth() / mt.getWidth();
+        Envelope moved = new Envelope(extent);
+        moved.translate(-dx * pixelSize, dy * pixelSize);
+        mt.setExtent(new MapEnvelope(moved));
+        draw();
     }
 
     public BufferedImage getImage() {
@@ -0,0 +1,147 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer;
+
+import java.awt.image.BufferedImage;
+import org.locationtech.jts.geom.Envelope;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+
+/**
+ * An immutable description of the area of a map to render : the extent, the
+ * size of the image and the resolution.
+ *
+ * A viewport can be shared by several threads. Each rendering builds its own
+ * {@link MapTransform} from it, see {@link #createMapTransform()}, because a
+ * MapTransform keeps the state used to convert the geometries.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public final class Viewport {
+
+    private static final double DEFAULT_DPI = 96.0;
+    private final Envelope extent;
+    private final int width;
+    private final int height;
+    private final double dpi;
+    private final boolean adjustExtent;
+
+    /**
+     * @param extent the extent of the map
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     */
+    public Viewport(Envelope extent, int width, int height) {
+        this(extent, width, height, DEFAULT_DPI, true);
+    }
+
+    /**
+     * @param extent the extent of the map
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param dpi the resolution of the image
+     * @param adjustExtent true to adjust the extent to the ratio of the image,
+     * see {@link MapTransform#isAdjustExtent()}
+     */
+    public Viewport(Envelope extent, int width, int height, double dpi, boolean adjustExtent) {
+        if (extent == null || extent.isNull()) {
+            throw new IllegalArgumentException("The extent of the viewport cannot be empty");
+        }
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("The size of the viewport must be greater than 0");
+        }
+        this.extent = new Envelope(extent);
+        this.width = width;
+        this.height = height;
+        this.dpi = dpi;
+        this.adjustExtent = adjustExtent;
+    }
+
+    /**
+     * Take a snapshot of the current state of a MapTransform
+     *
+     * @param mt
+     * @return
+     */
+    public static Viewport of(MapTransform mt) {
+        return new Viewport(mt.getExtent(), mt.getWidth(), mt.getHeight(), mt.getDpi(), mt.isAdjustExtent());
+    }
+
+    /**
+     * @return a copy of the extent
+     */
+    public Envelope getExtent() {
+        return new Envelope(extent);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getDpi() {
+        return dpi;
+    }
+
+    public boolean isAdjustExtent() {
+        return adjustExtent;
+    }
+
+    /**
+     * @param extent
+     * @return a viewport with the same image and another extent
+     */
+    public Viewport withExtent(Envelope extent) {
+        return new Viewport(extent, width, height, dpi, adjustExtent);
+    }
+
+    /**
+     * Build a new MapTransform, with its own image, for one rendering
+     *
+     * @return
+     */
+    public MapTransform createMapTransform() {
+        MapTransform mt = new MapTransform();
+        mt.setAdjustExtent(adjustExtent);
+        mt.setDpi(dpi);
+        mt.setImage(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new MapEnvelope(extent));
+        return mt;
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.atlas;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.locationtech.jts.geom.Envelope;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+import org.orbisgis.orbismap.map.api.LayerException;
+import org.orbisgis.orbismap.map.renderer.MapView;
+import org.orbisgis.orbismap.map.renderer.Viewport;
+
+/**
+ * Render a series of map sheets, one image file per extent, with the layers of
+ * a {@link MapView}.
+ *
+ * The layers are kept between the sheets, so the styles are compiled once,
+ * the tables stay linked and the images of the symbol levels are reused. The
+ * sheets are drawn by a pool of threads, see
+ * {@link MapView#render(Viewport, IProgressMonitor)}, and the images are
+ * encoded and written by other threads while the next sheets are drawn.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class AtlasRenderer {
+
+    private final MapView mapView;
+    private int width = 800;
+    private int height = 800;
+    private double dpi = 96;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int writers = 1;
+
+    /**
+     * @param mapView the map that contains the layers to draw
+     */
+    public AtlasRenderer(MapView mapView) {
+        this.mapView = mapView;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Set the size of the images, 800 x 800 pixels by default
+     *
+     * @param width
+     * @param height
+     */
+    public void setImageSize(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("The size of the images must be greater than 0");
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    public double getDpi() {
+        return dpi;
+    }
+
+    public void setDpi(double dpi) {
+        this.dpi = dpi;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of sheets drawn at the same time, the number of
+     * processors by default
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than 0");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getWriters() {
+        return writers;
+    }
+
+    /**
+     * Set the number of threads that encode and write the images, 1 by
+     * default
+     *
+     * @param writers
+     */
+    public void setWriters(int writers) {
+        if (writers < 1) {
+            throw new IllegalArgumentException("The number of writers must be greater than 0");
+        }
+        this.writers = writers;
+    }
+
+    /**
+     * Render the sheets. A sheet that cannot be drawn or written is reported
+     * and the other sheets are still rendered.
+     *
+     * @param sheets the extents and the files to write
+     * @param pm
+     * @return the numbers of sheets written and failed and the throughput
+     * @throws LayerException if the rendering is interrupted
+     */
+    public AtlasReport render(List<Sheet> sheets, IProgressMonitor pm) throws LayerException {
+        long start = System.nanoTime();
+        AtlasReport report = new AtlasReport();
+        IProgressMonitor sheetsPm = pm.startTask("Render sheets", sheets.size());
+        ExecutorService renderers = Executors.newFixedThreadPool(parallelism);
+        //The queue is bounded to keep a limited number of images in memory
+        ThreadPoolExecutor writerPool = new ThreadPoolExecutor(writers, writers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(parallelism * 2), (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        //The rendering has stopped, the sheet is not written
+                        sheetsPm.endTask();
+                    } else {
+                        task.run();
+                    }
+                });
+        try {
+            List<Future<?>> renderings = new ArrayList<>();
+            for (Sheet sheet : sheets) {
+                renderings.add(renderers.submit(() -> {
+                    //The task of the sheet ends here unless its writing is queued
+                    boolean queued = false;
+                    try {
+                        if (pm.isCancelled()) {
+                            return;
+                        }
+                        BufferedImage image;
+                        try {
+                            image = mapView.render(new Viewport(sheet.getExtent(), width, height, dpi, true), pm);
+                        } catch (LayerException | RuntimeException ex) {
+                            report.addFailure(sheet, ex);
+                            return;
+                        }
+                        if (pm.isCancelled()) {
+                            //Don't write a partial sheet
+                            return;
+                        }
+                        writerPool.execute(() -> {
+                            try {
+                                write(image, sheet.getOutput());
+                                report.addRendered();
+                            } catch (IOException | RuntimeException ex) {
+                                report.addFailure(sheet, ex);
+                            } finally {
+                                sheetsPm.endTask();
+                            }
+                        });
+                        queued = true;
+                    } finally {
+                        if (!queued) {
+                            sheetsPm.endTask();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> rendering : renderings) {
+                rendering.get();
+            }
+            writerPool.shutdown();
+            writerPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LayerException("The rendering of the sheets has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new LayerException(ex.getCause());
+        } finally {
+            //End the tasks of the sheets dropped before being drawn or written
+            for (int i = renderers.shutdownNow().size() + writerPool.shutdownNow().size(); i > 0; i--) {
+                sheetsPm.endTask();
+            }
+        }
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Write an image with the format given by the extension of the file
+     *
+     * @param image
+     * @param output
+     * @throws IOException
+     */
+    private static void write(BufferedImage image, File output) throws IOException {
+        String name = output.getName();
+        int i = name.lastIndexOf('.');
+        String format = i >= 0 ? name.substring(i + 1).toLowerCase() : "png";
+        if (image.getColorModel().hasAlpha() && (format.equals("jpg") || format.equals("jpeg") || format.equals("bmp"))) {
+            //These formats have no alpha channel
+            BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = rgb.createGraphics();
+            g2.drawImage(image, 0, 0, Color.WHITE, null);
+            g2.dispose();
+            image = rgb;
+        }
+        if (!ImageIO.write(image, format, output)) {
+            throw new IOException("No writer for the format " + format);
+        }
+    }
+
+    /**
+     * A map sheet : the extent to draw and the file to write
+     */
+    public static class Sheet {
+
+        private final Envelope extent;
+        private final File output;
+
+        /**
+         * @param extent the extent of the sheet
+         * @param output the image file, its extension gives the format
+         */
+        public Sheet(Envelope extent, File output) {
+            this.extent = new Envelope(extent);
+            this.output = output;
+        }
+
+        public Envelope getExtent() {
+            return new Envelope(extent);
+        }
+
+        public File getOutput() {
+            return output;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.atlas;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.orbisgis.orbismap.map.renderer.atlas.AtlasRenderer.Sheet;
+
+/**
+ * The result of the rendering of an atlas
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class AtlasReport {
+
+    private final AtomicInteger rendered = new AtomicInteger();
+    private final Map<Sheet, Exception> failures = new LinkedHashMap<>();
+    private long elapsedNanos;
+
+    void addRendered() {
+        rendered.incrementAndGet();
+    }
+
+    synchronized void addFailure(Sheet sheet, Exception ex) {
+        failures.put(sheet, ex);
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of sheets written
+     */
+    public int getRenderedCount() {
+        return rendered.get();
+    }
+
+    /**
+     * @return the sheets that have not been drawn or written, with the cause
+     */
+    public synchronized Map<Sheet, Exception> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * @return the number of sheets written per minute
+     */
+    public double getMapsPerMinute() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return rendered.get() * TimeUnit.MINUTES.toNanos(1) / (double) elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d maps in %d ms, %.1f maps/min, %d failed", getRenderedCount(),
+                getElapsedMillis(), getMapsPerMinute(), getFailures().size());
+    }
+}
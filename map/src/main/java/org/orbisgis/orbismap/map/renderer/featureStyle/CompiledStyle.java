@@ -0,0 +1,449 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import org.orbisgis.orbismap.map.renderer.featureStyle.utils.ExpressionParser;
+import org.orbisgis.orbismap.style.Feature2DRule;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+import org.orbisgis.orbismap.style.IFeatureSymbolizer;
+import org.orbisgis.orbismap.style.parameter.Expression;
+import org.orbisgis.orbismap.style.parameter.geometry.GeometryParameter;
+import org.orbisgis.orbismap.style.visitor.GeometryParameterVisitor;
+import org.orbisgis.orbismap.style.visitor.ParameterValueVisitor;
+
+/**
+ * Render plan of a {@link Feature2DStyle} for the geometry columns of a table.
+ *
+ * The plan keeps the formatted rule filters, the identifiers of the
+ * expressions and of the geometries, the columns to select for each rule and
+ * for all the rules, and the order of the symbolizers according their level.
+ * It is built once and reused while the style tree is not mutated, see
+ * {@link Feature2DStyle#getRevision()}.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class CompiledStyle {
+
+    private final Feature2DStyle style;
+    private final List<String> geometryColumns;
+    private long revision;
+    private final List<CompiledRule> rules = new ArrayList<>();
+    private final List<Expression> expressions = new ArrayList<>();
+    private final Set<String> spatialColumns = new LinkedHashSet<>();
+    private final Map<String, String> geometries = new LinkedHashMap<>();
+    private String expressionSelect = "";
+    private String valueSelect = "";
+    private String select = "";
+
+    private CompiledStyle(Feature2DStyle style, List<String> geometryColumns) {
+        this.style = style;
+        this.geometryColumns = geometryColumns;
+    }
+
+    /**
+     * Compile the style for the geometry columns of a table
+     *
+     * @param style
+     * @param geometryColumns
+     * @return
+     * @throws Exception
+     */
+    public static CompiledStyle compile(Feature2DStyle style, List<String> geometryColumns) throws Exception {
+        //The visitors set the identifiers on the nodes of the style
+        synchronized (style) {
+            CompiledStyle compiledStyle = new CompiledStyle(style, new ArrayList<>(geometryColumns));
+            compiledStyle.build();
+            compiledStyle.revision = style.getRevision();
+            return compiledStyle;
+        }
+    }
+
+    /**
+     * Visit the style. The identifiers are shared by all the rules so the
+     * same plan can be used to read the table rule by rule or once for all
+     * the rules.
+     *
+     * @throws Exception
+     */
+    private void build() throws Exception {
+        ParameterValueVisitor expressionParameters = new ParameterValueVisitor();
+        List<List<Expression>> rulesExpressions = new ArrayList<>();
+        List<IFeatureSymbolizer> allSymbolizers = new ArrayList<>();
+        for (Feature2DRule rule : style.getRules()) {
+            int first = expressionParameters.getExpressions().size();
+            expressionParameters.visitSymbolizerNode(rule);
+            List<Expression> ruleExpressions = expressionParameters.getExpressions();
+            rulesExpressions.add(new ArrayList<>(ruleExpressions.subList(first, ruleExpressions.size())));
+            allSymbolizers.addAll(rule.getSymbolizers());
+        }
+        GeometryParameterVisitor gp = new GeometryParameterVisitor(allSymbolizers, geometryColumns);
+        gp.visit();
+        expressions.addAll(expressionParameters.getExpressions());
+        spatialColumns.addAll(gp.getGeometryColumns());
+
+        Map<String, String> formattedExpressions = new HashMap<>();
+        expressionParameters.getExpressionParameters().forEach((formatted, identifier) -> {
+            formattedExpressions.put(identifier, formatted);
+        });
+        List<Feature2DRule> styleRules = style.getRules();
+        for (int i = 0; i < styleRules.size(); i++) {
+            Feature2DRule rule = styleRules.get(i);
+            String filter = ExpressionParser.formatConditionalExpression(rule.getFilter()).getExpression();
+            Map<String, String> ruleGeometries = new LinkedHashMap<>();
+            Map<IFeatureSymbolizer, String> geometryIdentifiers = new IdentityHashMap<>();
+            Set<String> ruleSpatialColumns = new LinkedHashSet<>();
+            if (!gp.getResult().isEmpty()) {
+                for (IFeatureSymbolizer symbolizer : rule.getSymbolizers()) {
+                    GeometryParameter geometryParameter = symbolizer.getGeometryParameter();
+                    ruleGeometries.put(geometryParameter.getIdentifier(), geometryParameter.getExpression());
+                    geometryIdentifiers.put(symbolizer, geometryParameter.getIdentifier());
+                    ruleSpatialColumns.addAll(gp.getGeometryColumns(symbolizer));
+                }
+            }
+            //A rule that doesn't draw all the geometry columns needs a flag to
+            //check its own columns in the query of all the rules
+            String flag = null;
+            if (!filter.isEmpty() || (!ruleSpatialColumns.isEmpty() && !ruleSpatialColumns.equals(spatialColumns))) {
+                flag = "rule_filter_" + i;
+            }
+            Map<String, String> valueColumns = new LinkedHashMap<>();
+            for (Expression exp : rulesExpressions.get(i)) {
+                valueColumns.put(exp.getReference(), formattedExpressions.get(exp.getReference()));
+            }
+            String valueSelect = valueColumns.entrySet().stream()
+                    .map(entry -> entry.getValue() + " as " + entry.getKey())
+                    .collect(Collectors.joining(","));
+            //Sort the symbolizers to draw the images according the symbol level
+            List<IFeatureSymbolizer> symbolizersByLevel = new ArrayList<>(rule.getSymbolizers());
+            symbolizersByLevel.sort(Comparator.comparingInt(IFeatureSymbolizer::getLevel));
+            rules.add(new CompiledRule(rule, filter, flag, ruleGeometries, geometryIdentifiers, valueSelect,
+                    rulesExpressions.get(i), ruleSpatialColumns, symbolizersByLevel));
+        }
+        gp.getResult().forEach((expression, identifier) -> {
+            geometries.put(identifier, expression);
+        });
+        expressionSelect = expressionParameters.getExpressionParametersAsString();
+        valueSelect = buildValueSelect(CompiledStyle::getFilterCondition);
+        select = buildSelect(geometries, valueSelect, UnaryOperator.identity());
+    }
+
+    /**
+     * Build the expression columns and the boolean flag column of each rule
+     *
+     * @param condition the condition of the flag of a rule
+     * @return
+     */
+    private String buildValueSelect(Function<CompiledRule, String> condition) {
+        StringBuilder values = new StringBuilder(expressionSelect);
+        for (CompiledRule rule : rules) {
+            if (rule.getFlag() != null) {
+                if (values.length() > 0) {
+                    values.append(", ");
+                }
+                values.append("CASE WHEN ").append(condition.apply(rule)).append(" THEN TRUE ELSE FALSE END as ").append(rule.getFlag());
+            }
+        }
+        return values.toString();
+    }
+
+    /**
+     * @param rule
+     * @return the filter of the rule, TRUE if the rule has no filter
+     */
+    private static String getFilterCondition(CompiledRule rule) {
+        return rule.getFilter().isEmpty() ? "TRUE" : rule.getFilter();
+    }
+
+    /**
+     * Build the columns of a query
+     *
+     * @param geometries the geometry expressions by identifier
+     * @param valueSelect the other columns
+     * @param geometryFunction the function applied to each geometry expression
+     * @return an empty string if there is no geometry to select
+     */
+    private static String buildSelect(Map<String, String> geometries, String valueSelect, UnaryOperator<String> geometryFunction) {
+        if (geometries.isEmpty()) {
+            return "";
+        }
+        String select = geometries.entrySet().stream()
+                .map(entry -> geometryFunction.apply(entry.getValue()) + " as " + entry.getKey())
+                .collect(Collectors.joining(","));
+        if (!valueSelect.isEmpty()) {
+            select += "," + valueSelect;
+        }
+        return select;
+    }
+
+    /**
+     * The plan can be used if the style tree has not been mutated since the
+     * compilation and the table has the same geometry columns.
+     *
+     * @param style
+     * @param geometryColumns
+     * @return
+     */
+    public boolean isValid(Feature2DStyle style, List<String> geometryColumns) {
+        return this.style == style && revision == style.getRevision()
+                && this.geometryColumns.equals(geometryColumns);
+    }
+
+    public Feature2DStyle getStyle() {
+        return style;
+    }
+
+    /**
+     * @return the rules in the order of the style
+     */
+    public List<CompiledRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * The columns to select to draw all the rules from one query : the
+     * geometries, the expressions and one boolean column per rule filter.
+     *
+     * @return
+     */
+    public String getSelect() {
+        return select;
+    }
+
+    /**
+     * The columns to select to draw all the rules from one query, with a
+     * function applied to the geometry expressions.
+     *
+     * @param geometryFunction
+     * @return
+     */
+    public String getSelect(UnaryOperator<String> geometryFunction) {
+        return buildSelect(geometries, valueSelect, geometryFunction);
+    }
+
+    /**
+     * The columns to select to draw all the rules from one query filtered on
+     * the extent of the map. The query selects the rows of which one geometry
+     * column is in the extent, so the flag of a rule that doesn't draw all the
+     * geometry columns also checks its own columns.
+     *
+     * @param geometryFunction the function applied to the geometry expressions
+     * @param spatialFilter the condition that selects the rows of which one
+     * of the given geometry columns is in the extent
+     * @return
+     */
+    public String getSelect(UnaryOperator<String> geometryFunction, Function<Set<String>, String> spatialFilter) {
+        return buildSelect(geometries, buildValueSelect(rule -> {
+            if (rule.getSpatialColumns().equals(spatialColumns)) {
+                return getFilterCondition(rule);
+            }
+            String extentFilter = spatialFilter.apply(rule.getSpatialColumns());
+            return rule.getFilter().isEmpty() ? extentFilter : "(" + rule.getFilter() + ") and " + extentFilter;
+        }), geometryFunction);
+    }
+
+    /**
+     * @return all the expressions of the style
+     */
+    public List<Expression> getExpressions() {
+        return expressions;
+    }
+
+    /**
+     * @return the geometry columns used by the style
+     */
+    public Set<String> getSpatialColumns() {
+        return spatialColumns;
+    }
+
+    /**
+     * @return the identifiers of the geometries selected by
+     * {@link #getSelect()}, in the order of the query
+     */
+    public Set<String> getGeometryIdentifiers() {
+        return Collections.unmodifiableSet(geometries.keySet());
+    }
+
+    /**
+     * The other columns selected by {@link #getSelect()} : the identifiers of
+     * the expressions with their type, then the boolean filter column of each
+     * rule.
+     *
+     * @return the type of each column, in the order of the query
+     */
+    public Map<String, Class> getValueColumns() {
+        Map<String, Class> columns = new LinkedHashMap<>();
+        for (Expression expression : expressions) {
+            columns.putIfAbsent(expression.getReference(), expression.getParameterDomain().getDataType());
+        }
+        for (CompiledRule rule : rules) {
+            if (rule.getFlag() != null) {
+                columns.put(rule.getFlag(), Boolean.class);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Render plan of one rule
+     */
+    public static class CompiledRule {
+
+        private final Feature2DRule rule;
+        private final String filter;
+        private final String flag;
+        private final Map<String, String> geometries;
+        private final Map<IFeatureSymbolizer, String> geometryIdentifiers;
+        private final String valueSelect;
+        private final String select;
+        private final List<Expression> expressions;
+        private final Set<String> spatialColumns;
+        private final List<IFeatureSymbolizer> symbolizers;
+        private final List<IFeatureSymbolizer> symbolizersByLevel;
+
+        CompiledRule(Feature2DRule rule, String filter, String flag, Map<String, String> geometries,
+                Map<IFeatureSymbolizer, String> geometryIdentifiers, String valueSelect, List<Expression> expressions,
+                Set<String> spatialColumns, List<IFeatureSymbolizer> symbolizersByLevel) {
+            this.rule = rule;
+            this.filter = filter;
+            this.flag = flag;
+            this.geometries = geometries;
+            this.geometryIdentifiers = Collections.unmodifiableMap(geometryIdentifiers);
+            this.valueSelect = valueSelect;
+            this.select = buildSelect(geometries, valueSelect, UnaryOperator.identity());
+            this.expressions = Collections.unmodifiableList(expressions);
+            this.spatialColumns = Collections.unmodifiableSet(spatialColumns);
+            this.symbolizers = Collections.unmodifiableList(new ArrayList<>(rule.getSymbolizers()));
+            this.symbolizersByLevel = Collections.unmodifiableList(symbolizersByLevel);
+        }
+
+        public Feature2DRule getRule() {
+            return rule;
+        }
+
+        /**
+         * @return the formatted filter, empty if the rule has no filter
+         */
+        public String getFilter() {
+            return filter;
+        }
+
+        /**
+         * @return the name of the boolean column of the filter in the fused
+         * query, null if the rule has no filter and draws all the geometry
+         * columns of the style
+         */
+        public String getFlag() {
+            return flag;
+        }
+
+        /**
+         * @return the columns to select to draw this rule, empty if the rule
+         * has nothing to draw
+         */
+        public String getSelect() {
+            return select;
+        }
+
+        /**
+         * The columns to select to draw this rule, with a function applied
+         * to the geometry expressions.
+         *
+         * @param geometryFunction
+         * @return
+         */
+        public String getSelect(UnaryOperator<String> geometryFunction) {
+            return buildSelect(geometries, valueSelect, geometryFunction);
+        }
+
+        public List<Expression> getExpressions() {
+            return expressions;
+        }
+
+        /**
+         * Return the column of the geometry drawn by a symbolizer. It is read
+         * from the plan and not from the style, so the style can be compiled
+         * again while it is drawn by another thread.
+         *
+         * @param symbolizer
+         * @return the identifier of the geometry in the query
+         */
+        public String getGeometryIdentifier(IFeatureSymbolizer symbolizer) {
+            return geometryIdentifiers.get(symbolizer);
+        }
+
+        public Set<String> getSpatialColumns() {
+            return spatialColumns;
+        }
+
+        public List<IFeatureSymbolizer> getSymbolizers() {
+            return symbolizers;
+        }
+
+        /**
+         * @return the symbolizers sorted by level, the order used to draw the
+         * images of the symbol levels
+         */
+        public List<IFeatureSymbolizer> getSymbolizersByLevel() {
+            return symbolizersByLevel;
+        }
+
+        /**
+         * @return true if all the symbolizers of the rule have the same symbol
+         * level, so the features can be drawn in the order of the rows
+         */
+        public boolean isSingleLevel() {
+            for (IFeatureSymbolizer symbolizer : symbolizers) {
+                if (symbolizer.getLevel() != symbolizers.get(0).getLevel()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import javax.sql.DataSource;
+
+/**
+ * Options used to read the rows of the rule queries directly with JDBC.
+ *
+ * When a {@link DataSource} is set, each query is executed on its own
+ * connection with a forward only and read only cursor, and the rows are
+ * streamed by chunks of fetch size rows instead of being loaded in memory.
+ * Without data source, the queries are executed by the spatial table.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class CursorOptions {
+
+    private DataSource dataSource;
+    private int fetchSize = 1000;
+    private boolean forwardOnly = true;
+    private boolean autoCommit = false;
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Set the data source used to open a connection per query. The connection
+     * is closed at the end of the query.
+     *
+     * @param dataSource
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Set the number of rows read from the database at once. Zero uses the
+     * default of the driver.
+     *
+     * @param fetchSize
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 0) {
+            throw new IllegalArgumentException("The fetch size cannot be negative");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    public boolean isForwardOnly() {
+        return forwardOnly;
+    }
+
+    /**
+     * Use a forward only and read only cursor. True by default.
+     *
+     * @param forwardOnly
+     */
+    public void setForwardOnly(boolean forwardOnly) {
+        this.forwardOnly = forwardOnly;
+    }
+
+    public boolean isAutoCommit() {
+        return autoCommit;
+    }
+
+    /**
+     * Keep the autocommit of the connection during the query. False by
+     * default because some drivers, like the PostgreSQL one, load the whole
+     * result when the autocommit is on.
+     *
+     * @param autoCommit
+     */
+    public void setAutoCommit(boolean autoCommit) {
+        this.autoCommit = autoCommit;
+    }
+}
@@ -0,0 +1,702 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+import org.orbisgis.orbismap.map.renderer.featureStyle.store.ColumnarFeatureStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In memory copy of the rows of a table, indexed by a {@link STRtree}. The
+ * rows are read once with the query that draws all the rules of the compiled
+ * style : the geometries, the values of the expressions and the filter of each
+ * rule. Then each drawing queries the tree with the extent of the map instead
+ * of the database.
+ *
+ * The cache is reloaded when the compiled style or the table changes, when
+ * its time to live is over or when it is invalidated. When the rows need more
+ * memory than the budget, the loading is abandoned and the layer is read from
+ * the database until the cache is invalidated or expires.
+ *
+ * The size of the rows is an estimation, based on the number of coordinates
+ * of the geometries and on the type of the values. With
+ * {@link #setOffHeap(boolean)} the rows are kept in direct buffers instead of
+ * objects, so a large layer doesn't slow down the garbage collector.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class FeatureCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureCache.class);
+
+    /**
+     * Default time between two checks of the modifications of the table
+     */
+    public static final long DEFAULT_CHANGE_CHECK_INTERVAL = 1000;
+
+    private final long memoryBudget;
+    private long timeToLive = 0;
+    private long changeCheckInterval = DEFAULT_CHANGE_CHECK_INTERVAL;
+    private boolean offHeap = false;
+
+    private CachedFeatures features;
+    private String key;
+    private boolean overBudget = false;
+    private long loadedAt;
+    private long checkedAt;
+    private long tableVersion = -1;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long loads = 0;
+    private long invalidations = 0;
+    private long lastLoadNanos = 0;
+
+    /**
+     * @param memoryBudget the maximum estimated size of the rows in bytes
+     */
+    public FeatureCache(long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget must be greater than 0");
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public synchronized long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Set the time after which the rows are read again from the database
+     *
+     * @param timeToLive in milliseconds, 0 to keep the rows until the table
+     * changes
+     */
+    public synchronized void setTimeToLive(long timeToLive) {
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("The time to live cannot be negative");
+        }
+        this.timeToLive = timeToLive;
+    }
+
+    public synchronized long getChangeCheckInterval() {
+        return changeCheckInterval;
+    }
+
+    /**
+     * Set the minimal time between two checks of the modifications of the
+     * table. The modifications are only detected when the rows are read with
+     * the data source of the {@link CursorOptions}, from the modification
+     * counter of H2 or the statistics of PostgreSQL.
+     *
+     * @param changeCheckInterval in milliseconds, 0 to check before each
+     * drawing, a negative value to never check
+     */
+    public synchronized void setChangeCheckInterval(long changeCheckInterval) {
+        this.changeCheckInterval = changeCheckInterval;
+    }
+
+    public synchronized boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Keep the rows outside of the heap, in the columns of a
+     * {@link ColumnarFeatureStore}, instead of keeping them as objects. The
+     * memory budget is then compared to the size of the direct buffers. The
+     * rows are read again at the next drawing.
+     *
+     * @param offHeap
+     */
+    public synchronized void setOffHeap(boolean offHeap) {
+        if (this.offHeap != offHeap) {
+            this.offHeap = offHeap;
+            invalidate();
+        }
+    }
+
+    /**
+     * Drop the rows, they are read again at the next drawing
+     */
+    public synchronized void invalidate() {
+        if (features != null || overBudget) {
+            invalidations++;
+        }
+        features = null;
+        key = null;
+        overBudget = false;
+    }
+
+    /**
+     * @return a snapshot of the counters of the cache
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(hits, misses, loads, invalidations, features == null ? 0 : features.size(),
+                features == null ? 0 : features.getEstimatedBytes(), overBudget, lastLoadNanos);
+    }
+
+    /**
+     * Return the cached rows of the table for a compiled style, loading them
+     * when needed.
+     *
+     * @param spatialTable the table
+     * @param plan the compiled style
+     * @param options the options of the cursors, used to detect the changes of
+     * the table
+     * @param loader opens a cursor on the table
+     * @param pm
+     * @return the rows or null if they cannot be kept in memory
+     * @throws Exception
+     */
+    synchronized CachedFeatures get(ISpatialTable spatialTable, CompiledStyle plan, CursorOptions options,
+            Loader loader, IProgressMonitor pm) throws Exception {
+        String requestKey = spatialTable.getName() + "\n" + plan.getSelect();
+        long now = System.nanoTime();
+        if (requestKey.equals(key)) {
+            boolean expired = timeToLive > 0 && now - loadedAt > TimeUnit.MILLISECONDS.toNanos(timeToLive);
+            if (expired || isTableChanged(spatialTable, options, now)) {
+                invalidate();
+            } else if (overBudget) {
+                misses++;
+                return null;
+            } else {
+                hits++;
+                return features;
+            }
+        } else if (key != null) {
+            invalidate();
+        }
+        misses++;
+        loads++;
+        long loadStart = System.nanoTime();
+        long version = getTableVersion(spatialTable, options);
+        CachedFeatures loaded = load(plan, loader, pm);
+        lastLoadNanos = System.nanoTime() - loadStart;
+        if (loaded == null && pm.isCancelled()) {
+            //Try again at the next drawing
+            return null;
+        }
+        key = requestKey;
+        loadedAt = now;
+        checkedAt = now;
+        tableVersion = version;
+        features = loaded;
+        overBudget = loaded == null;
+        if (overBudget) {
+            LOGGER.warn("The rows of the table {} need more than {} bytes, they are read from the database",
+                    spatialTable.getName(), memoryBudget);
+        }
+        return loaded;
+    }
+
+    private boolean isTableChanged(ISpatialTable spatialTable, CursorOptions options, long now) throws SQLException {
+        if (changeCheckInterval < 0 || tableVersion < 0
+                || now - checkedAt < TimeUnit.MILLISECONDS.toNanos(changeCheckInterval)) {
+            return false;
+        }
+        checkedAt = now;
+        return getTableVersion(spatialTable, options) != tableVersion;
+    }
+
+    /**
+     * Read the modification counter of the table
+     *
+     * @return the counter or -1 if it is not available
+     * @throws SQLException
+     */
+    private long getTableVersion(ISpatialTable spatialTable, CursorOptions options) throws SQLException {
+        if (changeCheckInterval < 0 || options == null || options.getDataSource() == null) {
+            return -1;
+        }
+        String tableName = spatialTable.getName();
+        tableName = tableName.substring(tableName.lastIndexOf('.') + 1).replace("\"", "");
+        try (Connection connection = options.getDataSource().getConnection()) {
+            String query;
+            if (connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres")) {
+                query = "SELECT n_tup_ins + n_tup_upd + n_tup_del FROM pg_stat_all_tables WHERE lower(relname) = lower(?)";
+            } else {
+                query = "SELECT LAST_MODIFICATION FROM INFORMATION_SCHEMA.TABLES WHERE UPPER(TABLE_NAME) = UPPER(?)";
+            }
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                ps.setString(1, tableName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    //Only one table with this name, otherwise the counter is ambiguous
+                    if (rs.next()) {
+                        long version = rs.getLong(1);
+                        return rs.next() ? -1 : version;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read all the rows of the table
+     *
+     * @return the rows, or null if they exceed the budget or if the loading is
+     * cancelled
+     * @throws Exception
+     */
+    private CachedFeatures load(CompiledStyle plan, Loader loader, IProgressMonitor pm) throws Exception {
+        Map<String, Integer> columns = new HashMap<>();
+        for (String column : plan.getGeometryIdentifiers()) {
+            columns.put(column, columns.size());
+        }
+        int firstValue = columns.size();
+        Map<String, Class> valueColumns = plan.getValueColumns();
+        for (String column : valueColumns.keySet()) {
+            columns.putIfAbsent(column, columns.size());
+        }
+        int columnCount = columns.size();
+        String[] names = new String[columnCount];
+        Class[] types = new Class[columnCount];
+        columns.forEach((name, index) -> names[index] = name);
+        valueColumns.forEach((name, type) -> types[columns.get(name)] = type);
+        RowCollector collector = offHeap ? new ColumnarCollector(columns, firstValue, types) : new HeapCollector(columns);
+        long count = 0;
+        try (IFeatureCursor cursor = loader.open(plan.getSelect(), "1=1")) {
+            while (cursor.next()) {
+                if (++count % FeatureStyleRenderer.DEFAULT_CANCEL_CHECK_INTERVAL == 0 && pm.isCancelled()) {
+                    cursor.cancel();
+                    return null;
+                }
+                Object[] row = new Object[columnCount];
+                Envelope envelope = new Envelope();
+                for (int i = 0; i < firstValue; i++) {
+                    Geometry geometry = cursor.getGeometry(names[i]);
+                    if (geometry != null) {
+                        envelope.expandToInclude(geometry.getEnvelopeInternal());
+                    }
+                    row[i] = geometry;
+                }
+                for (int i = firstValue; i < columnCount; i++) {
+                    row[i] = cursor.getObject(names[i], types[i]);
+                }
+                //The rows without geometry are not selected by the spatial filter
+                if (!envelope.isNull()) {
+                    collector.add(row, envelope);
+                    if (collector.getEstimatedBytes() > memoryBudget) {
+                        cursor.cancel();
+                        return null;
+                    }
+                }
+            }
+        }
+        return collector.build();
+    }
+
+    /**
+     * Keep the rows read from the table
+     */
+    private interface RowCollector {
+
+        void add(Object[] row, Envelope envelope);
+
+        long getEstimatedBytes();
+
+        CachedFeatures build();
+    }
+
+    /**
+     * Keep the rows as objects in a {@link STRtree}
+     */
+    private static final class HeapCollector implements RowCollector {
+
+        private final Map<String, Integer> columns;
+        private final STRtree index = new STRtree();
+        private final List<Object[]> rows = new ArrayList<>();
+        private long estimatedBytes = 0;
+
+        HeapCollector(Map<String, Integer> columns) {
+            this.columns = columns;
+        }
+
+        @Override
+        public void add(Object[] row, Envelope envelope) {
+            for (Object value : row) {
+                estimatedBytes += value instanceof Geometry ? estimateBytes((Geometry) value) : estimateBytes(value);
+            }
+            //The array, its slots and the node of the tree
+            estimatedBytes += 16 + 8L * row.length + 64;
+            index.insert(envelope, rows.size());
+            rows.add(row);
+        }
+
+        @Override
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        @Override
+        public CachedFeatures build() {
+            index.build();
+            return new HeapFeatures(index, columns, rows.toArray(new Object[rows.size()][]), estimatedBytes);
+        }
+    }
+
+    /**
+     * Copy the rows in a {@link ColumnarFeatureStore}
+     */
+    private static final class ColumnarCollector implements RowCollector {
+
+        private final Map<String, Integer> columns;
+        private final int firstValue;
+        private final ColumnarFeatureStore.Builder builder;
+        private final Geometry[] geometries;
+        private final Object[] values;
+
+        ColumnarCollector(Map<String, Integer> columns, int firstValue, Class[] types) {
+            this.columns = columns;
+            this.firstValue = firstValue;
+            this.builder = new ColumnarFeatureStore.Builder(firstValue, Arrays.copyOfRange(types, firstValue, types.length));
+            this.geometries = new Geometry[firstValue];
+            this.values = new Object[types.length - firstValue];
+        }
+
+        @Override
+        public void add(Object[] row, Envelope envelope) {
+            System.arraycopy(row, 0, geometries, 0, geometries.length);
+            System.arraycopy(row, firstValue, values, 0, values.length);
+            builder.addRow(geometries, values);
+        }
+
+        @Override
+        public long getEstimatedBytes() {
+            return builder.getAllocatedBytes();
+        }
+
+        @Override
+        public CachedFeatures build() {
+            return new ColumnarFeatures(builder.build(), columns, firstValue);
+        }
+    }
+
+    private static long estimateBytes(Geometry geometry) {
+        //A coordinate is an object with 3 doubles
+        return 48 + geometry.getNumGeometries() * 80L + geometry.getNumPoints() * 40L;
+    }
+
+    private static long estimateBytes(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 0;
+        } else if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        } else if (value instanceof Number) {
+            return 24;
+        }
+        return 32;
+    }
+
+    /**
+     * Open a cursor on the table
+     */
+    interface Loader {
+
+        /**
+         * @param select the columns
+         * @param where the filter
+         * @return the cursor
+         * @throws Exception
+         */
+        IFeatureCursor open(String select, String where) throws Exception;
+    }
+
+    /**
+     * The rows loaded in memory. They are not modified once loaded so they
+     * can be read by several threads.
+     */
+    abstract static class CachedFeatures implements IFeatureIndex {
+
+        final Map<String, Integer> columns;
+
+        CachedFeatures(Map<String, Integer> columns) {
+            this.columns = columns;
+        }
+
+        int getColumn(String column) {
+            Integer index = columns.get(column);
+            if (index == null) {
+                throw new IllegalArgumentException("The column " + column + " is not in the cache");
+            }
+            return index;
+        }
+
+        /**
+         * @return the number of rows
+         */
+        abstract int size();
+
+        /**
+         * @return the size of the rows in bytes
+         */
+        abstract long getEstimatedBytes();
+
+        @Override
+        public abstract IFeatureCursor query(Envelope envelope, String flag);
+    }
+
+    /**
+     * The rows kept as objects in the heap
+     */
+    static final class HeapFeatures extends CachedFeatures {
+
+        private final STRtree index;
+        private final Object[][] rows;
+        private final long estimatedBytes;
+
+        HeapFeatures(STRtree index, Map<String, Integer> columns, Object[][] rows, long estimatedBytes) {
+            super(columns);
+            this.index = index;
+            this.rows = rows;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        @Override
+        int size() {
+            return rows.length;
+        }
+
+        @Override
+        long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        @Override
+        public IFeatureCursor query(Envelope envelope, String flag) {
+            List<Integer> selected = new ArrayList<>();
+            Integer flagIndex = flag == null ? null : getColumn(flag);
+            for (Object item : index.query(envelope)) {
+                Integer row = (Integer) item;
+                if (flagIndex == null || Boolean.TRUE.equals(rows[row][flagIndex])) {
+                    selected.add(row);
+                }
+            }
+            Collections.sort(selected);
+            return new HeapCursor(selected);
+        }
+
+        /**
+         * Cursor on the selected rows
+         */
+        private final class HeapCursor implements IFeatureCursor {
+
+            private final List<Integer> selected;
+            private int position = -1;
+            private volatile boolean cancelled = false;
+
+            HeapCursor(List<Integer> selected) {
+                this.selected = selected;
+            }
+
+            @Override
+            public boolean next() {
+                return !cancelled && ++position < selected.size();
+            }
+
+            @Override
+            public Object getObject(String column, Class type) {
+                return rows[selected.get(position)][getColumn(column)];
+            }
+
+            @Override
+            public Geometry getGeometry(String column) {
+                return (Geometry) rows[selected.get(position)][getColumn(column)];
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+            }
+
+            @Override
+            public void close() {
+            }
+        }
+    }
+
+    /**
+     * The rows kept outside of the heap in a {@link ColumnarFeatureStore}
+     */
+    static final class ColumnarFeatures extends CachedFeatures {
+
+        private final ColumnarFeatureStore store;
+        private final FeatureStoreIndex index;
+
+        ColumnarFeatures(ColumnarFeatureStore store, Map<String, Integer> columns, int firstValue) {
+            super(columns);
+            this.store = store;
+            String[] names = new String[columns.size()];
+            columns.forEach((name, column) -> names[column] = name);
+            List<String> columnNames = Arrays.asList(names);
+            this.index = new FeatureStoreIndex(store, columnNames.subList(0, firstValue),
+                    columnNames.subList(firstValue, names.length));
+        }
+
+        @Override
+        int size() {
+            return store.getRowCount();
+        }
+
+        @Override
+        long getEstimatedBytes() {
+            return store.getAllocatedBytes();
+        }
+
+        @Override
+        public IFeatureCursor query(Envelope envelope, String flag) {
+            return index.query(envelope, flag);
+        }
+    }
+
+    /**
+     * The counters of a cache
+     */
+    public static final class Statistics {
+
+        private final long hits;
+        private final long misses;
+        private final long loads;
+        private final long invalidations;
+        private final int rowCount;
+        private final long estimatedBytes;
+        private final boolean overBudget;
+        private final long lastLoadNanos;
+
+        Statistics(long hits, long misses, long loads, long invalidations, int rowCount, long estimatedBytes,
+                boolean overBudget, long lastLoadNanos) {
+            this.hits = hits;
+            this.misses = misses;
+            this.loads = loads;
+            this.invalidations = invalidations;
+            this.rowCount = rowCount;
+            this.estimatedBytes = estimatedBytes;
+            this.overBudget = overBudget;
+            this.lastLoadNanos = lastLoadNanos;
+        }
+
+        /**
+         * @return the number of drawings that read the rows from the cache
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return the number of drawings that read the rows from the database
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the part of the drawings that read the rows from the cache
+         */
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        /**
+         * @return the number of times the rows have been read
+         */
+        public long getLoads() {
+            return loads;
+        }
+
+        /**
+         * @return the number of times the rows have been dropped
+         */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        /**
+         * @return the number of rows in memory
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return the estimated size of the rows in memory, or the size of the
+         * direct buffers when the rows are kept outside of the heap
+         */
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        /**
+         * @return true if the rows of the table exceed the memory budget
+         */
+        public boolean isOverBudget() {
+            return overBudget;
+        }
+
+        /**
+         * @return the time spent to read the rows the last time, in
+         * nanoseconds
+         */
+        public long getLastLoadNanos() {
+            return lastLoadNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses, %d loads, %d rows, %d bytes", hits, misses, loads, rowCount, estimatedBytes);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.locationtech.jts.geom.Geometry;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+import org.orbisgis.orbismap.map.renderer.featureStyle.store.MappedFeatureStore;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Export the rows of a table needed to draw it with a style into a
+ * {@link MappedFeatureStore}, so the layer can be drawn without the database.
+ *
+ * The file contains the columns of the fused query of the style : the
+ * geometries, the values of the expressions and the filter of each rule. It
+ * must be drawn with the same style, the query is stored in the file to
+ * check it. The z values and the SRID of the
+ * geometries are not kept.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class FeatureFileExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureFileExporter.class);
+
+    private final Feature2DStyle style;
+    private CursorOptions cursorOptions;
+
+    /**
+     *
+     * @param style the style used to draw the file
+     */
+    public FeatureFileExporter(Feature2DStyle style) {
+        this.style = style;
+    }
+
+    public CursorOptions getCursorOptions() {
+        return cursorOptions;
+    }
+
+    /**
+     * Set the options used to stream the rows of the table with JDBC
+     *
+     * @param cursorOptions the options, null to read the table with its API
+     */
+    public void setCursorOptions(CursorOptions cursorOptions) {
+        this.cursorOptions = cursorOptions;
+    }
+
+    /**
+     * Write the rows of a table into a file. The rows without geometry are not
+     * written, they are never drawn.
+     *
+     * @param spatialTable
+     * @param file the file to write, replaced if it exists
+     * @param pm
+     * @return the number of rows written, -1 if the export is cancelled
+     * @throws Exception
+     */
+    public int export(ISpatialTable spatialTable, File file, IProgressMonitor pm) throws Exception {
+        List<String> sourceGeometryColumns = spatialTable.getGeometricColumns();
+        CompiledStyle plan = CompiledStyle.compile(style, sourceGeometryColumns);
+        if (plan.getSelect().isEmpty()) {
+            throw new IllegalArgumentException("The style draws no geometry of the table " + spatialTable.getName());
+        }
+        List<String> geometryColumns = new ArrayList<>(plan.getGeometryIdentifiers());
+        Map<String, Class> values = plan.getValueColumns();
+        List<String> valueColumns = new ArrayList<>(values.keySet());
+        Class[] types = values.values().toArray(new Class[values.size()]);
+        long start = System.currentTimeMillis();
+        try (MappedFeatureStore.Writer writer = new MappedFeatureStore.Writer(file, sourceGeometryColumns,
+                geometryColumns, valueColumns, types);
+                IFeatureCursor cursor = FeatureStyleRenderer.openCursor(cursorOptions, spatialTable, plan.getSelect(), "1=1", 0)) {
+            writer.setQuery(plan.getSelect());
+            Geometry[] geometries = new Geometry[geometryColumns.size()];
+            Object[] row = new Object[valueColumns.size()];
+            long count = 0;
+            while (cursor.next()) {
+                if (++count % FeatureStyleRenderer.DEFAULT_CANCEL_CHECK_INTERVAL == 0 && pm.isCancelled()) {
+                    cursor.cancel();
+                    return -1;
+                }
+                boolean empty = true;
+                for (int i = 0; i < geometries.length; i++) {
+                    geometries[i] = cursor.getGeometry(geometryColumns.get(i));
+                    empty &= geometries[i] == null || geometries[i].isEmpty();
+                }
+                if (empty) {
+                    continue;
+                }
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = cursor.getObject(valueColumns.get(i), types[i]);
+                }
+                writer.addRow(geometries, row);
+            }
+            writer.finish();
+            LOGGER.info("{} rows of the table {} exported into {} in {} ms", writer.getRowCount(), spatialTable.getName(),
+                    file, System.currentTimeMillis() - start);
+            return writer.getRowCount();
+        }
+    }
+}
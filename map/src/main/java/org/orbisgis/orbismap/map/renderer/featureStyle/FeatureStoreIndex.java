@@ -0,0 +1,146 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.orbisgis.orbismap.map.renderer.featureStyle.store.IFeatureStore;
+
+/**
+ * Select the rows of a {@link IFeatureStore}. The rows are selected as
+ * primitive indices, only the values and the geometries read by the renderer
+ * are created.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public final class FeatureStoreIndex implements IFeatureIndex {
+
+    private final IFeatureStore store;
+    private final Map<String, Integer> geometryColumns = new HashMap<>();
+    private final Map<String, Integer> valueColumns = new HashMap<>();
+
+    /**
+     *
+     * @param store the rows
+     * @param geometryColumns the names of the geometry columns of the store
+     * @param valueColumns the names of the value columns of the store
+     */
+    public FeatureStoreIndex(IFeatureStore store, List<String> geometryColumns, List<String> valueColumns) {
+        this.store = store;
+        for (int i = 0; i < geometryColumns.size(); i++) {
+            this.geometryColumns.put(geometryColumns.get(i), i);
+        }
+        for (int i = 0; i < valueColumns.size(); i++) {
+            this.valueColumns.put(valueColumns.get(i), i);
+        }
+    }
+
+    /**
+     * @return the rows
+     */
+    public IFeatureStore getStore() {
+        return store;
+    }
+
+    private static int getColumn(Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null) {
+            throw new IllegalArgumentException("The column " + column + " is not in the store");
+        }
+        return index;
+    }
+
+    @Override
+    public IFeatureCursor query(Envelope envelope, String flag) {
+        int flagIndex = flag == null ? -1 : getColumn(valueColumns, flag);
+        int[][] selected = {new int[64]};
+        int[] count = {0};
+        store.query(envelope, row -> {
+            if (flagIndex < 0 || store.isTrue(row, flagIndex)) {
+                if (count[0] == selected[0].length) {
+                    selected[0] = Arrays.copyOf(selected[0], count[0] * 2);
+                }
+                selected[0][count[0]++] = row;
+            }
+        });
+        Arrays.sort(selected[0], 0, count[0]);
+        return new StoreCursor(selected[0], count[0]);
+    }
+
+    /**
+     * Cursor on the selected rows
+     */
+    private final class StoreCursor implements IFeatureCursor {
+
+        private final int[] selected;
+        private final int count;
+        private int position = -1;
+        private volatile boolean cancelled = false;
+
+        StoreCursor(int[] selected, int count) {
+            this.selected = selected;
+            this.count = count;
+        }
+
+        @Override
+        public boolean next() {
+            return !cancelled && ++position < count;
+        }
+
+        @Override
+        public Object getObject(String column, Class type) {
+            return store.getValue(selected[position], getColumn(valueColumns, column));
+        }
+
+        @Override
+        public Geometry getGeometry(String column) {
+            return store.getGeometry(selected[position], getColumn(geometryColumns, column));
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -39,26 +39,42 @@ import org.orbisgis.orbismap.map.renderer.featureStyle.symbolizer.AreaSymbolizer
 import java.awt.Graphics2D;
 import java.awt.Shape;
 import java.awt.image.BufferedImage;
+import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import net.sf.jsqlparser.JSQLParserException;
+import javax.sql.DataSource;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.TopologyException;
 import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.utils.progress.DeadlineProgressMonitor;
+import org.orbisgis.orbismap.map.renderer.featureStyle.CompiledStyle.CompiledRule;
+import org.orbisgis.orbismap.map.renderer.featureStyle.RenderStatistics.QueryStatistics;
+import org.orbisgis.orbismap.map.renderer.featureStyle.RenderStatistics.RuleStatistics;
+import org.orbisgis.orbismap.map.renderer.featureStyle.RenderStatistics.SymbolizerStatistics;
+import org.orbisgis.orbismap.map.renderer.jfr.FeatureBatchPaintEvent;
+import org.orbisgis.orbismap.map.renderer.jfr.LayerRenderEvent;
+import org.orbisgis.orbismap.map.renderer.jfr.RenderEvents;
+import org.orbisgis.orbismap.map.renderer.jfr.RuleQueryEvent;
+import org.orbisgis.orbismap.map.renderer.jfr.SymbolLevelCompositeEvent;
 import org.orbisgis.orbismap.map.renderer.featureStyle.symbolizer.PointSymbolizerDrawer;
 import org.orbisgis.orbismap.map.renderer.featureStyle.symbolizer.TextSymbolizerDrawer;
 import org.orbisgis.orbismap.style.Feature2DStyle;
-import org.orbisgis.orbismap.style.Feature2DRule;
 import org.orbisgis.orbismap.map.api.IProgressMonitor;
-import org.orbisgis.orbismap.map.renderer.featureStyle.utils.ExpressionParser;
 import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
 import org.orbisgis.orbismap.style.symbolizer.AreaSymbolizer;
 import org.orbisgis.orbismap.style.IFeatureSymbolizer;
@@ -68,8 +84,6 @@ import org.orbisgis.orbismap.style.symbolizer.TextSymbolizer;
 import org.orbisgis.orbismap.style.parameter.ParameterException;
 import org.orbisgis.orbismap.style.parameter.Expression;
 import org.orbisgis.orbismap.style.utils.UomUtils;
-import org.orbisgis.orbismap.style.visitor.GeometryParameterVisitor;
-import org.orbisgis.orbismap.style.visitor.ParameterValueVisitor;
 
 /**
  *
@@ -78,25 +92,304 @@ import org.orbisgis.orbismap.style.visitor.ParameterValueVisitor;
 public class FeatureStyleRenderer {
 
     private final Feature2DStyle fs;
+    private Object compositeLock = this;
+    private boolean fusedScan = false;
+    private CompiledStyle compiledStyle;
+    private boolean pipelined = false;
+    private CursorOptions cursorOptions;
+    private boolean serverSideGeneralization = false;
+    private SymbolLevelBufferPool bufferPool = SymbolLevelBufferPool.getDefault();
+    private ExecutorService workerPool = PipelinedScan.getDefaultWorkers();
+    private boolean directRendering = false;
+    private int cancelCheckInterval = DEFAULT_CANCEL_CHECK_INTERVAL;
+    private RenderMetricsSink metricsSink;
+    private FeatureCache featureCache;
+
+    /**
+     * Default number of rows read between two checks of the cancellation
+     */
+    public static final int DEFAULT_CANCEL_CHECK_INTERVAL = 64;
+    private NavigableMap<Double, ISpatialTable> overviews = Collections.emptyNavigableMap();
+
+    /**
+     * Margin in pixels added around the extent to clip the geometries in the
+     * database, so the borders created by the clipping are not visible.
+     */
+    static final int CLIP_MARGIN = 4;
+
+    /**
+     * The data sources already checked by {@link #isPostGIS()}
+     */
+    private static final Map<DataSource, Boolean> POSTGIS_SOURCES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Tolerance in pixels used to simplify the geometries in the database
+     */
+    static final double SIMPLIFICATION_TOLERANCE = 0.5;
 
     public FeatureStyleRenderer(Feature2DStyle fs) {
         this.fs = fs;
     }
 
-    public ParameterValueVisitor prepareSymbolizerExpression(Feature2DRule rule) {
-        ParameterValueVisitor pvv = new ParameterValueVisitor();
-        pvv.visitSymbolizerNode(rule);
-        return pvv;
+    /**
+     * Set the object used to synchronize the drawing of the symbol level
+     * images on the target Graphics2D. The renderers that draw on the same
+     * image from several threads must share the same lock.
+     *
+     * @param compositeLock
+     */
+    public void setCompositeLock(Object compositeLock) {
+        this.compositeLock = compositeLock;
     }
 
     /**
-     * Format rule filter expression
+     * Set the render plan of the style. It is compiled again if the style
+     * has been mutated or if the table has other geometry columns.
      *
-     * @param rule
-     * @throws JSQLParserException
+     * @param compiledStyle
+     */
+    public void setCompiledStyle(CompiledStyle compiledStyle) {
+        this.compiledStyle = compiledStyle;
+    }
+
+    /**
+     * Return the render plan of the style for the geometry columns of a table,
+     * compile it if needed.
+     *
+     * @param geometryColumns
+     * @return
+     * @throws Exception
+     */
+    public CompiledStyle getCompiledStyle(List<String> geometryColumns) throws Exception {
+        CompiledStyle plan = compiledStyle;
+        if (plan == null || !plan.isValid(fs, geometryColumns)) {
+            plan = CompiledStyle.compile(fs, geometryColumns);
+            compiledStyle = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * When true, all the rules of the style are drawn from a single query.
+     *
+     * @return
+     */
+    public boolean isFusedScan() {
+        return fusedScan;
+    }
+
+    /**
+     * Read the table once for all the rules of the style instead of once per
+     * rule. The query selects the geometries and the expressions of all the
+     * rules plus one boolean column per rule filter. The rules are still drawn
+     * in the same order.
+     *
+     * @param fusedScan
+     */
+    public void setFusedScan(boolean fusedScan) {
+        this.fusedScan = fusedScan;
+    }
+
+    public CursorOptions getCursorOptions() {
+        return cursorOptions;
+    }
+
+    /**
+     * Set the options used to read the rows with JDBC
+     *
+     * @param cursorOptions
+     */
+    public void setCursorOptions(CursorOptions cursorOptions) {
+        this.cursorOptions = cursorOptions;
+    }
+
+    public boolean isServerSideGeneralization() {
+        return serverSideGeneralization;
+    }
+
+    /**
+     * Clip the geometries with the extent of the map and simplify them at the
+     * size of a pixel in the query, so the database returns only the vertices
+     * that can be seen. The geometries are clipped in the query with
+     * ST_ClipByBox2D on PostGIS only, the other databases have no box clipping
+     * that accepts the invalid geometries so the renderer clips them. PostGIS
+     * is detected once per data source of the cursor options.
+     *
+     * @param serverSideGeneralization
+     */
+    public void setServerSideGeneralization(boolean serverSideGeneralization) {
+        this.serverSideGeneralization = serverSideGeneralization;
+    }
+
+    public FeatureCache getFeatureCache() {
+        return featureCache;
+    }
+
+    /**
+     * Set the cache used to read the rows of the table from memory, null to
+     * read them from the database at each drawing. The cache is not used when
+     * an overview is drawn. The server side generalization is disabled while
+     * a cache is set because the cache keeps the full geometries.
+     *
+     * @param featureCache
+     */
+    public void setFeatureCache(FeatureCache featureCache) {
+        this.featureCache = featureCache;
+    }
+
+    /**
+     * @return true if the geometries are clipped and simplified in the query
+     */
+    private boolean isGeneralizedInQuery() {
+        return serverSideGeneralization && featureCache == null;
+    }
+
+    /**
+     * @return true if the geometries are clipped in the query
+     * @throws SQLException
+     */
+    private boolean isClippedInQuery() throws SQLException {
+        return isGeneralizedInQuery() && isPostGIS();
+    }
+
+    public int getCancelCheckInterval() {
+        return cancelCheckInterval;
+    }
+
+    /**
+     * Set the number of rows read between two checks of the progress monitor.
+     * When the monitor is cancelled, the query is cancelled in the database
+     * and what has been drawn is kept.
+     *
+     * @param cancelCheckInterval
+     * @see org.orbisgis.orbismap.map.utils.progress.DeadlineProgressMonitor
+     */
+    public void setCancelCheckInterval(int cancelCheckInterval) {
+        if (cancelCheckInterval < 1) {
+            throw new IllegalArgumentException("The cancel check interval must be greater than 0");
+        }
+        this.cancelCheckInterval = cancelCheckInterval;
+    }
+
+    public boolean isDirectRendering() {
+        return directRendering;
+    }
+
+    /**
+     * Draw the rules that have a single symbol level straight on the target,
+     * without an intermediate image. The images of the symbol levels are only
+     * needed to reorder the symbolizers. The rules of a fused scan are always
+     * drawn in images, to keep the order of the rules. The painter of a
+     * pipelined scan draws on the target under the composite lock. Drawn
+     * directly, the rows appear in the intermediate frames of a map while the
+     * rule is drawn. False by default : the
+     * antialiased pixels are rounded differently than when an image is
+     * composited, and the tiles drawn in parallel on the same target must be
+     * composited under the composite lock.
+     *
+     * @param directRendering
+     */
+    public void setDirectRendering(boolean directRendering) {
+        this.directRendering = directRendering;
+    }
+
+    public RenderMetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    /**
+     * Set the sink that receives the measures of each drawing, null for none
+     *
+     * @param metricsSink
+     */
+    public void setMetricsSink(RenderMetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    public SymbolLevelBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Set the pool of the images used to draw the symbol levels. The renderers
+     * share the same pool by default.
+     *
+     * @param bufferPool
+     */
+    public void setBufferPool(SymbolLevelBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public ExecutorService getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Set the pool of threads that build the shapes of a pipelined scan. The
+     * renderers share a pool of one thread per processor by default. The pool
+     * is not shut down by the renderer.
+     *
+     * @param workerPool the pool, null to use the shared pool
+     */
+    public void setWorkerPool(ExecutorService workerPool) {
+        this.workerPool = workerPool == null ? PipelinedScan.getDefaultWorkers() : workerPool;
+    }
+
+    public NavigableMap<Double, ISpatialTable> getOverviews() {
+        return overviews;
+    }
+
+    /**
+     * Set the overview tables of the table, by scale denominator. The table
+     * drawn is the overview with the greatest scale denominator lower than or
+     * equal to the scale denominator of the map, the full table otherwise.
+     *
+     * @param overviews
+     * @see org.orbisgis.orbismap.map.layerModel.OverviewBuilder
+     */
+    public void setOverviews(NavigableMap<Double, ISpatialTable> overviews) {
+        this.overviews = overviews == null ? Collections.emptyNavigableMap() : overviews;
+    }
+
+    /**
+     * Return the table to draw at the scale of the map
+     *
+     * @param spatialTable the full table
+     * @param mt
+     * @return
+     */
+    public ISpatialTable getSpatialTable(ISpatialTable spatialTable, MapTransform mt) {
+        return getSpatialTable(overviews, spatialTable, mt);
+    }
+
+    /**
+     * Return the table to draw at the scale of the map
+     *
+     * @param overviews the overview tables by scale denominator
+     * @param spatialTable the full table
+     * @param mt
+     * @return
+     */
+    public static ISpatialTable getSpatialTable(NavigableMap<Double, ISpatialTable> overviews, ISpatialTable spatialTable,
+            MapTransform mt) {
+        Map.Entry<Double, ISpatialTable> overview = overviews.floorEntry(mt.getScaleDenominator());
+        return overview == null ? spatialTable : overview.getValue();
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Overlap the reading of the rows, the building of the shapes and the
+     * painting. A reader thread reads the rows, a pool of workers clips the
+     * geometries and builds the shapes and one painter thread per symbol level
+     * image draws them, in the order of the rows.
+     *
+     * @param pipelined
      */
-    public void formatRuleExpression(Feature2DRule rule) throws JSQLParserException {
-        rule.setFilter(ExpressionParser.formatConditionalExpression(rule.getFilter()));
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
     }
 
     //TODO : Add a short circuit method to not iterate the symbolizer when some requiered elements are null
@@ -106,174 +399,653 @@ public class FeatureStyleRenderer {
      * @param mt
      * @param g2
      * @param pm
+     * @return the measures taken while the layer was drawn
+     * @throws Exception
+     */
+    public RenderStatistics draw(ISpatialTable spatialTable, MapTransform mt, Graphics2D g2, IProgressMonitor pm) throws Exception {
+        return draw(spatialTable.getName(), spatialTable, null, null, mt, g2, pm);
+    }
+
+    /**
+     * Draw rows kept outside of the database. The index contains the columns
+     * of the fused query of the style compiled for the geometry columns. The
+     * geometries are clipped and generalized by the renderer.
+     *
+     * @param layerName the name of the layer in the statistics
+     * @param geometryColumns the geometry columns of the table the rows come
+     * from
+     * @param features the rows
+     * @param mt
+     * @param g2
+     * @param pm
+     * @return the measures taken while the layer was drawn
+     * @throws Exception
+     */
+    public RenderStatistics draw(String layerName, List<String> geometryColumns, IFeatureIndex features, MapTransform mt,
+            Graphics2D g2, IProgressMonitor pm) throws Exception {
+        return draw(layerName, null, geometryColumns, features, mt, g2, pm);
+    }
+
+    /**
+     * Draw a table or an index and measure it
+     *
+     * @param layerName
+     * @param spatialTable the table, null to draw the index
+     * @param geometryColumns the geometry columns of the index
+     * @param features the index
+     * @param mt
+     * @param g2
+     * @param pm
+     * @return
+     * @throws Exception
+     */
+    private RenderStatistics draw(String layerName, ISpatialTable spatialTable, List<String> geometryColumns,
+            IFeatureIndex features, MapTransform mt, Graphics2D g2, IProgressMonitor pm) throws Exception {
+        long start = System.nanoTime();
+        LayerRenderEvent layerEvent = RenderEvents.AVAILABLE ? LayerRenderEvent.start() : null;
+        RenderStatistics statistics = new RenderStatistics(layerName);
+        try {
+            if (spatialTable != null) {
+                drawRules(spatialTable, mt, g2, statistics, pm);
+            } else {
+                drawRules(getCompiledStyle(geometryColumns), UnaryOperator.identity(), null, features, mt, g2, statistics, pm);
+            }
+        } finally {
+            statistics.setElapsedNanos(System.nanoTime() - start);
+            if (layerEvent != null) {
+                boolean partial = pm instanceof DeadlineProgressMonitor && ((DeadlineProgressMonitor) pm).isStopped();
+                layerEvent.finish(statistics.getLayerName(), mt.getAdjustedExtent(), mt.getScaleDenominator(),
+                        statistics.getQueries().getRowsFetched(), partial);
+            }
+        }
+        if (metricsSink != null) {
+            metricsSink.publish(statistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * Draw the rules of the style
+     *
+     * @param spatialTable
+     * @param mt
+     * @param g2
+     * @param statistics
+     * @param pm
+     * @throws Exception
+     */
+    private void drawRules(ISpatialTable spatialTable, MapTransform mt, Graphics2D g2, RenderStatistics statistics, IProgressMonitor pm) throws Exception {
+        ISpatialTable tableToDraw = getSpatialTable(spatialTable, mt);
+        CompiledStyle plan = getCompiledStyle(tableToDraw.getGeometricColumns());
+        UnaryOperator<String> geometryFunction = getGeometryFunction(mt);
+        IFeatureIndex cachedFeatures = tableToDraw == spatialTable ? getCachedFeatures(spatialTable, plan, pm) : null;
+        drawRules(plan, geometryFunction, tableToDraw, cachedFeatures, mt, g2, statistics, pm);
+    }
+
+    /**
+     * Draw the rules of a compiled style
+     *
+     * @param plan
+     * @param geometryFunction the function applied to the geometries in the
+     * query
+     * @param spatialTable the table to query
+     * @param features the rows kept outside of the database, null to query
+     * the table
+     * @param mt
+     * @param g2
+     * @param statistics
+     * @param pm
+     * @throws Exception
+     */
+    private void drawRules(CompiledStyle plan, UnaryOperator<String> geometryFunction, ISpatialTable spatialTable,
+            IFeatureIndex features, MapTransform mt, Graphics2D g2, RenderStatistics statistics, IProgressMonitor pm) throws Exception {
+        boolean clipGeometries = features != null || !isClippedInQuery();
+        if (fusedScan) {
+            drawFused(plan, geometryFunction, spatialTable, features, clipGeometries, mt, g2, statistics, pm);
+            return;
+        }
+        for (CompiledRule rule : plan.getRules()) {
+            if (pm.isCancelled()) {
+                return;
+            }
+            if (rule.getRule().isDomainAllowed(mt.getScaleDenominator()) && !rule.getSelect().isEmpty()) {
+                RuleStatistics ruleStatistics = statistics.getRule(rule.getRule());
+                QueryStatistics query = new QueryStatistics();
+                long queryStart = System.nanoTime();
+                //Manage rule expression
+                String ruleFilter = rule.getFilter();
+                if (!ruleFilter.isEmpty()) {
+                    ruleFilter = "(" + ruleFilter + ") and ";
+                }
+                ruleFilter += getSpatialFilter(mt, rule.getSpatialColumns());
+
+                //This map is populated from the data
+                TreeMap<Integer, GraphicElements> levels = new TreeMap<>();
+                Graphics2D directG2 = null;
+                if (directRendering && rule.isSingleLevel()) {
+                    directG2 = (Graphics2D) g2.create();
+                    directG2.addRenderingHints(mt.getRenderingHints());
+                }
+                Map<IFeatureSymbolizer, ISymbolizerDraw> symbolizersToDraw = prepareSymbolizers(rule.getSymbolizersByLevel(), mt, levels, directG2);
+                RuleQueryEvent queryEvent = RenderEvents.AVAILABLE ? RuleQueryEvent.start() : null;
+                try {
+                    try (IFeatureCursor cursor = features != null ? features.query(mt.getAdjustedExtent(), rule.getFlag())
+                            : openCursor(spatialTable, rule.getSelect(geometryFunction), ruleFilter, pm)) {
+                        query.queryOpened(System.nanoTime() - queryStart);
+                        scan(cursor, mt, Collections.singletonList(rule), Collections.singletonList(symbolizersToDraw),
+                                Collections.singletonList(ruleStatistics), query, rule.getExpressions(), false, clipGeometries,
+                                directG2 != null ? compositeLock : null, statistics.getLayerName(), pm);
+                    } catch (SQLException ex) {
+                        checkCancelled(ex, pm);
+                    }
+                    if (queryEvent != null) {
+                        queryEvent.finish(statistics.getLayerName(), ruleStatistics.getName(), mt.getAdjustedExtent(), query.getRowsFetched());
+                    }
+                    disposeSymbolizers(levels, g2, statistics.getLayerName(), ruleStatistics.getName());
+                } finally {
+                    ruleStatistics.getQueries().merge(query);
+                    statistics.getQueries().merge(query);
+                    releaseLevels(levels);
+                    if (directG2 != null) {
+                        directG2.dispose();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw all the rules of the style from one query.
+     *
+     * @param plan
+     * @param geometryFunction the function applied to the geometries in the
+     * query
+     * @param spatialTable
+     * @param features the rows kept outside of the database, null to query
+     * the table
+     * @param clipGeometries true if the geometries are clipped and
+     * generalized by the renderer
+     * @param mt
+     * @param g2
+     * @param statistics
+     * @param pm
      * @throws Exception
      */
-    public void draw(ISpatialTable spatialTable, MapTransform mt, Graphics2D g2, IProgressMonitor pm) throws Exception {
-        List<String> geometryColumns = spatialTable.getGeometricColumns();
-        for (Feature2DRule rule : fs.getRules()) {
-            if (rule.isDomainAllowed(mt.getScaleDenominator())) {
-                formatRuleExpression(rule);
-                ParameterValueVisitor expressionParameters = prepareSymbolizerExpression(rule);
-                String allExpressions = expressionParameters.getExpressionParametersAsString();
-                List<IFeatureSymbolizer> sl = rule.getSymbolizers();
-                GeometryParameterVisitor gp = new GeometryParameterVisitor(sl, geometryColumns);
-                gp.visit();
-                String selectGeometry = gp.getResultAsString();
-                String query = "";
-                if (!selectGeometry.isEmpty() && !allExpressions.isEmpty()) {
-                    query = selectGeometry + "," + allExpressions;
-                } else if (!selectGeometry.isEmpty()) {
-                    query = selectGeometry;
+    private void drawFused(CompiledStyle plan, UnaryOperator<String> geometryFunction, ISpatialTable spatialTable,
+            IFeatureIndex features, boolean clipGeometries, MapTransform mt, Graphics2D g2,
+            RenderStatistics statistics, IProgressMonitor pm) throws Exception {
+        if (plan.getSelect().isEmpty()) {
+            return;
+        }
+        long queryStart = System.nanoTime();
+        List<CompiledRule> rules = new ArrayList<>();
+        List<String> ruleFilters = new ArrayList<>();
+        for (CompiledRule rule : plan.getRules()) {
+            if (rule.getRule().isDomainAllowed(mt.getScaleDenominator()) && !rule.getSelect().isEmpty()) {
+                rules.add(rule);
+                if (!rule.getFilter().isEmpty()) {
+                    ruleFilters.add("(" + rule.getFilter() + ")");
                 }
-                if (!query.isEmpty()) {
-                    //Manage rule expression
-                    //To build the where query we must find the name of the column                                        
-                    StringBuilder geofilter = new StringBuilder();
-                    geofilter.append("'").append(MapTransform.getGeometryFactory().toGeometry(mt.getAdjustedExtent()).toText()).append("' :: GEOMETRY && ");
-                    String geomFilter = geofilter.toString();
+            }
+        }
+        if (rules.isEmpty() || pm.isCancelled()) {
+            return;
+        }
+        String where = getSpatialFilter(mt, plan.getSpatialColumns());
+        //Don't read the rows that are not drawn by any rule
+        if (ruleFilters.size() == rules.size()) {
+            where += " and (" + String.join(" or ", ruleFilters) + ")";
+        }
+        List<Map<IFeatureSymbolizer, ISymbolizerDraw>> rulesToDraw = new ArrayList<>();
+        List<TreeMap<Integer, GraphicElements>> rulesLevels = new ArrayList<>();
+        List<RuleStatistics> rulesStatistics = new ArrayList<>();
+        for (CompiledRule rule : rules) {
+            TreeMap<Integer, GraphicElements> levels = new TreeMap<>();
+            rulesToDraw.add(prepareSymbolizers(rule.getSymbolizersByLevel(), mt, levels, null));
+            rulesLevels.add(levels);
+            rulesStatistics.add(statistics.getRule(rule.getRule()));
+        }
+        RuleQueryEvent queryEvent = RenderEvents.AVAILABLE ? RuleQueryEvent.start() : null;
+        try {
+            try (IFeatureCursor cursor = features != null ? features.query(mt.getAdjustedExtent(), null)
+                    : openCursor(spatialTable, plan.getSelect(geometryFunction, (columns) -> getSpatialFilter(mt, columns)), where, pm)) {
+                //The query is shared by the rules, it is only measured for the layer
+                statistics.getQueries().queryOpened(System.nanoTime() - queryStart);
+                scan(cursor, mt, rules, rulesToDraw, rulesStatistics, statistics.getQueries(), plan.getExpressions(), true,
+                        clipGeometries, null, statistics.getLayerName(), pm);
+            } catch (SQLException ex) {
+                checkCancelled(ex, pm);
+            }
+            if (queryEvent != null) {
+                queryEvent.finish(statistics.getLayerName(), "", mt.getAdjustedExtent(), statistics.getQueries().getRowsFetched());
+            }
+            //Keep the order of the rules
+            for (int i = 0; i < rulesLevels.size(); i++) {
+                disposeSymbolizers(rulesLevels.get(i), g2, statistics.getLayerName(), rulesStatistics.get(i).getName());
+            }
+        } finally {
+            for (TreeMap<Integer, GraphicElements> levels : rulesLevels) {
+                releaseLevels(levels);
+            }
+        }
+    }
+
+    /**
+     * Build the function applied to the geometry expressions of the queries
+     *
+     * @param mt
+     * @return
+     * @throws SQLException
+     */
+    private UnaryOperator<String> getGeometryFunction(MapTransform mt) throws SQLException {
+        if (!isGeneralizedInQuery()) {
+            return UnaryOperator.identity();
+        }
+        double pixelSize = mt.getAdjustedExtent().getWidth() / mt.getWidth();
+        double tolerance = SIMPLIFICATION_TOLERANCE * pixelSize;
+        if (!isPostGIS()) {
+            //ST_Intersection throws on an invalid geometry and fails the whole query
+            return (geometry) -> "ST_SimplifyPreserveTopology(" + geometry + ", " + tolerance + ")";
+        }
+        Envelope clipEnvelope = new Envelope(mt.getAdjustedExtent());
+        clipEnvelope.expandBy(CLIP_MARGIN * pixelSize);
+        String box = clipEnvelope.getMinX() + ", " + clipEnvelope.getMinY() + ", "
+                + clipEnvelope.getMaxX() + ", " + clipEnvelope.getMaxY();
+        return (geometry) -> "ST_SimplifyPreserveTopology(ST_ClipByBox2D(" + geometry
+                + ", ST_MakeEnvelope(" + box + ")), " + tolerance + ")";
+    }
+
+    /**
+     * Return the rows of the table kept in the feature cache, loading them
+     * when needed
+     *
+     * @param spatialTable
+     * @param plan
+     * @param pm
+     * @return the rows or null to query the table
+     * @throws Exception
+     */
+    private IFeatureIndex getCachedFeatures(ISpatialTable spatialTable, CompiledStyle plan, IProgressMonitor pm) throws Exception {
+        FeatureCache cache = featureCache;
+        if (cache == null || plan.getSelect().isEmpty()) {
+            return null;
+        }
+        try {
+            return cache.get(spatialTable, plan, cursorOptions, (select, where) -> openCursor(spatialTable, select, where, pm), pm);
+        } catch (SQLException ex) {
+            checkCancelled(ex, pm);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the rows are read from a PostGIS database
+     * @throws SQLException
+     */
+    private boolean isPostGIS() throws SQLException {
+        CursorOptions options = cursorOptions;
+        DataSource dataSource = options == null ? null : options.getDataSource();
+        if (dataSource == null) {
+            return false;
+        }
+        Boolean postGIS = POSTGIS_SOURCES.get(dataSource);
+        if (postGIS == null) {
+            try (Connection connection = dataSource.getConnection()) {
+                postGIS = connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres");
+            }
+            POSTGIS_SOURCES.put(dataSource, postGIS);
+        }
+        return postGIS;
+    }
 
-                    String spatialWherefilter = gp.getGeometryColumns().stream()
-                            .map(entry -> geomFilter + " " + entry)
-                            .collect(Collectors.joining(" and "));
+    /**
+     * Execute a query on the table
+     *
+     * @param spatialTable
+     * @param select the columns
+     * @param where the filter
+     * @return
+     * @throws Exception
+     */
+    private IFeatureCursor openCursor(ISpatialTable spatialTable, String select, String where, IProgressMonitor pm) throws Exception {
+        int queryTimeout = 0;
+        if (pm instanceof DeadlineProgressMonitor && ((DeadlineProgressMonitor) pm).hasDeadline()) {
+            //The JDBC timeout is in seconds
+            queryTimeout = (int) Math.max(1, (((DeadlineProgressMonitor) pm).getRemainingMillis() + 999) / 1000);
+        }
+        return openCursor(cursorOptions, spatialTable, select, where, queryTimeout);
+    }
 
-                    String ruleFilter = rule.getFilter().getExpression();
+    /**
+     * Execute a query on the table, with a JDBC cursor if the options have a
+     * data source
+     *
+     * @param options the options of the JDBC cursor, can be null
+     * @param spatialTable
+     * @param select the columns
+     * @param where the filter
+     * @param queryTimeout the timeout of the JDBC query in seconds, 0 for no
+     * limit
+     * @return
+     * @throws Exception
+     */
+    static IFeatureCursor openCursor(CursorOptions options, ISpatialTable spatialTable, String select, String where,
+            int queryTimeout) throws Exception {
+        if (options != null && options.getDataSource() != null) {
+            return JdbcCursor.open(options, "SELECT " + select + " FROM " + spatialTable.getName() + " WHERE " + where, queryTimeout);
+        }
+        return new SpatialTableCursor(spatialTable.columns(select).filter(where));
+    }
 
-                    if (!ruleFilter.isEmpty()) {
-                        ruleFilter += " and ";
+    /**
+     * Read the rows of the query and draw them with the symbolizers of the
+     * rules.
+     *
+     * @param sp the query
+     * @param mt
+     * @param rules
+     * @param rulesToDraw the drawers of each rule
+     * @param rulesStatistics the measures of each rule
+     * @param query the measures of the query
+     * @param expressions the expressions to read
+     * @param useFlags true to draw a rule only when the value of its filter
+     * column is true
+     * @param clipGeometries true if the geometries are clipped and
+     * generalized by the renderer
+     * @param paintLock the lock held to paint on the target, null when the
+     * rows are drawn in the images of the symbol levels
+     * @param layerName the name of the layer in the events
+     * @param pm
+     * @throws Exception
+     */
+    private void scan(IFeatureCursor sp, MapTransform mt, List<CompiledRule> rules, List<Map<IFeatureSymbolizer, ISymbolizerDraw>> rulesToDraw,
+            List<RuleStatistics> rulesStatistics, QueryStatistics query, List<Expression> expressions, boolean useFlags,
+            boolean clipGeometries, Object paintLock, String layerName, IProgressMonitor pm) throws Exception {
+        if (pipelined) {
+            new PipelinedScan(sp, mt, rules, rulesToDraw, rulesStatistics, query, expressions, useFlags, clipGeometries,
+                    cancelCheckInterval, layerName, workerPool, paintLock).run(pm);
+            return;
+        }
+        String ruleName = rulesStatistics.size() == 1 ? rulesStatistics.get(0).getName() : "";
+        FeatureBatchPaintEvent batchEvent = RenderEvents.AVAILABLE ? FeatureBatchPaintEvent.start() : null;
+        long count = 0;
+        try {
+            while (sp.next()) {
+                query.rowFetched();
+                if (++count % cancelCheckInterval == 0) {
+                    if (batchEvent != null) {
+                        batchEvent.finish(layerName, ruleName, cancelCheckInterval);
+                        batchEvent = FeatureBatchPaintEvent.start();
                     }
-                    ruleFilter += spatialWherefilter;
-
-                    ISpatialTable spatialTableQuery =  spatialTable.columns(query).filter(ruleFilter);
-
-                    //This map is populated from the data
-                    Map<IFeatureSymbolizer, ISymbolizerDraw> symbolizersToDraw = prepareSymbolizers(sl, mt);
-                    while (spatialTableQuery.next()) {
-                        Map<String, Shape> shapes = new HashMap<>();
-                        Shape currentShape = null;
-                        Geometry geomReduced = null;
-                        //Populate expressions here
-                        populateExpressions(spatialTableQuery, mt, expressionParameters.getExpressionsProperties());
-                        for (Map.Entry<IFeatureSymbolizer, ISymbolizerDraw> symbolizers : symbolizersToDraw.entrySet()) {
-                            try {
-                                //Set the shape to the symbolizer to draw
-                                //Geometry identifier
-                                IFeatureSymbolizer featureSymbolizer = symbolizers.getKey();
-                                String geomIdentifier = featureSymbolizer.getGeometryParameter().getIdentifier();
-                                String geomMapKey = geomIdentifier;
-                                //Because we transform the shape into a set of points
-                                if (featureSymbolizer instanceof PointSymbolizer) {
-                                    geomMapKey = geomIdentifier + "_points";
-                                }
-                                //Perpendicular offset workarround
-                                float offsetInPixel = 0.0f;
-                                Double poffset = (Double) featureSymbolizer.getPerpendicularOffset().getValue();
-                                if (poffset != null) {
-                                    offsetInPixel = UomUtils.toPixel(poffset.floatValue(), featureSymbolizer.getUom(), mt.getDpi(), mt.getScaleDenominator());
-                                    if (Math.abs(offsetInPixel) > 0) {
-                                        geomMapKey = geomIdentifier + "_offset";
-                                    }
-                                }
-                                if (shapes.containsKey(geomMapKey)) {
-                                    currentShape = shapes.get(geomMapKey);
-                                } else {
-                                    //We have already the geom in memory
-                                    if (geomReduced == null) {
-                                        Geometry geom = spatialTableQuery.getGeometry(geomIdentifier);
-                                        geomReduced = geom;
-                                        try {
-                                            boolean overlaps = geom.overlaps(mt.getAdjustedExtentGeometry());
-                                            if (overlaps) {
-                                                geomReduced = geom.intersection(mt.getAdjustedExtentGeometry());
-                                            }
-                                        } catch (TopologyException e) {
-                                            //ST_MakeValid.validGeom(geom, true).intersection(adjustedExtentGeometry);
-                                        }
-                                    }
-                                    if (featureSymbolizer instanceof PointSymbolizer) {
-                                        PointSymbolizer ps = (PointSymbolizer) featureSymbolizer;
-                                        if (ps.isOnVertex()) {
-                                            currentShape = mt.getShapeAsPoints(geomReduced, false, false);
-                                        } else {
-                                            currentShape = mt.getShapeAsPoints(geomReduced, false, true);
-                                        }
-                                    } else {
-                                        if (Math.abs(offsetInPixel) > 0) {
-                                            currentShape = mt.getShape(geomReduced, true, offsetInPixel);
-                                        } else {
-                                            currentShape = mt.getShape(geomReduced, true);
-                                        }
-                                    }
-                                    shapes.put(geomMapKey, currentShape);
-                                }
-                                if (currentShape != null) {
-                                    ISymbolizerDraw symbolizerDraw = symbolizers.getValue();
-                                    symbolizerDraw.setShape(currentShape);
-                                    symbolizerDraw.draw(symbolizerDraw.getGraphics2D(), mt, featureSymbolizer);
-                                }
-                                currentShape = null;
-                            } catch (ParameterException ex) {
-                                Logger.getLogger(FeatureStyleRenderer.class.getName()).log(Level.SEVERE, null, ex);
-                            }
-                        }
+                    if (pm.isCancelled()) {
+                        //Free the database, what has been drawn is kept
+                        sp.cancel();
+                        return;
                     }
+                }
+                populateExpressions(sp, expressions);
+                //The shapes are shared by the rules
+                Map<String, Shape> shapes = new HashMap<>();
+                Map<String, Geometry> geometries = new HashMap<>();
+                for (int i = 0; i < rules.size(); i++) {
+                    if (!useFlags || isRuleMatched(sp, rules.get(i))) {
+                        rulesStatistics.get(i).rowDrawn();
+                        drawSymbolizers(sp, mt, rules.get(i), rulesToDraw.get(i), rulesStatistics.get(i), shapes, geometries,
+                                clipGeometries);
+                    }
+                }
+            }
+        } finally {
+            if (batchEvent != null) {
+                batchEvent.finish(layerName, ruleName, count % cancelCheckInterval);
+            }
+        }
+    }
+
+    /**
+     * Ignore the exception of a query that has been cancelled or has reached
+     * the deadline of the progress monitor
+     *
+     * @param ex
+     * @param pm
+     * @throws SQLException if the progress monitor is not cancelled
+     */
+    private static void checkCancelled(SQLException ex, IProgressMonitor pm) throws SQLException {
+        if (!pm.isCancelled()) {
+            throw ex;
+        }
+    }
+
+    /**
+     * Read the filter column of the rule in the fused query
+     *
+     * @param sp
+     * @param rule
+     * @return true if the current row must be drawn by the rule
+     * @throws Exception
+     */
+    static boolean isRuleMatched(IFeatureCursor sp, CompiledRule rule) throws Exception {
+        String flag = rule.getFlag();
+        return flag == null || Boolean.TRUE.equals(sp.getObject(flag, Boolean.class));
+    }
+
+    /**
+     * Build the filter that selects the rows of which one of the geometries is
+     * in the extent of the map
+     *
+     * @param mt
+     * @param geometryColumns
+     * @return
+     */
+    private String getSpatialFilter(MapTransform mt, Set<String> geometryColumns) {
+        //To build the where query we must find the name of the column
+        StringBuilder geofilter = new StringBuilder();
+        geofilter.append("'").append(MapTransform.getGeometryFactory().toGeometry(mt.getAdjustedExtent()).toText()).append("' :: GEOMETRY && ");
+        String geomFilter = geofilter.toString();
+        return geometryColumns.stream()
+                .map(entry -> geomFilter + " " + entry)
+                .collect(Collectors.joining(" or ", "(", ")"));
+    }
 
-                    //Draw the bufferedimages in the good order
-                    Comparator<Entry<IFeatureSymbolizer, ISymbolizerDraw>> symbolizerLevelComp = (o1, o2) -> {
-                        if (o1.getKey().getLevel() > o2.getKey().getLevel()) {
-                            return -1;
-                        } else if (o1.getKey().getLevel() < o2.getKey().getLevel()) {
-                            return 1;
-                        } else {
-                            return 0;
-                        }
-                    };
-
-                    //Sort the symbolizer to draw the image accoring the symbol level
-                    Map<IFeatureSymbolizer, ISymbolizerDraw> sortedSymbolizers
-                            = symbolizersToDraw.entrySet().stream().
-                                    sorted(symbolizerLevelComp.reversed()).
-                                    collect(Collectors.toMap(Entry::getKey, Entry::getValue,
-                                            (e1, e2) -> e1, LinkedHashMap::new));
-
-                    //Draw all buffered images
-                    sortedSymbolizers.values().forEach((symbolizerDraw) -> {
-                        symbolizerDraw.dispose(g2);
-                    });
+    /**
+     * Draw the current row with the symbolizers
+     *
+     * @param sp
+     * @param mt
+     * @param rule
+     * @param symbolizersToDraw
+     * @param ruleStatistics
+     * @param shapes the shapes of the row already computed
+     * @param geometries the geometries of the row already read and clipped
+     * @param clipGeometries true if the geometries are clipped and
+     * generalized by the renderer
+     * @throws Exception
+     */
+    private void drawSymbolizers(IFeatureCursor sp, MapTransform mt, CompiledRule rule, Map<IFeatureSymbolizer, ISymbolizerDraw> symbolizersToDraw,
+            RuleStatistics ruleStatistics, Map<String, Shape> shapes, Map<String, Geometry> geometries, boolean clipGeometries) throws Exception {
+        for (Map.Entry<IFeatureSymbolizer, ISymbolizerDraw> symbolizers : symbolizersToDraw.entrySet()) {
+            try {
+                IFeatureSymbolizer featureSymbolizer = symbolizers.getKey();
+                SymbolizerStatistics symbolizerStatistics = ruleStatistics.getSymbolizer(featureSymbolizer);
+                long shapeStart = System.nanoTime();
+                Shape currentShape = getShape(featureSymbolizer, rule.getGeometryIdentifier(featureSymbolizer), mt, shapes,
+                        geometries, sp, clipGeometries);
+                long paintStart = System.nanoTime();
+                symbolizerStatistics.addShape(paintStart - shapeStart);
+                if (currentShape != null) {
+                    ISymbolizerDraw symbolizerDraw = symbolizers.getValue();
+                    symbolizerDraw.setShape(currentShape);
+                    symbolizerDraw.draw(symbolizerDraw.getGraphics2D(), mt, featureSymbolizer);
+                    symbolizerStatistics.addPaint(System.nanoTime() - paintStart);
+                }
+            } catch (ParameterException ex) {
+                Logger.getLogger(FeatureStyleRenderer.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
 
+    /**
+     * Build the shape of the current row to draw with a symbolizer
+     *
+     * @param featureSymbolizer
+     * @param geomIdentifier the identifier of the geometry of the symbolizer
+     * in the query
+     * @param mt
+     * @param shapes the shapes of the row already computed
+     * @param geometries the geometries of the row already clipped
+     * @param sp the query used to read the geometries that are not in the
+     * geometries map
+     * @param clipGeometry true to cut the geometries read from the query with
+     * the extent of the map
+     * @return the shape or null if there is nothing to draw
+     * @throws Exception
+     */
+    static Shape getShape(IFeatureSymbolizer featureSymbolizer, String geomIdentifier, MapTransform mt, Map<String, Shape> shapes,
+            Map<String, Geometry> geometries, IFeatureCursor sp, boolean clipGeometry) throws Exception {
+        String geomMapKey = geomIdentifier;
+        //Because we transform the shape into a set of points
+        if (featureSymbolizer instanceof PointSymbolizer) {
+            geomMapKey = geomIdentifier + "_points_" + ((PointSymbolizer) featureSymbolizer).isOnVertex();
+        }
+        //Perpendicular offset workarround
+        float offsetInPixel = 0.0f;
+        Double poffset = (Double) featureSymbolizer.getPerpendicularOffset().getValue();
+        if (poffset != null) {
+            offsetInPixel = UomUtils.toPixel(poffset.floatValue(), featureSymbolizer.getUom(), mt.getDpi(), mt.getScaleDenominator());
+            if (Math.abs(offsetInPixel) > 0) {
+                geomMapKey = geomIdentifier + "_offset_" + offsetInPixel;
+            }
+        }
+        if (shapes.containsKey(geomMapKey)) {
+            return shapes.get(geomMapKey);
+        }
+        //We have already the geom in memory
+        Geometry geomReduced;
+        if (geometries.containsKey(geomIdentifier)) {
+            geomReduced = geometries.get(geomIdentifier);
+        } else {
+            geomReduced = sp.getGeometry(geomIdentifier);
+            if (clipGeometry) {
+                geomReduced = clip(geomReduced, mt);
+            }
+            geometries.put(geomIdentifier, geomReduced);
+        }
+        Shape currentShape = null;
+        if (geomReduced != null) {
+            if (featureSymbolizer instanceof PointSymbolizer) {
+                PointSymbolizer ps = (PointSymbolizer) featureSymbolizer;
+                if (ps.isOnVertex()) {
+                    currentShape = mt.getShapeAsPoints(geomReduced, false, false);
+                } else {
+                    currentShape = mt.getShapeAsPoints(geomReduced, false, true);
+                }
+            } else {
+                if (Math.abs(offsetInPixel) > 0) {
+                    currentShape = mt.getShape(geomReduced, true, offsetInPixel);
+                } else {
+                    currentShape = mt.getShape(geomReduced, true);
                 }
             }
         }
+        shapes.put(geomMapKey, currentShape);
+        return currentShape;
+    }
+
+    /**
+     * Cut the geometry with the extent of the map
+     *
+     * @param geom
+     * @param mt
+     * @return
+     */
+    static Geometry clip(Geometry geom, MapTransform mt) {
+        if (geom == null) {
+            return null;
+        }
+        Geometry geomReduced = geom;
+        try {
+            boolean overlaps = geom.overlaps(mt.getAdjustedExtentGeometry());
+            if (overlaps) {
+                geomReduced = geom.intersection(mt.getAdjustedExtentGeometry());
+            }
+        } catch (TopologyException e) {
+            //ST_MakeValid.validGeom(geom, true).intersection(adjustedExtentGeometry);
+        }
+        return geomReduced;
     }
 
     /**
-     * TODO : sort the IFeatureSymbolizer in this pass and set the good
-     * bufferedimage
+     * Draw the bufferedimages of the symbolizers on the target according the
+     * symbol level. Each level is drawn once, even when it is shared by
+     * several symbolizers.
      *
-     * @param sl
+     * @param levels the images of the rule by symbol level
+     * @param g2
+     * @param layerName the name of the layer in the events
+     * @param ruleName the name of the rule in the events
+     */
+    private void disposeSymbolizers(TreeMap<Integer, GraphicElements> levels, Graphics2D g2, String layerName, String ruleName) {
+        if (levels.isEmpty()) {
+            return;
+        }
+        SymbolLevelCompositeEvent compositeEvent = RenderEvents.AVAILABLE ? SymbolLevelCompositeEvent.start() : null;
+        //Draw all buffered images
+        synchronized (compositeLock) {
+            for (GraphicElements level : levels.values()) {
+                g2.drawImage(level.getImage(), 0, 0, null);
+            }
+        }
+        if (compositeEvent != null) {
+            BufferedImage image = levels.firstEntry().getValue().getImage();
+            compositeEvent.finish(layerName, ruleName, levels.size(), image.getWidth(), image.getHeight());
+        }
+    }
+
+    /**
+     * Give the images of the symbol levels back to the pool
+     *
+     * @param levels
+     */
+    private void releaseLevels(TreeMap<Integer, GraphicElements> levels) {
+        for (GraphicElements level : levels.values()) {
+            level.getG2().dispose();
+            bufferPool.release(level.getImage());
+        }
+        levels.clear();
+    }
+
+    /**
+     * Create the drawers of the symbolizers and the images of their symbol
+     * levels
+     *
+     * @param sl the symbolizers sorted by level
      * @param mt
+     * @param bufferedImages the images created for the symbol levels
+     * @param directG2 the graphics used by all the symbolizers instead of the
+     * images of the symbol levels, null to draw in the images
      * @return
      */
-    private Map<IFeatureSymbolizer, ISymbolizerDraw> prepareSymbolizers(List<IFeatureSymbolizer> sl, MapTransform mt) {
+    private Map<IFeatureSymbolizer, ISymbolizerDraw> prepareSymbolizers(List<IFeatureSymbolizer> sl, MapTransform mt,
+            Map<Integer, GraphicElements> bufferedImages, Graphics2D directG2) {
         Map<IFeatureSymbolizer, ISymbolizerDraw> symbolizerDrawer = new LinkedHashMap<>();
-        HashMap<Integer, GraphicElements> bufferedImages = new HashMap<>();
         for (int i = 0; i < sl.size(); i++) {
             IFeatureSymbolizer featureSymbolizer = sl.get(i);
             int level = featureSymbolizer.getLevel();
             if (featureSymbolizer instanceof AreaSymbolizer) {
                 AreaSymbolizerDrawer drawer = new AreaSymbolizerDrawer();
-                initDrawer(level, drawer, mt, bufferedImages);
+                initDrawer(level, drawer, mt, bufferedImages, directG2);
                 symbolizerDrawer.put(featureSymbolizer, drawer);
             } else if (featureSymbolizer instanceof LineSymbolizer) {
                 LineSymbolizerDrawer drawer = new LineSymbolizerDrawer();
-                initDrawer(level, drawer, mt, bufferedImages);
+                initDrawer(level, drawer, mt, bufferedImages, directG2);
                 symbolizerDrawer.put(featureSymbolizer, drawer);
             } else if (featureSymbolizer instanceof PointSymbolizer) {
                 PointSymbolizerDrawer drawer = new PointSymbolizerDrawer();
-                initDrawer(level, drawer, mt, bufferedImages);
+                initDrawer(level, drawer, mt, bufferedImages, directG2);
                 symbolizerDrawer.put(featureSymbolizer, drawer);
             } else if (featureSymbolizer instanceof TextSymbolizer) {
                 TextSymbolizerDrawer drawer = new TextSymbolizerDrawer();
-                initDrawer(level, drawer, mt, bufferedImages);
+                initDrawer(level, drawer, mt, bufferedImages, directG2);
                 symbolizerDrawer.put(featureSymbolizer, drawer);
             }
         }
@@ -306,13 +1078,15 @@ public class FeatureStyleRenderer {
      * @param drawer
      * @param mt
      */
-    private void initDrawer(int level, ISymbolizerDraw drawer, MapTransform mt, HashMap<Integer, GraphicElements> bufferedImages) {
+    private void initDrawer(int level, ISymbolizerDraw drawer, MapTransform mt, Map<Integer, GraphicElements> bufferedImages, Graphics2D directG2) {
         GraphicElements graphics = bufferedImages.get(level);
-        if (graphics != null) {
+        if (directG2 != null) {
+            drawer.setGraphics2D(directG2);
+        } else if (graphics != null) {
             drawer.setBufferedImage(graphics.getImage());
             drawer.setGraphics2D(graphics.getG2());
         } else {
-            BufferedImage bufferedImage = new BufferedImage(mt.getWidth(), mt.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            BufferedImage bufferedImage = bufferPool.acquire(mt.getWidth(), mt.getHeight(), BufferedImage.TYPE_INT_ARGB);
             Graphics2D sG2 = bufferedImage.createGraphics();
             sG2.addRenderingHints(mt.getRenderingHints());
             bufferedImages.put(level, new GraphicElements(sG2, bufferedImage));
@@ -324,16 +1098,12 @@ public class FeatureStyleRenderer {
     /**
      *
      * @param sp
-     * @param mt
-     * @param parameterValueIdentifiers
+     * @param expressions
      * @throws SQLException
      */
-    private void populateExpressions(ISpatialTable sp, MapTransform mt, Map<String, Expression> parameterValueIdentifiers) throws  Exception {
-        if (!parameterValueIdentifiers.isEmpty()) {
-            for (Map.Entry<String, Expression> entry : parameterValueIdentifiers.entrySet()) {
-                Expression exp = entry.getValue();
-                exp.setValue(sp.getObject(exp.getReference(), exp.getParameterDomain().getDataType()));
-            }
+    static void populateExpressions(IFeatureCursor sp, List<Expression> expressions) throws  Exception {
+        for (Expression exp : expressions) {
+            exp.setValue(sp.getObject(exp.getReference(), exp.getParameterDomain().getDataType()));
         }
     }
 
@@ -0,0 +1,84 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * Forward only access to the rows of a rule query.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public interface IFeatureCursor extends AutoCloseable {
+
+    /**
+     * Move to the next row
+     *
+     * @return false if there is no more row
+     * @throws Exception
+     */
+    boolean next() throws Exception;
+
+    /**
+     * Read a value of the current row
+     *
+     * @param column the name of the column
+     * @param type the expected type
+     * @return
+     * @throws Exception
+     */
+    Object getObject(String column, Class type) throws Exception;
+
+    /**
+     * Read a geometry of the current row
+     *
+     * @param column the name of the column
+     * @return
+     * @throws Exception
+     */
+    Geometry getGeometry(String column) throws Exception;
+
+    /**
+     * Cancel the query in the database, if it can be cancelled. The cursor
+     * must still be closed.
+     *
+     * @throws Exception
+     */
+    void cancel() throws Exception;
+
+    @Override
+    void close() throws Exception;
+}
@@ -0,0 +1,182 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBReader;
+
+/**
+ * Cursor that streams the rows of a query executed with JDBC. On H2 the lazy
+ * query execution is enabled while the cursor is open, otherwise the whole
+ * result is computed before the first row is returned.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+class JdbcCursor implements IFeatureCursor {
+
+    private final Connection connection;
+    private final boolean restoreAutoCommit;
+    private final boolean restoreLazyExecution;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final WKBReader wkbReader = new WKBReader();
+
+    private JdbcCursor(Connection connection, boolean restoreAutoCommit, boolean restoreLazyExecution,
+            PreparedStatement statement, ResultSet resultSet) {
+        this.connection = connection;
+        this.restoreAutoCommit = restoreAutoCommit;
+        this.restoreLazyExecution = restoreLazyExecution;
+        this.statement = statement;
+        this.resultSet = resultSet;
+    }
+
+    /**
+     * Execute the query on a new connection of the data source
+     *
+     * @param options
+     * @param query
+     * @param queryTimeout the number of seconds the query can run, 0 for no
+     * limit
+     * @return
+     * @throws SQLException
+     */
+    static JdbcCursor open(CursorOptions options, String query, int queryTimeout) throws SQLException {
+        Connection connection = options.getDataSource().getConnection();
+        boolean restoreAutoCommit = false;
+        boolean restoreLazyExecution = false;
+        try {
+            if (!options.isAutoCommit() && connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+                restoreAutoCommit = true;
+            }
+            restoreLazyExecution = setLazyExecution(connection, true);
+            PreparedStatement statement;
+            if (options.isForwardOnly()) {
+                statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            } else {
+                statement = connection.prepareStatement(query);
+            }
+            statement.setFetchSize(options.getFetchSize());
+            if (queryTimeout > 0) {
+                statement.setQueryTimeout(queryTimeout);
+            }
+            return new JdbcCursor(connection, restoreAutoCommit, restoreLazyExecution, statement, statement.executeQuery());
+        } catch (SQLException ex) {
+            try {
+                if (restoreLazyExecution) {
+                    setLazyExecution(connection, false);
+                }
+                if (restoreAutoCommit) {
+                    connection.setAutoCommit(true);
+                }
+            } finally {
+                connection.close();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Enable or disable the lazy query execution of an H2 session
+     *
+     * @param connection
+     * @param lazy
+     * @return true if the connection is an H2 connection
+     * @throws SQLException
+     */
+    private static boolean setLazyExecution(Connection connection, boolean lazy) throws SQLException {
+        if (!"H2".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName())) {
+            return false;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LAZY_QUERY_EXECUTION " + (lazy ? "TRUE" : "FALSE"));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        return resultSet.next();
+    }
+
+    @Override
+    public Object getObject(String column, Class type) throws SQLException {
+        if (type == null || Object.class.equals(type)) {
+            return resultSet.getObject(column);
+        }
+        return resultSet.getObject(column, type);
+    }
+
+    @Override
+    public Geometry getGeometry(String column) throws Exception {
+        Object value = resultSet.getObject(column);
+        if (value == null) {
+            return null;
+        } else if (value instanceof Geometry) {
+            return (Geometry) value;
+        } else if (value instanceof byte[]) {
+            return wkbReader.read((byte[]) value);
+        }
+        //PostGIS returns the geometries as hexadecimal EWKB
+        return wkbReader.read(WKBReader.hexToBytes(value.toString()));
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        statement.cancel();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            resultSet.close();
+            statement.close();
+            if (restoreLazyExecution) {
+                setLazyExecution(connection, false);
+            }
+            if (restoreAutoCommit) {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+}
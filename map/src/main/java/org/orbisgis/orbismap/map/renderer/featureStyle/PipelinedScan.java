@@ -0,0 +1,513 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.locationtech.jts.geom.Geometry;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.renderer.featureStyle.CompiledStyle.CompiledRule;
+import org.orbisgis.orbismap.map.renderer.featureStyle.RenderStatistics.QueryStatistics;
+import org.orbisgis.orbismap.map.renderer.featureStyle.RenderStatistics.RuleStatistics;
+import org.orbisgis.orbismap.map.renderer.featureStyle.RenderStatistics.SymbolizerStatistics;
+import org.orbisgis.orbismap.map.renderer.jfr.FeatureBatchPaintEvent;
+import org.orbisgis.orbismap.map.renderer.jfr.RenderEvents;
+import org.orbisgis.orbismap.style.IFeatureSymbolizer;
+import org.orbisgis.orbismap.style.parameter.Expression;
+import org.orbisgis.orbismap.style.parameter.ParameterException;
+
+/**
+ * Draw the rows of a query with three stages linked by bounded queues :
+ *
+ * - a reader thread reads the values and the geometries of the rows,
+ * - a pool of workers clips the geometries and builds the shapes,
+ * - one painter thread per symbol level image draws the shapes.
+ *
+ * The reader and the painters of a scan run on a pool of threads shared by the
+ * scans, which creates a thread only when none is idle, so the threads are
+ * reused across the rules and the layers. The pool of workers is shared by the
+ * scans, by default a pool of one thread per processor.
+ *
+ * The rows are painted in the order of the query so the images are the same
+ * as the ones drawn by a single thread. The calling thread dispatches the
+ * shapes to the painters and checks the progress monitor, so the intermediate
+ * frames of a map are published by the thread that owns the image.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+class PipelinedScan {
+
+    /**
+     * Number of rows that can wait between two stages
+     */
+    static final int QUEUE_SIZE = 256;
+
+    private static final Future<Feature> END_OF_ROWS = CompletableFuture.completedFuture(null);
+
+    private static final Feature END_OF_FEATURES = new Feature(null, null, null);
+
+    private final IFeatureCursor sp;
+    private final MapTransform mt;
+    private final List<CompiledRule> rules;
+    private final List<Map<IFeatureSymbolizer, ISymbolizerDraw>> rulesToDraw;
+    private final List<RuleStatistics> rulesStatistics;
+    private final QueryStatistics query;
+    private final List<Expression> expressions;
+    private final boolean useFlags;
+    private final boolean clipGeometries;
+    private final int cancelCheckInterval;
+    private final String layerName;
+    private final ExecutorService workers;
+    private final Object paintLock;
+
+    /**
+     *
+     * @param sp the query
+     * @param mt
+     * @param rules
+     * @param rulesToDraw the drawers of each rule
+     * @param rulesStatistics the measures of each rule
+     * @param query the measures of the query
+     * @param expressions the expressions to read
+     * @param useFlags true to draw a rule only when the value of its filter
+     * column is true
+     * @param clipGeometries true to cut the geometries with the extent of the
+     * map
+     * @param cancelCheckInterval the number of rows read between two checks of
+     * the progress monitor
+     * @param layerName the name of the layer in the events
+     * @param workers the pool that builds the shapes
+     * @param paintLock the lock held to paint on the target and to publish
+     * the frames, null when the rows are drawn in the images of the symbol
+     * levels
+     */
+    PipelinedScan(IFeatureCursor sp, MapTransform mt, List<CompiledRule> rules, List<Map<IFeatureSymbolizer, ISymbolizerDraw>> rulesToDraw,
+            List<RuleStatistics> rulesStatistics, QueryStatistics query, List<Expression> expressions, boolean useFlags,
+            boolean clipGeometries, int cancelCheckInterval, String layerName, ExecutorService workers, Object paintLock) {
+        this.sp = sp;
+        this.mt = mt;
+        this.rules = rules;
+        this.rulesToDraw = rulesToDraw;
+        this.rulesStatistics = rulesStatistics;
+        this.query = query;
+        this.expressions = expressions;
+        this.useFlags = useFlags;
+        this.clipGeometries = clipGeometries;
+        this.cancelCheckInterval = cancelCheckInterval;
+        this.layerName = layerName;
+        this.workers = workers;
+        this.paintLock = paintLock;
+    }
+
+    /**
+     * @return the pool of workers shared by default by all the scans
+     */
+    static ExecutorService getDefaultWorkers() {
+        return DefaultWorkers.POOL;
+    }
+
+    /**
+     * Create the default pool the first time it is used
+     */
+    private static final class DefaultWorkers {
+
+        static final ExecutorService POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "orbismap-shape-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * The reader and the painters wait for each other, so the pool of the
+     * stages is not bounded : a bounded pool could run the reader of a scan
+     * while its painters wait for a thread.
+     *
+     * @return the pool of the readers and the painters of the scans
+     */
+    static ExecutorService getStages() {
+        return Stages.POOL;
+    }
+
+    /**
+     * Create the pool of the stages the first time it is used
+     */
+    private static final class Stages {
+
+        static final ExecutorService POOL = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "orbismap-scan-stage-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Read and draw all the rows
+     *
+     * @param pm
+     * @throws Exception
+     */
+    void run(IProgressMonitor pm) throws Exception {
+        List<Painter> painters = createPainters();
+        ExecutorService stages = getStages();
+        BlockingQueue<Future<Feature>> rows = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        //The MapTransform is not thread safe, each task takes a copy
+        ConcurrentLinkedQueue<MapTransform> workerMts = new ConcurrentLinkedQueue<>();
+        Future<Void> reader = null;
+        try {
+            reader = stages.submit(() -> {
+                read(rows, workerMts, pm);
+                return null;
+            });
+            for (Painter painter : painters) {
+                painter.future = stages.submit(painter);
+            }
+            //Dispatch the features to the painters in the order of the rows
+            long count = 0;
+            Future<Feature> next;
+            while ((next = rows.take()) != END_OF_ROWS) {
+                Feature feature = next.get();
+                for (Painter painter : painters) {
+                    painter.put(feature);
+                }
+                if (++count % cancelCheckInterval == 0) {
+                    //The reader stops on cancellation, the monitor publishes the frames
+                    checkProgress(pm);
+                }
+            }
+            for (Painter painter : painters) {
+                painter.put(END_OF_FEATURES);
+            }
+            reader.get();
+            for (Painter painter : painters) {
+                painter.future.get();
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            //Stop the stages of a failed scan, the threads go back to the pool
+            if (reader != null) {
+                reader.cancel(true);
+            }
+            for (Painter painter : painters) {
+                if (painter.future != null) {
+                    painter.future.cancel(true);
+                }
+            }
+            //The shared workers must not build the shapes of a failed scan
+            Future<Feature> pending;
+            while ((pending = rows.poll()) != null) {
+                pending.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Check the progress monitor from the calling thread. The painters don't
+     * draw on the target while a frame is copied.
+     *
+     * @param pm
+     */
+    private void checkProgress(IProgressMonitor pm) {
+        if (paintLock == null) {
+            pm.isCancelled();
+        } else {
+            synchronized (paintLock) {
+                pm.isCancelled();
+            }
+        }
+    }
+
+    /**
+     * One painter for each image. The drawers of a rule that have the same
+     * level share the same image.
+     *
+     * @return
+     */
+    private List<Painter> createPainters() {
+        Map<Graphics2D, Painter> painters = new LinkedHashMap<>();
+        for (int i = 0; i < rulesToDraw.size(); i++) {
+            for (Map.Entry<IFeatureSymbolizer, ISymbolizerDraw> entry : rulesToDraw.get(i).entrySet()) {
+                Painter painter = painters.computeIfAbsent(entry.getValue().getGraphics2D(), (g2) -> new Painter());
+                painter.ruleIndexes.add(i);
+                painter.symbolizers.add(entry.getKey());
+                painter.drawers.add(entry.getValue());
+                painter.statistics.add(rulesStatistics.get(i).getSymbolizer(entry.getKey()));
+            }
+        }
+        return new ArrayList<>(painters.values());
+    }
+
+    /**
+     * Reader stage
+     *
+     * @param rows the queue of the features sent to the workers
+     * @param workerMts the copies of the MapTransform not used by a worker
+     * @param pm
+     * @throws Exception
+     */
+    private void read(BlockingQueue<Future<Feature>> rows, ConcurrentLinkedQueue<MapTransform> workerMts, IProgressMonitor pm) throws Exception {
+        boolean interrupted = false;
+        try {
+            long count = 0;
+            while (sp.next()) {
+                query.rowFetched();
+                if (++count % cancelCheckInterval == 0 && pm.isCancelled()) {
+                    //Free the database, what has been read is still drawn
+                    sp.cancel();
+                    break;
+                }
+                Object[] values = new Object[expressions.size()];
+                for (int i = 0; i < values.length; i++) {
+                    Expression exp = expressions.get(i);
+                    values[i] = sp.getObject(exp.getReference(), exp.getParameterDomain().getDataType());
+                }
+                boolean[] matches = new boolean[rules.size()];
+                Map<String, Geometry> geometries = new HashMap<>();
+                for (int i = 0; i < matches.length; i++) {
+                    matches[i] = !useFlags || FeatureStyleRenderer.isRuleMatched(sp, rules.get(i));
+                    if (matches[i]) {
+                        rulesStatistics.get(i).rowDrawn();
+                        for (IFeatureSymbolizer symbolizer : rulesToDraw.get(i).keySet()) {
+                            String geomIdentifier = rules.get(i).getGeometryIdentifier(symbolizer);
+                            if (!geometries.containsKey(geomIdentifier)) {
+                                geometries.put(geomIdentifier, sp.getGeometry(geomIdentifier));
+                            }
+                        }
+                    }
+                }
+                Feature feature = new Feature(values, matches, geometries);
+                rows.put(workers.submit(() -> {
+                    MapTransform workerMt = workerMts.poll();
+                    if (workerMt == null) {
+                        workerMt = mt.copy();
+                    }
+                    try {
+                        buildShapes(feature, workerMt);
+                    } finally {
+                        workerMts.offer(workerMt);
+                    }
+                    return feature;
+                }));
+            }
+        } catch (InterruptedException ex) {
+            interrupted = true;
+            throw ex;
+        } finally {
+            //An interrupted reader has been cancelled, no one takes the rows
+            if (!interrupted) {
+                rows.put(END_OF_ROWS);
+            }
+        }
+    }
+
+    /**
+     * Worker stage
+     *
+     * @param feature
+     * @param mt the MapTransform of the worker thread
+     * @throws Exception
+     */
+    private void buildShapes(Feature feature, MapTransform mt) throws Exception {
+        setValues(feature.values);
+        Map<String, Geometry> clippedGeometries = new HashMap<>();
+        for (Map.Entry<String, Geometry> entry : feature.geometries.entrySet()) {
+            Geometry geometry = entry.getValue();
+            clippedGeometries.put(entry.getKey(), clipGeometries ? FeatureStyleRenderer.clip(geometry, mt) : geometry);
+        }
+        Map<String, Shape> shapes = new HashMap<>();
+        for (int i = 0; i < feature.matches.length; i++) {
+            if (feature.matches[i]) {
+                for (IFeatureSymbolizer symbolizer : rulesToDraw.get(i).keySet()) {
+                    try {
+                        long shapeStart = System.nanoTime();
+                        Shape shape = FeatureStyleRenderer.getShape(symbolizer, rules.get(i).getGeometryIdentifier(symbolizer),
+                                mt, shapes, clippedGeometries, null, clipGeometries);
+                        rulesStatistics.get(i).getSymbolizer(symbolizer).addShape(System.nanoTime() - shapeStart);
+                        if (shape != null) {
+                            feature.shapes.put(symbolizer, shape);
+                        }
+                    } catch (ParameterException ex) {
+                        Logger.getLogger(PipelinedScan.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the values of the expressions for the current thread
+     *
+     * @param values
+     */
+    private void setValues(Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            expressions.get(i).setValue(values[i]);
+        }
+    }
+
+    /**
+     * A row read from the query
+     */
+    private static class Feature {
+
+        final Object[] values;
+        final boolean[] matches;
+        final Map<String, Geometry> geometries;
+        final Map<IFeatureSymbolizer, Shape> shapes = new HashMap<>();
+
+        Feature(Object[] values, boolean[] matches, Map<String, Geometry> geometries) {
+            this.values = values;
+            this.matches = matches;
+            this.geometries = geometries;
+        }
+    }
+
+    /**
+     * Painter stage. It draws the symbolizers that share the same image.
+     */
+    private class Painter implements Callable<Void> {
+
+        final List<Integer> ruleIndexes = new ArrayList<>();
+        final List<IFeatureSymbolizer> symbolizers = new ArrayList<>();
+        final List<ISymbolizerDraw> drawers = new ArrayList<>();
+        final List<SymbolizerStatistics> statistics = new ArrayList<>();
+        final BlockingQueue<Feature> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        Future<Void> future;
+
+        /**
+         * Send a feature to the painter, fails if the painter has stopped
+         *
+         * @param feature
+         * @throws Exception
+         */
+        void put(Feature feature) throws Exception {
+            while (!queue.offer(feature, 100, TimeUnit.MILLISECONDS)) {
+                if (future.isDone()) {
+                    future.get();
+                    throw new IllegalStateException("The painter has stopped");
+                }
+            }
+        }
+
+        @Override
+        public Void call() throws Exception {
+            MapTransform painterMt = mt.copy();
+            String ruleName = rulesStatistics.size() == 1 ? rulesStatistics.get(0).getName() : "";
+            FeatureBatchPaintEvent batchEvent = RenderEvents.AVAILABLE ? FeatureBatchPaintEvent.start() : null;
+            long count = 0;
+            Feature feature;
+            while ((feature = queue.take()) != END_OF_FEATURES) {
+                if (batchEvent != null && ++count % cancelCheckInterval == 0) {
+                    batchEvent.finish(layerName, ruleName, cancelCheckInterval);
+                    batchEvent = FeatureBatchPaintEvent.start();
+                }
+                setValues(feature.values);
+                if (paintLock == null) {
+                    paint(feature, painterMt);
+                } else {
+                    synchronized (paintLock) {
+                        paint(feature, painterMt);
+                    }
+                }
+            }
+            if (batchEvent != null) {
+                batchEvent.finish(layerName, ruleName, count % cancelCheckInterval);
+            }
+            return null;
+        }
+
+        /**
+         * Draw the shapes of a feature
+         *
+         * @param feature
+         * @param painterMt the MapTransform of the painter thread
+         */
+        private void paint(Feature feature, MapTransform painterMt) {
+            for (int i = 0; i < drawers.size(); i++) {
+                if (feature.matches[ruleIndexes.get(i)]) {
+                    IFeatureSymbolizer symbolizer = symbolizers.get(i);
+                    Shape shape = feature.shapes.get(symbolizer);
+                    if (shape != null) {
+                        try {
+                            long paintStart = System.nanoTime();
+                            ISymbolizerDraw drawer = drawers.get(i);
+                            drawer.setShape(shape);
+                            drawer.draw(drawer.getGraphics2D(), painterMt, symbolizer);
+                            statistics.get(i).addPaint(System.nanoTime() - paintStart);
+                        } catch (ParameterException ex) {
+                            Logger.getLogger(PipelinedScan.class.getName()).log(Level.SEVERE, null, ex);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
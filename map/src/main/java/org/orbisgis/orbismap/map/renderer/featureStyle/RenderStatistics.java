@@ -0,0 +1,354 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.orbisgis.orbismap.style.Feature2DRule;
+import org.orbisgis.orbismap.style.IFeatureSymbolizer;
+
+/**
+ * The measures taken while a layer is drawn by a {@link FeatureStyleRenderer}
+ * : the time to build and execute the queries, the time to the first row, the
+ * rows fetched and drawn, and for each symbolizer the time spent to clip the
+ * geometries and build the shapes and the time spent to paint them.
+ *
+ * The times are in nanoseconds and are summed over all the threads that drew
+ * the layer, so they can be greater than the elapsed time.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class RenderStatistics {
+
+    private final String layerName;
+    private final AtomicLong elapsedNanos = new AtomicLong();
+    private final QueryStatistics queries = new QueryStatistics();
+    private final Map<Feature2DRule, RuleStatistics> rules = new LinkedHashMap<>();
+
+    /**
+     * @param layerName the name of the drawn table
+     */
+    public RenderStatistics(String layerName) {
+        this.layerName = layerName;
+    }
+
+    public String getLayerName() {
+        return layerName;
+    }
+
+    /**
+     * @return the time to draw the layer
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos.get();
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos.set(elapsedNanos);
+    }
+
+    /**
+     * @return the measures of all the queries executed for the layer
+     */
+    public QueryStatistics getQueries() {
+        return queries;
+    }
+
+    /**
+     * Return the measures of a rule, created on first use
+     *
+     * @param rule
+     * @return
+     */
+    public synchronized RuleStatistics getRule(Feature2DRule rule) {
+        RuleStatistics ruleStatistics = rules.get(rule);
+        if (ruleStatistics == null) {
+            String name = rule.getName() == null || rule.getName().isEmpty() ? "Rule " + (rules.size() + 1) : rule.getName();
+            ruleStatistics = new RuleStatistics(name);
+            rules.put(rule, ruleStatistics);
+        }
+        return ruleStatistics;
+    }
+
+    /**
+     * @return the measures of the rules, in the order they have been drawn
+     */
+    public synchronized List<RuleStatistics> getRules() {
+        return new ArrayList<>(rules.values());
+    }
+
+    /**
+     * Add the measures of another drawing of the same layer, for example of a
+     * tile. The elapsed time is not added.
+     *
+     * @param other
+     */
+    public void merge(RenderStatistics other) {
+        queries.merge(other.queries);
+        Map<Feature2DRule, RuleStatistics> otherRules;
+        synchronized (other) {
+            otherRules = new LinkedHashMap<>(other.rules);
+        }
+        otherRules.forEach((rule, ruleStatistics) -> {
+            getRule(rule).merge(ruleStatistics);
+        });
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(layerName).append(" : ").append(TimeUnit.NANOSECONDS.toMillis(getElapsedNanos())).append(" ms, ")
+                .append(queries);
+        for (RuleStatistics rule : getRules()) {
+            sb.append("\n  ").append(rule);
+            for (SymbolizerStatistics symbolizer : rule.getSymbolizers()) {
+                sb.append("\n    ").append(symbolizer);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The measures of the queries
+     */
+    public static class QueryStatistics {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong buildNanos = new AtomicLong();
+        private final AtomicLong firstRowNanos = new AtomicLong();
+        private final AtomicLong rowsFetched = new AtomicLong();
+        private long openedAt;
+
+        /**
+         * Record the execution of a query
+         *
+         * @param buildNanos the time to build the query and open the cursor
+         */
+        void queryOpened(long buildNanos) {
+            count.incrementAndGet();
+            this.buildNanos.addAndGet(buildNanos);
+            openedAt = System.nanoTime();
+        }
+
+        /**
+         * Record a row read from the last opened query
+         */
+        void rowFetched() {
+            if (rowsFetched.getAndIncrement() == 0) {
+                firstRowNanos.addAndGet(System.nanoTime() - openedAt);
+            }
+        }
+
+        void merge(QueryStatistics other) {
+            count.addAndGet(other.count.get());
+            buildNanos.addAndGet(other.buildNanos.get());
+            firstRowNanos.addAndGet(other.firstRowNanos.get());
+            rowsFetched.addAndGet(other.rowsFetched.get());
+        }
+
+        /**
+         * @return the number of queries
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the time to build the queries and execute them
+         */
+        public long getBuildNanos() {
+            return buildNanos.get();
+        }
+
+        /**
+         * @return the time between the execution of the queries and their
+         * first row
+         */
+        public long getFirstRowNanos() {
+            return firstRowNanos.get();
+        }
+
+        public long getRowsFetched() {
+            return rowsFetched.get();
+        }
+
+        @Override
+        public String toString() {
+            return count + " queries, build " + TimeUnit.NANOSECONDS.toMillis(getBuildNanos()) + " ms, first row "
+                    + TimeUnit.NANOSECONDS.toMillis(getFirstRowNanos()) + " ms, " + rowsFetched + " rows fetched";
+        }
+    }
+
+    /**
+     * The measures of a rule. The queries of a rule are empty when all the
+     * rules are read from one query, see {@link FeatureStyleRenderer#setFusedScan(boolean)}.
+     */
+    public static class RuleStatistics {
+
+        private final String name;
+        private final QueryStatistics queries = new QueryStatistics();
+        private final AtomicLong rowsDrawn = new AtomicLong();
+        private final Map<IFeatureSymbolizer, SymbolizerStatistics> symbolizers = new LinkedHashMap<>();
+
+        RuleStatistics(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public QueryStatistics getQueries() {
+            return queries;
+        }
+
+        /**
+         * @return the number of rows that have been drawn by the symbolizers of
+         * the rule
+         */
+        public long getRowsDrawn() {
+            return rowsDrawn.get();
+        }
+
+        void rowDrawn() {
+            rowsDrawn.incrementAndGet();
+        }
+
+        /**
+         * Return the measures of a symbolizer, created on first use
+         *
+         * @param symbolizer
+         * @return
+         */
+        public synchronized SymbolizerStatistics getSymbolizer(IFeatureSymbolizer symbolizer) {
+            SymbolizerStatistics symbolizerStatistics = symbolizers.get(symbolizer);
+            if (symbolizerStatistics == null) {
+                String symbolizerName = symbolizer.getName() == null || symbolizer.getName().isEmpty()
+                        ? symbolizer.getClass().getSimpleName() : symbolizer.getName();
+                symbolizerStatistics = new SymbolizerStatistics(symbolizerName);
+                symbolizers.put(symbolizer, symbolizerStatistics);
+            }
+            return symbolizerStatistics;
+        }
+
+        public synchronized List<SymbolizerStatistics> getSymbolizers() {
+            return new ArrayList<>(symbolizers.values());
+        }
+
+        void merge(RuleStatistics other) {
+            queries.merge(other.queries);
+            rowsDrawn.addAndGet(other.rowsDrawn.get());
+            Map<IFeatureSymbolizer, SymbolizerStatistics> otherSymbolizers;
+            synchronized (other) {
+                otherSymbolizers = new LinkedHashMap<>(other.symbolizers);
+            }
+            otherSymbolizers.forEach((symbolizer, symbolizerStatistics) -> {
+                getSymbolizer(symbolizer).merge(symbolizerStatistics);
+            });
+        }
+
+        @Override
+        public String toString() {
+            return name + " : " + queries + ", " + rowsDrawn + " rows drawn";
+        }
+    }
+
+    /**
+     * The measures of a symbolizer
+     */
+    public static class SymbolizerStatistics {
+
+        private final String name;
+        private final AtomicLong shapeNanos = new AtomicLong();
+        private final AtomicLong paintNanos = new AtomicLong();
+        private final AtomicLong shapes = new AtomicLong();
+
+        SymbolizerStatistics(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the time spent to clip the geometries and convert them to
+         * shapes
+         */
+        public long getShapeNanos() {
+            return shapeNanos.get();
+        }
+
+        /**
+         * @return the time spent to paint the shapes
+         */
+        public long getPaintNanos() {
+            return paintNanos.get();
+        }
+
+        /**
+         * @return the number of shapes painted
+         */
+        public long getShapeCount() {
+            return shapes.get();
+        }
+
+        void addShape(long nanos) {
+            shapeNanos.addAndGet(nanos);
+        }
+
+        void addPaint(long nanos) {
+            paintNanos.addAndGet(nanos);
+            shapes.incrementAndGet();
+        }
+
+        void merge(SymbolizerStatistics other) {
+            shapeNanos.addAndGet(other.shapeNanos.get());
+            paintNanos.addAndGet(other.paintNanos.get());
+            shapes.addAndGet(other.shapes.get());
+        }
+
+        @Override
+        public String toString() {
+            return name + " : " + shapes + " shapes, shape " + TimeUnit.NANOSECONDS.toMillis(getShapeNanos())
+                    + " ms, paint " + TimeUnit.NANOSECONDS.toMillis(getPaintNanos()) + " ms";
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import org.locationtech.jts.geom.Geometry;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+
+/**
+ * Cursor on the result of a query built with
+ * {@link ISpatialTable#columns(java.lang.String...)} and
+ * {@link ISpatialTable#filter(java.lang.String)}.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+class SpatialTableCursor implements IFeatureCursor {
+
+    private final ISpatialTable spatialTable;
+
+    SpatialTableCursor(ISpatialTable spatialTable) {
+        this.spatialTable = spatialTable;
+    }
+
+    @Override
+    public boolean next() throws Exception {
+        return spatialTable.next();
+    }
+
+    @Override
+    public Object getObject(String column, Class type) throws Exception {
+        return spatialTable.getObject(column, type);
+    }
+
+    @Override
+    public Geometry getGeometry(String column) throws Exception {
+        return spatialTable.getGeometry(column);
+    }
+
+    @Override
+    public void cancel() throws Exception {
+        //The query of the spatial table cannot be cancelled
+    }
+
+    @Override
+    public void close() throws Exception {
+        //The result is managed by the spatial table
+    }
+}
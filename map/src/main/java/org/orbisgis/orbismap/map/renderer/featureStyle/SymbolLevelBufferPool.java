@@ -0,0 +1,234 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of the offscreen images used to draw the symbol levels. The images
+ * are shared by size and type, they are cleared when they are handed out.
+ * The released images are kept while the pool holds less bytes than its
+ * memory cap, the others are left to the garbage collector.
+ *
+ * The pool is thread safe.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class SymbolLevelBufferPool {
+
+    /**
+     * Pool shared by the renderers that have no pool of their own, limited to
+     * 256 MB
+     */
+    private static final SymbolLevelBufferPool DEFAULT = new SymbolLevelBufferPool(256L * 1024 * 1024);
+
+    private final Map<String, ArrayDeque<BufferedImage>> buffers = new HashMap<>();
+    private long maxPooledBytes;
+    private long pooledBytes = 0;
+    private long inUseBytes = 0;
+    private long peakBytes = 0;
+    private long acquireCount = 0;
+    private long reuseCount = 0;
+
+    /**
+     * @param maxPooledBytes the maximum number of bytes kept by the pool
+     */
+    public SymbolLevelBufferPool(long maxPooledBytes) {
+        setMaxPooledBytes(maxPooledBytes);
+    }
+
+    /**
+     * @return the pool shared by default by all the renderers
+     */
+    public static SymbolLevelBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Return a transparent image, reused from the pool if there is one of the
+     * same size and type
+     *
+     * @param width
+     * @param height
+     * @param type the type of image, see {@link BufferedImage#getType()}
+     * @return
+     */
+    public BufferedImage acquire(int width, int height, int type) {
+        BufferedImage image = null;
+        synchronized (this) {
+            acquireCount++;
+            ArrayDeque<BufferedImage> images = buffers.get(getKey(width, height, type));
+            if (images != null) {
+                image = images.poll();
+            }
+            if (image != null) {
+                reuseCount++;
+                long size = getBytes(image);
+                pooledBytes -= size;
+                inUseBytes += size;
+            }
+        }
+        if (image == null) {
+            image = new BufferedImage(width, height, type);
+            synchronized (this) {
+                inUseBytes += getBytes(image);
+                peakBytes = Math.max(peakBytes, inUseBytes + pooledBytes);
+            }
+        } else {
+            clear(image);
+        }
+        return image;
+    }
+
+    /**
+     * Give an image back to the pool. The image must not be used anymore.
+     *
+     * @param image an image returned by {@link #acquire(int, int, int)}
+     */
+    public synchronized void release(BufferedImage image) {
+        long size = getBytes(image);
+        inUseBytes -= size;
+        if (pooledBytes + size <= maxPooledBytes) {
+            buffers.computeIfAbsent(getKey(image.getWidth(), image.getHeight(), image.getType()),
+                    k -> new ArrayDeque<>()).push(image);
+            pooledBytes += size;
+        }
+    }
+
+    /**
+     * Remove all the images kept by the pool
+     */
+    public synchronized void clear() {
+        buffers.clear();
+        pooledBytes = 0;
+    }
+
+    public synchronized long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * Set the maximum number of bytes kept by the pool. The images already
+     * kept are removed if needed.
+     *
+     * @param maxPooledBytes
+     */
+    public synchronized void setMaxPooledBytes(long maxPooledBytes) {
+        if (maxPooledBytes < 0) {
+            throw new IllegalArgumentException("The memory cap cannot be negative");
+        }
+        this.maxPooledBytes = maxPooledBytes;
+        if (pooledBytes > maxPooledBytes) {
+            clear();
+        }
+    }
+
+    /**
+     * @return the number of bytes of the images kept by the pool
+     */
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * @return the greatest number of bytes held at the same time by the images
+     * handed out and the images kept by the pool
+     */
+    public synchronized long getPeakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * @return the number of images handed out
+     */
+    public synchronized long getAcquireCount() {
+        return acquireCount;
+    }
+
+    /**
+     * @return the number of images handed out from the pool
+     */
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    /**
+     * @return the ratio of images handed out from the pool, between 0 and 1
+     */
+    public synchronized double getReuseRate() {
+        return acquireCount == 0 ? 0 : (double) reuseCount / acquireCount;
+    }
+
+    private static String getKey(int width, int height, int type) {
+        return width + "x" + height + ":" + type;
+    }
+
+    /**
+     * Return the memory used by the pixels of an image
+     *
+     * @param image
+     * @return
+     */
+    static long getBytes(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    /**
+     * Set all the pixels of an image to transparent
+     *
+     * @param image
+     */
+    private static void clear(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        if (dataBuffer instanceof DataBufferInt && dataBuffer.getNumBanks() == 1) {
+            Arrays.fill(((DataBufferInt) dataBuffer).getData(), 0);
+        } else {
+            Graphics2D g2 = image.createGraphics();
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g2.dispose();
+        }
+    }
+}
@@ -0,0 +1,432 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+
+/**
+ * Renderer that splits the extent of a {@link MapTransform} into tiles drawn
+ * in parallel on a pool of threads.
+ *
+ * Each tile is rendered by a {@link FeatureStyleRenderer} with its own
+ * MapTransform and spatial filter. The tiles overlap by a few pixels so the
+ * symbols that cross a tile border are drawn by the tiles on both sides, then
+ * the symbol level images of each tile are drawn on the target clipped to the
+ * part of the tile that does not overlap. The result is the same as the serial
+ * rendering except for the labels placed across the seams.
+ *
+ * The tiles read the table with the connection of the table, which runs one
+ * query at a time. To read the tiles in parallel, set a data source in the
+ * {@link #setCursorOptions(CursorOptions) cursor options} : each tile then
+ * reads its rows on its own connection.
+ *
+ * The calling thread checks the progress monitor while the tiles are drawn,
+ * under the lock of the target, so the intermediate frames of a map are
+ * published by the thread that owns the image.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class TiledFeatureStyleRenderer {
+
+    /**
+     * Time between two checks of the progress monitor by the calling thread
+     */
+    static final long PROGRESS_CHECK_MILLIS = 50;
+
+    private final Feature2DStyle fs;
+    private int columns = 2;
+    private int rows = 2;
+    private int overlap = 16;
+    private ExecutorService pool = getDefaultPool();
+    private boolean fusedScan = false;
+    private boolean pipelined = false;
+    private boolean serverSideGeneralization = false;
+    private NavigableMap<Double, ISpatialTable> overviews;
+    private SymbolLevelBufferPool bufferPool = SymbolLevelBufferPool.getDefault();
+    private ExecutorService workerPool;
+    private int cancelCheckInterval = FeatureStyleRenderer.DEFAULT_CANCEL_CHECK_INTERVAL;
+    private CursorOptions cursorOptions;
+    private CompiledStyle compiledStyle;
+    private RenderMetricsSink metricsSink;
+    private FeatureCache featureCache;
+
+    public TiledFeatureStyleRenderer(Feature2DStyle fs) {
+        this.fs = fs;
+    }
+
+    /**
+     * @return the pool shared by default by the tiled renderers, one thread
+     * per processor
+     */
+    static ExecutorService getDefaultPool() {
+        return DefaultPool.POOL;
+    }
+
+    /**
+     * Create the default pool the first time it is used
+     */
+    private static final class DefaultPool {
+
+        static final ExecutorService POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "orbismap-tile-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Set the number of tiles
+     *
+     * @param columns number of tiles along the x axis
+     * @param rows number of tiles along the y axis
+     */
+    public void setTiles(int columns, int rows) {
+        if (columns < 1 || rows < 1) {
+            throw new IllegalArgumentException("The number of tiles must be greater than 0");
+        }
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * The overlap must be larger than the half of the biggest symbol to not
+     * cut the symbols along the seams.
+     *
+     * @return the overlap between two tiles in pixels
+     */
+    public int getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * Set the overlap between two tiles
+     *
+     * @param overlap in pixels
+     */
+    public void setOverlap(int overlap) {
+        if (overlap < 0) {
+            throw new IllegalArgumentException("The overlap cannot be negative");
+        }
+        this.overlap = overlap;
+    }
+
+    /**
+     * Set the pool used to draw the tiles. By default the tiles are drawn on
+     * a pool of one thread per processor shared by the tiled renderers, so
+     * they don't take the threads of the common ForkJoin pool.
+     *
+     * @param pool the pool, null to use the shared pool
+     */
+    public void setPool(ExecutorService pool) {
+        this.pool = pool == null ? getDefaultPool() : pool;
+    }
+
+    /**
+     * Read the table once for all the rules in each tile
+     *
+     * @param fusedScan
+     * @see FeatureStyleRenderer#setFusedScan(boolean)
+     */
+    public void setFusedScan(boolean fusedScan) {
+        this.fusedScan = fusedScan;
+    }
+
+    /**
+     * Draw each tile with a pipeline
+     *
+     * @param pipelined
+     * @see FeatureStyleRenderer#setPipelined(boolean)
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Clip and simplify the geometries of each tile in the database
+     *
+     * @param serverSideGeneralization
+     * @see FeatureStyleRenderer#setServerSideGeneralization(boolean)
+     */
+    public void setServerSideGeneralization(boolean serverSideGeneralization) {
+        this.serverSideGeneralization = serverSideGeneralization;
+    }
+
+    /**
+     * Set the pool of the images used to draw the symbol levels of the tiles
+     *
+     * @param bufferPool
+     * @see FeatureStyleRenderer#setBufferPool(SymbolLevelBufferPool)
+     */
+    public void setBufferPool(SymbolLevelBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Set the pool of threads that build the shapes of the pipelined scans of
+     * the tiles
+     *
+     * @param workerPool the pool, null to use the shared pool
+     * @see FeatureStyleRenderer#setWorkerPool(ExecutorService)
+     */
+    public void setWorkerPool(ExecutorService workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    public int getCancelCheckInterval() {
+        return cancelCheckInterval;
+    }
+
+    /**
+     * Set the number of rows read by a tile between two checks of the
+     * progress monitor
+     *
+     * @param cancelCheckInterval
+     * @see FeatureStyleRenderer#setCancelCheckInterval(int)
+     */
+    public void setCancelCheckInterval(int cancelCheckInterval) {
+        if (cancelCheckInterval < 1) {
+            throw new IllegalArgumentException("The cancel check interval must be greater than 0");
+        }
+        this.cancelCheckInterval = cancelCheckInterval;
+    }
+
+    /**
+     * Set the overview tables drawn instead of the full table at small scales
+     *
+     * @param overviews
+     * @see FeatureStyleRenderer#setOverviews(java.util.NavigableMap)
+     */
+    public void setOverviews(NavigableMap<Double, ISpatialTable> overviews) {
+        this.overviews = overviews;
+    }
+
+    /**
+     * Set the cache shared by the tiles to read the rows from memory
+     *
+     * @param featureCache
+     * @see FeatureStyleRenderer#setFeatureCache(FeatureCache)
+     */
+    public void setFeatureCache(FeatureCache featureCache) {
+        this.featureCache = featureCache;
+    }
+
+    /**
+     * Set the options used to read the rows with JDBC. With a data source,
+     * each tile reads its rows on its own connection.
+     *
+     * @param cursorOptions
+     */
+    public void setCursorOptions(CursorOptions cursorOptions) {
+        this.cursorOptions = cursorOptions;
+    }
+
+    /**
+     * Set the render plan of the style
+     *
+     * @param compiledStyle
+     * @see FeatureStyleRenderer#setCompiledStyle(CompiledStyle)
+     */
+    public void setCompiledStyle(CompiledStyle compiledStyle) {
+        this.compiledStyle = compiledStyle;
+    }
+
+    /**
+     * Set the sink that receives the measures of each drawing, merged for all
+     * the tiles
+     *
+     * @param metricsSink
+     */
+    public void setMetricsSink(RenderMetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    /**
+     *
+     * @param spatialTable
+     * @param mt
+     * @param g2
+     * @param pm
+     * @return the measures of all the tiles
+     * @throws Exception
+     */
+    public RenderStatistics draw(ISpatialTable spatialTable, MapTransform mt, Graphics2D g2, IProgressMonitor pm) throws Exception {
+        long start = System.nanoTime();
+        RenderStatistics statistics = new RenderStatistics(spatialTable.getName());
+        //Compile the style once for all the tiles
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(fs);
+        fsr.setCompiledStyle(compiledStyle);
+        CompiledStyle plan = fsr.getCompiledStyle(spatialTable.getGeometricColumns());
+        int width = mt.getWidth();
+        int height = mt.getHeight();
+        IProgressMonitor tilesPm = pm.startTask("Draw tiles", columns * rows);
+        List<Future<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < columns; i++) {
+            int minX = i * width / columns;
+            int maxX = (i + 1) * width / columns;
+            for (int j = 0; j < rows; j++) {
+                int minY = j * height / rows;
+                int maxY = (j + 1) * height / rows;
+                if (maxX > minX && maxY > minY) {
+                    tasks.add(pool.submit(() -> {
+                        RenderStatistics tileStatistics = drawTile(plan, spatialTable, mt, g2, minX, minY, maxX - minX, maxY - minY, pm);
+                        if (tileStatistics != null) {
+                            statistics.merge(tileStatistics);
+                        }
+                        tilesPm.endTask();
+                        return null;
+                    }));
+                }
+            }
+        }
+        try {
+            for (Future<Object> task : tasks) {
+                waitTile(task, g2, pm);
+            }
+        } catch (ExecutionException ex) {
+            tasks.forEach((task) -> {
+                task.cancel(true);
+            });
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        }
+        statistics.setElapsedNanos(System.nanoTime() - start);
+        if (metricsSink != null) {
+            metricsSink.publish(statistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * Wait for a tile, checking the progress monitor between two composites
+     * of the tiles
+     *
+     * @param task
+     * @param g2 the target, also the composite lock of the tiles
+     * @param pm
+     * @throws Exception
+     */
+    private static void waitTile(Future<Object> task, Graphics2D g2, IProgressMonitor pm) throws Exception {
+        while (true) {
+            try {
+                task.get(PROGRESS_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException ex) {
+                synchronized (g2) {
+                    pm.isCancelled();
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw one tile
+     *
+     * @param plan the compiled style
+     * @param spatialTable
+     * @param mt the MapTransform of the whole map
+     * @param g2 the target
+     * @param x the left of the tile in pixels
+     * @param y the top of the tile in pixels
+     * @param width the width of the tile in pixels
+     * @param height the height of the tile in pixels
+     * @param pm
+     * @throws Exception
+     */
+    private RenderStatistics drawTile(CompiledStyle plan, ISpatialTable spatialTable, MapTransform mt, Graphics2D g2, int x, int y, int width, int height, IProgressMonitor pm) throws Exception {
+        if (pm.isCancelled()) {
+            return null;
+        }
+        MapTransform tileMt = mt.getTileTransform(x - overlap, y - overlap, width + 2 * overlap, height + 2 * overlap);
+        Graphics2D tileG2;
+        synchronized (g2) {
+            tileG2 = (Graphics2D) g2.create();
+            tileG2.clipRect(x, y, width, height);
+            tileG2.translate(x - overlap, y - overlap);
+        }
+        try {
+            FeatureStyleRenderer fsr = new FeatureStyleRenderer(fs);
+            fsr.setCompositeLock(g2);
+            //The tiles share the target, they are composited under the lock
+            fsr.setDirectRendering(false);
+            fsr.setCompiledStyle(plan);
+            fsr.setFusedScan(fusedScan);
+            fsr.setPipelined(pipelined);
+            fsr.setServerSideGeneralization(serverSideGeneralization);
+            fsr.setOverviews(overviews);
+            fsr.setBufferPool(bufferPool);
+            fsr.setWorkerPool(workerPool);
+            fsr.setCancelCheckInterval(cancelCheckInterval);
+            fsr.setCursorOptions(cursorOptions);
+            fsr.setFeatureCache(featureCache);
+            return fsr.draw(spatialTable, tileMt, tileG2, pm);
+        } finally {
+            synchronized (g2) {
+                tileG2.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle.store;
+
+import java.nio.DoubleBuffer;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Two dimensions coordinate sequence that reads the coordinates from a
+ * buffer, without copying them. The x and y values of the coordinates follow
+ * each other in the buffer.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public final class BufferCoordinateSequence implements CoordinateSequence {
+
+    private final DoubleBuffer coordinates;
+    private final int offset;
+    private final int size;
+
+    /**
+     * @param coordinates the buffer
+     * @param offset the index of the first coordinate in the buffer
+     * @param size the number of coordinates
+     */
+    public BufferCoordinateSequence(DoubleBuffer coordinates, int offset, int size) {
+        this.coordinates = coordinates;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    @Override
+    public int getDimension() {
+        return 2;
+    }
+
+    @Override
+    public Coordinate getCoordinate(int i) {
+        return new Coordinate(getX(i), getY(i));
+    }
+
+    @Override
+    public Coordinate getCoordinateCopy(int i) {
+        return getCoordinate(i);
+    }
+
+    @Override
+    public void getCoordinate(int i, Coordinate coord) {
+        coord.x = getX(i);
+        coord.y = getY(i);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double getX(int i) {
+        return coordinates.get(2 * (offset + i));
+    }
+
+    @Override
+    public double getY(int i) {
+        return coordinates.get(2 * (offset + i) + 1);
+    }
+
+    @Override
+    public double getOrdinate(int i, int ordinateIndex) {
+        switch (ordinateIndex) {
+            case X:
+                return getX(i);
+            case Y:
+                return getY(i);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Set the x or y value of a coordinate. The other ordinates are ignored.
+     * A sequence on a read only buffer cannot be modified, use a copy.
+     */
+    @Override
+    public void setOrdinate(int i, int ordinateIndex, double value) {
+        if (ordinateIndex == X || ordinateIndex == Y) {
+            coordinates.put(2 * (offset + i) + ordinateIndex, value);
+        }
+    }
+
+    @Override
+    public Coordinate[] toCoordinateArray() {
+        Coordinate[] array = new Coordinate[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = getCoordinate(i);
+        }
+        return array;
+    }
+
+    @Override
+    public Envelope expandEnvelope(Envelope env) {
+        for (int i = 0; i < size; i++) {
+            env.expandToInclude(getX(i), getY(i));
+        }
+        return env;
+    }
+
+    @Override
+    public Object clone() {
+        return copy();
+    }
+
+    /**
+     * @return a sequence on a copy of the coordinates in the heap
+     */
+    @Override
+    public BufferCoordinateSequence copy() {
+        double[] copy = new double[2 * size];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = coordinates.get(2 * offset + i);
+        }
+        return new BufferCoordinateSequence(DoubleBuffer.wrap(copy), 0, size);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(getX(i)).append(' ').append(getY(i));
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,612 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Read only table of features stored by columns in direct buffers, outside of
+ * the heap, so millions of features don't create millions of objects for the
+ * garbage collector.
+ *
+ * The geometries are stored in flat arrays : the type of each geometry, the
+ * parts of each geometry (points, lines or polygons), the rings of each part
+ * and the coordinates of each ring, as x and y values. The attributes are
+ * stored in primitive columns, the strings and the other objects are stored
+ * as codes in a dictionary of the distinct values. The rows are indexed by
+ * their bounds in a {@link PackedRTree}.
+ *
+ * A geometry is created when it is read, on top of a
+ * {@link BufferCoordinateSequence} that reads the coordinates from the
+ * buffer. The z values and the SRID of the geometries are not stored and the
+ * nested collections are flattened.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public final class ColumnarFeatureStore implements IFeatureStore {
+
+    static final byte NULL = 0;
+    static final byte POINT = 1;
+    static final byte LINESTRING = 2;
+    static final byte POLYGON = 3;
+    static final byte MULTIPOINT = 4;
+    static final byte MULTILINESTRING = 5;
+    static final byte MULTIPOLYGON = 6;
+    static final byte GEOMETRYCOLLECTION = 7;
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    private final int rowCount;
+    private final int geometryColumnCount;
+    private final ByteBuffer geometryTypes;
+    private final IntBuffer geometryParts;
+    private final ByteBuffer partTypes;
+    private final IntBuffer partRings;
+    private final IntBuffer ringCoordinates;
+    private final DoubleBuffer coordinates;
+    private final ValueColumn[] columns;
+    private final PackedRTree index;
+    private final long allocatedBytes;
+
+    private ColumnarFeatureStore(Builder builder) {
+        this.rowCount = builder.rowCount;
+        this.geometryColumnCount = builder.geometryColumnCount;
+        long bytes = 0;
+        this.geometryTypes = toBuffer(builder.geometryTypes);
+        this.geometryParts = toBuffer(builder.geometryParts);
+        this.partTypes = toBuffer(builder.partTypes);
+        this.partRings = toBuffer(builder.partRings);
+        this.ringCoordinates = toBuffer(builder.ringCoordinates);
+        this.coordinates = toBuffer(builder.coordinates).asReadOnlyBuffer();
+        bytes += builder.geometryTypes.size + builder.partTypes.size
+                + 4L * (builder.geometryParts.size + builder.partRings.size + builder.ringCoordinates.size)
+                + 8L * builder.coordinates.size;
+        this.columns = new ValueColumn[builder.columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = builder.columns[i].build();
+            bytes += columns[i].getAllocatedBytes();
+        }
+        this.index = PackedRTree.build(builder.bounds.values, rowCount, PackedRTree.DEFAULT_NODE_SIZE);
+        bytes += PackedRTree.size(rowCount, PackedRTree.DEFAULT_NODE_SIZE);
+        this.allocatedBytes = bytes;
+    }
+
+    private static ByteBuffer allocate(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("A column of the store cannot exceed 2 GB");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer toBuffer(GrowableBytes values) {
+        ByteBuffer buffer = allocate(values.size);
+        buffer.put(values.values, 0, values.size);
+        buffer.clear();
+        return buffer;
+    }
+
+    private static IntBuffer toBuffer(GrowableInts values) {
+        IntBuffer buffer = allocate(4L * values.size).asIntBuffer();
+        buffer.put(values.values, 0, values.size);
+        buffer.clear();
+        return buffer;
+    }
+
+    private static LongBuffer toBuffer(GrowableLongs values) {
+        LongBuffer buffer = allocate(8L * values.size).asLongBuffer();
+        buffer.put(values.values, 0, values.size);
+        buffer.clear();
+        return buffer;
+    }
+
+    private static DoubleBuffer toBuffer(GrowableDoubles values) {
+        DoubleBuffer buffer = allocate(8L * values.size).asDoubleBuffer();
+        buffer.put(values.values, 0, values.size);
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the number of bytes allocated outside of the heap
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public void query(Envelope envelope, IntConsumer visitor) {
+        index.query(envelope, visitor);
+    }
+
+    /**
+     * Read a geometry. Its coordinates are read from the store.
+     *
+     * @param row the index of the row
+     * @param column the index of the geometry column
+     * @return the geometry or null
+     */
+    @Override
+    public Geometry getGeometry(int row, int column) {
+        int cell = row * geometryColumnCount + column;
+        byte type = geometryTypes.get(cell);
+        if (type == NULL) {
+            return null;
+        }
+        int firstPart = geometryParts.get(cell);
+        Geometry[] parts = new Geometry[geometryParts.get(cell + 1) - firstPart];
+        for (int i = 0; i < parts.length; i++) {
+            int firstRing = partRings.get(firstPart + i);
+            BufferCoordinateSequence[] rings = new BufferCoordinateSequence[partRings.get(firstPart + i + 1) - firstRing];
+            for (int j = 0; j < rings.length; j++) {
+                int first = ringCoordinates.get(firstRing + j);
+                rings[j] = new BufferCoordinateSequence(coordinates, first, ringCoordinates.get(firstRing + j + 1) - first);
+            }
+            parts[i] = createPart(partTypes.get(firstPart + i), rings);
+        }
+        return createGeometry(type, parts);
+    }
+
+    @Override
+    public Object getValue(int row, int column) {
+        return columns[column].get(row);
+    }
+
+    @Override
+    public boolean isTrue(int row, int column) {
+        return columns[column].isTrue(row);
+    }
+
+    /**
+     * Return the code of the type of a geometry
+     *
+     * @param geometry
+     * @return
+     */
+    static byte getType(Geometry geometry) {
+        if (geometry instanceof Point) {
+            return POINT;
+        } else if (geometry instanceof LineString) {
+            return LINESTRING;
+        } else if (geometry instanceof Polygon) {
+            return POLYGON;
+        } else if (geometry instanceof MultiPoint) {
+            return MULTIPOINT;
+        } else if (geometry instanceof MultiLineString) {
+            return MULTILINESTRING;
+        } else if (geometry instanceof MultiPolygon) {
+            return MULTIPOLYGON;
+        }
+        return GEOMETRYCOLLECTION;
+    }
+
+    /**
+     * Create a point, a line or a polygon
+     *
+     * @param type the code of the type of the part
+     * @param rings the coordinates of the part, the shell and the holes for a
+     * polygon
+     * @return
+     */
+    static Geometry createPart(byte type, BufferCoordinateSequence[] rings) {
+        switch (type) {
+            case POINT:
+                return GEOMETRY_FACTORY.createPoint(rings[0]);
+            case LINESTRING:
+                return GEOMETRY_FACTORY.createLineString(rings[0]);
+            default:
+                LinearRing[] holes = new LinearRing[rings.length - 1];
+                for (int i = 0; i < holes.length; i++) {
+                    holes[i] = GEOMETRY_FACTORY.createLinearRing(rings[i + 1]);
+                }
+                return GEOMETRY_FACTORY.createPolygon(GEOMETRY_FACTORY.createLinearRing(rings[0]), holes);
+        }
+    }
+
+    /**
+     * Create a geometry from its parts
+     *
+     * @param type the code of the type of the geometry
+     * @param parts the points, lines or polygons
+     * @return
+     */
+    static Geometry createGeometry(byte type, Geometry[] parts) {
+        switch (type) {
+            case POINT:
+            case LINESTRING:
+            case POLYGON:
+                return parts[0];
+            case MULTIPOINT:
+                return GEOMETRY_FACTORY.createMultiPoint(Arrays.copyOf(parts, parts.length, Point[].class));
+            case MULTILINESTRING:
+                return GEOMETRY_FACTORY.createMultiLineString(Arrays.copyOf(parts, parts.length, LineString[].class));
+            case MULTIPOLYGON:
+                return GEOMETRY_FACTORY.createMultiPolygon(Arrays.copyOf(parts, parts.length, Polygon[].class));
+            default:
+                return GEOMETRY_FACTORY.createGeometryCollection(parts);
+        }
+    }
+
+    /**
+     * Build a store row by row. The rows are kept in primitive arrays in the
+     * heap until the store is built.
+     */
+    public static final class Builder {
+
+        private final int geometryColumnCount;
+        private final ColumnBuilder[] columns;
+        private final GrowableBytes geometryTypes = new GrowableBytes();
+        private final GrowableInts geometryParts = new GrowableInts();
+        private final GrowableBytes partTypes = new GrowableBytes();
+        private final GrowableInts partRings = new GrowableInts();
+        private final GrowableInts ringCoordinates = new GrowableInts();
+        private final GrowableDoubles coordinates = new GrowableDoubles();
+        private final GrowableDoubles bounds = new GrowableDoubles();
+        private int rowCount = 0;
+
+        /**
+         * @param geometryColumnCount the number of geometry columns
+         * @param valueTypes the type of each value column
+         */
+        public Builder(int geometryColumnCount, Class[] valueTypes) {
+            this.geometryColumnCount = geometryColumnCount;
+            this.columns = new ColumnBuilder[valueTypes.length];
+            for (int i = 0; i < valueTypes.length; i++) {
+                columns[i] = ColumnBuilder.create(valueTypes[i]);
+            }
+            geometryParts.add(0);
+            partRings.add(0);
+            ringCoordinates.add(0);
+        }
+
+        /**
+         * Add a row
+         *
+         * @param geometries the value of each geometry column
+         * @param values the value of each value column
+         */
+        public void addRow(Geometry[] geometries, Object[] values) {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < geometryColumnCount; i++) {
+                Geometry geometry = geometries[i];
+                if (geometry == null) {
+                    geometryTypes.add(NULL);
+                } else {
+                    geometryTypes.add(getType(geometry));
+                    addParts(geometry);
+                    Envelope envelope = geometry.getEnvelopeInternal();
+                    if (!envelope.isNull()) {
+                        minX = Math.min(minX, envelope.getMinX());
+                        minY = Math.min(minY, envelope.getMinY());
+                        maxX = Math.max(maxX, envelope.getMaxX());
+                        maxY = Math.max(maxY, envelope.getMaxY());
+                    }
+                }
+                geometryParts.add(partTypes.size);
+            }
+            //The rows without geometry have empty bounds, never selected
+            bounds.add(minX);
+            bounds.add(minY);
+            bounds.add(maxX);
+            bounds.add(maxY);
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].add(values[i]);
+            }
+            rowCount++;
+        }
+
+        private void addParts(Geometry geometry) {
+            if (geometry instanceof Point) {
+                partTypes.add(POINT);
+                addRing(((Point) geometry).getCoordinates());
+                partRings.add(ringCoordinates.size - 1);
+            } else if (geometry instanceof LineString) {
+                partTypes.add(LINESTRING);
+                addRing(((LineString) geometry).getCoordinates());
+                partRings.add(ringCoordinates.size - 1);
+            } else if (geometry instanceof Polygon) {
+                Polygon polygon = (Polygon) geometry;
+                partTypes.add(POLYGON);
+                addRing(polygon.getExteriorRing().getCoordinates());
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    addRing(polygon.getInteriorRingN(i).getCoordinates());
+                }
+                partRings.add(ringCoordinates.size - 1);
+            } else if (geometry instanceof GeometryCollection) {
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    addParts(geometry.getGeometryN(i));
+                }
+            }
+        }
+
+        private void addRing(Coordinate[] ring) {
+            for (Coordinate coordinate : ring) {
+                coordinates.add(coordinate.x);
+                coordinates.add(coordinate.y);
+            }
+            ringCoordinates.add(coordinates.size / 2);
+        }
+
+        /**
+         * @return the number of rows
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return the number of bytes the store will allocate outside of the
+         * heap
+         */
+        public long getAllocatedBytes() {
+            long bytes = geometryTypes.size + partTypes.size
+                    + 4L * (geometryParts.size + partRings.size + ringCoordinates.size)
+                    + 8L * coordinates.size;
+            for (ColumnBuilder column : columns) {
+                bytes += column.getAllocatedBytes();
+            }
+            return bytes + PackedRTree.size(rowCount, PackedRTree.DEFAULT_NODE_SIZE);
+        }
+
+        /**
+         * Copy the rows outside of the heap and index them
+         *
+         * @return the store
+         */
+        public ColumnarFeatureStore build() {
+            return new ColumnarFeatureStore(this);
+        }
+    }
+
+    /**
+     * Accumulate the values of an attribute in the heap
+     */
+    private abstract static class ColumnBuilder {
+
+        static ColumnBuilder create(Class type) {
+            switch (ValueColumn.getKind(type)) {
+                case ValueColumn.BOOLEAN:
+                    return new BooleanColumnBuilder();
+                case ValueColumn.LONG:
+                    return new LongColumnBuilder(type);
+                case ValueColumn.DOUBLE:
+                    return new DoubleColumnBuilder(type);
+                default:
+                    return new DictionaryColumnBuilder();
+            }
+        }
+
+        abstract void add(Object value);
+
+        abstract long getAllocatedBytes();
+
+        abstract ValueColumn build();
+    }
+
+    private static final class BooleanColumnBuilder extends ColumnBuilder {
+
+        private final GrowableBytes values = new GrowableBytes();
+
+        @Override
+        void add(Object value) {
+            values.add(value == null ? (byte) 2 : (Boolean) value ? (byte) 1 : (byte) 0);
+        }
+
+        @Override
+        long getAllocatedBytes() {
+            return values.size;
+        }
+
+        @Override
+        ValueColumn build() {
+            return new ValueColumn.BooleanColumn(toBuffer(values));
+        }
+    }
+
+    private static final class LongColumnBuilder extends ColumnBuilder {
+
+        private final Class type;
+        private final GrowableLongs values = new GrowableLongs();
+        private final GrowableBytes nulls = new GrowableBytes();
+
+        LongColumnBuilder(Class type) {
+            this.type = type;
+        }
+
+        @Override
+        void add(Object value) {
+            values.add(value == null ? 0 : ((Number) value).longValue());
+            nulls.add(value == null ? (byte) 1 : (byte) 0);
+        }
+
+        @Override
+        long getAllocatedBytes() {
+            return 9L * values.size;
+        }
+
+        @Override
+        ValueColumn build() {
+            return new ValueColumn.LongColumn(type, toBuffer(values), toBuffer(nulls));
+        }
+    }
+
+    private static final class DoubleColumnBuilder extends ColumnBuilder {
+
+        private final Class type;
+        private final GrowableDoubles values = new GrowableDoubles();
+        private final GrowableBytes nulls = new GrowableBytes();
+
+        DoubleColumnBuilder(Class type) {
+            this.type = type;
+        }
+
+        @Override
+        void add(Object value) {
+            values.add(value == null ? 0 : ((Number) value).doubleValue());
+            nulls.add(value == null ? (byte) 1 : (byte) 0);
+        }
+
+        @Override
+        long getAllocatedBytes() {
+            return 9L * values.size;
+        }
+
+        @Override
+        ValueColumn build() {
+            return new ValueColumn.DoubleColumn(type, toBuffer(values), toBuffer(nulls));
+        }
+    }
+
+    private static final class DictionaryColumnBuilder extends ColumnBuilder {
+
+        private final GrowableInts codes = new GrowableInts();
+        private final Map<Object, Integer> dictionary = new HashMap<>();
+        private final List<Object> values = new ArrayList<>();
+
+        @Override
+        void add(Object value) {
+            if (value == null) {
+                codes.add(-1);
+            } else {
+                Integer code = dictionary.get(value);
+                if (code == null) {
+                    code = values.size();
+                    dictionary.put(value, code);
+                    values.add(value);
+                }
+                codes.add(code);
+            }
+        }
+
+        @Override
+        long getAllocatedBytes() {
+            return 4L * codes.size;
+        }
+
+        @Override
+        ValueColumn build() {
+            return new ValueColumn.DictionaryColumn(toBuffer(codes), values.toArray());
+        }
+    }
+
+    private static final class GrowableBytes {
+
+        private byte[] values = new byte[1024];
+        private int size = 0;
+
+        void add(byte value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static final class GrowableInts {
+
+        private int[] values = new int[1024];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static final class GrowableLongs {
+
+        private long[] values = new long[1024];
+        private int size = 0;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static final class GrowableDoubles {
+
+        private double[] values = new double[1024];
+        private int size = 0;
+
+        void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static int grow(int size) {
+        if (size == Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("A column of the store cannot exceed 2^31 values");
+        }
+        return (int) Math.min(Integer.MAX_VALUE - 8, size * 3L / 2 + 1);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle.store;
+
+import java.util.function.IntConsumer;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * Read only table of features indexed by their bounds. The rows and the
+ * columns are identified by their index, the geometry columns and the value
+ * columns are numbered separately.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public interface IFeatureStore {
+
+    /**
+     * @return the number of rows
+     */
+    int getRowCount();
+
+    /**
+     * Visit the rows whose bounds intersect an envelope. The rows are not
+     * visited in a specific order.
+     *
+     * @param envelope
+     * @param visitor receives the index of each row
+     */
+    void query(Envelope envelope, IntConsumer visitor);
+
+    /**
+     * Read a geometry
+     *
+     * @param row the index of the row
+     * @param column the index of the geometry column
+     * @return the geometry or null
+     */
+    Geometry getGeometry(int row, int column);
+
+    /**
+     * Read a value
+     *
+     * @param row the index of the row
+     * @param column the index of the value column
+     * @return the value with the type of the column, or null
+     */
+    Object getValue(int row, int column);
+
+    /**
+     * Read a boolean value without creating an object
+     *
+     * @param row the index of the row
+     * @param column the index of the value column
+     * @return true if the value is true
+     */
+    boolean isTrue(int row, int column);
+}
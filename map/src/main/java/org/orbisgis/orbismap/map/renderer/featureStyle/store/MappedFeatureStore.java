@@ -0,0 +1,909 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Table of features stored in a file and read with memory mapped buffers, so
+ * a large layer is drawn without a database and without loading it in the
+ * heap. The file is written once with a {@link Writer}.
+ *
+ * The features are sorted on the Hilbert curve of the center of their bounds,
+ * so the features close on the map are close in the file, and indexed by a
+ * {@link PackedRTree}. The file contains :
+ * <ul>
+ * <li>a header written with {@link DataOutputStream} : the query the rows have
+ * been selected with, the names and the types of the columns, the extent and
+ * the position of the sections,</li>
+ * <li>the packed R-tree,</li>
+ * <li>the position of the geometries of each row,</li>
+ * <li>one section of fixed width values per value column, the strings being
+ * stored as codes in a dictionary,</li>
+ * <li>the geometries of each row, as a list of ints (types and sizes of the
+ * parts and rings) followed by the x and y values of the coordinates.</li>
+ * </ul>
+ * The sections are little endian. The geometries are mapped by chunks of 1 GB
+ * and a row never crosses two chunks, so the coordinates are read in place
+ * with a {@link BufferCoordinateSequence}. The other sections must be smaller
+ * than 2 GB.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public final class MappedFeatureStore implements IFeatureStore, Closeable {
+
+    private static final int MAGIC = 0x4F4D4653;
+    private static final int VERSION = 2;
+    private static final long DEFAULT_CHUNK_SIZE = 1L << 30;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final FileChannel channel;
+    private final int rowCount;
+    private final Envelope envelope;
+    private final String query;
+    private final List<String> sourceGeometryColumns;
+    private final List<String> geometryColumns;
+    private final List<String> valueColumns;
+    private final PackedRTree index;
+    private final LongBuffer rowOffsets;
+    private final ValueColumn[] columns;
+    private final long chunkSize;
+    private final IntBuffer[] chunkInts;
+    private final DoubleBuffer[] chunkCoordinates;
+
+    private MappedFeatureStore(FileChannel channel) throws IOException {
+        this.channel = channel;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(readHeader(channel)));
+        Header header = Header.read(in);
+        this.rowCount = header.rowCount;
+        this.envelope = header.envelope;
+        this.query = header.query;
+        this.sourceGeometryColumns = Collections.unmodifiableList(header.sourceGeometryColumns);
+        this.geometryColumns = Collections.unmodifiableList(header.geometryColumns);
+        this.valueColumns = Collections.unmodifiableList(header.valueColumns);
+        this.chunkSize = header.chunkSize;
+        this.index = new PackedRTree(map(header.treeOffset, PackedRTree.size(rowCount, header.nodeSize)),
+                rowCount, header.nodeSize);
+        this.rowOffsets = map(header.rowOffsetsOffset, 8L * rowCount).asLongBuffer();
+        Object[][] dictionaries = readDictionaries(map(header.dictionariesOffset, header.dictionariesLength),
+                header.valueKinds);
+        this.columns = new ValueColumn[header.valueKinds.length];
+        for (int i = 0; i < columns.length; i++) {
+            long offset = header.valueOffsets[i];
+            switch (header.valueKinds[i]) {
+                case ValueColumn.BOOLEAN:
+                    columns[i] = new ValueColumn.BooleanColumn(map(offset, rowCount));
+                    break;
+                case ValueColumn.LONG:
+                    columns[i] = new ValueColumn.LongColumn(header.valueTypes[i], map(offset, 8L * rowCount).asLongBuffer(),
+                            map(offset + 8L * rowCount, rowCount));
+                    break;
+                case ValueColumn.DOUBLE:
+                    columns[i] = new ValueColumn.DoubleColumn(header.valueTypes[i], map(offset, 8L * rowCount).asDoubleBuffer(),
+                            map(offset + 8L * rowCount, rowCount));
+                    break;
+                default:
+                    columns[i] = new ValueColumn.DictionaryColumn(map(offset, 4L * rowCount).asIntBuffer(), dictionaries[i]);
+            }
+        }
+        int chunkCount = (int) ((header.geometriesLength + chunkSize - 1) / chunkSize);
+        this.chunkInts = new IntBuffer[chunkCount];
+        this.chunkCoordinates = new DoubleBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            ByteBuffer chunk = map(header.geometriesOffset + i * chunkSize,
+                    Math.min(chunkSize, header.geometriesLength - i * chunkSize));
+            chunkInts[i] = chunk.asIntBuffer();
+            chunkCoordinates[i] = chunk.asDoubleBuffer();
+        }
+    }
+
+    /**
+     * Open a file written by a {@link Writer}
+     *
+     * @param file
+     * @return the store, to close when it is not used anymore
+     * @throws IOException
+     */
+    public static MappedFeatureStore open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new MappedFeatureStore(channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private static byte[] readHeader(FileChannel channel) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(12);
+        readFully(channel, start, 0);
+        start.flip();
+        if (start.getInt() != MAGIC) {
+            throw new IOException("The file is not a feature store");
+        }
+        int version = start.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version of feature store : " + version);
+        }
+        ByteBuffer header = ByteBuffer.allocate(start.getInt());
+        readFully(channel, header, 12);
+        return header.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the feature store");
+            }
+        }
+    }
+
+    private ByteBuffer map(long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("A section of the feature store cannot exceed 2 GB");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ORDER);
+    }
+
+    private static Object[][] readDictionaries(ByteBuffer buffer, byte[] kinds) {
+        Object[][] dictionaries = new Object[kinds.length][];
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] == ValueColumn.DICTIONARY) {
+                Object[] dictionary = new Object[buffer.getInt()];
+                for (int j = 0; j < dictionary.length; j++) {
+                    dictionary[j] = readValue(buffer);
+                }
+                dictionaries[i] = dictionary;
+            }
+        }
+        return dictionaries;
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case 'S':
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            case 'L':
+                return buffer.getLong();
+            case 'I':
+                return buffer.getInt();
+            case 'D':
+                return buffer.getDouble();
+            case 'F':
+                return buffer.getFloat();
+            case 'B':
+                return buffer.get() == 1;
+            default:
+                throw new IllegalStateException("Unknown value in the dictionary : " + tag);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the extent of the features
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(envelope);
+    }
+
+    /**
+     * @return the query the rows have been selected with, empty if it has not
+     * been set by the writer
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return the geometry columns of the exported table
+     */
+    public List<String> getSourceGeometryColumns() {
+        return sourceGeometryColumns;
+    }
+
+    /**
+     * @return the names of the geometry columns
+     */
+    public List<String> getGeometryColumns() {
+        return geometryColumns;
+    }
+
+    /**
+     * @return the names of the value columns
+     */
+    public List<String> getValueColumns() {
+        return valueColumns;
+    }
+
+    @Override
+    public void query(Envelope envelope, IntConsumer visitor) {
+        index.query(envelope, visitor);
+    }
+
+    /**
+     * Read a geometry. Its coordinates are read from the mapped file.
+     *
+     * @param row the index of the row
+     * @param column the index of the geometry column
+     * @return the geometry or null
+     */
+    @Override
+    public Geometry getGeometry(int row, int column) {
+        long offset = rowOffsets.get(row);
+        int chunk = (int) (offset / chunkSize);
+        int position = (int) (offset % chunkSize);
+        IntBuffer ints = chunkInts[chunk];
+        DoubleBuffer coordinates = chunkCoordinates[chunk];
+        int p = position / Integer.BYTES;
+        int headerLength = ints.get(p++);
+        //The coordinates follow the header, aligned on 16 bytes
+        int coordinate = align(position + Integer.BYTES * (1 + headerLength)) / (2 * Double.BYTES);
+        for (int c = 0; c < column; c++) {
+            p++;
+            int partCount = ints.get(p++);
+            for (int i = 0; i < partCount; i++) {
+                p++;
+                int ringCount = ints.get(p++);
+                for (int j = 0; j < ringCount; j++) {
+                    coordinate += ints.get(p++);
+                }
+            }
+        }
+        byte type = (byte) ints.get(p++);
+        if (type == ColumnarFeatureStore.NULL) {
+            return null;
+        }
+        Geometry[] parts = new Geometry[ints.get(p++)];
+        for (int i = 0; i < parts.length; i++) {
+            byte partType = (byte) ints.get(p++);
+            BufferCoordinateSequence[] rings = new BufferCoordinateSequence[ints.get(p++)];
+            for (int j = 0; j < rings.length; j++) {
+                int size = ints.get(p++);
+                rings[j] = new BufferCoordinateSequence(coordinates, coordinate, size);
+                coordinate += size;
+            }
+            parts[i] = ColumnarFeatureStore.createPart(partType, rings);
+        }
+        return ColumnarFeatureStore.createGeometry(type, parts);
+    }
+
+    @Override
+    public Object getValue(int row, int column) {
+        return columns[column].get(row);
+    }
+
+    @Override
+    public boolean isTrue(int row, int column) {
+        return columns[column].isTrue(row);
+    }
+
+    /**
+     * Close the file. The mapped buffers are released by the garbage
+     * collector, the store must not be read anymore.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static int align(int position) {
+        return (position + 15) & ~15;
+    }
+
+    private static long align(long position) {
+        return (position + 15) & ~15L;
+    }
+
+    /**
+     * The description of the file
+     */
+    private static final class Header {
+
+        int rowCount;
+        int nodeSize;
+        long chunkSize;
+        Envelope envelope;
+        String query;
+        List<String> sourceGeometryColumns;
+        List<String> geometryColumns;
+        List<String> valueColumns;
+        byte[] valueKinds;
+        Class[] valueTypes;
+        long treeOffset;
+        long rowOffsetsOffset;
+        long[] valueOffsets;
+        long dictionariesOffset;
+        long dictionariesLength;
+        long geometriesOffset;
+        long geometriesLength;
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(rowCount);
+            out.writeInt(nodeSize);
+            out.writeLong(chunkSize);
+            out.writeDouble(envelope.getMinX());
+            out.writeDouble(envelope.getMinY());
+            out.writeDouble(envelope.getMaxX());
+            out.writeDouble(envelope.getMaxY());
+            //The query can be longer than the 64 KB of writeUTF
+            byte[] queryBytes = query.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(queryBytes.length);
+            out.write(queryBytes);
+            writeNames(out, sourceGeometryColumns);
+            writeNames(out, geometryColumns);
+            writeNames(out, valueColumns);
+            for (int i = 0; i < valueKinds.length; i++) {
+                out.writeByte(valueKinds[i]);
+                out.writeUTF(valueTypes[i] == null ? "" : valueTypes[i].getName());
+                out.writeLong(valueOffsets[i]);
+            }
+            out.writeLong(treeOffset);
+            out.writeLong(rowOffsetsOffset);
+            out.writeLong(dictionariesOffset);
+            out.writeLong(dictionariesLength);
+            out.writeLong(geometriesOffset);
+            out.writeLong(geometriesLength);
+        }
+
+        static Header read(DataInputStream in) throws IOException {
+            Header header = new Header();
+            header.rowCount = in.readInt();
+            header.nodeSize = in.readInt();
+            header.chunkSize = in.readLong();
+            double minX = in.readDouble();
+            double minY = in.readDouble();
+            double maxX = in.readDouble();
+            double maxY = in.readDouble();
+            header.envelope = minX > maxX ? new Envelope() : new Envelope(minX, maxX, minY, maxY);
+            byte[] queryBytes = new byte[in.readInt()];
+            in.readFully(queryBytes);
+            header.query = new String(queryBytes, StandardCharsets.UTF_8);
+            header.sourceGeometryColumns = readNames(in);
+            header.geometryColumns = readNames(in);
+            header.valueColumns = readNames(in);
+            int valueCount = header.valueColumns.size();
+            header.valueKinds = new byte[valueCount];
+            header.valueTypes = new Class[valueCount];
+            header.valueOffsets = new long[valueCount];
+            for (int i = 0; i < valueCount; i++) {
+                header.valueKinds[i] = in.readByte();
+                header.valueTypes[i] = getType(in.readUTF());
+                header.valueOffsets[i] = in.readLong();
+            }
+            header.treeOffset = in.readLong();
+            header.rowOffsetsOffset = in.readLong();
+            header.dictionariesOffset = in.readLong();
+            header.dictionariesLength = in.readLong();
+            header.geometriesOffset = in.readLong();
+            header.geometriesLength = in.readLong();
+            return header;
+        }
+
+        private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+            out.writeInt(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+        }
+
+        private static List<String> readNames(DataInputStream in) throws IOException {
+            int count = in.readInt();
+            List<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                names.add(in.readUTF());
+            }
+            return names;
+        }
+
+        /**
+         * Only the types of the values stored in the primitive columns are
+         * needed to read them
+         */
+        private static Class getType(String name) {
+            for (Class type : new Class[]{Boolean.class, Long.class, Integer.class, Short.class, Byte.class,
+                Double.class, Float.class, String.class}) {
+                if (type.getName().equals(name)) {
+                    return type;
+                }
+            }
+            return Object.class;
+        }
+    }
+
+    /**
+     * Write a feature store. The rows are first written in a temporary file,
+     * then sorted on the Hilbert curve and copied in the store when the writer
+     * is finished. The bounds of the rows are kept in the heap, about 60 bytes
+     * per row.
+     */
+    public static final class Writer implements Closeable {
+
+        private final File file;
+        private final File tempFile;
+        private final FileChannel temp;
+        private final List<String> sourceGeometryColumns;
+        private final List<String> geometryColumns;
+        private final List<String> valueColumns;
+        private final byte[] kinds;
+        private final Class[] types;
+        private final int valueLength;
+        private final List<Map<Object, Integer>> dictionaries = new ArrayList<>();
+        private final long chunkSize;
+        private String query = "";
+        private ByteBuffer row = ByteBuffer.allocate(4096).order(ORDER);
+        private double[] bounds = new double[4096];
+        private long[] tempOffsets = new long[1024];
+        private int[] geometryLengths = new int[1024];
+        private int rowCount = 0;
+        private long tempLength = 0;
+        private boolean finished = false;
+
+        /**
+         * @param file the store to write
+         * @param sourceGeometryColumns the geometry columns of the exported
+         * table
+         * @param geometryColumns the names of the geometry columns
+         * @param valueColumns the names of the value columns
+         * @param valueTypes the type of each value column
+         * @throws IOException
+         */
+        public Writer(File file, List<String> sourceGeometryColumns, List<String> geometryColumns,
+                List<String> valueColumns, Class[] valueTypes) throws IOException {
+            this(file, sourceGeometryColumns, geometryColumns, valueColumns, valueTypes, DEFAULT_CHUNK_SIZE);
+        }
+
+        Writer(File file, List<String> sourceGeometryColumns, List<String> geometryColumns,
+                List<String> valueColumns, Class[] valueTypes, long chunkSize) throws IOException {
+            this.file = file;
+            this.sourceGeometryColumns = new ArrayList<>(sourceGeometryColumns);
+            this.geometryColumns = new ArrayList<>(geometryColumns);
+            this.valueColumns = new ArrayList<>(valueColumns);
+            this.types = valueTypes.clone();
+            this.kinds = new byte[valueTypes.length];
+            this.chunkSize = chunkSize;
+            int length = 0;
+            for (int i = 0; i < kinds.length; i++) {
+                kinds[i] = ValueColumn.getKind(valueTypes[i]);
+                length += getFileWidth(kinds[i]);
+                dictionaries.add(kinds[i] == ValueColumn.DICTIONARY ? new HashMap<>() : null);
+            }
+            this.valueLength = length;
+            File parent = file.getAbsoluteFile().getParentFile();
+            this.tempFile = File.createTempFile(file.getName(), ".tmp", parent);
+            this.temp = FileChannel.open(tempFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Set the query the rows are selected with, so the reader of the file
+         * can check that it reads the same columns
+         *
+         * @param query the query, written when the writer is finished
+         */
+        public void setQuery(String query) {
+            this.query = query == null ? "" : query;
+        }
+
+        /**
+         * Add a row
+         *
+         * @param geometries the value of each geometry column
+         * @param values the value of each value column
+         * @throws IOException
+         */
+        public void addRow(Geometry[] geometries, Object[] values) throws IOException {
+            Envelope rowBounds = new Envelope();
+            List<Integer> header = new ArrayList<>();
+            List<Coordinate[]> rings = new ArrayList<>();
+            for (Geometry geometry : geometries) {
+                if (geometry == null) {
+                    header.add((int) ColumnarFeatureStore.NULL);
+                    header.add(0);
+                } else {
+                    rowBounds.expandToInclude(geometry.getEnvelopeInternal());
+                    header.add((int) ColumnarFeatureStore.getType(geometry));
+                    int partCount = header.size();
+                    header.add(0);
+                    addParts(geometry, header, partCount, rings);
+                }
+            }
+            int coordinatesStart = align(Integer.BYTES * (1 + header.size()));
+            int coordinateCount = 0;
+            for (Coordinate[] ring : rings) {
+                coordinateCount += ring.length;
+            }
+            long geometryLength = coordinatesStart + 16L * coordinateCount;
+            if (geometryLength > chunkSize) {
+                throw new IOException("The geometries of a row cannot exceed " + chunkSize + " bytes");
+            }
+            ensureRowCapacity(Integer.BYTES + (int) geometryLength + valueLength);
+            row.clear();
+            row.putInt((int) geometryLength);
+            int start = row.position();
+            row.putInt(header.size());
+            for (Integer value : header) {
+                row.putInt(value);
+            }
+            row.position(start + coordinatesStart);
+            for (Coordinate[] ring : rings) {
+                for (Coordinate coordinate : ring) {
+                    row.putDouble(coordinate.x);
+                    row.putDouble(coordinate.y);
+                }
+            }
+            for (int i = 0; i < kinds.length; i++) {
+                putValue(i, values[i]);
+            }
+            row.flip();
+            if (rowCount == tempOffsets.length) {
+                tempOffsets = Arrays.copyOf(tempOffsets, rowCount * 2);
+                geometryLengths = Arrays.copyOf(geometryLengths, rowCount * 2);
+            }
+            if (4 * rowCount + 4 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            tempOffsets[rowCount] = tempLength;
+            geometryLengths[rowCount] = (int) geometryLength;
+            //The rows without geometry have empty bounds, never selected
+            bounds[4 * rowCount] = rowBounds.isNull() ? Double.POSITIVE_INFINITY : rowBounds.getMinX();
+            bounds[4 * rowCount + 1] = rowBounds.isNull() ? Double.POSITIVE_INFINITY : rowBounds.getMinY();
+            bounds[4 * rowCount + 2] = rowBounds.isNull() ? Double.NEGATIVE_INFINITY : rowBounds.getMaxX();
+            bounds[4 * rowCount + 3] = rowBounds.isNull() ? Double.NEGATIVE_INFINITY : rowBounds.getMaxY();
+            while (row.hasRemaining()) {
+                tempLength += temp.write(row, tempLength);
+            }
+            rowCount++;
+        }
+
+        private void ensureRowCapacity(int length) {
+            if (row.capacity() < length) {
+                row = ByteBuffer.allocate(Math.max(length, row.capacity() * 2)).order(ORDER);
+            }
+        }
+
+        private static void addParts(Geometry geometry, List<Integer> header, int partCount, List<Coordinate[]> rings) {
+            if (geometry instanceof Point || geometry instanceof LineString) {
+                header.set(partCount, header.get(partCount) + 1);
+                header.add(geometry instanceof Point ? (int) ColumnarFeatureStore.POINT : (int) ColumnarFeatureStore.LINESTRING);
+                header.add(1);
+                Coordinate[] ring = geometry.getCoordinates();
+                header.add(ring.length);
+                rings.add(ring);
+            } else if (geometry instanceof Polygon) {
+                Polygon polygon = (Polygon) geometry;
+                header.set(partCount, header.get(partCount) + 1);
+                header.add((int) ColumnarFeatureStore.POLYGON);
+                header.add(1 + polygon.getNumInteriorRing());
+                Coordinate[] shell = polygon.getExteriorRing().getCoordinates();
+                header.add(shell.length);
+                rings.add(shell);
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    Coordinate[] hole = polygon.getInteriorRingN(i).getCoordinates();
+                    header.add(hole.length);
+                    rings.add(hole);
+                }
+            } else if (geometry instanceof GeometryCollection) {
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    addParts(geometry.getGeometryN(i), header, partCount, rings);
+                }
+            }
+        }
+
+        private void putValue(int column, Object value) {
+            switch (kinds[column]) {
+                case ValueColumn.BOOLEAN:
+                    row.put(value == null ? (byte) 2 : (Boolean) value ? (byte) 1 : (byte) 0);
+                    break;
+                case ValueColumn.LONG:
+                    row.putLong(value == null ? 0 : ((Number) value).longValue());
+                    row.put(value == null ? (byte) 1 : (byte) 0);
+                    break;
+                case ValueColumn.DOUBLE:
+                    row.putDouble(value == null ? 0 : ((Number) value).doubleValue());
+                    row.put(value == null ? (byte) 1 : (byte) 0);
+                    break;
+                default:
+                    if (value == null) {
+                        row.putInt(-1);
+                    } else {
+                        if (!(value instanceof String || value instanceof Long || value instanceof Integer
+                                || value instanceof Double || value instanceof Float || value instanceof Boolean)) {
+                            throw new IllegalArgumentException("The values of type " + value.getClass().getName()
+                                    + " cannot be stored in the column " + valueColumns.get(column));
+                        }
+                        Map<Object, Integer> dictionary = dictionaries.get(column);
+                        Integer code = dictionary.get(value);
+                        if (code == null) {
+                            code = dictionary.size();
+                            dictionary.put(value, code);
+                        }
+                        row.putInt(code);
+                    }
+            }
+        }
+
+        /**
+         * @return the number of rows written
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Sort the rows and write the store
+         *
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            int[] order = PackedRTree.sortByHilbert(bounds, rowCount);
+            double[] sortedBounds = new double[4 * rowCount];
+            Envelope extent = new Envelope();
+            for (int i = 0; i < rowCount; i++) {
+                System.arraycopy(bounds, 4 * order[i], sortedBounds, 4 * i, 4);
+                if (sortedBounds[4 * i] <= sortedBounds[4 * i + 2]) {
+                    extent.expandToInclude(sortedBounds[4 * i], sortedBounds[4 * i + 1]);
+                    extent.expandToInclude(sortedBounds[4 * i + 2], sortedBounds[4 * i + 3]);
+                }
+            }
+            bounds = null;
+            //Place the geometries so a row never crosses two chunks
+            long[] rowOffsets = new long[rowCount];
+            long geometriesLength = 0;
+            for (int i = 0; i < rowCount; i++) {
+                long offset = align(geometriesLength);
+                int length = geometryLengths[order[i]];
+                if (offset / chunkSize != (offset + length - 1) / chunkSize) {
+                    offset = (offset / chunkSize + 1) * chunkSize;
+                }
+                rowOffsets[i] = offset;
+                geometriesLength = offset + length;
+            }
+            byte[] dictionaryBytes = writeDictionaries();
+
+            Header header = new Header();
+            header.rowCount = rowCount;
+            header.nodeSize = PackedRTree.DEFAULT_NODE_SIZE;
+            header.chunkSize = chunkSize;
+            header.envelope = extent;
+            header.query = query;
+            header.sourceGeometryColumns = sourceGeometryColumns;
+            header.geometryColumns = geometryColumns;
+            header.valueColumns = valueColumns;
+            header.valueKinds = kinds;
+            header.valueTypes = types;
+            header.valueOffsets = new long[kinds.length];
+            header.dictionariesLength = dictionaryBytes.length;
+            header.geometriesLength = geometriesLength;
+            //The length of the header does not depend on the offsets
+            long offset = align(12L + writeHeader(header).length);
+            header.treeOffset = offset;
+            offset = align(offset + PackedRTree.size(rowCount, header.nodeSize));
+            header.rowOffsetsOffset = offset;
+            offset = align(offset + 8L * rowCount);
+            for (int i = 0; i < kinds.length; i++) {
+                header.valueOffsets[i] = offset;
+                offset = align(offset + (long) rowCount * getFileWidth(kinds[i]));
+            }
+            header.dictionariesOffset = offset;
+            offset = align(offset + dictionaryBytes.length);
+            header.geometriesOffset = offset;
+            byte[] headerBytes = writeHeader(header);
+
+            try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                output.setLength(0);
+                output.setLength(header.geometriesOffset + geometriesLength);
+                FileChannel channel = output.getChannel();
+                ByteBuffer start = ByteBuffer.allocate(12 + headerBytes.length);
+                start.putInt(MAGIC).putInt(VERSION).putInt(headerBytes.length).put(headerBytes).flip();
+                write(channel, start, 0);
+                PackedRTree.build(sortedBounds, rowCount, header.nodeSize,
+                        map(channel, header.treeOffset, PackedRTree.size(rowCount, header.nodeSize)));
+                sortedBounds = null;
+                map(channel, header.rowOffsetsOffset, 8L * rowCount).asLongBuffer().put(rowOffsets);
+                ByteBuffer dictionaries = ByteBuffer.wrap(dictionaryBytes);
+                write(channel, dictionaries, header.dictionariesOffset);
+                copyRows(channel, header, order, rowOffsets);
+                channel.force(false);
+            }
+            finished = true;
+        }
+
+        /**
+         * Copy the rows of the temporary file in the order of the curve
+         */
+        private void copyRows(FileChannel channel, Header header, int[] order, long[] rowOffsets) throws IOException {
+            ByteBuffer[] values = new ByteBuffer[kinds.length];
+            for (int i = 0; i < kinds.length; i++) {
+                values[i] = map(channel, header.valueOffsets[i], (long) rowCount * getFileWidth(kinds[i]));
+            }
+            for (int i = 0; i < rowCount; i++) {
+                int source = order[i];
+                int geometryLength = geometryLengths[source];
+                ensureRowCapacity(Integer.BYTES + geometryLength + valueLength);
+                row.clear();
+                row.limit(Integer.BYTES + geometryLength + valueLength);
+                readFully(temp, row, tempOffsets[source]);
+                row.position(Integer.BYTES);
+                row.limit(Integer.BYTES + geometryLength);
+                write(channel, row, header.geometriesOffset + rowOffsets[i]);
+                row.limit(Integer.BYTES + geometryLength + valueLength);
+                row.position(Integer.BYTES + geometryLength);
+                for (int c = 0; c < kinds.length; c++) {
+                    switch (kinds[c]) {
+                        case ValueColumn.BOOLEAN:
+                            values[c].put(i, row.get());
+                            break;
+                        case ValueColumn.LONG:
+                        case ValueColumn.DOUBLE:
+                            values[c].putLong(8 * i, row.getLong());
+                            values[c].put(8 * rowCount + i, row.get());
+                            break;
+                        default:
+                            values[c].putInt(4 * i, row.getInt());
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the number of bytes of a value in a row
+         */
+        private static int getFileWidth(byte kind) {
+            switch (kind) {
+                case ValueColumn.BOOLEAN:
+                    return 1;
+                case ValueColumn.DICTIONARY:
+                    return 4;
+                default:
+                    //The value and the null mark
+                    return 9;
+            }
+        }
+
+        private static byte[] writeHeader(Header header) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                header.write(out);
+            }
+            return bytes.toByteArray();
+        }
+
+        private byte[] writeDictionaries() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (int i = 0; i < kinds.length; i++) {
+                if (kinds[i] == ValueColumn.DICTIONARY) {
+                    Object[] dictionary = new Object[dictionaries.get(i).size()];
+                    dictionaries.get(i).forEach((value, code) -> dictionary[code] = value);
+                    ByteBuffer count = ByteBuffer.allocate(4).order(ORDER).putInt(dictionary.length);
+                    bytes.write(count.array());
+                    for (Object value : dictionary) {
+                        bytes.write(writeValue(value));
+                    }
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        private static byte[] writeValue(Object value) {
+            if (value instanceof String) {
+                byte[] string = ((String) value).getBytes(StandardCharsets.UTF_8);
+                return ByteBuffer.allocate(5 + string.length).order(ORDER).put((byte) 'S').putInt(string.length).put(string).array();
+            } else if (value instanceof Long) {
+                return ByteBuffer.allocate(9).order(ORDER).put((byte) 'L').putLong((Long) value).array();
+            } else if (value instanceof Integer) {
+                return ByteBuffer.allocate(5).order(ORDER).put((byte) 'I').putInt((Integer) value).array();
+            } else if (value instanceof Double) {
+                return ByteBuffer.allocate(9).order(ORDER).put((byte) 'D').putDouble((Double) value).array();
+            } else if (value instanceof Float) {
+                return ByteBuffer.allocate(5).order(ORDER).put((byte) 'F').putFloat((Float) value).array();
+            }
+            return new byte[]{'B', (byte) ((Boolean) value ? 1 : 0)};
+        }
+
+        private static MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("A section of the feature store cannot exceed 2 GB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, length);
+            buffer.order(ORDER);
+            return buffer;
+        }
+
+        private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            long written = 0;
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer, position + written);
+            }
+        }
+
+        /**
+         * Delete the temporary file. The store is deleted if the writer is not
+         * finished.
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            temp.close();
+            Files.deleteIfExists(tempFile.toPath());
+            if (!finished) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+}
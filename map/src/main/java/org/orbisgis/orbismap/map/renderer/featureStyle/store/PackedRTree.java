@@ -0,0 +1,346 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Static R-tree packed in a buffer, built once from the bounds of the items.
+ * The leaves are sorted on a Hilbert curve and grouped by nodes of
+ * {@link #DEFAULT_NODE_SIZE} children, so the tree has no empty slot and no
+ * object per node.
+ *
+ * The buffer contains the boxes of all the nodes (4 doubles : minX, minY,
+ * maxX, maxY), from the leaves to the root, followed by their indices (1 int)
+ * : the item for a leaf, the first child for an internal node.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public final class PackedRTree {
+
+    /**
+     * Default number of children of a node
+     */
+    public static final int DEFAULT_NODE_SIZE = 16;
+
+    /**
+     * Number of cells on each axis of the Hilbert curve
+     */
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    private final int numItems;
+    private final int nodeSize;
+    private final int[] levelBounds;
+    private final ByteBuffer buffer;
+    private final DoubleBuffer boxes;
+    private final IntBuffer indices;
+
+    /**
+     * Read a tree from a buffer
+     *
+     * @param buffer the buffer, from its position
+     * @param numItems the number of items
+     * @param nodeSize the number of children of a node
+     */
+    public PackedRTree(ByteBuffer buffer, int numItems, int nodeSize) {
+        if (nodeSize < 2) {
+            throw new IllegalArgumentException("A node must have at least 2 children");
+        }
+        this.numItems = numItems;
+        this.nodeSize = nodeSize;
+        this.levelBounds = levelBounds(numItems, nodeSize);
+        int numNodes = levelBounds[levelBounds.length - 1];
+        ByteBuffer slice = buffer.slice().order(buffer.order());
+        slice.limit((int) size(numItems, nodeSize));
+        this.buffer = slice;
+        slice.position(0);
+        this.boxes = slice.asDoubleBuffer();
+        slice.position(numNodes * 4 * Double.BYTES);
+        this.indices = slice.asIntBuffer();
+        slice.position(0);
+    }
+
+    /**
+     * Compute the end of each level of the tree, in number of nodes
+     *
+     * @param numItems
+     * @param nodeSize
+     * @return
+     */
+    private static int[] levelBounds(int numItems, int nodeSize) {
+        int[] bounds = new int[32];
+        int count = numItems;
+        int numNodes = numItems;
+        int level = 0;
+        bounds[level++] = numNodes;
+        if (numItems > 0) {
+            do {
+                count = (count + nodeSize - 1) / nodeSize;
+                numNodes += count;
+                bounds[level++] = numNodes;
+            } while (count != 1);
+        }
+        return Arrays.copyOf(bounds, level);
+    }
+
+    /**
+     * Return the size of the buffer of a tree
+     *
+     * @param numItems the number of items
+     * @param nodeSize the number of children of a node
+     * @return the size in bytes
+     */
+    public static long size(int numItems, int nodeSize) {
+        int[] bounds = levelBounds(numItems, nodeSize);
+        return (long) bounds[bounds.length - 1] * (4 * Double.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Build a tree in a new direct buffer
+     *
+     * @param bounds the bounds of the items, 4 values per item : minX, minY,
+     * maxX, maxY
+     * @param numItems the number of items
+     * @param nodeSize the number of children of a node
+     * @return the tree
+     */
+    public static PackedRTree build(double[] bounds, int numItems, int nodeSize) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size(numItems, nodeSize)).order(ByteOrder.nativeOrder());
+        build(bounds, numItems, nodeSize, buffer);
+        return new PackedRTree(buffer, numItems, nodeSize);
+    }
+
+    /**
+     * Build a tree in a buffer, from its position. The position of the buffer
+     * is not modified.
+     *
+     * @param bounds the bounds of the items, 4 values per item : minX, minY,
+     * maxX, maxY
+     * @param numItems the number of items
+     * @param nodeSize the number of children of a node
+     * @param target the buffer, with at least {@link #size(int, int)} bytes
+     * remaining
+     */
+    public static void build(double[] bounds, int numItems, int nodeSize, ByteBuffer target) {
+        int[] levelBounds = levelBounds(numItems, nodeSize);
+        int numNodes = levelBounds[levelBounds.length - 1];
+        ByteBuffer slice = target.slice().order(target.order());
+        DoubleBuffer boxes = slice.asDoubleBuffer();
+        slice.position(numNodes * 4 * Double.BYTES);
+        IntBuffer indices = slice.asIntBuffer();
+        if (numItems == 0) {
+            return;
+        }
+        //The leaves
+        int[] order = sortByHilbert(bounds, numItems);
+        for (int i = 0; i < numItems; i++) {
+            int item = order[i];
+            boxes.put(4 * i, bounds[4 * item]);
+            boxes.put(4 * i + 1, bounds[4 * item + 1]);
+            boxes.put(4 * i + 2, bounds[4 * item + 2]);
+            boxes.put(4 * i + 3, bounds[4 * item + 3]);
+            indices.put(i, item);
+        }
+        //The internal nodes, level by level
+        int pos = 0;
+        int node = numItems;
+        for (int level = 0; level < levelBounds.length - 1; level++) {
+            int end = levelBounds[level];
+            while (pos < end) {
+                int first = pos;
+                double minX = Double.POSITIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < nodeSize && pos < end; i++, pos++) {
+                    minX = Math.min(minX, boxes.get(4 * pos));
+                    minY = Math.min(minY, boxes.get(4 * pos + 1));
+                    maxX = Math.max(maxX, boxes.get(4 * pos + 2));
+                    maxY = Math.max(maxY, boxes.get(4 * pos + 3));
+                }
+                boxes.put(4 * node, minX);
+                boxes.put(4 * node + 1, minY);
+                boxes.put(4 * node + 2, maxX);
+                boxes.put(4 * node + 3, maxY);
+                indices.put(node, first);
+                node++;
+            }
+        }
+    }
+
+    /**
+     * Sort items on the Hilbert curve of their centers
+     *
+     * @param bounds the bounds of the items, 4 values per item : minX, minY,
+     * maxX, maxY
+     * @param numItems the number of items
+     * @return the items in the order of the curve
+     */
+    public static int[] sortByHilbert(double[] bounds, int numItems) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numItems; i++) {
+            minX = Math.min(minX, bounds[4 * i]);
+            minY = Math.min(minY, bounds[4 * i + 1]);
+            maxX = Math.max(maxX, bounds[4 * i + 2]);
+            maxY = Math.max(maxY, bounds[4 * i + 3]);
+        }
+        double width = maxX - minX;
+        double height = maxY - minY;
+        long[] keys = new long[numItems];
+        for (int i = 0; i < numItems; i++) {
+            int x = width == 0 ? 0 : (int) Math.floor(HILBERT_MAX * ((bounds[4 * i] + bounds[4 * i + 2]) / 2 - minX) / width);
+            int y = height == 0 ? 0 : (int) Math.floor(HILBERT_MAX * ((bounds[4 * i + 1] + bounds[4 * i + 3]) / 2 - minY) / height);
+            //The value of the curve in the high bits, the item in the low bits
+            keys[i] = (hilbert(x, y) << 32 | i) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[numItems];
+        for (int i = 0; i < numItems; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Compute the position of a cell on a Hilbert curve of 2^16 cells per
+     * axis
+     *
+     * @param x the column of the cell, between 0 and 65535
+     * @param y the row of the cell, between 0 and 65535
+     * @return the position on the curve, between 0 and 2^32 - 1
+     */
+    public static long hilbert(int x, int y) {
+        long d = 0;
+        for (int s = 1 << 15; s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            //Rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Visit the items whose bounds intersect an envelope. The items are not
+     * visited in a specific order.
+     *
+     * @param envelope
+     * @param visitor receives the index of each item
+     */
+    public void query(Envelope envelope, IntConsumer visitor) {
+        query(envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY(), visitor);
+    }
+
+    /**
+     * Visit the items whose bounds intersect a box. The items are not visited
+     * in a specific order.
+     *
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param visitor receives the index of each item
+     */
+    public void query(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        if (numItems == 0) {
+            return;
+        }
+        int[] stack = new int[2 * levelBounds.length * nodeSize];
+        int stackSize = 0;
+        int level = levelBounds.length - 1;
+        int nodeIndex = levelBounds[level] - 1;
+        while (true) {
+            int end = Math.min(nodeIndex + nodeSize, levelBounds[level]);
+            for (int pos = nodeIndex; pos < end; pos++) {
+                if (maxX < boxes.get(4 * pos) || maxY < boxes.get(4 * pos + 1)
+                        || minX > boxes.get(4 * pos + 2) || minY > boxes.get(4 * pos + 3)) {
+                    continue;
+                }
+                int index = indices.get(pos);
+                if (nodeIndex < numItems) {
+                    visitor.accept(index);
+                } else {
+                    stack[stackSize++] = index;
+                    stack[stackSize++] = level - 1;
+                }
+            }
+            if (stackSize == 0) {
+                return;
+            }
+            level = stack[--stackSize];
+            nodeIndex = stack[--stackSize];
+        }
+    }
+
+    /**
+     * @return the number of items
+     */
+    public int getNumItems() {
+        return numItems;
+    }
+
+    /**
+     * @return the number of children of a node
+     */
+    public int getNodeSize() {
+        return nodeSize;
+    }
+
+    /**
+     * @return the buffer of the tree
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.duplicate().order(buffer.order());
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle.store;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Values of an attribute stored in a buffer, with a fixed width per row
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+abstract class ValueColumn {
+
+    /**
+     * One byte per row : 0 for false, 1 for true and 2 for null
+     */
+    static final byte BOOLEAN = 1;
+    /**
+     * A long per row and a byte to mark the null values
+     */
+    static final byte LONG = 2;
+    /**
+     * A double per row and a byte to mark the null values
+     */
+    static final byte DOUBLE = 3;
+    /**
+     * The code of the value in a dictionary of the distinct values, -1 for
+     * null
+     */
+    static final byte DICTIONARY = 4;
+
+    /**
+     * Return how the values of a type are stored
+     *
+     * @param type the type of the values
+     * @return
+     */
+    static byte getKind(Class type) {
+        if (type == Boolean.class) {
+            return BOOLEAN;
+        } else if (type == Long.class || type == Integer.class || type == Short.class || type == Byte.class) {
+            return LONG;
+        } else if (type == Double.class || type == Float.class) {
+            return DOUBLE;
+        }
+        return DICTIONARY;
+    }
+
+    /**
+     * @param row
+     * @return the value of the row, or null
+     */
+    abstract Object get(int row);
+
+    /**
+     * @param row
+     * @return true if the value of the row is true
+     */
+    boolean isTrue(int row) {
+        return Boolean.TRUE.equals(get(row));
+    }
+
+    /**
+     * @return the size of the buffers
+     */
+    abstract long getAllocatedBytes();
+
+    static final class BooleanColumn extends ValueColumn {
+
+        private final ByteBuffer values;
+
+        BooleanColumn(ByteBuffer values) {
+            this.values = values;
+        }
+
+        @Override
+        Object get(int row) {
+            byte value = values.get(row);
+            return value == 2 ? null : value == 1;
+        }
+
+        @Override
+        boolean isTrue(int row) {
+            return values.get(row) == 1;
+        }
+
+        @Override
+        long getAllocatedBytes() {
+            return values.capacity();
+        }
+    }
+
+    static final class LongColumn extends ValueColumn {
+
+        private final Class type;
+        private final LongBuffer values;
+        private final ByteBuffer nulls;
+
+        LongColumn(Class type, LongBuffer values, ByteBuffer nulls) {
+            this.type = type;
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        @Override
+        Object get(int row) {
+            if (nulls.get(row) != 0) {
+                return null;
+            }
+            long value = values.get(row);
+            if (type == Integer.class) {
+                return (int) value;
+            } else if (type == Short.class) {
+                return (short) value;
+            } else if (type == Byte.class) {
+                return (byte) value;
+            }
+            return value;
+        }
+
+        @Override
+        long getAllocatedBytes() {
+            return 8L * values.capacity() + nulls.capacity();
+        }
+    }
+
+    static final class DoubleColumn extends ValueColumn {
+
+        private final Class type;
+        private final DoubleBuffer values;
+        private final ByteBuffer nulls;
+
+        DoubleColumn(Class type, DoubleBuffer values, ByteBuffer nulls) {
+            this.type = type;
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        @Override
+        Object get(int row) {
+            if (nulls.get(row) != 0) {
+                return null;
+            }
+            double value = values.get(row);
+            return type == Float.class ? (Object) (float) value : (Object) value;
+        }
+
+        @Override
+        long getAllocatedBytes() {
+            return 8L * values.capacity() + nulls.capacity();
+        }
+    }
+
+    static final class DictionaryColumn extends ValueColumn {
+
+        private final IntBuffer codes;
+        private final Object[] dictionary;
+
+        DictionaryColumn(IntBuffer codes, Object[] dictionary) {
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        Object get(int row) {
+            int code = codes.get(row);
+            return code < 0 ? null : dictionary[code];
+        }
+
+        @Override
+        long getAllocatedBytes() {
+            return 4L * codes.capacity();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * The drawing of a layer
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+@Name("org.orbisgis.orbismap.LayerRender")
+@Label("Layer Render")
+@Category({"OrbisMap", "Rendering"})
+@Description("Drawing of a layer by a FeatureStyleRenderer")
+public class LayerRenderEvent extends Event {
+
+    @Label("Layer")
+    String layerName;
+
+    @Label("Extent")
+    String extent;
+
+    @Label("Scale Denominator")
+    double scaleDenominator;
+
+    @Label("Rows")
+    @Description("Number of rows read from the queries of the layer")
+    long rowCount;
+
+    @Label("Partial")
+    @Description("True if the drawing has been cancelled")
+    boolean partial;
+
+    /**
+     * Start the event
+     *
+     * @return
+     */
+    public static LayerRenderEvent start() {
+        LayerRenderEvent event = new LayerRenderEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End the event and commit it if it is recorded
+     *
+     * @param layerName
+     * @param extent
+     * @param scaleDenominator
+     * @param rowCount
+     * @param partial
+     */
+    public void finish(String layerName, Envelope extent, double scaleDenominator, long rowCount, boolean partial) {
+        end();
+        if (shouldCommit()) {
+            this.layerName = layerName;
+            this.extent = RenderEvents.toString(extent);
+            this.scaleDenominator = scaleDenominator;
+            this.rowCount = rowCount;
+            this.partial = partial;
+            commit();
+        }
+    }
+}
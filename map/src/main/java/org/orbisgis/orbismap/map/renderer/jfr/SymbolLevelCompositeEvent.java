@@ -0,0 +1,101 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The drawing of the images of the symbol levels of a rule on the target
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+@Name("org.orbisgis.orbismap.SymbolLevelComposite")
+@Label("Symbol Level Composite")
+@Category({"OrbisMap", "Rendering"})
+@Description("Drawing of the symbol level images of a rule on the map")
+public class SymbolLevelCompositeEvent extends Event {
+
+    @Label("Layer")
+    String layerName;
+
+    @Label("Rule")
+    String ruleName;
+
+    @Label("Levels")
+    int levelCount;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    /**
+     * Start the event
+     *
+     * @return
+     */
+    public static SymbolLevelCompositeEvent start() {
+        SymbolLevelCompositeEvent event = new SymbolLevelCompositeEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End the event and commit it if it is recorded
+     *
+     * @param layerName
+     * @param ruleName
+     * @param levelCount
+     * @param width
+     * @param height
+     */
+    public void finish(String layerName, String ruleName, int levelCount, int width, int height) {
+        end();
+        if (shouldCommit()) {
+            this.layerName = layerName;
+            this.ruleName = ruleName;
+            this.levelCount = levelCount;
+            this.width = width;
+            this.height = height;
+            commit();
+        }
+    }
+}
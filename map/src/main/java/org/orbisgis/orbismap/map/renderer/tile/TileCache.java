@@ -0,0 +1,219 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.tile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A two levels cache for the encoded tiles. The first level is an in-memory
+ * LRU map limited by the number of bytes of the tiles. The second level is an
+ * optional directory where each tile is written as a file whose path is the
+ * key of the tile.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class TileCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileCache.class);
+
+    private final long maxMemoryBytes;
+    private final File directory;
+    private final LinkedHashMap<String, byte[]> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create an in-memory cache
+     *
+     * @param maxMemoryBytes the maximum number of bytes kept in memory
+     */
+    public TileCache(long maxMemoryBytes) {
+        this(maxMemoryBytes, null);
+    }
+
+    /**
+     * Create a cache backed by a directory
+     *
+     * @param maxMemoryBytes the maximum number of bytes kept in memory
+     * @param directory the directory where the tiles are written, null to keep
+     * the tiles only in memory
+     */
+    public TileCache(long maxMemoryBytes, File directory) {
+        if (maxMemoryBytes < 0) {
+            throw new IllegalArgumentException("The memory budget cannot be negative");
+        }
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+    }
+
+    /**
+     * Return the tile stored with this key, first from the memory then from
+     * the directory. A tile read from the directory is put back in memory.
+     *
+     * @param key
+     * @return the encoded tile or null if it is not in the cache
+     */
+    public byte[] get(String key) {
+        byte[] tile;
+        synchronized (this) {
+            tile = tiles.get(key);
+        }
+        if (tile != null) {
+            hits.incrementAndGet();
+            return tile;
+        }
+        if (directory != null) {
+            File file = new File(directory, key);
+            if (file.isFile()) {
+                try {
+                    tile = Files.readAllBytes(file.toPath());
+                    diskHits.incrementAndGet();
+                    putInMemory(key, tile);
+                    return tile;
+                } catch (IOException ex) {
+                    LOGGER.warn("Cannot read the tile " + file.getAbsolutePath(), ex);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store a tile in memory and in the directory
+     *
+     * @param key
+     * @param tile the encoded tile
+     */
+    public void put(String key, byte[] tile) {
+        putInMemory(key, tile);
+        if (directory != null) {
+            File file = new File(directory, key);
+            try {
+                File parent = file.getParentFile();
+                Files.createDirectories(parent.toPath());
+                //Write in a temporary file first, so a reader never sees a partial tile
+                File tmp = File.createTempFile("tile", ".tmp", parent);
+                Files.write(tmp.toPath(), tile);
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                LOGGER.warn("Cannot write the tile " + file.getAbsolutePath(), ex);
+            }
+        }
+    }
+
+    private synchronized void putInMemory(String key, byte[] tile) {
+        if (tile.length > maxMemoryBytes) {
+            return;
+        }
+        byte[] old = tiles.put(key, tile);
+        if (old != null) {
+            memoryBytes -= old.length;
+        }
+        memoryBytes += tile.length;
+        Iterator<Map.Entry<String, byte[]>> it = tiles.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            memoryBytes -= eldest.getValue().length;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove all the tiles from the memory. The files are kept.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        memoryBytes = 0;
+    }
+
+    /**
+     * @return the number of tiles found in memory
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of tiles found in the directory
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * @return the number of tiles found neither in memory nor in the directory
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of tiles removed from the memory to respect the
+     * budget
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of bytes of the tiles kept in memory
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,419 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.tile;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.imageio.ImageIO;
+import org.locationtech.jts.geom.Envelope;
+import org.orbisgis.orbismap.map.api.LayerException;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.layerModel.StyledLayer;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+import org.orbisgis.orbismap.style.utils.StyleHashUtils;
+
+/**
+ * Render the tiles of a XYZ (or WMTS GoogleMapsCompatible) tile matrix set.
+ * The tiles follow the Web Mercator grid (EPSG:3857) : the tile 0/0/0 covers
+ * the whole world and the y index grows from the north to the south. The
+ * layers must be stored in EPSG:3857.
+ *
+ * The encoded tiles are kept in a {@link TileCache}. The key of a tile
+ * contains a hash of the content of the style, so a tile rendered with a
+ * previous version of a style is never returned. The hash of a style is
+ * computed again only when its revision changes.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class TileRenderer {
+
+    /**
+     * Half of the width of the Web Mercator world in meters
+     */
+    public static final double WEB_MERCATOR_BOUND = 20037508.342789244;
+
+    private final TileCache cache;
+    private String format = "png";
+    private int metaTileSize = 1;
+    private int metaTileBuffer = 0;
+    private final ConcurrentHashMap<String, Object> metaTileLocks = new ConcurrentHashMap<>();
+    private final Map<Feature2DStyle, StyleHash> styleHashes = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Create a tile renderer with an in-memory cache of 64 MB
+     */
+    public TileRenderer() {
+        this(new TileCache(64L * 1024 * 1024));
+    }
+
+    /**
+     * Create a tile renderer
+     *
+     * @param cache the cache used to store the encoded tiles
+     */
+    public TileRenderer(TileCache cache) {
+        this.cache = cache;
+    }
+
+    public TileCache getCache() {
+        return cache;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Set the image format used to encode the tiles
+     *
+     * @param format an informal name supported by ImageIO, png by default
+     */
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public int getMetaTileSize() {
+        return metaTileSize;
+    }
+
+    public int getMetaTileBuffer() {
+        return metaTileBuffer;
+    }
+
+    /**
+     * Render the tiles by blocks of size x size tiles. A block is drawn in one
+     * pass, with a buffer around it so the symbols that cross the border of a
+     * tile are drawn the same way in both tiles, then it is sliced and all the
+     * tiles of the block are put in the cache. One by default.
+     *
+     * @param size the number of tiles along each axis of a block
+     * @param buffer the number of pixels drawn around the block
+     */
+    public void setMetaTile(int size, int buffer) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The size of the metatile must be greater than 0");
+        }
+        if (buffer < 0) {
+            throw new IllegalArgumentException("The buffer of the metatile cannot be negative");
+        }
+        this.metaTileSize = size;
+        this.metaTileBuffer = buffer;
+    }
+
+    /**
+     * Return a tile encoded in the format of the renderer, from the cache or
+     * rendered if it is not in the cache.
+     *
+     * @param layers the layers drawn in the tile, from the bottom to the top
+     * @param style the style used to draw all the layers, null to use the
+     * style of each layer
+     * @param z zoom level
+     * @param x column of the tile
+     * @param y row of the tile
+     * @param tileSize size of the tile in pixels
+     * @return the encoded tile
+     * @throws LayerException
+     */
+    public byte[] getTile(List<StyledLayer> layers, Feature2DStyle style, int z, int x, int y, int tileSize) throws LayerException {
+        checkTile(z, x, y, tileSize);
+        String layersKey = getLayersKey(layers, style, tileSize);
+        String key = getTileKey(layersKey, z, x, y);
+        byte[] tile = cache.get(key);
+        if (tile != null) {
+            return tile;
+        }
+        if (metaTileSize == 1) {
+            tile = encode(render(layers, style, z, x, y, tileSize));
+            cache.put(key, tile);
+            return tile;
+        }
+        int metaX = x - x % metaTileSize;
+        int metaY = y - y % metaTileSize;
+        String metaKey = getTileKey(layersKey, z, metaX, metaY);
+        Object lock = metaTileLocks.computeIfAbsent(metaKey, k -> new Object());
+        try {
+            synchronized (lock) {
+                //Another thread may have rendered the metatile meanwhile
+                tile = cache.get(key);
+                if (tile == null) {
+                    //The keys are taken before the rendering, like the key of the tile
+                    long count = 1L << z;
+                    String[][] keys = new String[(int) Math.min(metaTileSize, count - metaX)][(int) Math.min(metaTileSize, count - metaY)];
+                    for (int i = 0; i < keys.length; i++) {
+                        for (int j = 0; j < keys[i].length; j++) {
+                            keys[i][j] = getTileKey(layersKey, z, metaX + i, metaY + j);
+                        }
+                    }
+                    BufferedImage[][] tiles = renderMetaTile(layers, style, z, metaX, metaY, tileSize);
+                    for (int i = 0; i < tiles.length; i++) {
+                        for (int j = 0; j < tiles[i].length; j++) {
+                            byte[] encoded = encode(tiles[i][j]);
+                            cache.put(keys[i][j], encoded);
+                            if (metaX + i == x && metaY + j == y) {
+                                tile = encoded;
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            metaTileLocks.remove(metaKey);
+        }
+        return tile;
+    }
+
+    /**
+     * Render the block of tiles whose upper left tile is x, y in one pass and
+     * slice it. The block is cut at the border of the tile matrix.
+     *
+     * @param layers the layers drawn in the tiles, from the bottom to the top
+     * @param style the style used to draw all the layers, null to use the
+     * style of each layer
+     * @param z zoom level
+     * @param x column of the upper left tile
+     * @param y row of the upper left tile
+     * @param tileSize size of a tile in pixels
+     * @return the tiles indexed by column then row, relative to x and y
+     * @throws LayerException
+     */
+    public BufferedImage[][] renderMetaTile(List<StyledLayer> layers, Feature2DStyle style, int z, int x, int y, int tileSize) throws LayerException {
+        checkTile(z, x, y, tileSize);
+        long count = 1L << z;
+        int columns = (int) Math.min(metaTileSize, count - x);
+        int rows = (int) Math.min(metaTileSize, count - y);
+        Envelope upperLeft = getTileEnvelope(z, x, y);
+        double pixelSize = upperLeft.getWidth() / tileSize;
+        double buffer = metaTileBuffer * pixelSize;
+        Envelope envelope = new Envelope(upperLeft.getMinX() - buffer,
+                upperLeft.getMinX() + columns * upperLeft.getWidth() + buffer,
+                upperLeft.getMaxY() - rows * upperLeft.getHeight() - buffer,
+                upperLeft.getMaxY() + buffer);
+        BufferedImage image = render(layers, style, envelope,
+                columns * tileSize + 2 * metaTileBuffer, rows * tileSize + 2 * metaTileBuffer);
+        BufferedImage[][] tiles = new BufferedImage[columns][rows];
+        for (int i = 0; i < columns; i++) {
+            for (int j = 0; j < rows; j++) {
+                tiles[i][j] = image.getSubimage(metaTileBuffer + i * tileSize, metaTileBuffer + j * tileSize, tileSize, tileSize);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Render a tile without using the cache
+     *
+     * @param layers the layers drawn in the tile, from the bottom to the top
+     * @param style the style used to draw all the layers, null to use the
+     * style of each layer
+     * @param z zoom level
+     * @param x column of the tile
+     * @param y row of the tile
+     * @param tileSize size of the tile in pixels
+     * @return
+     * @throws LayerException
+     */
+    public BufferedImage render(List<StyledLayer> layers, Feature2DStyle style, int z, int x, int y, int tileSize) throws LayerException {
+        checkTile(z, x, y, tileSize);
+        return render(layers, style, getTileEnvelope(z, x, y), tileSize, tileSize);
+    }
+
+    /**
+     * Draw the layers in a new image
+     *
+     * @param layers
+     * @param style
+     * @param envelope the extent of the image
+     * @param width
+     * @param height
+     * @return
+     * @throws LayerException
+     */
+    private BufferedImage render(List<StyledLayer> layers, Feature2DStyle style, Envelope envelope, int width, int height) throws LayerException {
+        MapTransform mt = new MapTransform();
+        mt.setAdjustExtent(false);
+        mt.setImage(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new MapEnvelope(envelope));
+        BufferedImage image = mt.getImage();
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.addRenderingHints(mt.getRenderingHints());
+            for (StyledLayer layer : layers) {
+                layer.draw(g2, mt, style == null ? layer.getStyle() : style, new NullProgressMonitor());
+            }
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Return the extent of a tile in EPSG:3857
+     *
+     * @param z zoom level
+     * @param x column of the tile
+     * @param y row of the tile
+     * @return
+     */
+    public static Envelope getTileEnvelope(int z, int x, int y) {
+        double size = 2 * WEB_MERCATOR_BOUND / (1L << z);
+        double minX = -WEB_MERCATOR_BOUND + x * size;
+        double maxY = WEB_MERCATOR_BOUND - y * size;
+        return new Envelope(minX, minX + size, maxY - size, maxY);
+    }
+
+    /**
+     * Return the key of a tile in the cache. It is also the relative path of
+     * the tile in the cache directory.
+     *
+     * @param layers
+     * @param style
+     * @param z
+     * @param x
+     * @param y
+     * @param tileSize
+     * @return
+     */
+    String getTileKey(List<StyledLayer> layers, Feature2DStyle style, int z, int x, int y, int tileSize) {
+        return getTileKey(getLayersKey(layers, style, tileSize), z, x, y);
+    }
+
+    /**
+     * Return the part of the key shared by all the tiles drawn with the same
+     * layers and styles
+     *
+     * @param layers
+     * @param style
+     * @param tileSize
+     * @return
+     */
+    private String getLayersKey(List<StyledLayer> layers, Feature2DStyle style, int tileSize) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(tileSize).append('|').append(format);
+        for (StyledLayer layer : layers) {
+            sb.append('|').append(layer.getSpatialTable().getName());
+            sb.append('|').append(layer.isVisible());
+            Feature2DStyle layerStyle = style == null ? layer.getStyle() : style;
+            sb.append('|').append(layerStyle == null ? "" : getStyleHash(layerStyle));
+        }
+        return sha256(sb.toString());
+    }
+
+    private String getTileKey(String layersKey, int z, int x, int y) {
+        return layersKey + "/" + z + "/" + x + "/" + y + "." + format;
+    }
+
+    /**
+     * Return the hash of a style, computed again only if the style has been
+     * mutated since the last call
+     *
+     * @param style
+     * @return
+     */
+    String getStyleHash(Feature2DStyle style) {
+        //Read before the hash, so a mutation during the hash is seen next time
+        long revision = style.getRevision();
+        StyleHash styleHash = styleHashes.get(style);
+        if (styleHash == null || styleHash.revision != revision) {
+            styleHash = new StyleHash(revision, StyleHashUtils.getHash(style));
+            styleHashes.put(style, styleHash);
+        }
+        return styleHash.hash;
+    }
+
+    /**
+     * The hash of a style at a revision
+     */
+    private static class StyleHash {
+
+        private final long revision;
+        private final String hash;
+
+        StyleHash(long revision, String hash) {
+            this.revision = revision;
+            this.hash = hash;
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest(value.getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private byte[] encode(BufferedImage image) throws LayerException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (!ImageIO.write(image, format, out)) {
+                throw new LayerException("No writer for the image format " + format);
+            }
+        } catch (IOException ex) {
+            throw new LayerException("Cannot encode the tile", ex);
+        }
+        return out.toByteArray();
+    }
+
+    private static void checkTile(int z, int x, int y, int tileSize) {
+        if (z < 0 || z > 30) {
+            throw new IllegalArgumentException("The zoom level must be between 0 and 30");
+        }
+        long count = 1L << z;
+        if (x < 0 || x >= count || y < 0 || y >= count) {
+            throw new IllegalArgumentException("The tile " + z + "/" + x + "/" + y + " is outside the tile matrix");
+        }
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("The tile size must be greater than 0");
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.utils.progress;
+
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+
+/**
+ * A progress monitor that is cancelled when a deadline is reached. It wraps
+ * the progress monitor of the caller, so a cancellation of the caller is also
+ * seen.
+ *
+ * The renderers stop reading the rows as soon as they see the cancellation,
+ * so {@link #isStopped()} tells if the image has only been partially drawn.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class DeadlineProgressMonitor implements IProgressMonitor {
+
+    private final IProgressMonitor delegate;
+    private final boolean hasDeadline;
+    private final long deadline;
+    private final AtomicBoolean cancelled;
+    private final AtomicBoolean stopped;
+
+    /**
+     * @param delegate the monitor of the caller
+     * @param timeout the time allowed to draw, in milliseconds
+     */
+    public DeadlineProgressMonitor(IProgressMonitor delegate, long timeout) {
+        this(delegate, true, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout), new AtomicBoolean(), new AtomicBoolean());
+    }
+
+    /**
+     * Create a monitor without deadline, that only records if the drawing has
+     * been stopped
+     *
+     * @param delegate the monitor of the caller
+     */
+    public DeadlineProgressMonitor(IProgressMonitor delegate) {
+        this(delegate, false, 0, new AtomicBoolean(), new AtomicBoolean());
+    }
+
+    private DeadlineProgressMonitor(IProgressMonitor delegate, boolean hasDeadline, long deadline, AtomicBoolean cancelled, AtomicBoolean stopped) {
+        this.delegate = delegate;
+        this.hasDeadline = hasDeadline;
+        this.deadline = deadline;
+        this.cancelled = cancelled;
+        this.stopped = stopped;
+    }
+
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * @return true if the deadline has been reached
+     */
+    public boolean isExpired() {
+        return hasDeadline && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * @return the number of milliseconds left before the deadline, 0 if it is
+     * reached, Long.MAX_VALUE without deadline
+     */
+    public long getRemainingMillis() {
+        if (!hasDeadline) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * @return true if the cancellation has been seen by a renderer, so what
+     * has been drawn is partial
+     */
+    public boolean isStopped() {
+        return stopped.get();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        if (cancelled.get() || delegate.isCancelled() || isExpired()) {
+            stopped.set(true);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void setCancelled(boolean cancelled) {
+        this.cancelled.set(cancelled);
+        delegate.setCancelled(cancelled);
+    }
+
+    @Override
+    public IProgressMonitor startTask(String taskName, long end) {
+        return new DeadlineProgressMonitor(delegate.startTask(taskName, end), hasDeadline, deadline, cancelled, stopped);
+    }
+
+    @Override
+    public IProgressMonitor startTask(long end) {
+        return new DeadlineProgressMonitor(delegate.startTask(end), hasDeadline, deadline, cancelled, stopped);
+    }
+
+    @Override
+    public void endTask() {
+        delegate.endTask();
+    }
+
+    @Override
+    public String getCurrentTaskName() {
+        return delegate.getCurrentTaskName();
+    }
+
+    @Override
+    public void setTaskName(String taskName) {
+        delegate.setTaskName(taskName);
+    }
+
+    @Override
+    public void progressTo(long progress) {
+        delegate.progressTo(progress);
+    }
+
+    @Override
+    public double getOverallProgress() {
+        return delegate.getOverallProgress();
+    }
+
+    @Override
+    public long getCurrentProgress() {
+        return delegate.getCurrentProgress();
+    }
+
+    @Override
+    public long getEnd() {
+        return delegate.getEnd();
+    }
+
+    @Override
+    public void addPropertyChangeListener(String property, PropertyChangeListener listener) {
+        delegate.addPropertyChangeListener(property, listener);
+    }
+
+    @Override
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        delegate.removePropertyChangeListener(listener);
+    }
+}
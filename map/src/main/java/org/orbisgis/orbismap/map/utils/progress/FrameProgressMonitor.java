@@ -0,0 +1,189 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.utils.progress;
+
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+
+/**
+ * A progress monitor that publishes intermediate frames while a map is drawn.
+ *
+ * A frame is published each time a sub task ends, for example when a layer
+ * has been drawn, and when the interval has elapsed since the previous frame.
+ * The end of the last sub task of a task publishes no frame, the end of the
+ * task itself or the final frame of the caller follows it.
+ * The renderers check the cancellation every N rows, so this is also where the
+ * interval is checked.
+ *
+ * Frames are only published on the thread that created the monitor, the one
+ * that owns the image, never on the threads that draw the layers or the tiles
+ * in their own images.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class FrameProgressMonitor implements IProgressMonitor {
+
+    private final IProgressMonitor delegate;
+    private final Frames frames;
+    private final long end;
+    private final AtomicLong ended = new AtomicLong();
+
+    /**
+     * @param delegate the monitor of the caller
+     * @param interval the minimal time between two frames, in milliseconds
+     * @param publisher called to publish a frame
+     */
+    public FrameProgressMonitor(IProgressMonitor delegate, long interval, Runnable publisher) {
+        this(delegate, new Frames(Thread.currentThread(), TimeUnit.MILLISECONDS.toNanos(interval), publisher), 0);
+    }
+
+    private FrameProgressMonitor(IProgressMonitor delegate, Frames frames, long end) {
+        this.delegate = delegate;
+        this.frames = frames;
+        this.end = end;
+    }
+
+    /**
+     * @return the number of frames published
+     */
+    public int getFrameCount() {
+        return frames.count;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        if (Thread.currentThread() == frames.owner && frames.isDue()) {
+            frames.publish();
+        }
+        return delegate.isCancelled();
+    }
+
+    @Override
+    public void setCancelled(boolean cancelled) {
+        delegate.setCancelled(cancelled);
+    }
+
+    @Override
+    public IProgressMonitor startTask(String taskName, long end) {
+        return new FrameProgressMonitor(delegate.startTask(taskName, end), frames, end);
+    }
+
+    @Override
+    public IProgressMonitor startTask(long end) {
+        return new FrameProgressMonitor(delegate.startTask(end), frames, end);
+    }
+
+    @Override
+    public void endTask() {
+        delegate.endTask();
+        boolean lastSubTask = end > 0 && ended.incrementAndGet() >= end;
+        if (!lastSubTask && Thread.currentThread() == frames.owner) {
+            frames.publish();
+        }
+    }
+
+    @Override
+    public String getCurrentTaskName() {
+        return delegate.getCurrentTaskName();
+    }
+
+    @Override
+    public void setTaskName(String taskName) {
+        delegate.setTaskName(taskName);
+    }
+
+    @Override
+    public void progressTo(long progress) {
+        delegate.progressTo(progress);
+    }
+
+    @Override
+    public double getOverallProgress() {
+        return delegate.getOverallProgress();
+    }
+
+    @Override
+    public long getCurrentProgress() {
+        return delegate.getCurrentProgress();
+    }
+
+    @Override
+    public long getEnd() {
+        return delegate.getEnd();
+    }
+
+    @Override
+    public void addPropertyChangeListener(String property, PropertyChangeListener listener) {
+        delegate.addPropertyChangeListener(property, listener);
+    }
+
+    @Override
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        delegate.removePropertyChangeListener(listener);
+    }
+
+    /**
+     * The state shared by a monitor and its sub tasks. It is only modified by
+     * the owner thread.
+     */
+    private static class Frames {
+
+        private final Thread owner;
+        private final long interval;
+        private final Runnable publisher;
+        private long last;
+        private int count = 0;
+
+        Frames(Thread owner, long interval, Runnable publisher) {
+            this.owner = owner;
+            this.interval = interval;
+            this.publisher = publisher;
+            this.last = System.nanoTime();
+        }
+
+        boolean isDue() {
+            return System.nanoTime() - last >= interval;
+        }
+
+        void publish() {
+            publisher.run();
+            count++;
+            last = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.layerModel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.renderer.featureStyle.StylesForTest;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.orbisgis.orbismap.style.Uom;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class LayerCollectionTest {
+
+    private static H2GIS h2GIS;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, "./target/" + LayerCollectionTest.class.getSimpleName());
+        h2GIS = H2GIS.open(map);
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    /**
+     * Draw the collection in a new image
+     *
+     * @param layerCollection
+     * @return
+     * @throws Exception
+     */
+    private static BufferedImage draw(LayerCollection layerCollection) throws Exception {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(layerCollection.getEnvelope());
+        BufferedImage image = mt.getImage();
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2.addRenderingHints(mt.getRenderingHints());
+        layerCollection.draw(g2, mt, new NullProgressMonitor());
+        g2.dispose();
+        return image;
+    }
+
+    private static boolean samePixels(BufferedImage expected, BufferedImage actual) {
+        for (int x = 0; x < expected.getWidth(); x++) {
+            for (int y = 0; y < expected.getHeight(); y++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testParallelDraw() throws Exception {
+        ISpatialTable landcover = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        ISpatialTable hedgerow = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("hedgerow2000.shp").toURI()), "HEDGEROW", true);
+        LayerCollection layerCollection = new LayerCollection("root");
+        StyledLayer landcoverLayer = new StyledLayer(landcover);
+        landcoverLayer.setStyle(StylesForTest.createAreaSymbolizer(Color.yellow, 1, 0));
+        layerCollection.add(landcoverLayer);
+        StyledLayer hedgerowLayer = new StyledLayer(hedgerow);
+        hedgerowLayer.setStyle(StylesForTest.createLineSymbolizer(Color.GREEN, 2, 0, Uom.PX));
+        layerCollection.add(hedgerowLayer);
+        BufferedImage sequentialImage = draw(layerCollection);
+        layerCollection.setParallelism(2);
+        BufferedImage parallelImage = draw(layerCollection);
+        assertTrue(samePixels(sequentialImage, parallelImage));
+    }
+
+    @Test
+    public void testParallelDrawExecutor() throws Exception {
+        ISpatialTable landcover = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        ISpatialTable hedgerow = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("hedgerow2000.shp").toURI()), "HEDGEROW", true);
+        LayerCollection layerCollection = new LayerCollection("root");
+        StyledLayer landcoverLayer = new StyledLayer(landcover);
+        landcoverLayer.setStyle(StylesForTest.createAreaSymbolizer(Color.yellow, 1, 0));
+        layerCollection.add(landcoverLayer);
+        LayerCollection children = new LayerCollection("children");
+        StyledLayer hedgerowLayer = new StyledLayer(hedgerow);
+        hedgerowLayer.setStyle(StylesForTest.createLineSymbolizer(Color.GREEN, 2, 0, Uom.PX));
+        children.add(hedgerowLayer);
+        StyledLayer landcoverLines = new StyledLayer(landcover);
+        landcoverLines.setStyle(StylesForTest.createLineSymbolizer(Color.BLUE, 1, 0, Uom.PX));
+        children.add(landcoverLines);
+        layerCollection.add(children);
+        BufferedImage sequentialImage = draw(layerCollection);
+        //The nested collection is drawn on the thread of its layer, so a
+        //single thread is enough
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            layerCollection.setParallelism(2);
+            layerCollection.setExecutor(executor);
+            children.setParallelism(2);
+            children.setExecutor(executor);
+            assertTrue(samePixels(sequentialImage, draw(layerCollection)));
+            assertTrue(samePixels(sequentialImage, draw(layerCollection)));
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
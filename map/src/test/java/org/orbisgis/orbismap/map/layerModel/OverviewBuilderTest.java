@@ -0,0 +1,136 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.layerModel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.renderer.featureStyle.CompiledStyle;
+import org.orbisgis.orbismap.map.renderer.featureStyle.FeatureStyleRenderer;
+import org.orbisgis.orbismap.map.renderer.featureStyle.StylesForTest;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class OverviewBuilderTest {
+
+    private static H2GIS h2GIS;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, "./target/" + OverviewBuilderTest.class.getSimpleName());
+        h2GIS = H2GIS.open(map);
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    private static int countPoints(String tableName) {
+        Map row = (Map) h2GIS.firstRow("SELECT SUM(ST_NPoints(THE_GEOM)) AS N FROM " + tableName);
+        return ((Number) row.get("N")).intValue();
+    }
+
+    @Test
+    public void testBuildOverviews() throws Exception {
+        h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        h2GIS.execute("DROP TABLE IF EXISTS LANDCOVER_COPY");
+        h2GIS.execute("CREATE TABLE LANDCOVER_COPY AS SELECT * FROM LANDCOVER");
+        OverviewBuilder builder = new OverviewBuilder(h2GIS.getConnection(), "LANDCOVER_COPY", "THE_GEOM");
+        List<String> names = builder.build(50000, 500000);
+        assertEquals(2, names.size());
+        assertEquals("LANDCOVER_COPY_OVERVIEW_50000", names.get(0));
+        int points = countPoints("LANDCOVER_COPY");
+        int points50000 = countPoints(names.get(0));
+        int points500000 = countPoints(names.get(1));
+        assertTrue(points50000 < points);
+        assertTrue(points500000 < points50000);
+    }
+
+    @Test
+    public void testDrawOverview() throws Exception {
+        h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        h2GIS.execute("DROP TABLE IF EXISTS LANDCOVER_COPY");
+        h2GIS.execute("CREATE TABLE LANDCOVER_COPY AS SELECT * FROM LANDCOVER");
+        OverviewBuilder builder = new OverviewBuilder(h2GIS.getConnection(), "LANDCOVER_COPY", "THE_GEOM");
+        builder.setGroupBy("TYPE");
+        String overviewName = builder.build(100000).get(0);
+        ISpatialTable spatialTable = h2GIS.getSpatialTable("LANDCOVER_COPY");
+        StyledLayer layer = new StyledLayer(spatialTable);
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        ISpatialTable overview = h2GIS.getSpatialTable(overviewName);
+        layer.addOverview(100000, overview);
+        assertEquals(1, layer.getOverviews().size());
+
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new MapEnvelope(spatialTable.getEstimatedExtend().getEnvelopeInternal()));
+        mt.setScaleDenominator(1000000);
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(layer.getStyle());
+        fsr.setOverviews(layer.getOverviews());
+        assertSame(overview, fsr.getSpatialTable(spatialTable, mt));
+        Graphics2D g2 = mt.getImage().createGraphics();
+        layer.draw(g2, mt, new NullProgressMonitor());
+        //The plans of the table and of the overview are both kept
+        CompiledStyle plan = layer.getCompiledStyle();
+        CompiledStyle overviewPlan = layer.getCompiledStyle(overview);
+        assertNotSame(plan, overviewPlan);
+        layer.draw(g2, mt, new NullProgressMonitor());
+        g2.dispose();
+        assertSame(overviewPlan, layer.getCompiledStyle(overview));
+        assertSame(plan, layer.getCompiledStyle());
+        mt.setScaleDenominator(10000);
+        assertSame(spatialTable, fsr.getSpatialTable(spatialTable, mt));
+    }
+}
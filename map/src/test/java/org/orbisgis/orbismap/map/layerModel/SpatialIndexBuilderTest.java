@@ -0,0 +1,173 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.layerModel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.renderer.featureStyle.StylesForTest;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class SpatialIndexBuilderTest {
+
+    private static final String DB_PATH = "./target/" + SpatialIndexBuilderTest.class.getSimpleName();
+
+    private static H2GIS h2GIS;
+
+    private static JdbcDataSource dataSource;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, DB_PATH);
+        map.put(DataSourceFactory.JDBC_USER, "sa");
+        map.put(DataSourceFactory.JDBC_PASSWORD, "sa");
+        h2GIS = H2GIS.open(map);
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:" + DB_PATH);
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    private static void createSquares() throws Exception {
+        h2GIS.execute("DROP TABLE IF EXISTS SQUARES");
+        h2GIS.execute("CREATE TABLE SQUARES AS SELECT X AS ID, "
+                + "ST_EXPAND(ST_MAKEPOINT(MOD(X, 10), X / 10), 0.4) AS THE_GEOM "
+                + "FROM SYSTEM_RANGE(1, 100)");
+    }
+
+    private static void draw(StyledLayer layer) throws Exception {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(layer.getEnvelope());
+        Graphics2D g2 = mt.getImage().createGraphics();
+        layer.draw(g2, mt, new NullProgressMonitor());
+        g2.dispose();
+    }
+
+    @Test
+    public void testCreateSpatialIndex() throws Exception {
+        createSquares();
+        SpatialIndexBuilder builder = new SpatialIndexBuilder(h2GIS.getConnection(), "SQUARES", "THE_GEOM");
+        assertFalse(builder.isSpatialIndexed());
+        assertFalse(builder.isLinked());
+        builder.createSpatialIndex();
+        assertTrue(builder.isSpatialIndexed());
+        assertTrue(new SpatialIndexBuilder(h2GIS.getConnection(), "PUBLIC.SQUARES", "the_geom").isSpatialIndexed());
+    }
+
+    @Test
+    public void testCopyLinkedTable() throws Exception {
+        h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        SpatialIndexBuilder builder = new SpatialIndexBuilder(h2GIS.getConnection(), "LANDCOVER", "THE_GEOM");
+        assertTrue(builder.isLinked());
+        String localName = builder.copyToLocalTable();
+        assertEquals("LANDCOVER_LOCAL", localName);
+        SpatialIndexBuilder localBuilder = new SpatialIndexBuilder(h2GIS.getConnection(), localName, "THE_GEOM");
+        assertFalse(localBuilder.isLinked());
+        assertTrue(localBuilder.isSpatialIndexed());
+    }
+
+    @Test
+    public void testWarnPolicy() throws Exception {
+        createSquares();
+        StyledLayer layer = new StyledLayer(h2GIS.getSpatialTable("SQUARES"));
+        assertEquals(SpatialIndexPolicy.WARN, layer.getSpatialIndexPolicy());
+        try (Connection connection = dataSource.getConnection()) {
+            assertFalse(layer.checkSpatialIndex(connection));
+        }
+        assertFalse(new SpatialIndexBuilder(h2GIS.getConnection(), "SQUARES", "THE_GEOM").isSpatialIndexed());
+    }
+
+    @Test
+    public void testCreatePolicy() throws Exception {
+        createSquares();
+        StyledLayer layer = new StyledLayer(h2GIS.getSpatialTable("SQUARES"));
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        layer.getCursorOptions().setDataSource(dataSource);
+        layer.setSpatialIndexPolicy(SpatialIndexPolicy.CREATE);
+        draw(layer);
+        assertTrue(new SpatialIndexBuilder(h2GIS.getConnection(), "SQUARES", "THE_GEOM").isSpatialIndexed());
+    }
+
+    @Test
+    public void testCreatePolicyWithoutDataSource() throws Exception {
+        createSquares();
+        StyledLayer layer = new StyledLayer(h2GIS.getSpatialTable("SQUARES"));
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        layer.setSpatialIndexPolicy(SpatialIndexPolicy.CREATE);
+        draw(layer);
+        assertTrue(new SpatialIndexBuilder(h2GIS.getConnection(), "SQUARES", "THE_GEOM").isSpatialIndexed());
+    }
+
+    @Test
+    public void testCopyLinkedPolicy() throws Exception {
+        ISpatialTable linked = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        h2GIS.execute("DROP TABLE IF EXISTS LANDCOVER_LOCAL");
+        StyledLayer layer = new StyledLayer(linked);
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        layer.getCursorOptions().setDataSource(dataSource);
+        layer.setSpatialIndexPolicy(SpatialIndexPolicy.COPY_LINKED);
+        layer.setLocalTableLoader(h2GIS::getSpatialTable);
+        draw(layer);
+        assertNotSame(linked, layer.getSpatialTable());
+        assertTrue(new SpatialIndexBuilder(h2GIS.getConnection(), "LANDCOVER_LOCAL", "THE_GEOM").isSpatialIndexed());
+    }
+}
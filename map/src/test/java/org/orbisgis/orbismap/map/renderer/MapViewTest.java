@@ -0,0 +1,349 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.orbisgis.orbismap.map.renderer.featureStyle.ImagesForTest.countDifferentPixels;
+import org.locationtech.jts.geom.Envelope;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+import org.orbisgis.orbismap.map.api.LayerException;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.layerModel.StyledLayer;
+import org.orbisgis.orbismap.map.renderer.featureStyle.StylesForTest;
+import org.orbisgis.orbismap.map.renderer.featureStyle.SymbolLevelBufferPool;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.orbisgis.orbismap.style.Uom;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class MapViewTest {
+
+    private static H2GIS h2GIS;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, "./target/" + MapViewTest.class.getSimpleName());
+        h2GIS = H2GIS.open(map);
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    /**
+     * A layer that keeps the size of the images it is drawn in
+     */
+    private static class RecordingLayer extends StyledLayer {
+
+        private final List<Integer> widths = new ArrayList<>();
+
+        public RecordingLayer(ISpatialTable spatialTable) {
+            super(spatialTable);
+        }
+
+        @Override
+        public void draw(Graphics2D g2, MapTransform mt, IProgressMonitor pm) throws LayerException {
+            widths.add(mt.getWidth());
+            super.draw(g2, mt, pm);
+        }
+    }
+
+    @Test
+    public void testIncrementalPan() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Envelope extent = spatialTable.getEstimatedExtend().getEnvelopeInternal();
+        RecordingLayer layer = new RecordingLayer(spatialTable);
+        layer.setStyle(StylesForTest.createThematicAreaSymbolizer());
+        MapView mapView = new MapView(400, 400);
+        mapView.setIncrementalPan(true);
+        mapView.addLayer(layer);
+        mapView.setEnvelope(new MapEnvelope(extent));
+        mapView.draw();
+        mapView.pan(40, -25);
+        //One full draw then two strips
+        assertEquals(3, layer.widths.size());
+        assertEquals(400, (int) layer.widths.get(0));
+        assertEquals(40 + 2 * MapView.STRIP_OVERLAP, (int) layer.widths.get(1));
+        assertEquals(360 + 2 * MapView.STRIP_OVERLAP, (int) layer.widths.get(2));
+
+        StyledLayer expectedLayer = new StyledLayer(spatialTable);
+        expectedLayer.setStyle(StylesForTest.createThematicAreaSymbolizer());
+        MapView expected = new MapView(400, 400);
+        expected.addLayer(expectedLayer);
+        expected.setEnvelope(new MapEnvelope(extent));
+        expected.pan(40, -25);
+        assertTrue(countDifferentPixels(expected.getImage(), mapView.getImage()) < 400 * 400 / 100);
+    }
+
+    @Test
+    public void testStyleChangeDrawsAll() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        RecordingLayer layer = new RecordingLayer(spatialTable);
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        MapView mapView = new MapView(400, 400);
+        mapView.setIncrementalPan(true);
+        mapView.addLayer(layer);
+        mapView.setEnvelope(new MapEnvelope(spatialTable.getEstimatedExtend().getEnvelopeInternal()));
+        mapView.draw();
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.BLUE, 1, 0));
+        mapView.pan(10, 0);
+        assertEquals(2, layer.widths.size());
+        assertEquals(400, (int) layer.widths.get(1));
+    }
+
+    @Test
+    public void testRenderTimeout() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        StyledLayer layer = new StyledLayer(spatialTable);
+        layer.setStyle(StylesForTest.createThematicAreaSymbolizer());
+        MapView mapView = new MapView(400, 400);
+        mapView.setRenderTimeout(60000);
+        mapView.addLayer(layer);
+        mapView.setEnvelope(new MapEnvelope(spatialTable.getEstimatedExtend().getEnvelopeInternal()));
+        mapView.draw();
+        assertFalse(mapView.isPartial());
+    }
+
+    @Test
+    public void testProgressiveFrames() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Envelope extent = spatialTable.getEstimatedExtend().getEnvelopeInternal();
+        StyledLayer areas = new StyledLayer(spatialTable);
+        areas.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        StyledLayer lines = new StyledLayer(spatialTable);
+        lines.setStyle(StylesForTest.createLineSymbolizer(Color.BLUE, 2, 0, Uom.PX));
+        MapView mapView = new MapView(400, 400);
+        mapView.addLayer(areas);
+        mapView.addLayer(lines);
+        mapView.setEnvelope(new MapEnvelope(extent));
+        List<BufferedImage> frames = new ArrayList<>();
+        List<Boolean> finished = new ArrayList<>();
+        mapView.addRenderingListener((frame, last) -> {
+            frames.add(frame);
+            finished.add(last);
+        });
+        //Only the frames of the finished layers, the last one is the final frame
+        mapView.setFrameInterval(Long.MAX_VALUE);
+        mapView.draw();
+        assertEquals(2, frames.size());
+        assertEquals(Arrays.asList(false, true), finished);
+        assertEquals(0, countDifferentPixels(mapView.getImage(), frames.get(1)));
+
+        StyledLayer expectedLayer = new StyledLayer(spatialTable);
+        expectedLayer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        MapView expected = new MapView(400, 400);
+        expected.addLayer(expectedLayer);
+        expected.setEnvelope(new MapEnvelope(extent));
+        expected.draw();
+        assertEquals(0, countDifferentPixels(expected.getImage(), frames.get(0)));
+
+        //Frames published while a layer is drawn
+        areas.setCancelCheckInterval(1);
+        MapView intermediate = new MapView(400, 400);
+        intermediate.addLayer(areas);
+        intermediate.setEnvelope(new MapEnvelope(extent));
+        intermediate.setFrameInterval(0);
+        FrameChanges changes = new FrameChanges();
+        intermediate.addRenderingListener(changes);
+        intermediate.draw();
+        assertTrue(changes.finished.size() > 1);
+        assertEquals(1, changes.finished.stream().filter((last) -> last).count());
+        //The rows drawn since the previous frame are visible
+        assertTrue(changes.changed > 0);
+
+        //The pipelined scan publishes the frames from the thread of the map
+        areas.setPipelined(true);
+        intermediate.removeRenderingListener(changes);
+        changes = new FrameChanges();
+        intermediate.addRenderingListener(changes);
+        intermediate.draw();
+        assertTrue(changes.changed > 0);
+    }
+
+    /**
+     * Count the intermediate frames that differ from the previous one, keeping
+     * only the previous frame
+     */
+    private static class FrameChanges implements RenderingListener {
+
+        private final List<Boolean> finished = new ArrayList<>();
+        private BufferedImage previous;
+        private int changed = 0;
+
+        @Override
+        public void frameRendered(BufferedImage frame, boolean last) {
+            finished.add(last);
+            if (!last && previous != null && countDifferentPixels(previous, frame) > 0) {
+                changed++;
+            }
+            previous = frame;
+        }
+    }
+
+    @Test
+    public void testConcurrentRender() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Envelope extent = spatialTable.getEstimatedExtend().getEnvelopeInternal();
+        StyledLayer layer = new StyledLayer(spatialTable);
+        //The values of the expressions change with each feature
+        layer.setStyle(StylesForTest.createAreaSymbolizerStyleColorExpression());
+        MapView mapView = new MapView(400, 400);
+        mapView.addLayer(layer);
+        List<Viewport> viewports = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Envelope viewportExtent = new Envelope(extent);
+            viewportExtent.expandBy(-i * extent.getWidth() / 10, -i * extent.getHeight() / 10);
+            viewports.add(new Viewport(viewportExtent, 400, 400));
+        }
+        List<BufferedImage> expected = new ArrayList<>();
+        for (Viewport viewport : viewports) {
+            expected.add(mapView.render(viewport, new NullProgressMonitor()));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(viewports.size());
+        try {
+            for (int run = 0; run < 3; run++) {
+                List<Future<BufferedImage>> images = new ArrayList<>();
+                for (Viewport viewport : viewports) {
+                    images.add(executor.submit(() -> mapView.render(viewport, new NullProgressMonitor())));
+                }
+                for (int i = 0; i < images.size(); i++) {
+                    assertEquals(0, countDifferentPixels(expected.get(i), images.get(i).get()));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDirectRendering() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Viewport viewport = new Viewport(spatialTable.getEstimatedExtend().getEnvelopeInternal(), 400, 400);
+        StyledLayer layer = new StyledLayer(spatialTable);
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        assertTrue(layer.isDirectRendering());
+        MapView mapView = new MapView(400, 400);
+        mapView.addLayer(layer);
+        SymbolLevelBufferPool bufferPool = SymbolLevelBufferPool.getDefault();
+        long acquireCount = bufferPool.getAcquireCount();
+        BufferedImage image = mapView.render(viewport, new NullProgressMonitor());
+        //No intermediate image for a single symbol level
+        assertEquals(acquireCount, bufferPool.getAcquireCount());
+        layer.setDirectRendering(false);
+        BufferedImage buffered = mapView.render(viewport, new NullProgressMonitor());
+        assertEquals(acquireCount + 1, bufferPool.getAcquireCount());
+        //Only the rounding of the antialiased pixels can differ
+        assertTrue(countDifferentPixels(buffered, image) < 400 * 400 / 20);
+    }
+
+    @Test
+    public void testConcurrentMarkRender() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Envelope extent = spatialTable.getEstimatedExtend().getEnvelopeInternal();
+        Viewport viewport = new Viewport(extent, 400, 400);
+        //The marks share the same shape factories
+        List<MapView> mapViews = new ArrayList<>();
+        for (String wkn : Arrays.asList("circle", "square", "star", "triangle", "cross", "x")) {
+            for (float size : new float[]{4, 7}) {
+                StyledLayer layer = new StyledLayer(spatialTable);
+                layer.setStyle(StylesForTest.createPointSymbolizer(wkn, Color.ORANGE, size, Color.BLACK, 1));
+                MapView mapView = new MapView(400, 400);
+                mapView.addLayer(layer);
+                mapViews.add(mapView);
+            }
+        }
+        List<BufferedImage> expected = new ArrayList<>();
+        for (MapView mapView : mapViews) {
+            expected.add(mapView.render(viewport, new NullProgressMonitor()));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int run = 0; run < 3; run++) {
+                List<Future<BufferedImage>> images = new ArrayList<>();
+                for (MapView mapView : mapViews) {
+                    images.add(executor.submit(() -> mapView.render(viewport, new NullProgressMonitor())));
+                }
+                for (int i = 0; i < images.size(); i++) {
+                    assertEquals(0, countDifferentPixels(expected.get(i), images.get(i).get()));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testViewport() throws Exception {
+        Envelope extent = new Envelope(0, 100, 0, 50);
+        Viewport viewport = new Viewport(extent, 200, 100);
+        extent.expandBy(10);
+        assertEquals(new Envelope(0, 100, 0, 50), viewport.getExtent());
+        MapTransform first = viewport.createMapTransform();
+        MapTransform second = viewport.createMapTransform();
+        assertNotSame(first.getImage(), second.getImage());
+        assertEquals(new Envelope(0, 100, 0, 50), first.getAdjustedExtent());
+        //The rendering hints are not shared
+        first.addRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        assertEquals(RenderingHints.VALUE_ANTIALIAS_ON, second.getRenderingHints().get(RenderingHints.KEY_ANTIALIASING));
+    }
+}
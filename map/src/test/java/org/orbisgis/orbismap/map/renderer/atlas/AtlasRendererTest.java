@@ -0,0 +1,166 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.atlas;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.locationtech.jts.geom.Envelope;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+import org.orbisgis.orbismap.map.layerModel.StyledLayer;
+import org.orbisgis.orbismap.map.renderer.MapView;
+import org.orbisgis.orbismap.map.renderer.featureStyle.StylesForTest;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class AtlasRendererTest {
+
+    private static H2GIS h2GIS;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, "./target/" + AtlasRendererTest.class.getSimpleName());
+        h2GIS = H2GIS.open(map);
+        h2GIS.execute("DROP TABLE IF EXISTS SQUARES");
+        h2GIS.execute("CREATE TABLE SQUARES AS SELECT X AS ID, "
+                + "ST_EXPAND(ST_MAKEPOINT(MOD(X, 10) * 100, X / 10 * 100), 25) AS THE_GEOM "
+                + "FROM SYSTEM_RANGE(0, 99)");
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        StyledLayer layer = new StyledLayer(h2GIS.getSpatialTable("SQUARES"));
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        MapView mapView = new MapView();
+        mapView.addLayer(layer);
+        File directory = Files.createTempDirectory("atlas").toFile();
+        List<AtlasRenderer.Sheet> sheets = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sheets.add(new AtlasRenderer.Sheet(new Envelope(i * 100 - 50, i * 100 + 50, -50, 50),
+                    new File(directory, "sheet_" + i + (i % 2 == 0 ? ".png" : ".jpg"))));
+        }
+        //A sheet that cannot be written
+        sheets.add(new AtlasRenderer.Sheet(new Envelope(0, 100, 0, 100), new File(directory, "missing/sheet.png")));
+        AtlasRenderer atlasRenderer = new AtlasRenderer(mapView);
+        atlasRenderer.setImageSize(200, 200);
+        atlasRenderer.setParallelism(4);
+        AtlasReport report = atlasRenderer.render(sheets, new NullProgressMonitor());
+        assertEquals(10, report.getRenderedCount());
+        assertEquals(1, report.getFailures().size());
+        assertTrue(report.getFailures().containsKey(sheets.get(10)));
+        assertTrue(report.getMapsPerMinute() > 0);
+        for (int i = 0; i < 10; i++) {
+            BufferedImage image = ImageIO.read(sheets.get(i).getOutput());
+            assertEquals(200, image.getWidth());
+            //A square is drawn in the center of each sheet
+            Color center = new Color(image.getRGB(100, 100));
+            assertTrue(center.getRed() > 200 && center.getBlue() < 100);
+        }
+    }
+
+    @Test
+    public void testRenderCancelled() throws Exception {
+        StyledLayer layer = new StyledLayer(h2GIS.getSpatialTable("SQUARES"));
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        MapView mapView = new MapView();
+        mapView.addLayer(layer);
+        File directory = Files.createTempDirectory("atlas").toFile();
+        List<AtlasRenderer.Sheet> sheets = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sheets.add(new AtlasRenderer.Sheet(new Envelope(i * 100 - 50, i * 100 + 50, -50, 50),
+                    new File(directory, "sheet_" + i + ".png")));
+        }
+        AtlasRenderer atlasRenderer = new AtlasRenderer(mapView);
+        atlasRenderer.setImageSize(200, 200);
+        atlasRenderer.setParallelism(2);
+        SheetsProgressMonitor pm = new SheetsProgressMonitor();
+        AtlasReport report = atlasRenderer.render(sheets, pm);
+        assertTrue(report.getRenderedCount() < sheets.size());
+        //The task of each sheet ends, even when the sheet is skipped
+        assertEquals(sheets.size(), pm.ended.get());
+    }
+
+    /**
+     * Count the sheets that end and cancel the rendering after the first one
+     */
+    private static class SheetsProgressMonitor extends NullProgressMonitor {
+
+        final AtomicInteger ended = new AtomicInteger();
+        volatile boolean cancelled = false;
+
+        @Override
+        public IProgressMonitor startTask(String taskName, long end) {
+            if (!taskName.equals("Render sheets")) {
+                return this;
+            }
+            return new NullProgressMonitor() {
+                @Override
+                public void endTask() {
+                    ended.incrementAndGet();
+                    cancelled = true;
+                }
+            };
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.orbisgis.orbismap.map.renderer.featureStyle.ImagesForTest.countDifferentPixels;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class FeatureCacheTest {
+
+    private static final String DB_PATH = "./target/" + FeatureCacheTest.class.getSimpleName();
+
+    private static H2GIS h2GIS;
+
+    private static JdbcDataSource dataSource;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, DB_PATH);
+        map.put(DataSourceFactory.JDBC_USER, "sa");
+        map.put(DataSourceFactory.JDBC_PASSWORD, "sa");
+        h2GIS = H2GIS.open(map);
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:" + DB_PATH);
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    private static ISpatialTable linkLandcover() throws Exception {
+        return (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+    }
+
+    /**
+     * Draw the table in a white image
+     *
+     * @param spatialTable
+     * @param fsr
+     * @return
+     * @throws Exception
+     */
+    private static BufferedImage draw(ISpatialTable spatialTable, FeatureStyleRenderer fsr) throws Exception {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new MapEnvelope(spatialTable.getEstimatedExtend().getEnvelopeInternal()));
+        Graphics2D g2 = mt.getImage().createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, mt.getWidth(), mt.getHeight());
+        g2.addRenderingHints(mt.getRenderingHints());
+        fsr.draw(spatialTable, mt, g2, new NullProgressMonitor());
+        g2.dispose();
+        return mt.getImage();
+    }
+
+    private static void compareCachedDraw(Feature2DStyle style, boolean fusedScan, boolean offHeap) throws Exception {
+        ISpatialTable spatialTable = linkLandcover();
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setFusedScan(fusedScan);
+        BufferedImage expected = draw(spatialTable, fsr);
+
+        FeatureCache cache = new FeatureCache(64 * 1024 * 1024);
+        cache.setOffHeap(offHeap);
+        FeatureStyleRenderer cachedFsr = new FeatureStyleRenderer(style);
+        cachedFsr.setFusedScan(fusedScan);
+        cachedFsr.setFeatureCache(cache);
+        assertEquals(0, countDifferentPixels(expected, draw(spatialTable, cachedFsr)));
+        assertEquals(0, countDifferentPixels(expected, draw(spatialTable, cachedFsr)));
+        FeatureCache.Statistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.getLoads());
+        assertEquals(1, statistics.getMisses());
+        assertEquals(1, statistics.getHits());
+        assertTrue(statistics.getRowCount() > 0);
+        assertTrue(statistics.getEstimatedBytes() > 0);
+        assertFalse(statistics.isOverBudget());
+    }
+
+    @Test
+    public void testCachedDraw() throws Exception {
+        compareCachedDraw(StylesForTest.createAreaSymbolizer(Color.yellow, 1, 0), false, false);
+    }
+
+    @Test
+    public void testCachedRulesDraw() throws Exception {
+        compareCachedDraw(StylesForTest.createThematicAreaSymbolizer(), false, false);
+    }
+
+    @Test
+    public void testOffHeapCachedRulesDraw() throws Exception {
+        compareCachedDraw(StylesForTest.createThematicAreaSymbolizer(), false, true);
+    }
+
+    @Test
+    public void testOffHeapCachedFusedDraw() throws Exception {
+        compareCachedDraw(StylesForTest.createThematicAreaSymbolizer(), true, true);
+    }
+
+    @Test
+    public void testCachedFusedDraw() throws Exception {
+        compareCachedDraw(StylesForTest.createThematicAreaSymbolizer(), true, false);
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        ISpatialTable spatialTable = linkLandcover();
+        Feature2DStyle style = StylesForTest.createAreaSymbolizer(Color.yellow, 1, 0);
+        BufferedImage expected = draw(spatialTable, new FeatureStyleRenderer(style));
+        FeatureCache cache = new FeatureCache(1024);
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setFeatureCache(cache);
+        assertEquals(0, countDifferentPixels(expected, draw(spatialTable, fsr)));
+        assertEquals(0, countDifferentPixels(expected, draw(spatialTable, fsr)));
+        FeatureCache.Statistics statistics = cache.getStatistics();
+        assertTrue(statistics.isOverBudget());
+        assertEquals(0, statistics.getRowCount());
+        assertEquals(0, statistics.getHits());
+        //The rows are not read again until the cache is invalidated
+        assertEquals(1, statistics.getLoads());
+        cache.invalidate();
+        draw(spatialTable, fsr);
+        assertEquals(2, cache.getStatistics().getLoads());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        ISpatialTable spatialTable = linkLandcover();
+        FeatureCache cache = new FeatureCache(64 * 1024 * 1024);
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(StylesForTest.createAreaSymbolizer(Color.yellow, 1, 0));
+        fsr.setFeatureCache(cache);
+        draw(spatialTable, fsr);
+        cache.invalidate();
+        draw(spatialTable, fsr);
+        FeatureCache.Statistics statistics = cache.getStatistics();
+        assertEquals(2, statistics.getLoads());
+        assertEquals(1, statistics.getInvalidations());
+        assertEquals(0, statistics.getHits());
+    }
+
+    @Test
+    public void testTableChange() throws Exception {
+        h2GIS.execute("DROP TABLE IF EXISTS SQUARES");
+        h2GIS.execute("CREATE TABLE SQUARES AS SELECT X AS ID, "
+                + "ST_EXPAND(ST_MAKEPOINT(MOD(X, 10), X / 10), 0.4) AS THE_GEOM "
+                + "FROM SYSTEM_RANGE(1, 100)");
+        ISpatialTable spatialTable = h2GIS.getSpatialTable("SQUARES");
+        CursorOptions options = new CursorOptions();
+        options.setDataSource(dataSource);
+        FeatureCache cache = new FeatureCache(64 * 1024 * 1024);
+        cache.setChangeCheckInterval(0);
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(StylesForTest.createAreaSymbolizer(Color.yellow, 1, 0));
+        fsr.setCursorOptions(options);
+        fsr.setFeatureCache(cache);
+        draw(spatialTable, fsr);
+        draw(spatialTable, fsr);
+        assertEquals(1, cache.getStatistics().getHits());
+        h2GIS.execute("DELETE FROM SQUARES WHERE ID > 50");
+        draw(spatialTable, fsr);
+        FeatureCache.Statistics statistics = cache.getStatistics();
+        assertEquals(2, statistics.getLoads());
+        assertEquals(50, statistics.getRowCount());
+    }
+}
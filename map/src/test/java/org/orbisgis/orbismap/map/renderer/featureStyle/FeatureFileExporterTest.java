@@ -0,0 +1,168 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.orbisgis.orbismap.map.renderer.featureStyle.ImagesForTest.countDifferentPixels;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.api.LayerException;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.layerModel.MappedLayer;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class FeatureFileExporterTest {
+
+    private static final String DB_PATH = "./target/" + FeatureFileExporterTest.class.getSimpleName();
+
+    private static H2GIS h2GIS;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, DB_PATH);
+        h2GIS = H2GIS.open(map);
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    private static ISpatialTable linkLandcover() throws Exception {
+        return (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+    }
+
+    private static MapTransform createMapTransform(MapEnvelope envelope) {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(envelope);
+        Graphics2D g2 = mt.getImage().createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, mt.getWidth(), mt.getHeight());
+        g2.dispose();
+        return mt;
+    }
+
+    private static void compareMappedDraw(Feature2DStyle style, boolean fusedScan) throws Exception {
+        ISpatialTable spatialTable = linkLandcover();
+        File file = new File("./target/landcover_" + fusedScan + ".omfs");
+        int rowCount = new FeatureFileExporter(style).export(spatialTable, file, new NullProgressMonitor());
+        assertTrue(rowCount > 0);
+
+        MapTransform expected = createMapTransform(new MapEnvelope(spatialTable.getEstimatedExtend().getEnvelopeInternal()));
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setFusedScan(fusedScan);
+        Graphics2D g2 = expected.getImage().createGraphics();
+        g2.addRenderingHints(expected.getRenderingHints());
+        fsr.draw(spatialTable, expected, g2, new NullProgressMonitor());
+        g2.dispose();
+
+        try (MappedLayer layer = new MappedLayer(file, style)) {
+            layer.setFusedScan(fusedScan);
+            assertEquals(rowCount, layer.getStore().getRowCount());
+            assertTrue(layer.getStore().getEnvelope().getWidth() > 0);
+            MapTransform actual = createMapTransform(new MapEnvelope(spatialTable.getEstimatedExtend().getEnvelopeInternal()));
+            g2 = actual.getImage().createGraphics();
+            g2.addRenderingHints(actual.getRenderingHints());
+            layer.draw(g2, actual, new NullProgressMonitor());
+            g2.dispose();
+            assertEquals(0, countDifferentPixels(expected.getImage(), actual.getImage()));
+        }
+    }
+
+    @Test
+    public void testMappedDraw() throws Exception {
+        compareMappedDraw(StylesForTest.createAreaSymbolizer(Color.yellow, 1, 0), false);
+    }
+
+    @Test
+    public void testMappedRulesDraw() throws Exception {
+        compareMappedDraw(StylesForTest.createThematicAreaSymbolizer(), false);
+    }
+
+    @Test
+    public void testMappedFusedDraw() throws Exception {
+        compareMappedDraw(StylesForTest.createThematicAreaSymbolizer(), true);
+    }
+
+    @Test
+    public void testOtherStyle() throws Exception {
+        File file = new File("./target/landcover_style.omfs");
+        new FeatureFileExporter(StylesForTest.createAreaSymbolizer(Color.yellow, 1, 0)).export(linkLandcover(), file,
+                new NullProgressMonitor());
+        //The filters of the thematic style have not been exported
+        try (MappedLayer layer = new MappedLayer(file, StylesForTest.createThematicAreaSymbolizer())) {
+            MapTransform mt = createMapTransform(layer.getEnvelope());
+            Graphics2D g2 = mt.getImage().createGraphics();
+            assertThrows(LayerException.class, () -> layer.draw(g2, mt, new NullProgressMonitor()));
+            g2.dispose();
+        }
+    }
+
+    @Test
+    public void testOtherFilters() throws Exception {
+        File file = new File("./target/landcover_filters.omfs");
+        new FeatureFileExporter(StylesForTest.createThematicAreaSymbolizer()).export(linkLandcover(), file,
+                new NullProgressMonitor());
+        //Same columns, but the flag of the first rule holds another filter
+        Feature2DStyle style = StylesForTest.createThematicAreaSymbolizer();
+        style.getRules().get(0).setFilter("st_area(the_geom) < 1000");
+        try (MappedLayer layer = new MappedLayer(file, style)) {
+            assertThrows(IllegalStateException.class, () -> layer.getCompiledStyle());
+            layer.setStyle(StylesForTest.createThematicAreaSymbolizer());
+            assertEquals(layer.getStore().getQuery(), layer.getCompiledStyle().getSelect());
+        }
+    }
+}
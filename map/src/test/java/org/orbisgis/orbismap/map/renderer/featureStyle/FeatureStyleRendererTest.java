@@ -0,0 +1,399 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.orbisgis.orbismap.map.renderer.featureStyle.ImagesForTest.countDifferentPixels;
+import org.locationtech.jts.geom.Envelope;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.api.IProgressMonitor;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.utils.progress.DeadlineProgressMonitor;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.orbisgis.orbismap.style.Feature2DRule;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+import org.orbisgis.orbismap.style.parameter.geometry.GeometryParameter;
+import org.orbisgis.orbismap.style.symbolizer.PointSymbolizer;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class FeatureStyleRendererTest {
+
+    private static H2GIS h2GIS;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, "./target/" + FeatureStyleRendererTest.class.getSimpleName());
+        h2GIS = H2GIS.open(map);
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    /**
+     * Draw the table with the renderer in a new image
+     *
+     * @param spatialTable
+     * @param fsr
+     * @return
+     * @throws Exception
+     */
+    private static BufferedImage draw(ISpatialTable spatialTable, FeatureStyleRenderer fsr) throws Exception {
+        return draw(spatialTable, fsr, new NullProgressMonitor());
+    }
+
+    private static BufferedImage draw(ISpatialTable spatialTable, FeatureStyleRenderer fsr, IProgressMonitor pm) throws Exception {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new MapEnvelope(spatialTable.getEstimatedExtend().getEnvelopeInternal()));
+        BufferedImage image = mt.getImage();
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2.addRenderingHints(mt.getRenderingHints());
+        fsr.draw(spatialTable, mt, g2, pm);
+        g2.dispose();
+        return image;
+    }
+
+    @Test
+    public void testFusedScan() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Feature2DStyle style = StylesForTest.createThematicAreaSymbolizer();
+        BufferedImage image = draw(spatialTable, new FeatureStyleRenderer(style));
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setFusedScan(true);
+        BufferedImage fusedImage = draw(spatialTable, fsr);
+        assertEquals(0, countDifferentPixels(image, fusedImage));
+    }
+
+    @Test
+    public void testFusedScanGeometryColumns() throws Exception {
+        h2GIS.execute("DROP TABLE IF EXISTS TWO_GEOMETRIES");
+        h2GIS.execute("CREATE TABLE TWO_GEOMETRIES(ID INT, THE_GEOM GEOMETRY, OTHER_GEOM GEOMETRY)");
+        //Only one of the geometries of the first two rows is in the extent
+        h2GIS.execute("INSERT INTO TWO_GEOMETRIES VALUES "
+                + "(1, 'POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0))', 'POINT (500 500)'), "
+                + "(2, 'POLYGON ((500 500, 510 500, 510 510, 500 510, 500 500))', 'POINT (30 30)'), "
+                + "(3, 'POLYGON ((20 0, 30 0, 30 10, 20 10, 20 0))', 'POINT (40 40)')");
+        ISpatialTable spatialTable = h2GIS.getSpatialTable("TWO_GEOMETRIES");
+        Feature2DStyle style = StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0);
+        Feature2DRule pointRule = new Feature2DRule();
+        PointSymbolizer pointSymbolizer = new PointSymbolizer();
+        pointSymbolizer.setGeometryParameter(new GeometryParameter("other_geom"));
+        pointSymbolizer.addGraphic(StylesForTest.createMarkGraphic("circle", 10));
+        pointRule.addSymbolizer(pointSymbolizer);
+        style.addRule(pointRule);
+        Feature2DRule areaRule = style.getRules().get(0);
+
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new MapEnvelope(new Envelope(-5, 50, -5, 50)));
+        Graphics2D g2 = mt.getImage().createGraphics();
+        new FeatureStyleRenderer(style).draw(spatialTable, mt, g2, new NullProgressMonitor());
+        g2.dispose();
+
+        MapTransform fusedMt = new MapTransform();
+        fusedMt.setImage(new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB));
+        fusedMt.setExtent(new MapEnvelope(new Envelope(-5, 50, -5, 50)));
+        Graphics2D fusedG2 = fusedMt.getImage().createGraphics();
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setFusedScan(true);
+        RenderStatistics statistics = fsr.draw(spatialTable, fusedMt, fusedG2, new NullProgressMonitor());
+        fusedG2.dispose();
+        assertEquals(0, countDifferentPixels(mt.getImage(), fusedMt.getImage()));
+        //The rows are read if one of their geometries is in the extent, each
+        //rule draws the rows of which its own geometry is in the extent
+        assertEquals(3, statistics.getQueries().getRowsFetched());
+        assertEquals(2, statistics.getRule(areaRule).getRowsDrawn());
+        assertEquals(2, statistics.getRule(pointRule).getRowsDrawn());
+    }
+
+    @Test
+    public void testFusedScanAllRulesFiltered() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Feature2DStyle style = StylesForTest.createAreaSymbolizerRuleExpression();
+        BufferedImage image = draw(spatialTable, new FeatureStyleRenderer(style));
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setFusedScan(true);
+        BufferedImage fusedImage = draw(spatialTable, fsr);
+        assertEquals(0, countDifferentPixels(image, fusedImage));
+    }
+
+    @Test
+    public void testCompiledStyleCache() throws Exception {
+        Feature2DStyle style = StylesForTest.createThematicAreaSymbolizer();
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        CompiledStyle plan = fsr.getCompiledStyle(Arrays.asList("THE_GEOM"));
+        assertEquals(4, plan.getRules().size());
+        assertEquals("st_area(the_geom) < 5000", plan.getRules().get(0).getFilter());
+        assertSame(plan, fsr.getCompiledStyle(Arrays.asList("THE_GEOM")));
+        //A plan compiled for the same style by another renderer doesn't invalidate the first one
+        CompiledStyle otherPlan = new FeatureStyleRenderer(style).getCompiledStyle(Arrays.asList("THE_GEOM"));
+        assertSame(plan, fsr.getCompiledStyle(Arrays.asList("THE_GEOM")));
+        assertEquals(plan.getSelect(), otherPlan.getSelect());
+        //Another table
+        assertNotSame(plan, fsr.getCompiledStyle(Arrays.asList("GEOM")));
+        plan = fsr.getCompiledStyle(Arrays.asList("THE_GEOM"));
+        //Mutate the style tree
+        style.getRules().get(0).getSymbolizers().get(0).setLevel(2);
+        CompiledStyle newPlan = fsr.getCompiledStyle(Arrays.asList("THE_GEOM"));
+        assertNotSame(plan, newPlan);
+        style.deleteRule(3);
+        assertEquals(3, fsr.getCompiledStyle(Arrays.asList("THE_GEOM")).getRules().size());
+    }
+
+    @Test
+    public void testDeleteSymbolizer() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Feature2DStyle style = StylesForTest.createTwoLineSymbolizers();
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        BufferedImage image = draw(spatialTable, fsr);
+        //The lists of the style cannot be modified without updating it
+        assertThrows(UnsupportedOperationException.class, () -> style.getRules().get(0).getSymbolizers().remove(1));
+        assertThrows(UnsupportedOperationException.class, () -> style.getRules().remove(0));
+        assertTrue(style.getRules().get(0).deleteSymbolizer(1));
+        BufferedImage deleted = draw(spatialTable, fsr);
+        assertEquals(1, fsr.getCompiledStyle(spatialTable.getGeometricColumns()).getRules().get(0).getSymbolizers().size());
+        assertTrue(countDifferentPixels(image, deleted) > 0);
+        assertEquals(0, countDifferentPixels(draw(spatialTable, new FeatureStyleRenderer(style)), deleted));
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Feature2DStyle style = StylesForTest.createThematicAreaSymbolizer();
+        BufferedImage image = draw(spatialTable, new FeatureStyleRenderer(style));
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setPipelined(true);
+        assertEquals(0, countDifferentPixels(image, draw(spatialTable, fsr)));
+        fsr.setFusedScan(true);
+        assertEquals(0, countDifferentPixels(image, draw(spatialTable, fsr)));
+        ThreadPoolExecutor workerPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+        try {
+            fsr.setWorkerPool(workerPool);
+            assertEquals(0, countDifferentPixels(image, draw(spatialTable, fsr)));
+            assertEquals(0, countDifferentPixels(image, draw(spatialTable, fsr)));
+            assertTrue(workerPool.getCompletedTaskCount() > 0);
+            assertFalse(workerPool.isShutdown());
+        } finally {
+            workerPool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPipelinedStages() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Feature2DStyle style = StylesForTest.createThematicAreaSymbolizer();
+        BufferedImage image = draw(spatialTable, new FeatureStyleRenderer(style));
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setPipelined(true);
+        ThreadPoolExecutor stages = (ThreadPoolExecutor) PipelinedScan.getStages();
+        long completedTasks = stages.getCompletedTaskCount();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, countDifferentPixels(image, draw(spatialTable, fsr)));
+        }
+        //The threads of the readers and the painters are reused by the scans
+        assertTrue(stages.getPoolSize() < stages.getCompletedTaskCount() - completedTasks);
+        assertFalse(stages.isShutdown());
+    }
+
+    @Test
+    public void testServerSideGeneralization() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Feature2DStyle style = StylesForTest.createThematicAreaSymbolizer();
+        BufferedImage image = draw(spatialTable, new FeatureStyleRenderer(style));
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setServerSideGeneralization(true);
+        int maxDifferentPixels = image.getWidth() * image.getHeight() / 50;
+        assertTrue(countDifferentPixels(image, draw(spatialTable, fsr)) < maxDifferentPixels);
+        fsr.setFusedScan(true);
+        assertTrue(countDifferentPixels(image, draw(spatialTable, fsr)) < maxDifferentPixels);
+    }
+
+    @Test
+    public void testServerSideGeneralizationInvalidGeometries() throws Exception {
+        h2GIS.execute("DROP TABLE IF EXISTS INVALID_POLYGONS");
+        h2GIS.execute("CREATE TABLE INVALID_POLYGONS(ID INT, THE_GEOM GEOMETRY)");
+        //A bowtie and a hole that crosses its shell
+        h2GIS.execute("INSERT INTO INVALID_POLYGONS VALUES (1, 'POLYGON ((0 0, 10 10, 10 0, 0 10, 0 0))'), "
+                + "(2, 'POLYGON ((20 0, 30 0, 30 10, 20 10, 20 0), (25 2, 35 2, 35 8, 25 8, 25 2))')");
+        ISpatialTable spatialTable = h2GIS.getSpatialTable("INVALID_POLYGONS");
+        Feature2DStyle style = StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0);
+        BufferedImage image = draw(spatialTable, new FeatureStyleRenderer(style));
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setServerSideGeneralization(true);
+        BufferedImage generalized = draw(spatialTable, fsr);
+        assertTrue(countDifferentPixels(image, generalized) < image.getWidth() * image.getHeight() / 50);
+        assertTrue(countDifferentPixels(draw(spatialTable, new FeatureStyleRenderer(new Feature2DStyle())), generalized) > 0);
+    }
+
+    @Test
+    public void testBufferPool() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Feature2DStyle style = StylesForTest.createThematicAreaSymbolizer();
+        FeatureStyleRenderer noPool = new FeatureStyleRenderer(style);
+        noPool.setBufferPool(new SymbolLevelBufferPool(0));
+        BufferedImage image = draw(spatialTable, noPool);
+        assertEquals(0, noPool.getBufferPool().getPooledBytes());
+        SymbolLevelBufferPool pool = new SymbolLevelBufferPool(64 * 1024 * 1024);
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setBufferPool(pool);
+        draw(spatialTable, fsr);
+        assertEquals(0, countDifferentPixels(image, draw(spatialTable, fsr)));
+        assertTrue(pool.getReuseRate() > 0);
+        assertTrue(pool.getPooledBytes() <= pool.getMaxPooledBytes());
+    }
+
+    @Test
+    public void testDirectRendering() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Feature2DStyle style = StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0);
+        FeatureStyleRenderer buffered = new FeatureStyleRenderer(style);
+        buffered.setBufferPool(new SymbolLevelBufferPool(0));
+        BufferedImage image = draw(spatialTable, buffered);
+        assertEquals(1, buffered.getBufferPool().getAcquireCount());
+        FeatureStyleRenderer direct = new FeatureStyleRenderer(style);
+        direct.setDirectRendering(true);
+        direct.setBufferPool(new SymbolLevelBufferPool(0));
+        BufferedImage directImage = draw(spatialTable, direct);
+        //No intermediate image for a single symbol level
+        assertEquals(0, direct.getBufferPool().getAcquireCount());
+        //Only the rounding of the antialiased pixels can differ
+        assertTrue(countDifferentPixels(image, directImage) < image.getWidth() * image.getHeight() / 20);
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Feature2DStyle style = StylesForTest.createThematicAreaSymbolizer();
+        DeadlineProgressMonitor expired = new DeadlineProgressMonitor(new NullProgressMonitor(), 0);
+        BufferedImage image = draw(spatialTable, new FeatureStyleRenderer(style), expired);
+        assertTrue(expired.isStopped());
+        //Nothing is drawn after the deadline
+        BufferedImage white = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = white.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, 400, 300);
+        g2.dispose();
+        assertEquals(0, countDifferentPixels(white, image));
+
+        DeadlineProgressMonitor inTime = new DeadlineProgressMonitor(new NullProgressMonitor(), 60000);
+        BufferedImage complete = draw(spatialTable, new FeatureStyleRenderer(style), inTime);
+        assertFalse(inTime.isStopped());
+        assertEquals(0, countDifferentPixels(draw(spatialTable, new FeatureStyleRenderer(style)), complete));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        DeadlineProgressMonitor pm = new DeadlineProgressMonitor(new NullProgressMonitor());
+        pm.setCancelled(true);
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        fsr.setPipelined(true);
+        draw(spatialTable, fsr, pm);
+        assertTrue(pm.isStopped());
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        Feature2DStyle style = StylesForTest.createThematicAreaSymbolizer();
+        List<RenderStatistics> published = new ArrayList<>();
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(style);
+        fsr.setMetricsSink(published::add);
+        draw(spatialTable, fsr);
+        assertEquals(1, published.size());
+        RenderStatistics statistics = published.get(0);
+        assertEquals(4, statistics.getRules().size());
+        //One query per rule
+        assertEquals(4, statistics.getQueries().getCount());
+        RenderStatistics.RuleStatistics lines = statistics.getRules().get(3);
+        long rows = lines.getQueries().getRowsFetched();
+        assertTrue(rows > 0);
+        assertEquals(rows, lines.getRowsDrawn());
+        assertEquals(rows, lines.getSymbolizers().get(0).getShapeCount());
+        assertTrue(lines.getSymbolizers().get(0).getPaintNanos() > 0);
+        //The filters of the other rules split the rows
+        long thematicRows = 0;
+        for (int i = 0; i < 3; i++) {
+            thematicRows += statistics.getRules().get(i).getRowsDrawn();
+        }
+        assertEquals(rows, thematicRows);
+        assertTrue(statistics.getElapsedNanos() > 0);
+
+        //One query for all the rules
+        published.clear();
+        fsr = new FeatureStyleRenderer(style);
+        fsr.setFusedScan(true);
+        fsr.setPipelined(true);
+        fsr.setMetricsSink(published::add);
+        draw(spatialTable, fsr);
+        RenderStatistics fused = published.get(0);
+        assertEquals(1, fused.getQueries().getCount());
+        assertEquals(rows, fused.getQueries().getRowsFetched());
+        assertEquals(0, fused.getRules().get(3).getQueries().getCount());
+        assertEquals(rows, fused.getRules().get(3).getRowsDrawn());
+        assertEquals(rows, fused.getRules().get(3).getSymbolizers().get(0).getShapeCount());
+    }
+}
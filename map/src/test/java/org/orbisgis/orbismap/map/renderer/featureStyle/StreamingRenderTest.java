@@ -0,0 +1,142 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.orbisgis.orbismap.map.renderer.featureStyle.ImagesForTest.countDifferentPixels;
+import org.locationtech.jts.geom.Envelope;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.layerModel.StyledLayer;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ * Render a large table with a small heap. This test is run by the small-heap
+ * execution of surefire, see the pom of the module.
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class StreamingRenderTest {
+
+    private static final String DB_PATH = "./target/" + StreamingRenderTest.class.getSimpleName();
+
+    private static final int ROW_COUNT = 1000000;
+
+    private static H2GIS h2GIS;
+
+    private static JdbcDataSource dataSource;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, DB_PATH);
+        map.put(DataSourceFactory.JDBC_USER, "sa");
+        map.put(DataSourceFactory.JDBC_PASSWORD, "sa");
+        h2GIS = H2GIS.open(map);
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:" + DB_PATH);
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        h2GIS.execute("DROP TABLE IF EXISTS LARGE_TABLE");
+        h2GIS.execute("CREATE TABLE LARGE_TABLE AS SELECT X AS ID, "
+                + "ST_EXPAND(ST_MAKEPOINT(MOD(X, 1000), X / 1000), 0.4) AS THE_GEOM "
+                + "FROM SYSTEM_RANGE(1, " + ROW_COUNT + ")");
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    private static StyledLayer createLayer() {
+        StyledLayer layer = new StyledLayer(h2GIS.getSpatialTable("LARGE_TABLE"));
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        return layer;
+    }
+
+    private static BufferedImage draw(StyledLayer layer, Envelope extent) throws Exception {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(800, 800, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new MapEnvelope(extent));
+        BufferedImage image = mt.getImage();
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2.addRenderingHints(mt.getRenderingHints());
+        layer.draw(g2, mt, new NullProgressMonitor());
+        g2.dispose();
+        return image;
+    }
+
+    @Test
+    public void testDrawLargeTable() throws Exception {
+        StyledLayer layer = createLayer();
+        layer.getCursorOptions().setDataSource(dataSource);
+        layer.getCursorOptions().setFetchSize(500);
+        BufferedImage image = draw(layer, new Envelope(0, 1000, 0, 1000));
+        assertNotEquals(Color.WHITE.getRGB(), image.getRGB(400, 400));
+        //The streamed rows are drawn as the rows read with the table API
+        Envelope extent = new Envelope(0, 100, 0, 100);
+        assertEquals(0, countDifferentPixels(draw(createLayer(), extent), draw(layer, extent)));
+    }
+
+    @Test
+    public void testLazyQueryExecution() throws Exception {
+        CursorOptions options = new CursorOptions();
+        options.setDataSource(dataSource);
+        options.setFetchSize(500);
+        //The value of the last row cannot be computed, the first row is only
+        //returned if the rows are computed while they are read
+        try (IFeatureCursor cursor = FeatureStyleRenderer.openCursor(options, h2GIS.getSpatialTable("LARGE_TABLE"),
+                "ID, 1 / (ID - " + ROW_COUNT + ") AS INVERSE", "1=1", 0)) {
+            assertTrue(cursor.next());
+            assertEquals(1L, cursor.getObject("ID", Long.class));
+        }
+    }
+}
@@ -97,6 +97,34 @@ public class StylesForTest {
         return style;
     }
 
+    /**
+     * Create a thematic style with one rule per area class and a rule without
+     * filter for the outlines
+     *
+     * @return
+     */
+    public static Feature2DStyle createThematicAreaSymbolizer() {
+        Feature2DStyle style = new Feature2DStyle();
+        String[] filters = new String[]{"st_area(the_geom) < 5000",
+            "st_area(the_geom) >= 5000 and st_area(the_geom) < 20000",
+            "st_area(the_geom) >= 20000"};
+        Color[] colors = new Color[]{Color.YELLOW, Color.ORANGE, Color.RED};
+        for (int i = 0; i < filters.length; i++) {
+            AreaSymbolizer areaSymbolizer = new AreaSymbolizer();
+            areaSymbolizer.setFill(createSolidFill(colors[i]));
+            Feature2DRule rule = new Feature2DRule();
+            rule.setFilter(new Expression(filters[i]));
+            rule.addSymbolizer(areaSymbolizer);
+            style.addRule(rule);
+        }
+        LineSymbolizer lineSymbolizer = new LineSymbolizer();
+        lineSymbolizer.setStroke(createPenStroke(Color.BLACK, 1));
+        Feature2DRule rule = new Feature2DRule();
+        rule.addSymbolizer(lineSymbolizer);
+        style.addRule(rule);
+        return style;
+    }
+
     public static Feature2DStyle createStyleWithLineSymbolizerSizeExpression() {
         Feature2DStyle style = new Feature2DStyle();
         LineSymbolizer lineSymbolizer = new LineSymbolizer();
@@ -728,10 +756,21 @@ public class StylesForTest {
      * @return
      */
     public static MarkGraphic createMarkGraphic() {
+        return createMarkGraphic("square", 6f);
+    }
+
+    /**
+     * Create a standard <code>MarkGraphic</code> in PX
+     *
+     * @param wellKnownName the name of the mark
+     * @param size the size of the mark
+     * @return
+     */
+    public static MarkGraphic createMarkGraphic(String wellKnownName, float size) {
         MarkGraphic markGraphic = new MarkGraphic();
         markGraphic.setUom(Uom.PX);
-        markGraphic.setWellKnownName("square");
-        markGraphic.setGraphicSize(new ViewBox(6f));
+        markGraphic.setWellKnownName(wellKnownName);
+        markGraphic.setGraphicSize(new ViewBox(size));
         markGraphic.setFill(createSolidFill(Color.GRAY));
         markGraphic.setStroke(createPenStroke(Color.magenta, 1));
         return markGraphic;
@@ -0,0 +1,83 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class SymbolLevelBufferPoolTest {
+
+    @Test
+    public void testReuse() {
+        SymbolLevelBufferPool pool = new SymbolLevelBufferPool(1024 * 1024);
+        BufferedImage image = pool.acquire(100, 50, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(10, 10, 0xFFFF0000);
+        pool.release(image);
+        assertEquals(100 * 50 * 4, pool.getPooledBytes());
+        BufferedImage reused = pool.acquire(100, 50, BufferedImage.TYPE_INT_ARGB);
+        assertSame(image, reused);
+        //The image is cleared
+        assertEquals(0, reused.getRGB(10, 10));
+        assertEquals(0, pool.getPooledBytes());
+        //Another size gives another image
+        assertNotSame(reused, pool.acquire(50, 100, BufferedImage.TYPE_INT_ARGB));
+        assertEquals(3, pool.getAcquireCount());
+        assertEquals(1, pool.getReuseCount());
+        assertEquals(1 / 3d, pool.getReuseRate(), 1e-9);
+        assertEquals(2 * 100 * 50 * 4, pool.getPeakBytes());
+    }
+
+    @Test
+    public void testMemoryCap() {
+        SymbolLevelBufferPool pool = new SymbolLevelBufferPool(100 * 50 * 4);
+        BufferedImage image1 = pool.acquire(100, 50, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage image2 = pool.acquire(100, 50, BufferedImage.TYPE_INT_ARGB);
+        pool.release(image1);
+        pool.release(image2);
+        assertEquals(100 * 50 * 4, pool.getPooledBytes());
+        pool.setMaxPooledBytes(0);
+        assertEquals(0, pool.getPooledBytes());
+        pool.release(pool.acquire(100, 50, BufferedImage.TYPE_INT_ARGB));
+        assertEquals(0, pool.getPooledBytes());
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.orbisgis.orbismap.map.renderer.featureStyle.ImagesForTest.countDifferentPixels;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+import org.orbisgis.orbismap.style.Uom;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class TiledFeatureStyleRendererTest {
+
+    private static H2GIS h2GIS;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, "./target/" + TiledFeatureStyleRendererTest.class.getSimpleName());
+        h2GIS = H2GIS.open(map);
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    /**
+     * Create a MapTransform and fill its image in white
+     *
+     * @param spatialTable
+     * @return
+     */
+    private static MapTransform createMapTransform(ISpatialTable spatialTable) {
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new MapEnvelope(spatialTable.getEstimatedExtend().getEnvelopeInternal()));
+        Graphics2D g2 = mt.getImage().createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, mt.getWidth(), mt.getHeight());
+        g2.dispose();
+        return mt;
+    }
+
+    private static void compareTiledDraw(ISpatialTable spatialTable, Feature2DStyle style) throws Exception {
+        MapTransform mt = createMapTransform(spatialTable);
+        Graphics2D g2 = mt.getImage().createGraphics();
+        g2.addRenderingHints(mt.getRenderingHints());
+        new FeatureStyleRenderer(style).draw(spatialTable, mt, g2, new NullProgressMonitor());
+        g2.dispose();
+
+        MapTransform tiledMt = createMapTransform(spatialTable);
+        Graphics2D tiledG2 = tiledMt.getImage().createGraphics();
+        tiledG2.addRenderingHints(tiledMt.getRenderingHints());
+        TiledFeatureStyleRenderer tfsr = new TiledFeatureStyleRenderer(style);
+        tfsr.setTiles(3, 2);
+        tfsr.draw(spatialTable, tiledMt, tiledG2, new NullProgressMonitor());
+        tiledG2.dispose();
+        assertEquals(0, countDifferentPixels(mt.getImage(), tiledMt.getImage()));
+    }
+
+    @Test
+    public void testTiledAreaDraw() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        compareTiledDraw(spatialTable, StylesForTest.createAreaSymbolizer(Color.yellow, 1, 0));
+    }
+
+    @Test
+    public void testTiledLineDraw() throws Exception {
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("hedgerow2000.shp").toURI()), "HEDGEROW", true);
+        compareTiledDraw(spatialTable, StylesForTest.createLineSymbolizer(Color.GREEN, 2, 0, Uom.PX));
+    }
+
+    @Test
+    public void testTiledPointDraw() throws Exception {
+        h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        h2GIS.execute("DROP TABLE IF EXISTS LANDCOVER_POINTS");
+        h2GIS.execute("CREATE TABLE LANDCOVER_POINTS AS SELECT ST_PointOnSurface(THE_GEOM) AS THE_GEOM FROM LANDCOVER");
+        ISpatialTable spatialTable = h2GIS.getSpatialTable("LANDCOVER_POINTS");
+        //The marks are smaller than the overlap of the tiles
+        compareTiledDraw(spatialTable, StylesForTest.createPointSymbolizer("circle", Color.ORANGE, 10, Color.BLACK, 1));
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTReader;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class ColumnarFeatureStoreTest {
+
+    @Test
+    public void testPackedRTreeQuery() {
+        Random random = new Random(42);
+        int numItems = 10000;
+        double[] bounds = new double[4 * numItems];
+        for (int i = 0; i < numItems; i++) {
+            double x = random.nextDouble() * 1000;
+            double y = random.nextDouble() * 1000;
+            bounds[4 * i] = x;
+            bounds[4 * i + 1] = y;
+            bounds[4 * i + 2] = x + random.nextDouble() * 10;
+            bounds[4 * i + 3] = y + random.nextDouble() * 10;
+        }
+        PackedRTree tree = PackedRTree.build(bounds, numItems, PackedRTree.DEFAULT_NODE_SIZE);
+        for (int q = 0; q < 20; q++) {
+            double x = random.nextDouble() * 1000;
+            double y = random.nextDouble() * 1000;
+            Envelope envelope = new Envelope(x, x + 50, y, y + 50);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < numItems; i++) {
+                if (envelope.intersects(new Envelope(bounds[4 * i], bounds[4 * i + 2], bounds[4 * i + 1], bounds[4 * i + 3]))) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> actual = new ArrayList<>();
+            tree.query(envelope, actual::add);
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testPackedRTreeSmall() {
+        List<Integer> actual = new ArrayList<>();
+        PackedRTree.build(new double[0], 0, PackedRTree.DEFAULT_NODE_SIZE).query(new Envelope(0, 1, 0, 1), actual::add);
+        assertTrue(actual.isEmpty());
+        PackedRTree.build(new double[]{0, 0, 1, 1}, 1, PackedRTree.DEFAULT_NODE_SIZE).query(new Envelope(0.5, 2, 0.5, 2), actual::add);
+        assertEquals(Collections.singletonList(0), actual);
+    }
+
+    @Test
+    public void testHilbert() {
+        //The cells of a corner of the curve follow each other
+        int size = 64;
+        int[][] cells = new int[size * size][];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                long position = PackedRTree.hilbert(x, y);
+                assertTrue(position < cells.length);
+                cells[(int) position] = new int[]{x, y};
+            }
+        }
+        for (int i = 1; i < cells.length; i++) {
+            assertEquals(1, Math.abs(cells[i][0] - cells[i - 1][0]) + Math.abs(cells[i][1] - cells[i - 1][1]));
+        }
+        assertEquals(0xFFFFFFFFL, PackedRTree.hilbert(65535, 0));
+    }
+
+    @Test
+    public void testGeometriesAndValues() throws Exception {
+        WKTReader reader = new WKTReader();
+        String[] wkts = {"POINT (1 2)",
+            "LINESTRING (0 0, 10 10, 20 0)",
+            "POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 2 4, 4 4, 4 2, 2 2))",
+            "MULTIPOINT ((1 1), (5 5))",
+            "MULTILINESTRING ((0 0, 1 1), (2 2, 3 3))",
+            "MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))",
+            "GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 0, 1 1))"};
+        ColumnarFeatureStore.Builder builder = new ColumnarFeatureStore.Builder(1,
+                new Class[]{Integer.class, Double.class, String.class, Boolean.class});
+        for (int i = 0; i < wkts.length; i++) {
+            builder.addRow(new Geometry[]{reader.read(wkts[i])},
+                    new Object[]{i, i / 2.0, "value" + (i % 2), i % 3 == 0});
+        }
+        builder.addRow(new Geometry[]{null}, new Object[]{null, null, null, null});
+        ColumnarFeatureStore store = builder.build();
+        assertEquals(wkts.length + 1, store.getRowCount());
+        assertTrue(store.getAllocatedBytes() > 0);
+        for (int i = 0; i < wkts.length; i++) {
+            assertTrue(reader.read(wkts[i]).equalsExact(store.getGeometry(i, 0)), wkts[i]);
+            assertEquals(i, store.getValue(i, 0));
+            assertEquals(i / 2.0, store.getValue(i, 1));
+            assertEquals("value" + (i % 2), store.getValue(i, 2));
+            assertEquals(i % 3 == 0, store.getValue(i, 3));
+            assertEquals(i % 3 == 0, store.isTrue(i, 3));
+        }
+        int last = wkts.length;
+        assertNull(store.getGeometry(last, 0));
+        for (int i = 0; i < 4; i++) {
+            assertNull(store.getValue(last, i));
+        }
+        assertFalse(store.isTrue(last, 3));
+        List<Integer> rows = new ArrayList<>();
+        store.query(new Envelope(4, 7, 4, 7), rows::add);
+        Collections.sort(rows);
+        //The line, the polygon, the multipoint and the multipolygon
+        assertEquals(Arrays.asList(1, 2, 3, 5), rows);
+    }
+}
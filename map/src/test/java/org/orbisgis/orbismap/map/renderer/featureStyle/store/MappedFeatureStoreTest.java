@@ -0,0 +1,190 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.featureStyle.store;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.WKTReader;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class MappedFeatureStoreTest {
+
+    private static File getFile(String name) {
+        File file = new File("./target/" + MappedFeatureStoreTest.class.getSimpleName() + "_" + name);
+        file.getParentFile().mkdirs();
+        return file;
+    }
+
+    @Test
+    public void testGeometriesAndValues() throws Exception {
+        WKTReader reader = new WKTReader();
+        String[] wkts = {"POINT (1 2)",
+            "LINESTRING (0 0, 10 10, 20 0)",
+            "POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 2 4, 4 4, 4 2, 2 2))",
+            "MULTIPOINT ((1 1), (5 5))",
+            "MULTILINESTRING ((0 0, 1 1), (2 2, 3 3))",
+            "MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))",
+            "GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 0, 1 1))"};
+        File file = getFile("values.omfs");
+        //A small chunk size so the rows are split in several chunks
+        try (MappedFeatureStore.Writer writer = new MappedFeatureStore.Writer(file, Collections.singletonList("THE_GEOM"),
+                Arrays.asList("geom_0", "geom_1"), Arrays.asList("id", "half", "name", "flag"),
+                new Class[]{Integer.class, Double.class, String.class, Boolean.class}, 256)) {
+            writer.setQuery("the_geom as geom_0, st_centroid(the_geom) as geom_1, id, half, name, flag");
+            for (int i = 0; i < wkts.length; i++) {
+                Geometry geometry = reader.read(wkts[i]);
+                writer.addRow(new Geometry[]{geometry, geometry.getCentroid()},
+                        new Object[]{i, i / 2.0, "value" + (i % 2), i % 3 == 0});
+            }
+            writer.addRow(new Geometry[]{reader.read("POINT (100 100)"), null}, new Object[]{wkts.length, null, null, null});
+            writer.finish();
+        }
+        try (MappedFeatureStore store = MappedFeatureStore.open(file)) {
+            assertEquals(wkts.length + 1, store.getRowCount());
+            assertEquals("the_geom as geom_0, st_centroid(the_geom) as geom_1, id, half, name, flag", store.getQuery());
+            assertEquals(Collections.singletonList("THE_GEOM"), store.getSourceGeometryColumns());
+            assertEquals(Arrays.asList("geom_0", "geom_1"), store.getGeometryColumns());
+            assertEquals(Arrays.asList("id", "half", "name", "flag"), store.getValueColumns());
+            assertEquals(new Envelope(0, 100, 0, 100), store.getEnvelope());
+            //The rows are sorted on the Hilbert curve
+            int[] rows = new int[wkts.length + 1];
+            for (int row = 0; row < store.getRowCount(); row++) {
+                rows[(Integer) store.getValue(row, 0)] = row;
+            }
+            for (int i = 0; i < wkts.length; i++) {
+                int row = rows[i];
+                Geometry geometry = reader.read(wkts[i]);
+                assertTrue(geometry.equalsExact(store.getGeometry(row, 0)), wkts[i]);
+                assertTrue(geometry.getCentroid().equalsExact(store.getGeometry(row, 1)), wkts[i]);
+                assertEquals(i / 2.0, store.getValue(row, 1));
+                assertEquals("value" + (i % 2), store.getValue(row, 2));
+                assertEquals(i % 3 == 0, store.getValue(row, 3));
+                assertEquals(i % 3 == 0, store.isTrue(row, 3));
+            }
+            int last = rows[wkts.length];
+            assertNull(store.getGeometry(last, 1));
+            for (int i = 1; i < 4; i++) {
+                assertNull(store.getValue(last, i));
+            }
+            assertFalse(store.isTrue(last, 3));
+            List<Integer> ids = new ArrayList<>();
+            store.query(new Envelope(4, 7, 4, 7), row -> ids.add((Integer) store.getValue(row, 0)));
+            Collections.sort(ids);
+            //The line, the polygon, the multipoint and the multipolygon
+            assertEquals(Arrays.asList(1, 2, 3, 5), ids);
+        }
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        Random random = new Random(42);
+        GeometryFactory factory = new GeometryFactory();
+        int numItems = 5000;
+        Envelope[] envelopes = new Envelope[numItems];
+        File file = getFile("query.omfs");
+        try (MappedFeatureStore.Writer writer = new MappedFeatureStore.Writer(file, Collections.singletonList("THE_GEOM"),
+                Collections.singletonList("geom_0"), Collections.singletonList("id"), new Class[]{Long.class}, 4096)) {
+            for (int i = 0; i < numItems; i++) {
+                double x = random.nextDouble() * 1000;
+                double y = random.nextDouble() * 1000;
+                envelopes[i] = new Envelope(x, x + random.nextDouble() * 10, y, y + random.nextDouble() * 10);
+                writer.addRow(new Geometry[]{factory.toGeometry(envelopes[i])}, new Object[]{(long) i});
+            }
+            writer.finish();
+        }
+        try (MappedFeatureStore store = MappedFeatureStore.open(file)) {
+            for (int q = 0; q < 20; q++) {
+                double x = random.nextDouble() * 1000;
+                double y = random.nextDouble() * 1000;
+                Envelope envelope = new Envelope(x, x + 50, y, y + 50);
+                List<Long> expected = new ArrayList<>();
+                for (int i = 0; i < numItems; i++) {
+                    if (envelope.intersects(envelopes[i])) {
+                        expected.add((long) i);
+                    }
+                }
+                List<Long> actual = new ArrayList<>();
+                store.query(envelope, row -> {
+                    Long id = (Long) store.getValue(row, 0);
+                    assertEquals(envelopes[id.intValue()], store.getGeometry(row, 0).getEnvelopeInternal());
+                    actual.add(id);
+                });
+                Collections.sort(actual);
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyAndUnfinished() throws Exception {
+        File file = getFile("empty.omfs");
+        try (MappedFeatureStore.Writer writer = new MappedFeatureStore.Writer(file, Collections.singletonList("THE_GEOM"),
+                Collections.singletonList("geom_0"), Collections.emptyList(), new Class[0])) {
+            writer.finish();
+        }
+        try (MappedFeatureStore store = MappedFeatureStore.open(file)) {
+            assertEquals(0, store.getRowCount());
+            assertTrue(store.getEnvelope().isNull());
+            List<Integer> rows = new ArrayList<>();
+            store.query(new Envelope(0, 1, 0, 1), rows::add);
+            assertTrue(rows.isEmpty());
+        }
+        //The file of a writer closed before the end is deleted
+        File unfinished = getFile("unfinished.omfs");
+        try (MappedFeatureStore.Writer writer = new MappedFeatureStore.Writer(unfinished, Collections.singletonList("THE_GEOM"),
+                Collections.singletonList("geom_0"), Collections.singletonList("value"), new Class[]{Object.class})) {
+            assertThrows(IllegalArgumentException.class, () -> writer.addRow(new Geometry[]{new WKTReader().read("POINT (0 0)")},
+                    new Object[]{new Object()}));
+        }
+        assertFalse(unfinished.exists());
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.jfr;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.orbisgis.orbisdata.datamanager.api.dataset.ISpatialTable;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.layerModel.MapEnvelope;
+import org.orbisgis.orbismap.map.layerModel.MapTransform;
+import org.orbisgis.orbismap.map.renderer.featureStyle.FeatureStyleRenderer;
+import org.orbisgis.orbismap.map.renderer.featureStyle.RenderStatistics;
+import org.orbisgis.orbismap.map.renderer.featureStyle.StylesForTest;
+import org.orbisgis.orbismap.map.utils.progress.NullProgressMonitor;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class RenderEventsTest {
+
+    private static H2GIS h2GIS;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, "./target/" + RenderEventsTest.class.getSimpleName());
+        h2GIS = H2GIS.open(map);
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        assertTrue(RenderEvents.AVAILABLE);
+        ISpatialTable spatialTable = (ISpatialTable) h2GIS.link(new File(StylesForTest.class.getResource("landcover2000.shp").toURI()), "LANDCOVER", true);
+        MapTransform mt = new MapTransform();
+        mt.setImage(new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB));
+        mt.setExtent(new MapEnvelope(spatialTable.getEstimatedExtend().getEnvelopeInternal()));
+        FeatureStyleRenderer fsr = new FeatureStyleRenderer(StylesForTest.createSymbolsWithLevel());
+        Path file = Files.createTempFile("render", ".jfr");
+        RenderStatistics statistics;
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"LayerRender", "RuleQuery", "FeatureBatchPaint", "SymbolLevelComposite"}) {
+                recording.enable("org.orbisgis.orbismap." + name).withoutThreshold();
+            }
+            recording.start();
+            Graphics2D g2 = mt.getImage().createGraphics();
+            statistics = fsr.draw(spatialTable, mt, g2, new NullProgressMonitor());
+            g2.dispose();
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        Map<String, List<RecordedEvent>> eventsByName = events.stream()
+                .collect(Collectors.groupingBy((event) -> event.getEventType().getName()));
+        List<RecordedEvent> layerEvents = eventsByName.get("org.orbisgis.orbismap.LayerRender");
+        assertEquals(1, layerEvents.size());
+        assertEquals(statistics.getLayerName(), layerEvents.get(0).getString("layerName"));
+        assertEquals(statistics.getQueries().getRowsFetched(), layerEvents.get(0).getLong("rowCount"));
+        assertFalse(layerEvents.get(0).getBoolean("partial"));
+        assertEquals(statistics.getQueries().getCount(), eventsByName.get("org.orbisgis.orbismap.RuleQuery").size());
+        long paintedRows = eventsByName.get("org.orbisgis.orbismap.FeatureBatchPaint").stream()
+                .mapToLong((event) -> event.getLong("rowCount")).sum();
+        assertEquals(statistics.getQueries().getRowsFetched(), paintedRows);
+        assertFalse(eventsByName.get("org.orbisgis.orbismap.SymbolLevelComposite").isEmpty());
+    }
+}
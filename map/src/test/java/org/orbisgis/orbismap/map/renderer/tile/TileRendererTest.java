@@ -0,0 +1,216 @@
+/**
+ * Map is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285 Equipe DECIDE UNIVERSITÉ DE
+ * BRETAGNE-SUD Institut Universitaire de Technologie de Vannes 8, Rue Montaigne
+ * - BP 561 56017 Vannes Cedex
+ *
+ * Map is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488) Copyright (C) 2015-2020
+ * CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * Map is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Map is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Map. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly: info_at_ orbisgis.org
+ */
+package org.orbisgis.orbismap.map.renderer.tile;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.orbisgis.orbisdata.datamanager.jdbc.h2gis.H2GIS;
+import org.orbisgis.orbismap.map.layerModel.StyledLayer;
+import org.orbisgis.orbismap.map.renderer.featureStyle.StylesForTest;
+import org.orbisgis.orbismap.style.Feature2DStyle;
+import org.orbisgis.orbismap.style.symbolizer.AreaSymbolizer;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+/**
+ *
+ * @author Erwan Bocher, CNRS (2020)
+ */
+public class TileRendererTest {
+
+    private static H2GIS h2GIS;
+
+    private static List<StyledLayer> layers;
+
+    @BeforeAll
+    public static void tearUpClass() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put(DataSourceFactory.JDBC_DATABASE_NAME, "./target/" + TileRendererTest.class.getSimpleName());
+        h2GIS = H2GIS.open(map);
+        h2GIS.execute("DROP TABLE IF EXISTS SQUARES");
+        h2GIS.execute("CREATE TABLE SQUARES AS SELECT X AS ID, "
+                + "ST_SETSRID(ST_EXPAND(ST_MAKEPOINT(MOD(X, 10) * 2000000 - 9000000, X / 10 * 2000000 - 9000000), 500000), 3857) AS THE_GEOM "
+                + "FROM SYSTEM_RANGE(0, 99)");
+        StyledLayer layer = new StyledLayer(h2GIS.getSpatialTable("SQUARES"));
+        layer.setStyle(StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0));
+        layers = Collections.singletonList(layer);
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        h2GIS.close();
+    }
+
+    @Test
+    public void testTileEnvelope() {
+        assertEquals(-TileRenderer.WEB_MERCATOR_BOUND, TileRenderer.getTileEnvelope(0, 0, 0).getMinX());
+        assertEquals(TileRenderer.WEB_MERCATOR_BOUND, TileRenderer.getTileEnvelope(0, 0, 0).getMaxY());
+        assertEquals(0, TileRenderer.getTileEnvelope(1, 1, 1).getMinX());
+        assertEquals(0, TileRenderer.getTileEnvelope(1, 1, 1).getMaxY());
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        BufferedImage image = new TileRenderer().render(layers, null, 0, 0, 0, 256);
+        assertEquals(256, image.getWidth());
+        assertNotEquals(0, image.getRGB(128, 128) >>> 24);
+    }
+
+    @Test
+    public void testCacheHit() throws Exception {
+        TileRenderer renderer = new TileRenderer();
+        byte[] tile = renderer.getTile(layers, null, 1, 0, 0, 256);
+        assertArrayEquals(tile, renderer.getTile(layers, null, 1, 0, 0, 256));
+        assertEquals(1, renderer.getCache().getMisses());
+        assertEquals(1, renderer.getCache().getHits());
+    }
+
+    @Test
+    public void testStyleKey() throws Exception {
+        TileRenderer renderer = new TileRenderer();
+        Feature2DStyle orange = StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0);
+        Feature2DStyle otherOrange = StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0);
+        Feature2DStyle blue = StylesForTest.createAreaSymbolizer(Color.BLUE, 1, 0);
+        assertEquals(renderer.getTileKey(layers, orange, 1, 0, 0, 256), renderer.getTileKey(layers, otherOrange, 1, 0, 0, 256));
+        assertNotEquals(renderer.getTileKey(layers, orange, 1, 0, 0, 256), renderer.getTileKey(layers, blue, 1, 0, 0, 256));
+        renderer.getTile(layers, orange, 1, 0, 0, 256);
+        renderer.getTile(layers, blue, 1, 0, 0, 256);
+        assertEquals(2, renderer.getCache().getMisses());
+        assertEquals(0, renderer.getCache().getHits());
+    }
+
+    @Test
+    public void testStyleKeyBeforeRendering() throws Exception {
+        TileRenderer renderer = new TileRenderer();
+        //The compilation sets the geometry parameters of the style
+        Feature2DStyle style = StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0);
+        String key = renderer.getTileKey(layers, style, 1, 0, 0, 256);
+        renderer.getTile(layers, style, 1, 0, 0, 256);
+        assertEquals(key, renderer.getTileKey(layers, style, 1, 0, 0, 256));
+        renderer.getTile(layers, style, 1, 0, 0, 256);
+        assertEquals(1, renderer.getCache().getHits());
+        Feature2DStyle expressionStyle = StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0);
+        ((AreaSymbolizer) expressionStyle.getRules().get(0).getSymbolizers().get(0)).setGeometryParameter("ST_BUFFER( THE_GEOM,10)");
+        key = renderer.getTileKey(layers, expressionStyle, 1, 0, 0, 256);
+        renderer.getTile(layers, expressionStyle, 1, 0, 0, 256);
+        assertEquals(key, renderer.getTileKey(layers, expressionStyle, 1, 0, 0, 256));
+    }
+
+    @Test
+    public void testStyleHashRevision() throws Exception {
+        TileRenderer renderer = new TileRenderer();
+        Feature2DStyle style = StylesForTest.createAreaSymbolizer(Color.ORANGE, 1, 0);
+        String hash = renderer.getStyleHash(style);
+        //Not computed again while the style is not mutated
+        assertSame(hash, renderer.getStyleHash(style));
+        ((AreaSymbolizer) style.getRules().get(0).getSymbolizers().get(0)).setLevel(3);
+        assertNotEquals(hash, renderer.getStyleHash(style));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        TileRenderer renderer = new TileRenderer(new TileCache(0));
+        int tileBytes = renderer.getTile(layers, null, 1, 0, 0, 256).length;
+        TileCache cache = new TileCache(tileBytes + tileBytes / 2);
+        renderer = new TileRenderer(cache);
+        for (int x = 0; x < 2; x++) {
+            for (int y = 0; y < 2; y++) {
+                renderer.getTile(layers, null, 1, x, y, 256);
+            }
+        }
+        assertEquals(4, cache.getMisses());
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.getMemoryBytes() <= cache.getMaxMemoryBytes());
+    }
+
+    @Test
+    public void testDiskCache() throws Exception {
+        File directory = Files.createTempDirectory("tiles").toFile();
+        TileRenderer renderer = new TileRenderer(new TileCache(1024 * 1024, directory));
+        byte[] tile = renderer.getTile(layers, null, 2, 1, 1, 256);
+        TileCache cache = new TileCache(1024 * 1024, directory);
+        renderer = new TileRenderer(cache);
+        assertArrayEquals(tile, renderer.getTile(layers, null, 2, 1, 1, 256));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(0, cache.getMisses());
+        assertArrayEquals(tile, renderer.getTile(layers, null, 2, 1, 1, 256));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testMetaTile() throws Exception {
+        TileRenderer renderer = new TileRenderer();
+        renderer.setMetaTile(2, 32);
+        byte[] tile = renderer.getTile(layers, null, 2, 1, 0, 256);
+        assertEquals(1, renderer.getCache().getMisses());
+        //The other tiles of the metatile are already in the cache
+        renderer.getTile(layers, null, 2, 0, 0, 256);
+        renderer.getTile(layers, null, 2, 0, 1, 256);
+        renderer.getTile(layers, null, 2, 1, 1, 256);
+        assertEquals(1, renderer.getCache().getMisses());
+        assertEquals(3, renderer.getCache().getHits());
+        assertArrayEquals(tile, renderer.getTile(layers, null, 2, 1, 0, 256));
+    }
+
+    @Test
+    public void testMetaTileSlices() throws Exception {
+        TileRenderer renderer = new TileRenderer();
+        renderer.setMetaTile(2, 32);
+        BufferedImage[][] tiles = renderer.renderMetaTile(layers, null, 1, 0, 0, 256);
+        assertEquals(2, tiles.length);
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                BufferedImage tile = renderer.render(layers, null, 1, i, j, 256);
+                assertEquals(tile.getRGB(128, 128), tiles[i][j].getRGB(128, 128));
+            }
+        }
+        //The metatile is cut at the border of the tile matrix
+        assertEquals(1, renderer.renderMetaTile(layers, null, 0, 0, 0, 256).length);
+    }
+}
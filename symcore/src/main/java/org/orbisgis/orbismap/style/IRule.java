@@ -54,7 +54,9 @@ public interface IRule<T extends ISymbolizer> extends IName, IStyleNode{
         
     
     /**
-     * Gets the list of {@link ISymbolizer} contained in this Rule.
+     * Gets the list of {@link ISymbolizer} contained in this Rule. The list
+     * cannot be modified, the symbolizers are added and deleted with the
+     * methods of the rule so the style knows it has been mutated.
      *
      * @return
      */
@@ -70,4 +72,12 @@ public interface IRule<T extends ISymbolizer> extends IName, IStyleNode{
     void addSymbolizer(int index, T symbolizer);
 
     void addSymbolizer(T symbolizer);
+
+    /**
+     * Delete the {@link ISymbolizer} from this {@code IRule}.
+     *
+     * @param index of the symbolizer
+     * @return true if the symbolizer has been deleted
+     */
+    boolean deleteSymbolizer(int index);
 }
@@ -56,7 +56,9 @@ import java.util.List;
 public interface IStyle<T extends IRule> extends IDescription, IName {
 
     /**
-     * Gets the list of {@link IRule} contained in this Style.
+     * Gets the list of {@link IRule} contained in this Style. The list cannot
+     * be modified, the rules are added, moved and deleted with the methods of
+     * the style.
      *
      * @return
      */